@@ -26,7 +26,7 @@ import org.apereo.portal.user.IUserInstance;
 public interface IPortletEntityRegistry {
     /**
      * @param portletEntityId The ID of the portlet entity to get a lock for
-     * @return The Lock for the Portlet Entity
+     * @return The Lock for the Portlet Entity, it may also be returned for other entities
      */
     public Lock getPortletEntityLock(HttpServletRequest request, IPortletEntityId portletEntityId);
 
@@ -15,152 +15,138 @@
 package org.apereo.portal.portlet.registry;
 
 import com.google.common.base.Function;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apereo.portal.portlet.om.IPortletEntityDescriptor;
 import org.apereo.portal.portlet.om.IPortletEntityId;
-import org.apereo.portal.utils.threading.NoopLock;
 
 /**
- * Utility for caching portlet entities and entity data in memory. Ensures a consistent view for
- * accessing the data by different sets of keys
+ * Utility for caching portlet entities and entity data in memory by entity id and by layout node
+ * and user.
+ *
+ * <p>Instances are stored in the session and read by parallel requests without locking. Only the
+ * entities are serialized, the indexes are rebuilt when the cache is read back in.
  *
  * @param <T>
  */
 class PortletEntityCache<T extends IPortletEntityDescriptor> implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
-    private final Lock writeLock;
-    private final Lock readLock;
+    private final boolean threadSafe;
 
-    private final Map<SubscribeKey, T> entitiesBySubscribeKey = new HashMap<SubscribeKey, T>();
-    private final Map<IPortletEntityId, T> entitiesById = new HashMap<IPortletEntityId, T>();
+    private transient Map<SubscribeKey, T> entitiesBySubscribeKey;
+    private transient Map<IPortletEntityId, T> entitiesById;
 
     public PortletEntityCache() {
         this(true);
     }
 
     /**
-     * @param threadSafe If set to false no locking is done around read or write operations and this
-     *     class is NOT thread safe
+     * @param threadSafe If set to false plain hash maps are used instead of concurrent maps and
+     *     this class is NOT thread safe
      */
     public PortletEntityCache(boolean threadSafe) {
-        if (threadSafe) {
-            final ReadWriteLock cacheLock = new ReentrantReadWriteLock(true);
-            writeLock = cacheLock.writeLock();
-            readLock = cacheLock.readLock();
+        this.threadSafe = threadSafe;
+        this.initMaps();
+    }
+
+    private void initMaps() {
+        if (this.threadSafe) {
+            this.entitiesBySubscribeKey = new ConcurrentHashMap<SubscribeKey, T>();
+            this.entitiesById = new ConcurrentHashMap<IPortletEntityId, T>();
         } else {
-            writeLock = NoopLock.INSTANCE;
-            readLock = NoopLock.INSTANCE;
+            this.entitiesBySubscribeKey = new HashMap<SubscribeKey, T>();
+            this.entitiesById = new HashMap<IPortletEntityId, T>();
         }
     }
 
     public T storeIfAbsentEntity(
-            IPortletEntityId portletEntityId, Function<IPortletEntityId, T> entityCreator) {
-        //Check if the entity already exists (uses a read lock)
-        T existingEntity = this.getEntity(portletEntityId);
+            IPortletEntityId portletEntityId, final Function<IPortletEntityId, T> entityCreator) {
+        //Check without locking first, computeIfAbsent locks the entry even if it is present
+        final T existingEntity = this.entitiesById.get(portletEntityId);
         if (existingEntity != null) {
             return existingEntity;
         }
 
-        writeLock.lock();
-        try {
-            //Check again inside the write lock
-            existingEntity = this.entitiesById.get(portletEntityId);
-            if (existingEntity != null) {
-                return existingEntity;
-            }
-
-            final T entity = entityCreator.apply(portletEntityId);
-
-            this.storeEntity(entity);
-
-            return entity;
-        } finally {
-            writeLock.unlock();
-        }
+        //Only one thread creates the entity, the others wait for it and get the same instance
+        return this.entitiesById.computeIfAbsent(
+                portletEntityId,
+                new java.util.function.Function<IPortletEntityId, T>() {
+                    @Override
+                    public T apply(IPortletEntityId portletEntityId) {
+                        final T entity = entityCreator.apply(portletEntityId);
+                        entitiesBySubscribeKey.put(getSubscribeKey(entity), entity);
+                        return entity;
+                    }
+                });
     }
 
     public T storeIfAbsentEntity(T entity) {
-        final IPortletEntityId portletEntityId = entity.getPortletEntityId();
-
-        //Check if the entity already exists (uses a read lock)
-        T existingEntity = this.getEntity(portletEntityId);
+        final T existingEntity = this.entitiesById.putIfAbsent(entity.getPortletEntityId(), entity);
         if (existingEntity != null) {
             return existingEntity;
         }
 
-        writeLock.lock();
-        try {
-            //Check again inside the write lock
-            existingEntity = this.entitiesById.get(portletEntityId);
-            if (existingEntity != null) {
-                return existingEntity;
-            }
-
-            this.storeEntity(entity);
-        } finally {
-            writeLock.unlock();
-        }
-
+        this.entitiesBySubscribeKey.put(getSubscribeKey(entity), entity);
         return entity;
     }
 
     public void storeEntity(T entity) {
-        writeLock.lock();
-        try {
-            final SubscribeKey subscribeKey =
-                    new SubscribeKey(entity.getUserId(), entity.getLayoutNodeId());
-            this.entitiesBySubscribeKey.put(subscribeKey, entity);
-            this.entitiesById.put(entity.getPortletEntityId(), entity);
-        } finally {
-            writeLock.unlock();
-        }
+        this.entitiesBySubscribeKey.put(getSubscribeKey(entity), entity);
+        this.entitiesById.put(entity.getPortletEntityId(), entity);
     }
 
     public T getEntity(String layoutNodeId, int userId) {
-        if (this.entitiesBySubscribeKey.isEmpty()) {
-            return null;
-        }
-
-        readLock.lock();
-        try {
-            final SubscribeKey subscribeKey = new SubscribeKey(userId, layoutNodeId);
-            return this.entitiesBySubscribeKey.get(subscribeKey);
-        } finally {
-            readLock.unlock();
-        }
+        final SubscribeKey subscribeKey = new SubscribeKey(userId, layoutNodeId);
+        return this.entitiesBySubscribeKey.get(subscribeKey);
     }
 
     public T getEntity(IPortletEntityId portletEntityId) {
-        if (this.entitiesById.isEmpty()) {
-            return null;
+        return this.entitiesById.get(portletEntityId);
+    }
+
+    public void removeEntity(IPortletEntityId portletEntityId) {
+        final T entity = this.entitiesById.remove(portletEntityId);
+        if (entity != null) {
+            //Leave a different entity stored for the same layout node and user in place
+            this.entitiesBySubscribeKey.remove(getSubscribeKey(entity), entity);
         }
+    }
+
+    private static SubscribeKey getSubscribeKey(IPortletEntityDescriptor entity) {
+        return new SubscribeKey(entity.getUserId(), entity.getLayoutNodeId());
+    }
+
+    private void writeObject(ObjectOutputStream oos) throws IOException {
+        oos.defaultWriteObject();
 
-        readLock.lock();
-        try {
-            return this.entitiesById.get(portletEntityId);
-        } finally {
-            readLock.unlock();
+        final List<T> entities = new ArrayList<T>(this.entitiesById.values());
+        oos.writeInt(entities.size());
+        for (final T entity : entities) {
+            oos.writeObject(entity);
         }
     }
 
-    public void removeEntity(IPortletEntityId portletEntityId) {
-        writeLock.lock();
-        try {
-            final T entity = this.entitiesById.remove(portletEntityId);
-            if (entity != null) {
-                final int userId = entity.getUserId();
-                final String layoutNodeId = entity.getLayoutNodeId();
-                final SubscribeKey subscribeKey = new SubscribeKey(userId, layoutNodeId);
-                this.entitiesBySubscribeKey.remove(subscribeKey);
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ois.defaultReadObject();
+        this.initMaps();
+
+        final int size = ois.readInt();
+        for (int i = 0; i < size; i++) {
+            final T entity = (T) ois.readObject();
+            if (entity == null) {
+                throw new InvalidObjectException("entity can not be null");
             }
-        } finally {
-            writeLock.unlock();
+            this.storeEntity(entity);
         }
     }
 }
@@ -14,6 +14,8 @@
  */
 package org.apereo.portal.portlet.registry;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import org.apereo.portal.portlet.om.IPortletDefinitionId;
 import org.apereo.portal.portlet.om.IPortletEntityId;
 
@@ -21,20 +23,21 @@ import org.apereo.portal.portlet.om.IPortletEntityId;
 class PortletEntityIdImpl implements IPortletEntityId {
     private static final long serialVersionUID = 2L;
 
+    private static final Interner<String> LAYOUT_NODE_ID_INTERNER = Interners.newWeakInterner();
+
     private final IPortletDefinitionId portletDefinitionId;
     private final String layoutNodeId;
     private final int userId;
 
-    private final String compositeIdString;
+    //Derived from the other fields, not stored in the session
+    private transient String compositeIdString;
 
     public PortletEntityIdImpl(
             IPortletDefinitionId portletDefinitionId, String layoutNodeId, int userId) {
         this.portletDefinitionId = portletDefinitionId;
-        this.layoutNodeId = layoutNodeId;
+        this.layoutNodeId =
+                layoutNodeId != null ? LAYOUT_NODE_ID_INTERNER.intern(layoutNodeId) : null;
         this.userId = userId;
-        this.compositeIdString =
-                PortletEntityIdStringUtils.format(
-                        portletDefinitionId.getStringId(), layoutNodeId, userId);
     }
 
     public IPortletDefinitionId getPortletDefinitionId() {
@@ -54,7 +57,16 @@ class PortletEntityIdImpl implements IPortletEntityId {
      */
     @Override
     public String getStringId() {
-        return this.compositeIdString;
+        String compositeIdString = this.compositeIdString;
+        if (compositeIdString == null) {
+            compositeIdString =
+                    PortletEntityIdStringUtils.format(
+                            this.portletDefinitionId.getStringId(),
+                            this.layoutNodeId,
+                            this.userId);
+            this.compositeIdString = compositeIdString;
+        }
+        return compositeIdString;
     }
 
     @Override
@@ -89,6 +101,11 @@ class PortletEntityIdImpl implements IPortletEntityId {
 
     @Override
     public String toString() {
-        return this.compositeIdString.toString();
+        return this.getStringId();
+    }
+
+    private Object readResolve() {
+        //Re-create so the layout node id is interned
+        return new PortletEntityIdImpl(this.portletDefinitionId, this.layoutNodeId, this.userId);
     }
 }
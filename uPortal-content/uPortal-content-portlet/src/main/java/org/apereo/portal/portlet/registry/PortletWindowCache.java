@@ -14,144 +14,146 @@
  */
 package org.apereo.portal.portlet.registry;
 
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
 import org.apereo.portal.portlet.om.IPortletEntityId;
 import org.apereo.portal.portlet.om.IPortletWindowDescriptor;
 import org.apereo.portal.portlet.om.IPortletWindowId;
-import org.apereo.portal.utils.threading.NoopLock;
 
 /**
- * Utility for caching portlet windows and window data in memory. Ensures a consistent view for
- * accessing the data by different sets of keys
+ * Utility for caching portlet windows and window data in memory by window and by entity.
+ *
+ * <p>Instances are stored in the session and read by parallel requests without locking. The
+ * windows of an entity are kept in small immutable sets that are copied when a window is added, a
+ * window stored by one thread may briefly be found by its id before it is in its entity's set.
+ * Only the windows themselves are serialized, the indexes are rebuilt when the cache is read back
+ * in.
  *
  * @param <T>
  */
 class PortletWindowCache<T extends IPortletWindowDescriptor> implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
-    private final Lock writeLock;
-    private final Lock readLock;
+    private final boolean threadSafe;
 
-    private final Map<IPortletEntityId, Set<T>> windowSetByEntityId =
-            new HashMap<IPortletEntityId, Set<T>>();
-    private final Map<IPortletWindowId, T> windowsById = new HashMap<IPortletWindowId, T>();
+    private transient Map<IPortletEntityId, ImmutableSet<T>> windowSetByEntityId;
+    private transient Map<IPortletWindowId, T> windowsById;
 
     public PortletWindowCache() {
         this(true);
     }
 
     /**
-     * @param threadSafe If set to false no locking is done around read or write operations and this
-     *     class is NOT thread safe
+     * @param threadSafe If set to false plain hash maps are used instead of concurrent maps and
+     *     this class is NOT thread safe
      */
     public PortletWindowCache(boolean threadSafe) {
-        if (threadSafe) {
-            final ReadWriteLock cacheLock = new ReentrantReadWriteLock(true);
-            writeLock = cacheLock.writeLock();
-            readLock = cacheLock.readLock();
+        this.threadSafe = threadSafe;
+        this.initMaps();
+    }
+
+    private void initMaps() {
+        if (this.threadSafe) {
+            this.windowSetByEntityId = new ConcurrentHashMap<IPortletEntityId, ImmutableSet<T>>();
+            this.windowsById = new ConcurrentHashMap<IPortletWindowId, T>();
         } else {
-            writeLock = NoopLock.INSTANCE;
-            readLock = NoopLock.INSTANCE;
+            this.windowSetByEntityId = new HashMap<IPortletEntityId, ImmutableSet<T>>();
+            this.windowsById = new HashMap<IPortletWindowId, T>();
         }
     }
 
     public T storeIfAbsentWindow(T window) {
-        final IPortletWindowId portletWindowId = window.getPortletWindowId();
-
-        //Check if the entity already exists (uses a read lock)
-        T existingWindow = this.getWindow(portletWindowId);
+        final T existingWindow = this.windowsById.putIfAbsent(window.getPortletWindowId(), window);
         if (existingWindow != null) {
             return existingWindow;
         }
 
-        writeLock.lock();
-        try {
-            //Check again inside the write lock
-            existingWindow = this.windowsById.get(portletWindowId);
-            if (existingWindow != null) {
-                return existingWindow;
-            }
-
-            this.storeWindow(window);
-        } finally {
-            writeLock.unlock();
-        }
-
+        this.addToWindowSet(window);
         return window;
     }
 
     public void storeWindow(T window) {
-        writeLock.lock();
-        try {
-            final IPortletEntityId portletEntityId = window.getPortletEntityId();
-            final Set<T> windowSet = this.getWindowSet(portletEntityId, true);
-            windowSet.add(window);
-
-            final IPortletWindowId portletWindowId = window.getPortletWindowId();
-            this.windowsById.put(portletWindowId, window);
-        } finally {
-            writeLock.unlock();
-        }
+        this.windowsById.put(window.getPortletWindowId(), window);
+        this.addToWindowSet(window);
     }
 
-    public boolean containsWindow(IPortletWindowId portletWindowId) {
-        if (this.windowSetByEntityId.isEmpty()) {
-            return false;
-        }
+    private void addToWindowSet(final T window) {
+        //Windows per entity are few, copying on write keeps the sets compact and safe to read
+        this.windowSetByEntityId.compute(
+                window.getPortletEntityId(),
+                new BiFunction<IPortletEntityId, ImmutableSet<T>, ImmutableSet<T>>() {
+                    @Override
+                    public ImmutableSet<T> apply(
+                            IPortletEntityId portletEntityId, ImmutableSet<T> windowSet) {
+                        if (windowSet == null) {
+                            return ImmutableSet.of(window);
+                        }
+                        if (windowSet.contains(window)) {
+                            return windowSet;
+                        }
+                        return ImmutableSet.<T>builder().addAll(windowSet).add(window).build();
+                    }
+                });
+    }
 
-        readLock.lock();
-        try {
-            return this.windowsById.containsKey(portletWindowId);
-        } finally {
-            readLock.unlock();
-        }
+    public boolean containsWindow(IPortletWindowId portletWindowId) {
+        return this.windowsById.containsKey(portletWindowId);
     }
 
     public Set<T> getWindows(IPortletEntityId portletEntityId) {
-        if (this.windowSetByEntityId.isEmpty()) {
-            return null;
+        final Set<T> windowSet = this.windowSetByEntityId.get(portletEntityId);
+        if (windowSet == null) {
+            return ImmutableSet.of();
         }
 
-        readLock.lock();
-        try {
-            final Set<T> windowSet = this.getWindowSet(portletEntityId, false);
-            if (windowSet == null) {
-                return Collections.emptySet();
-            }
-
-            return Collections.unmodifiableSet(windowSet);
-        } finally {
-            readLock.unlock();
-        }
+        return windowSet;
     }
 
     public T getWindow(IPortletWindowId portletWindowId) {
-        if (this.windowsById.isEmpty()) {
-            return null;
+        return this.windowsById.get(portletWindowId);
+    }
+
+    private void writeObject(ObjectOutputStream oos) throws IOException {
+        oos.defaultWriteObject();
+
+        //Write in entity set order, the latest stored instance of each window is written
+        final List<T> windows = new ArrayList<T>();
+        for (final Set<T> windowSet : this.windowSetByEntityId.values()) {
+            for (final T window : windowSet) {
+                final T latestWindow = this.windowsById.get(window.getPortletWindowId());
+                windows.add(latestWindow != null ? latestWindow : window);
+            }
         }
 
-        readLock.lock();
-        try {
-            return this.windowsById.get(portletWindowId);
-        } finally {
-            readLock.unlock();
+        oos.writeInt(windows.size());
+        for (final T window : windows) {
+            oos.writeObject(window);
         }
     }
 
-    private Set<T> getWindowSet(final IPortletEntityId portletEntityId, boolean create) {
-        Set<T> windowSet = this.windowSetByEntityId.get(portletEntityId);
-        if (windowSet == null && create) {
-            windowSet = new LinkedHashSet<T>();
-            this.windowSetByEntityId.put(portletEntityId, windowSet);
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ois.defaultReadObject();
+        this.initMaps();
+
+        final int size = ois.readInt();
+        for (int i = 0; i < size; i++) {
+            final T window = (T) ois.readObject();
+            if (window == null) {
+                throw new InvalidObjectException("window can not be null");
+            }
+            this.storeWindow(window);
         }
-        return windowSet;
     }
 }
@@ -14,6 +14,8 @@
  */
 package org.apereo.portal.portlet.registry;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import org.apache.commons.lang.Validate;
 import org.apereo.portal.portlet.om.IPortletEntityId;
 import org.apereo.portal.portlet.om.IPortletWindowId;
@@ -21,17 +23,21 @@ import org.apereo.portal.portlet.om.IPortletWindowId;
 class PortletWindowIdImpl implements IPortletWindowId {
     private static final long serialVersionUID = 2L;
 
+    private static final Interner<String> WINDOW_INSTANCE_ID_INTERNER = Interners.newWeakInterner();
+
     private final IPortletEntityId portletEntityId;
     private final String windowInstanceId;
-    private final String compositeIdString;
+    //Derived from the other fields, not stored in the session
+    private transient String compositeIdString;
 
     public PortletWindowIdImpl(IPortletEntityId portletEntityId, String windowInstanceId) {
         Validate.notNull(portletEntityId, "portletEntityId can not be null");
 
         this.portletEntityId = portletEntityId;
-        this.windowInstanceId = windowInstanceId;
-        this.compositeIdString =
-                PortletWindowIdStringUtils.format(portletEntityId.getStringId(), windowInstanceId);
+        this.windowInstanceId =
+                windowInstanceId != null
+                        ? WINDOW_INSTANCE_ID_INTERNER.intern(windowInstanceId)
+                        : null;
     }
 
     public IPortletEntityId getPortletEntityId() {
@@ -47,7 +53,14 @@ class PortletWindowIdImpl implements IPortletWindowId {
      */
     @Override
     public String getStringId() {
-        return this.compositeIdString;
+        String compositeIdString = this.compositeIdString;
+        if (compositeIdString == null) {
+            compositeIdString =
+                    PortletWindowIdStringUtils.format(
+                            this.portletEntityId.getStringId(), this.windowInstanceId);
+            this.compositeIdString = compositeIdString;
+        }
+        return compositeIdString;
     }
 
     @Override
@@ -82,4 +95,9 @@ class PortletWindowIdImpl implements IPortletWindowId {
     public String toString() {
         return this.getStringId();
     }
+
+    private Object readResolve() {
+        //Re-create so the window instance id is interned
+        return new PortletWindowIdImpl(this.portletEntityId, this.windowInstanceId);
+    }
 }
@@ -243,6 +243,7 @@ public interface IUserLayoutManager {
      * @deprecated {@link #getUserLayout()} should be used instead. Direct manipulation of the DOM
      *     can cause caching problems and issues where the layout manager doesn't know about DOM
      *     changes. Read https://lists.wisc.edu/read/messages?id=2167043 for more information.
+     *     Changes made to the returned document are rendered after {@link #saveUserLayout()}.
      */
     @Deprecated
     public Document getUserLayoutDOM() throws PortalException;
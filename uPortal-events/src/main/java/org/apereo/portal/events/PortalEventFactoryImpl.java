@@ -54,6 +54,7 @@ import org.apereo.portal.url.ParameterMap;
 import org.apereo.portal.utils.IncludeExcludeUtils;
 import org.apereo.portal.utils.RandomTokenGenerator;
 import org.apereo.portal.utils.SerializableObject;
+import org.apereo.portal.utils.web.PortalWebUtils;
 import org.jasig.services.persondir.IPersonAttributeDao;
 import org.jasig.services.persondir.IPersonAttributes;
 import org.slf4j.Logger;
@@ -63,7 +64,6 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.stereotype.Service;
-import org.springframework.web.util.WebUtils;
 
 @Service("portalEventFactory")
 public class PortalEventFactoryImpl implements IPortalEventFactory, ApplicationEventPublisherAware {
@@ -779,16 +779,8 @@ public class PortalEventFactoryImpl implements IPortalEventFactory, ApplicationE
 
     /** Get a session scoped mutex specific to this class */
     protected final Object getEventSessionMutex(HttpSession session) {
-        synchronized (WebUtils.getSessionMutex(session)) {
-            SerializableObject mutex =
-                    (SerializableObject) session.getAttribute(EVENT_SESSION_MUTEX);
-            if (mutex == null) {
-                mutex = new SerializableObject();
-                session.setAttribute(EVENT_SESSION_MUTEX, mutex);
-            }
-
-            return mutex;
-        }
+        return PortalWebUtils.getOrCreateSessionAttribute(
+                session, EVENT_SESSION_MUTEX, SerializableObject::new);
     }
 
     protected final Map<String, List<String>> pruneParameters(
@@ -0,0 +1,68 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.aggr;
+
+import java.util.List;
+
+/**
+ * Date/time, discriminator and int property values of a set of aggregations, stored column by
+ * column in primitive arrays instead of as aggregation entities. Rows are ordered by date/time.
+ *
+ * @see BaseAggregationDao#getAggregationColumns(org.joda.time.DateTime, org.joda.time.DateTime,
+ *     java.util.Set, List, org.apereo.portal.events.aggr.groups.AggregatedGroupMapping...)
+ * @since 5.0
+ */
+public final class AggregationColumns {
+    private final List<String> columnNames;
+    private final long[] dateTimes;
+    private final BaseGroupedAggregationDiscriminator[] discriminators;
+    private final int[][] columns;
+
+    AggregationColumns(
+            List<String> columnNames,
+            long[] dateTimes,
+            BaseGroupedAggregationDiscriminator[] discriminators,
+            int[][] columns) {
+        this.columnNames = columnNames;
+        this.dateTimes = dateTimes;
+        this.discriminators = discriminators;
+        this.columns = columns;
+    }
+
+    /** @return Number of aggregations */
+    public int size() {
+        return this.dateTimes.length;
+    }
+
+    /** @return Names of the aggregation properties, in column order */
+    public List<String> getColumnNames() {
+        return this.columnNames;
+    }
+
+    /** @return Start of the interval of the aggregation in milliseconds */
+    public long getDateTime(int row) {
+        return this.dateTimes[row];
+    }
+
+    /** @return The discriminator of the aggregation, instances are shared between rows */
+    public BaseGroupedAggregationDiscriminator getDiscriminator(int row) {
+        return this.discriminators[row];
+    }
+
+    /** @return Value of the property in the column for the aggregation */
+    public int getValue(int column, int row) {
+        return this.columns[column][row];
+    }
+}
@@ -0,0 +1,297 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.aggr;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Runs a subset of the interval aware aggregators on a worker thread within its own AggrEventsDb
+ * transaction. Tasks are run in the order they are submitted so each aggregator sees the same
+ * sequence of events and interval boundaries it would see when aggregating serially.
+ *
+ * <p>{@link #finish()} waits for the worker to run the submitted tasks and flush its changes, the
+ * worker then keeps its transaction open until {@link #complete(boolean)} tells it to commit or
+ * roll back. The aggregation run commits the partitions just before its own transaction commits,
+ * a partition that fails to commit fails the run so the events are not marked as aggregated and
+ * are aggregated again by the next run. Partitions that committed before the failure keep their
+ * aggregations and see those events twice, that is preferred over silently losing aggregations.
+ *
+ * <p>Waiting on the worker is bounded by the timeout, a worker that does not respond in time fails
+ * the run.
+ *
+ * <p>Entities loaded by the aggregation thread must not be handed to the tasks, they are loaded
+ * again in the partition's persistence context through {@link #getEntityResolver()}.
+ */
+class AggregatorPartition implements Runnable {
+    private static final Runnable END =
+            new Runnable() {
+                @Override
+                public void run() {}
+            };
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    //Each partition gets its own context, aggregators cache open aggregations in it
+    private final EventAggregationContext eventAggregationContext =
+            new EventAggregationContextImpl();
+    private final PartitionEntityResolver entityResolver;
+    private final CountDownLatch drained = new CountDownLatch(1);
+    private final CountDownLatch decided = new CountDownLatch(1);
+    private final CountDownLatch completed = new CountDownLatch(1);
+    private final BlockingQueue<Runnable> tasks;
+    private final String name;
+    private final TransactionOperations transactionOperations;
+    private final Runnable transactionSetup;
+    private final Runnable transactionPrepare;
+    private final long timeout;
+    private volatile boolean started = false;
+    private volatile boolean commit = false;
+    private volatile Throwable failure;
+
+    /**
+     * @param name Name of the partition, used for the worker thread name and errors
+     * @param queueSize Number of tasks that can be waiting before submitting blocks
+     * @param transactionOperations Used to run the worker in an AggrEventsDb transaction
+     * @param transactionSetup Run at the start of the worker's transaction
+     * @param transactionPrepare Run after the last task, before the worker waits for {@link
+     *     #complete(boolean)}
+     * @param entityResolver Loads entities in the worker's persistence context
+     * @param timeout Milliseconds to wait for the worker to take a task, drain or complete
+     */
+    AggregatorPartition(
+            String name,
+            int queueSize,
+            TransactionOperations transactionOperations,
+            Runnable transactionSetup,
+            Runnable transactionPrepare,
+            PartitionEntityResolver entityResolver,
+            long timeout) {
+        this.name = name;
+        this.tasks = new ArrayBlockingQueue<Runnable>(queueSize);
+        this.transactionOperations = transactionOperations;
+        this.transactionSetup = transactionSetup;
+        this.transactionPrepare = transactionPrepare;
+        this.entityResolver = entityResolver;
+        this.timeout = timeout;
+    }
+
+    /** @return The context to pass to aggregators run by this partition */
+    public EventAggregationContext getEventAggregationContext() {
+        return this.eventAggregationContext;
+    }
+
+    /** @return Resolves entities for the tasks run by this partition, only use from the tasks */
+    public PartitionEntityResolver getEntityResolver() {
+        return this.entityResolver;
+    }
+
+    /** Queue a task for the worker, starting the worker on the first call */
+    public void submit(ExecutorService executorService, Runnable task) {
+        if (!this.started) {
+            executorService.execute(this);
+            this.started = true;
+        }
+        this.enqueue(task);
+    }
+
+    /** Wait for the worker to run all submitted tasks and prepare its transaction to commit */
+    public void finish() {
+        if (!this.started) {
+            return;
+        }
+        this.enqueue(END);
+        this.await(this.drained, "drain");
+        this.checkFailure();
+    }
+
+    /**
+     * Tell the worker to commit or roll back its transaction and wait for it to do so. Only the
+     * first call has any effect.
+     */
+    public void complete(boolean commit) {
+        if (!this.started || this.decided.getCount() == 0) {
+            return;
+        }
+        this.commit = commit;
+        this.decided.countDown();
+
+        //Unblock a worker that is still waiting for tasks
+        if (!commit) {
+            this.tasks.clear();
+            this.tasks.offer(END);
+        }
+
+        this.await(this.completed, "complete");
+        if (commit) {
+            this.checkFailure();
+        }
+    }
+
+    /**
+     * Commit the worker's transaction just before the transaction of the calling thread commits,
+     * failing that transaction if the worker fails to commit. The worker's transaction is rolled
+     * back if the calling transaction does not commit. Commits right away if the calling thread
+     * has no transaction synchronization.
+     */
+    public void completeBeforeCommit() {
+        if (!this.started) {
+            return;
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            this.complete(true);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void beforeCommit(boolean readOnly) {
+                        complete(true);
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        //No-op if the worker was already told to commit
+                        try {
+                            complete(false);
+                        } catch (RuntimeException e) {
+                            logger.error("Failed to roll back {}", AggregatorPartition.this, e);
+                        }
+                    }
+                });
+    }
+
+    @Override
+    public void run() {
+        final Thread currentThread = Thread.currentThread();
+        final String currentName = currentThread.getName();
+        try {
+            currentThread.setName(currentName + "-" + this.name);
+            PartitionedAggregation.begin();
+
+            this.transactionOperations.execute(
+                    new TransactionCallbackWithoutResult() {
+                        @Override
+                        protected void doInTransactionWithoutResult(TransactionStatus status) {
+                            runTasks(status);
+                        }
+                    });
+        } catch (Throwable t) {
+            if (this.failure == null) {
+                this.failure = t;
+            }
+        } finally {
+            this.drained.countDown();
+            this.completed.countDown();
+            PartitionedAggregation.end();
+            currentThread.setName(currentName);
+        }
+    }
+
+    private void runTasks(TransactionStatus status) {
+        try {
+            this.transactionSetup.run();
+
+            for (Runnable task = this.tasks.take(); task != END; task = this.tasks.take()) {
+                task.run();
+            }
+
+            //Surface any database errors before the aggregation run commits
+            this.transactionPrepare.run();
+        } catch (Throwable t) {
+            this.failure = t;
+            status.setRollbackOnly();
+            return;
+        } finally {
+            this.drained.countDown();
+        }
+
+        try {
+            this.decided.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.logger.warn("Interrupted waiting to commit aggregator partition {}", this.name);
+            status.setRollbackOnly();
+            return;
+        }
+
+        if (!this.commit) {
+            status.setRollbackOnly();
+        }
+    }
+
+    private void enqueue(Runnable task) {
+        final long deadline = System.currentTimeMillis() + this.timeout;
+        try {
+            while (!this.tasks.offer(task, 100, TimeUnit.MILLISECONDS)) {
+                //The worker stops taking tasks if it fails
+                this.checkFailure();
+                if (System.currentTimeMillis() >= deadline) {
+                    throw new IllegalStateException(
+                            "Timed out after "
+                                    + this.timeout
+                                    + "ms submitting to aggregator partition "
+                                    + name);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted submitting to aggregator partition " + name, e);
+        }
+    }
+
+    private void await(CountDownLatch latch, String action) {
+        final boolean done;
+        try {
+            done = latch.await(this.timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for aggregator partition " + name, e);
+        }
+        if (!done) {
+            throw new IllegalStateException(
+                    "Timed out after "
+                            + this.timeout
+                            + "ms waiting for aggregator partition "
+                            + name
+                            + " to "
+                            + action);
+        }
+    }
+
+    private void checkFailure() {
+        final Throwable failure = this.failure;
+        if (failure != null) {
+            throw new IllegalStateException("Aggregator partition " + name + " failed", failure);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AggregatorPartition [name=" + this.name + "]";
+    }
+}
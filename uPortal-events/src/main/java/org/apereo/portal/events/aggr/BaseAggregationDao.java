@@ -58,6 +58,29 @@ public interface BaseAggregationDao<T extends BaseAggregation<K, ?>, K extends B
             Set<K> keys,
             AggregatedGroupMapping... aggregatedGroupMappings);
 
+    /**
+     * Values of int properties of the aggregations in a date range for a specified interval and
+     * group(s) ordered by date/time. Only the date, time, discriminator and requested properties
+     * are queried, no aggregation entities are loaded. Results for ranges whose intervals are all
+     * closed are cached.
+     *
+     * @param start the start {@link DateTime} of the range, inclusive
+     * @param end the end {@link DateTime} of the range, exclusive
+     * @param keys Same as for {@link #getAggregations(DateTime, DateTime, Set,
+     *     AggregatedGroupMapping...)}
+     * @param columns Names of the int properties of the aggregation to return, for example
+     *     "loginCount"
+     * @param aggregatedGroupMappings Groups in addition to the group specified by {@link
+     *     BaseAggregationKey#getAggregatedGroup()} to get aggregations for
+     * @since 5.0
+     */
+    AggregationColumns getAggregationColumns(
+            DateTime start,
+            DateTime end,
+            Set<K> keys,
+            List<String> columns,
+            AggregatedGroupMapping... aggregatedGroupMappings);
+
     /**
      * Get all aggregations regardless of associated {@link AggregatedGroupMapping}
      *
@@ -19,13 +19,17 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSet.Builder;
 import com.google.common.collect.Sets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
@@ -35,6 +39,10 @@ import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.ParameterExpression;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import org.apereo.portal.events.aggr.dao.IEventAggregationManagementDao;
 import org.apereo.portal.events.aggr.dao.jpa.DateDimensionImpl;
 import org.apereo.portal.events.aggr.dao.jpa.DateDimensionImpl_;
 import org.apereo.portal.events.aggr.dao.jpa.TimeDimensionImpl;
@@ -47,6 +55,7 @@ import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 import org.joda.time.LocalTime;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 
 /**
  * Base for JPA DAOs that handle {@link BaseAggregationImpl} subclasses. Provides impls of the
@@ -61,7 +70,13 @@ public abstract class JpaBaseAggregationDao<
         extends BaseAggrEventsJpaDao implements BaseAggregationPrivateDao<T, K> {
 
     private final Class<T> aggregationEntityType;
+    private final ConcurrentMap<List<String>, CriteriaQuery<Object[]>>
+            findAggregationColumnsByDateRangeQueries =
+                    new ConcurrentHashMap<List<String>, CriteriaQuery<Object[]>>();
     private HibernateCacheEvictor hibernateCacheEvictor;
+    private AggregationIntervalHelper intervalHelper;
+    private IEventAggregationManagementDao eventAggregationManagementDao;
+    private Ehcache aggregationColumnsCache;
 
     protected CriteriaQuery<T> findAggregationByDateTimeIntervalQuery;
     protected CriteriaQuery<T> findAggregationByDateTimeIntervalGroupQuery;
@@ -89,6 +104,24 @@ public abstract class JpaBaseAggregationDao<
         this.hibernateCacheEvictor = hibernateCacheEvictor;
     }
 
+    @Autowired
+    public void setIntervalHelper(AggregationIntervalHelper intervalHelper) {
+        this.intervalHelper = intervalHelper;
+    }
+
+    @Autowired
+    public void setEventAggregationManagementDao(
+            IEventAggregationManagementDao eventAggregationManagementDao) {
+        this.eventAggregationManagementDao = eventAggregationManagementDao;
+    }
+
+    @Autowired
+    public void setAggregationColumnsCache(
+            @Qualifier("org.apereo.portal.events.aggr.JpaBaseAggregationDao.aggregationColumns")
+                    Ehcache aggregationColumnsCache) {
+        this.aggregationColumnsCache = aggregationColumnsCache;
+    }
+
     /**
      * Add any fetches needed for the following queries: findAggregationByDateTimeIntervalQuery
      * findUnclosedAggregationsByDateRangeQuery
@@ -107,7 +140,7 @@ public abstract class JpaBaseAggregationDao<
      * Bind the non-standard key parameters from the extension of {@link BaseAggregationKey} for
      * standard queries
      */
-    protected void bindAggregationSpecificKeyParameters(TypedQuery<T> query, Set<K> keys) {}
+    protected void bindAggregationSpecificKeyParameters(TypedQuery<?> query, Set<K> keys) {}
 
     /**
      * Bind the non-standard key parameters from the extension of {@link BaseAggregationKey} for
@@ -115,6 +148,22 @@ public abstract class JpaBaseAggregationDao<
      */
     protected void bindAggregationSpecificKeyParameters(NaturalIdQuery<T> query, K key) {}
 
+    /**
+     * Add the selections, in addition to the aggregated group, needed to create the aggregation
+     * discriminator in {@link #createAggregationDiscriminator(AggregatedGroupMapping, Object[])}
+     */
+    protected void addDiscriminatorSelections(Root<T> root, List<Selection<?>> selections) {}
+
+    /**
+     * Create the discriminator of an aggregation without loading it
+     *
+     * @param aggregatedGroup The group of the aggregation
+     * @param values Values of the selections added by {@link #addDiscriminatorSelections(Root,
+     *     List)}
+     */
+    protected abstract BaseGroupedAggregationDiscriminator createAggregationDiscriminator(
+            AggregatedGroupMapping aggregatedGroup, Object[] values);
+
     /** For subclasses to use to create additional {@link ParameterExpression}s */
     protected void createParameterExpressions() {}
 
@@ -224,39 +273,8 @@ public abstract class JpaBaseAggregationDao<
                                 final Join<T, TimeDimensionImpl> td =
                                         ba.join(BaseAggregationImpl_.timeDimension, JoinType.LEFT);
 
-                                final List<Predicate> keyPredicates = new ArrayList<Predicate>();
-                                keyPredicates.add(
-                                        cb.and( //Restrict results by outer date range
-                                                cb.greaterThanOrEqualTo(
-                                                        dd.get(DateDimensionImpl_.date), startDate),
-                                                cb.lessThan(
-                                                        dd.get(DateDimensionImpl_.date),
-                                                        endPlusOneDate)));
-                                keyPredicates.add(
-                                        cb.or( //Restrict start of range by time as well
-                                                cb.greaterThan(
-                                                        dd.get(DateDimensionImpl_.date), startDate),
-                                                cb.greaterThanOrEqualTo(
-                                                        td.get(TimeDimensionImpl_.time),
-                                                        startTime)));
-                                keyPredicates.add(
-                                        cb.or( //Restrict end of range by time as well
-                                                cb.lessThan(
-                                                        dd.get(DateDimensionImpl_.date), endDate),
-                                                cb.lessThan(
-                                                        td.get(TimeDimensionImpl_.time), endTime)));
-                                keyPredicates.add(
-                                        cb.equal(
-                                                ba.get(BaseAggregationImpl_.interval),
-                                                intervalParameter));
-                                keyPredicates.add(
-                                        ba.get(BaseAggregationImpl_.aggregatedGroup)
-                                                .in(aggregatedGroupsParameter));
-                                addAggregationSpecificKeyPredicate(cb, ba, keyPredicates);
-
                                 criteriaQuery.select(ba);
-                                criteriaQuery.where(
-                                        keyPredicates.toArray(new Predicate[keyPredicates.size()]));
+                                criteriaQuery.where(createDateRangePredicates(cb, ba, dd, td));
                                 criteriaQuery.orderBy(
                                         cb.desc(dd.get(DateDimensionImpl_.date)),
                                         cb.desc(td.get(TimeDimensionImpl_.time)));
@@ -360,6 +378,36 @@ public abstract class JpaBaseAggregationDao<
         this.createCriteriaQueries();
     }
 
+    /**
+     * Predicates for the aggregations of the keys and groups in a date range, shared by the
+     * queries for aggregations and their column values
+     */
+    private Predicate[] createDateRangePredicates(
+            CriteriaBuilder cb,
+            Root<T> ba,
+            Join<T, DateDimensionImpl> dd,
+            Join<T, TimeDimensionImpl> td) {
+        final List<Predicate> keyPredicates = new ArrayList<Predicate>();
+        keyPredicates.add(
+                cb.and( //Restrict results by outer date range
+                        cb.greaterThanOrEqualTo(dd.get(DateDimensionImpl_.date), startDate),
+                        cb.lessThan(dd.get(DateDimensionImpl_.date), endPlusOneDate)));
+        keyPredicates.add(
+                cb.or( //Restrict start of range by time as well
+                        cb.greaterThan(dd.get(DateDimensionImpl_.date), startDate),
+                        cb.greaterThanOrEqualTo(td.get(TimeDimensionImpl_.time), startTime)));
+        keyPredicates.add(
+                cb.or( //Restrict end of range by time as well
+                        cb.lessThan(dd.get(DateDimensionImpl_.date), endDate),
+                        cb.lessThan(td.get(TimeDimensionImpl_.time), endTime)));
+        keyPredicates.add(cb.equal(ba.get(BaseAggregationImpl_.interval), intervalParameter));
+        keyPredicates.add(
+                ba.get(BaseAggregationImpl_.aggregatedGroup).in(aggregatedGroupsParameter));
+        addAggregationSpecificKeyPredicate(cb, ba, keyPredicates);
+
+        return keyPredicates.toArray(new Predicate[keyPredicates.size()]);
+    }
+
     @Override
     public final List<T> getAggregations(
             DateTime start,
@@ -380,10 +428,21 @@ public abstract class JpaBaseAggregationDao<
         if (!start.isBefore(end)) {
             throw new IllegalArgumentException("Start must be before End: " + start + " - " + end);
         }
-        final LocalDate startDate = start.toLocalDate();
-        final LocalDate endDate = end.toLocalDate();
 
         final TypedQuery<T> query = this.createQuery(findAggregationsByDateRangeQuery);
+        this.bindDateRangeParameters(query, start, end, keys, aggregatedGroupMappings);
+
+        return query.getResultList();
+    }
+
+    private void bindDateRangeParameters(
+            TypedQuery<?> query,
+            DateTime start,
+            DateTime end,
+            Set<K> keys,
+            AggregatedGroupMapping[] aggregatedGroupMappings) {
+        final LocalDate startDate = start.toLocalDate();
+        final LocalDate endDate = end.toLocalDate();
 
         query.setParameter(this.startDate, startDate);
         query.setParameter(this.startTime, start.toLocalTime());
@@ -401,8 +460,162 @@ public abstract class JpaBaseAggregationDao<
         final Set<AggregatedGroupMapping> groups =
                 collectAllGroupsFromParams(keys, aggregatedGroupMappings);
         query.setParameter(this.aggregatedGroupsParameter, groups);
+    }
 
-        return query.getResultList();
+    @Override
+    public final AggregationColumns getAggregationColumns(
+            DateTime start,
+            DateTime end,
+            Set<K> keys,
+            List<String> columns,
+            AggregatedGroupMapping... aggregatedGroupMappings) {
+        if (!start.isBefore(end)) {
+            throw new IllegalArgumentException("Start must be before End: " + start + " - " + end);
+        }
+
+        final AggregationInterval interval = keys.iterator().next().getInterval();
+        final boolean closed = this.isClosed(interval, end);
+        final List<Object> cacheKey;
+        if (closed) {
+            cacheKey =
+                    Arrays.<Object>asList(
+                            this.aggregationEntityType.getName(),
+                            start.getMillis(),
+                            end.getMillis(),
+                            new HashSet<K>(keys),
+                            collectAllGroupsFromParams(keys, aggregatedGroupMappings),
+                            columns);
+            final Element element = this.aggregationColumnsCache.get(cacheKey);
+            if (element != null) {
+                return (AggregationColumns) element.getObjectValue();
+            }
+        } else {
+            cacheKey = null;
+        }
+
+        final TypedQuery<Object[]> query =
+                this.createQuery(this.getAggregationColumnsQuery(columns));
+        this.bindDateRangeParameters(query, start, end, keys, aggregatedGroupMappings);
+        final List<Object[]> results = query.getResultList();
+
+        final int size = results.size();
+        final long[] dateTimes = new long[size];
+        final BaseGroupedAggregationDiscriminator[] discriminators =
+                new BaseGroupedAggregationDiscriminator[size];
+        final int[][] values = new int[columns.size()][size];
+
+        //Rows are ordered by date/time and share discriminators
+        final Map<List<Object>, BaseGroupedAggregationDiscriminator> discriminatorCache =
+                new HashMap<List<Object>, BaseGroupedAggregationDiscriminator>();
+        LocalDate lastDate = null;
+        LocalTime lastTime = null;
+        long lastDateTime = 0;
+        for (int row = 0; row < size; row++) {
+            final Object[] result = results.get(row);
+
+            final LocalDate date = (LocalDate) result[0];
+            final LocalTime time = (LocalTime) result[1];
+            if (!date.equals(lastDate) || !time.equals(lastTime)) {
+                lastDate = date;
+                lastTime = time;
+                lastDateTime = time.toDateTime(date.toDateMidnight()).getMillis();
+            }
+            dateTimes[row] = lastDateTime;
+
+            final int discriminatorEnd = result.length - columns.size();
+            final List<Object> discriminatorValues =
+                    Arrays.asList(result).subList(2, discriminatorEnd);
+            BaseGroupedAggregationDiscriminator discriminator =
+                    discriminatorCache.get(discriminatorValues);
+            if (discriminator == null) {
+                discriminator =
+                        this.createAggregationDiscriminator(
+                                (AggregatedGroupMapping) result[2],
+                                Arrays.copyOfRange(result, 3, discriminatorEnd));
+                discriminatorCache.put(discriminatorValues, discriminator);
+            }
+            discriminators[row] = discriminator;
+
+            for (int column = 0; column < columns.size(); column++) {
+                values[column][row] = ((Number) result[discriminatorEnd + column]).intValue();
+            }
+        }
+
+        final AggregationColumns aggregationColumns =
+                new AggregationColumns(
+                        Collections.unmodifiableList(new ArrayList<String>(columns)),
+                        dateTimes,
+                        discriminators,
+                        values);
+        if (cacheKey != null) {
+            this.aggregationColumnsCache.put(new Element(cacheKey, aggregationColumns));
+        }
+        return aggregationColumns;
+    }
+
+    /**
+     * @return true if every interval starting before end is closed. The aggregator closes the
+     *     intervals before the one containing the last event it processed, how far it is behind
+     *     the current time does not matter.
+     */
+    private boolean isClosed(AggregationInterval interval, DateTime end) {
+        final IEventAggregatorStatus eventAggregatorStatus =
+                this.eventAggregationManagementDao.getEventAggregatorStatus(
+                        IEventAggregatorStatus.ProcessingType.AGGREGATION, false);
+        if (eventAggregatorStatus == null || eventAggregatorStatus.getLastEventDate() == null) {
+            return false;
+        }
+
+        final AggregationIntervalInfo lastEventInterval =
+                this.intervalHelper.getIntervalInfo(
+                        interval, eventAggregatorStatus.getLastEventDate());
+        return lastEventInterval != null && !end.isAfter(lastEventInterval.getStart());
+    }
+
+    private CriteriaQuery<Object[]> getAggregationColumnsQuery(final List<String> columns) {
+        CriteriaQuery<Object[]> columnsQuery =
+                this.findAggregationColumnsByDateRangeQueries.get(columns);
+        if (columnsQuery != null) {
+            return columnsQuery;
+        }
+
+        columnsQuery =
+                this.createCriteriaQuery(
+                        new Function<CriteriaBuilder, CriteriaQuery<Object[]>>() {
+                            @Override
+                            public CriteriaQuery<Object[]> apply(CriteriaBuilder cb) {
+                                final CriteriaQuery<Object[]> criteriaQuery =
+                                        cb.createQuery(Object[].class);
+
+                                final Root<T> ba = criteriaQuery.from(aggregationEntityType);
+                                final Join<T, DateDimensionImpl> dd =
+                                        ba.join(BaseAggregationImpl_.dateDimension, JoinType.LEFT);
+                                final Join<T, TimeDimensionImpl> td =
+                                        ba.join(BaseAggregationImpl_.timeDimension, JoinType.LEFT);
+
+                                final List<Selection<?>> selections = new ArrayList<Selection<?>>();
+                                selections.add(dd.get(DateDimensionImpl_.date));
+                                selections.add(td.get(TimeDimensionImpl_.time));
+                                selections.add(ba.get(BaseAggregationImpl_.aggregatedGroup));
+                                addDiscriminatorSelections(ba, selections);
+                                for (final String column : columns) {
+                                    selections.add(ba.get(column));
+                                }
+
+                                criteriaQuery.multiselect(selections);
+                                criteriaQuery.where(createDateRangePredicates(cb, ba, dd, td));
+                                criteriaQuery.orderBy(
+                                        cb.asc(dd.get(DateDimensionImpl_.date)),
+                                        cb.asc(td.get(TimeDimensionImpl_.time)));
+
+                                return criteriaQuery;
+                            }
+                        });
+
+        final CriteriaQuery<Object[]> existingQuery =
+                this.findAggregationColumnsByDateRangeQueries.putIfAbsent(
+                        new ArrayList<String>(columns), columnsQuery);
+        return existingQuery != null ? existingQuery : columnsQuery;
     }
 
     // Create set of all aggregatedGroups in both keys and those passed in as a parameter
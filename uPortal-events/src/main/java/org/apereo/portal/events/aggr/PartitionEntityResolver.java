@@ -0,0 +1,251 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.aggr;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.apereo.portal.events.aggr.dao.DateDimensionDao;
+import org.apereo.portal.events.aggr.dao.TimeDimensionDao;
+import org.apereo.portal.events.aggr.groups.AggregatedGroupLookupDao;
+import org.apereo.portal.events.aggr.groups.AggregatedGroupMapping;
+import org.apereo.portal.events.aggr.session.EventSession;
+import org.joda.time.DateTime;
+
+/**
+ * Loads the entities used by the aggregators of an {@link AggregatorPartition} in the partition's
+ * own persistence context. The aggregation thread only hands ids and dates to a partition, each
+ * partition loads the group mappings and date/time dimensions it needs once per run.
+ *
+ * <p>The {@link #resolve} methods must only be called from the partition's worker thread.
+ */
+class PartitionEntityResolver {
+    private final AggregatedGroupLookupDao aggregatedGroupLookupDao;
+    private final DateDimensionDao dateDimensionDao;
+    private final TimeDimensionDao timeDimensionDao;
+
+    private final Map<Long, AggregatedGroupMapping> groupMappings =
+            new HashMap<Long, AggregatedGroupMapping>();
+    private final Map<Long, DateDimension> dateDimensions = new HashMap<Long, DateDimension>();
+    private final Map<Long, TimeDimension> timeDimensions = new HashMap<Long, TimeDimension>();
+
+    //The refs are cached by the aggregation thread so the same instance is passed for every event
+    private final Map<EventSessionRef, EventSession> eventSessions =
+            new IdentityHashMap<EventSessionRef, EventSession>();
+    private final Map<
+                    Map<AggregationInterval, IntervalInfoRef>,
+                    Map<AggregationInterval, AggregationIntervalInfo>>
+            intervalInfos =
+                    new IdentityHashMap<
+                            Map<AggregationInterval, IntervalInfoRef>,
+                            Map<AggregationInterval, AggregationIntervalInfo>>();
+
+    PartitionEntityResolver(
+            AggregatedGroupLookupDao aggregatedGroupLookupDao,
+            DateDimensionDao dateDimensionDao,
+            TimeDimensionDao timeDimensionDao) {
+        this.aggregatedGroupLookupDao = aggregatedGroupLookupDao;
+        this.dateDimensionDao = dateDimensionDao;
+        this.timeDimensionDao = timeDimensionDao;
+    }
+
+    /** @return A copy of the event session that only holds ids, null if eventSession is null */
+    static EventSessionRef createRef(EventSession eventSession) {
+        if (eventSession == null) {
+            return null;
+        }
+
+        final Set<AggregatedGroupMapping> groupMappings = eventSession.getGroupMappings();
+        final long[] groupMappingIds = new long[groupMappings.size()];
+        int index = 0;
+        for (final AggregatedGroupMapping groupMapping : groupMappings) {
+            groupMappingIds[index++] = groupMapping.getId();
+        }
+        return new EventSessionRef(eventSession.getEventSessionId(), groupMappingIds);
+    }
+
+    /** @return A copy of the interval info that only holds ids and dates */
+    static Map<AggregationInterval, IntervalInfoRef> createRef(
+            Map<AggregationInterval, AggregationIntervalInfo> intervalInfo) {
+        final Map<AggregationInterval, IntervalInfoRef> refs =
+                new EnumMap<AggregationInterval, IntervalInfoRef>(AggregationInterval.class);
+        for (final AggregationIntervalInfo info : intervalInfo.values()) {
+            final DateDimension dateDimension = info.getDateDimension();
+            final TimeDimension timeDimension = info.getTimeDimension();
+            refs.put(
+                    info.getAggregationInterval(),
+                    new IntervalInfoRef(
+                            info.getAggregationInterval(),
+                            info.getStart(),
+                            info.getEnd(),
+                            dateDimension != null ? dateDimension.getId() : -1,
+                            timeDimension != null ? timeDimension.getId() : -1));
+        }
+        return Collections.unmodifiableMap(refs);
+    }
+
+    /** @return The event session with group mappings from the partition's persistence context */
+    EventSession resolve(EventSessionRef ref) {
+        if (ref == null) {
+            return null;
+        }
+
+        EventSession eventSession = this.eventSessions.get(ref);
+        if (eventSession == null) {
+            final ImmutableSet.Builder<AggregatedGroupMapping> groupMappingsBuilder =
+                    ImmutableSet.builder();
+            for (final long groupMappingId : ref.groupMappingIds) {
+                AggregatedGroupMapping groupMapping = this.groupMappings.get(groupMappingId);
+                if (groupMapping == null) {
+                    groupMapping = this.aggregatedGroupLookupDao.getGroupMapping(groupMappingId);
+                    this.groupMappings.put(groupMappingId, groupMapping);
+                }
+                groupMappingsBuilder.add(groupMapping);
+            }
+
+            eventSession =
+                    new PartitionEventSession(ref.eventSessionId, groupMappingsBuilder.build());
+            this.eventSessions.put(ref, eventSession);
+        }
+        return eventSession;
+    }
+
+    /** @return The interval info with dimensions from the partition's persistence context */
+    Map<AggregationInterval, AggregationIntervalInfo> resolve(
+            Map<AggregationInterval, IntervalInfoRef> refs) {
+        Map<AggregationInterval, AggregationIntervalInfo> intervalInfo =
+                this.intervalInfos.get(refs);
+        if (intervalInfo == null) {
+            final Map<AggregationInterval, AggregationIntervalInfo> resolved =
+                    new EnumMap<AggregationInterval, AggregationIntervalInfo>(
+                            AggregationInterval.class);
+            for (final IntervalInfoRef ref : refs.values()) {
+                resolved.put(
+                        ref.aggregationInterval,
+                        new AggregationIntervalInfo(
+                                ref.aggregationInterval,
+                                ref.start,
+                                ref.end,
+                                this.getDateDimension(ref.dateDimensionId),
+                                this.getTimeDimension(ref.timeDimensionId)));
+            }
+
+            intervalInfo = Collections.unmodifiableMap(resolved);
+            this.intervalInfos.put(refs, intervalInfo);
+        }
+        return intervalInfo;
+    }
+
+    private DateDimension getDateDimension(long id) {
+        if (id < 0) {
+            return null;
+        }
+
+        DateDimension dateDimension = this.dateDimensions.get(id);
+        if (dateDimension == null) {
+            dateDimension = this.dateDimensionDao.getDateDimensionById(id);
+            this.dateDimensions.put(id, dateDimension);
+        }
+        return dateDimension;
+    }
+
+    private TimeDimension getTimeDimension(long id) {
+        if (id < 0) {
+            return null;
+        }
+
+        TimeDimension timeDimension = this.timeDimensions.get(id);
+        if (timeDimension == null) {
+            timeDimension = this.timeDimensionDao.getTimeDimensionById(id);
+            this.timeDimensions.put(id, timeDimension);
+        }
+        return timeDimension;
+    }
+
+    /** Id only copy of an {@link EventSession} */
+    static final class EventSessionRef {
+        private final String eventSessionId;
+        private final long[] groupMappingIds;
+
+        EventSessionRef(String eventSessionId, long[] groupMappingIds) {
+            this.eventSessionId = eventSessionId;
+            this.groupMappingIds = groupMappingIds;
+        }
+    }
+
+    /** Id only copy of an {@link AggregationIntervalInfo} */
+    static final class IntervalInfoRef {
+        private final AggregationInterval aggregationInterval;
+        private final DateTime start;
+        private final DateTime end;
+        private final long dateDimensionId;
+        private final long timeDimensionId;
+
+        IntervalInfoRef(
+                AggregationInterval aggregationInterval,
+                DateTime start,
+                DateTime end,
+                long dateDimensionId,
+                long timeDimensionId) {
+            this.aggregationInterval = aggregationInterval;
+            this.start = start;
+            this.end = end;
+            this.dateDimensionId = dateDimensionId;
+            this.timeDimensionId = timeDimensionId;
+        }
+    }
+
+    /**
+     * Event session used by partitions, access is recorded on the aggregation thread so {@link
+     * #recordAccess(DateTime)} does nothing
+     */
+    private static final class PartitionEventSession implements EventSession {
+        private static final long serialVersionUID = 1L;
+
+        private final String eventSessionId;
+        private final Set<AggregatedGroupMapping> groupMappings;
+
+        PartitionEventSession(String eventSessionId, Set<AggregatedGroupMapping> groupMappings) {
+            this.eventSessionId = eventSessionId;
+            this.groupMappings = groupMappings;
+        }
+
+        @Override
+        public void recordAccess(DateTime eventDate) {}
+
+        @Override
+        public String getEventSessionId() {
+            return this.eventSessionId;
+        }
+
+        @Override
+        public Set<AggregatedGroupMapping> getGroupMappings() {
+            return this.groupMappings;
+        }
+
+        @Override
+        public String toString() {
+            return "PartitionEventSession [eventSessionId="
+                    + this.eventSessionId
+                    + ", groupMappings="
+                    + this.groupMappings
+                    + "]";
+        }
+    }
+}
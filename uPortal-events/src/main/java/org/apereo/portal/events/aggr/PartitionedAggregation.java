@@ -0,0 +1,41 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.aggr;
+
+/**
+ * Tracks the threads taking part in a partitioned aggregation run. Entities created by one of
+ * these threads must be committed right away so the other threads of the run can reference them,
+ * serial aggregation creates them in the transaction of the run.
+ */
+public final class PartitionedAggregation {
+    private static final ThreadLocal<Boolean> PARTITIONED = new ThreadLocal<Boolean>();
+
+    private PartitionedAggregation() {}
+
+    /** @return true if the current thread is taking part in a partitioned aggregation run */
+    public static boolean isPartitioned() {
+        return PARTITIONED.get() != null;
+    }
+
+    /** Mark the current thread as taking part in a partitioned aggregation run */
+    static void begin() {
+        PARTITIONED.set(Boolean.TRUE);
+    }
+
+    /** Clear the mark set by {@link #begin()} */
+    static void end() {
+        PARTITIONED.remove();
+    }
+}
@@ -15,22 +15,30 @@
 package org.apereo.portal.events.aggr;
 
 import com.google.common.base.Function;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMap.Builder;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Sets;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Resource;
 import javax.persistence.EntityManager;
 import javax.persistence.FlushModeType;
@@ -39,8 +47,12 @@ import org.apache.commons.lang.mutable.MutableObject;
 import org.apereo.portal.IPortalInfoProvider;
 import org.apereo.portal.concurrency.locking.IClusterLockService;
 import org.apereo.portal.events.PortalEvent;
+import org.apereo.portal.events.aggr.PartitionEntityResolver.EventSessionRef;
+import org.apereo.portal.events.aggr.PartitionEntityResolver.IntervalInfoRef;
 import org.apereo.portal.events.aggr.dao.DateDimensionDao;
 import org.apereo.portal.events.aggr.dao.IEventAggregationManagementDao;
+import org.apereo.portal.events.aggr.dao.TimeDimensionDao;
+import org.apereo.portal.events.aggr.groups.AggregatedGroupLookupDao;
 import org.apereo.portal.events.aggr.session.EventSession;
 import org.apereo.portal.events.aggr.session.EventSessionDao;
 import org.apereo.portal.events.handlers.db.IPortalEventDao;
@@ -61,15 +73,19 @@ import org.springframework.aop.framework.AopProxyUtils;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
 
+@ManagedResource("uPortal:section=Events,name=PortalRawEventsAggregator")
 @Service
 public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao
-        implements PortalRawEventsAggregator, DisposableBean {
+        implements PortalRawEventsAggregator, PortalRawEventsAggregatorMXBean, DisposableBean {
     private static final String EVENT_SESSION_CACHE_KEY_SOURCE =
             AggregateEventsHandler.class.getName() + "-EventSession";
+    private static final String EVENT_SESSION_REF_CACHE_KEY_SOURCE =
+            AggregateEventsHandler.class.getName() + "-EventSessionRef";
 
     private IClusterLockService clusterLockService;
     private IPortalEventProcessingManager portalEventAggregationManager;
@@ -80,18 +96,27 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao
     private AggregationIntervalHelper intervalHelper;
     private EventSessionDao eventSessionDao;
     private DateDimensionDao dateDimensionDao;
+    private TimeDimensionDao timeDimensionDao;
+    private AggregatedGroupLookupDao aggregatedGroupLookupDao;
     private Set<IntervalAwarePortalEventAggregator<PortalEvent>>
             intervalAwarePortalEventAggregators = Collections.emptySet();
     private Set<SimplePortalEventAggregator<PortalEvent>> simplePortalEventAggregators =
             Collections.emptySet();
     private List<ApplicationEventFilter<PortalEvent>> applicationEventFilters =
             Collections.emptyList();
+    private Map<IPortalEventAggregator<PortalEvent>, AggregatorStatistics> aggregatorStatistics =
+            Collections.emptyMap();
+    private ExecutorService aggregationExecutor;
+    private StreamedPortalEventBuffer streamedPortalEventBuffer;
 
     private int eventAggregationBatchSize = 10000;
     private int intervalAggregationBatchSize = 5;
     private int cleanUnclosedAggregationsBatchSize = 1000;
     private int cleanUnclosedIntervalsBatchSize = 315;
     private ReadablePeriod aggregationDelay = Period.seconds(30);
+    private volatile int aggregationThreads = 1;
+    private int aggregationPartitionQueueSize = 1000;
+    private ReadablePeriod aggregationPartitionTimeout = Period.minutes(5);
 
     private final Map<Class<?>, List<String>> entityCollectionRoles =
             new HashMap<Class<?>, List<String>>();
@@ -102,6 +127,16 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao
         this.dateDimensionDao = dateDimensionDao;
     }
 
+    @Autowired
+    public void setTimeDimensionDao(TimeDimensionDao timeDimensionDao) {
+        this.timeDimensionDao = timeDimensionDao;
+    }
+
+    @Autowired
+    public void setAggregatedGroupLookupDao(AggregatedGroupLookupDao aggregatedGroupLookupDao) {
+        this.aggregatedGroupLookupDao = aggregatedGroupLookupDao;
+    }
+
     @Autowired
     public void setPortalEventAggregationManager(
             IPortalEventProcessingManager portalEventAggregationManager) {
@@ -135,6 +170,12 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao
         this.portalEventDao = portalEventDao;
     }
 
+    /** Buffer of streamed events to merge with the raw events, optional */
+    @Autowired(required = false)
+    public void setStreamedPortalEventBuffer(StreamedPortalEventBuffer streamedPortalEventBuffer) {
+        this.streamedPortalEventBuffer = streamedPortalEventBuffer;
+    }
+
     @Autowired
     public void setIntervalHelper(AggregationIntervalHelper intervalHelper) {
         this.intervalHelper = intervalHelper;
@@ -145,10 +186,11 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao
         this.eventSessionDao = eventSessionDao;
     }
 
+    /** @param portalEventAggregators The aggregators to use, keyed by bean name */
     @Autowired
     @SuppressWarnings({"rawtypes", "unchecked"})
     public void setPortalEventAggregators(
-            Set<IPortalEventAggregator<PortalEvent>> portalEventAggregators) {
+            Map<String, IPortalEventAggregator<PortalEvent>> portalEventAggregators) {
         final com.google.common.collect.ImmutableSet.Builder<
                         IntervalAwarePortalEventAggregator<PortalEvent>>
                 intervalAwarePortalEventAggregatorsBuilder = ImmutableSet.builder();
@@ -156,8 +198,18 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao
                         SimplePortalEventAggregator<PortalEvent>>
                 simplePortalEventAggregatorsBuilder = ImmutableSet.builder();
 
-        for (final IPortalEventAggregator<PortalEvent> portalEventAggregator :
-                portalEventAggregators) {
+        final Map<IPortalEventAggregator<PortalEvent>, AggregatorStatistics>
+                aggregatorStatisticsBuilder =
+                        new IdentityHashMap<
+                                IPortalEventAggregator<PortalEvent>, AggregatorStatistics>();
+
+        for (final Map.Entry<String, IPortalEventAggregator<PortalEvent>> aggregatorEntry :
+                portalEventAggregators.entrySet()) {
+            final IPortalEventAggregator<PortalEvent> portalEventAggregator =
+                    aggregatorEntry.getValue();
+            aggregatorStatisticsBuilder.put(
+                    portalEventAggregator, new AggregatorStatistics(aggregatorEntry.getKey()));
+
             if (portalEventAggregator instanceof IntervalAwarePortalEventAggregator) {
                 intervalAwarePortalEventAggregatorsBuilder.add(
                         (IntervalAwarePortalEventAggregator) portalEventAggregator);
@@ -170,6 +222,7 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao
         this.intervalAwarePortalEventAggregators =
                 intervalAwarePortalEventAggregatorsBuilder.build();
         this.simplePortalEventAggregators = simplePortalEventAggregatorsBuilder.build();
+        this.aggregatorStatistics = aggregatorStatisticsBuilder;
     }
 
     @Resource(name = "aggregatorEventFilters")
@@ -178,6 +231,47 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao
         this.applicationEventFilters = applicationEventFilters;
     }
 
+    /**
+     * Executor used to run aggregator partitions when {@link #setAggregationThreads(int)} is
+     * greater than 1. Without an executor aggregation is always serial.
+     */
+    @Resource(name = "uPortalTaskExecutor")
+    public void setAggregationExecutor(ExecutorService aggregationExecutor) {
+        this.aggregationExecutor = aggregationExecutor;
+    }
+
+    /**
+     * Number of threads the interval aware aggregators are spread over. Aggregators of the same
+     * class always share a thread. Defaults to 1, aggregating serially on the calling thread.
+     */
+    @Value("${org.apereo.portal.events.aggr.PortalRawEventsAggregatorImpl.aggregationThreads:1}")
+    @Override
+    public void setAggregationThreads(int aggregationThreads) {
+        this.aggregationThreads = aggregationThreads;
+    }
+
+    @Override
+    public int getAggregationThreads() {
+        return this.aggregationThreads;
+    }
+
+    /** Number of events waiting for each aggregator partition before aggregation blocks. */
+    @Value(
+            "${org.apereo.portal.events.aggr.PortalRawEventsAggregatorImpl.aggregationPartitionQueueSize:1000}")
+    public void setAggregationPartitionQueueSize(int aggregationPartitionQueueSize) {
+        this.aggregationPartitionQueueSize = aggregationPartitionQueueSize;
+    }
+
+    /**
+     * How long to wait for an aggregator partition to accept an event, drain or commit before the
+     * aggregation run fails.
+     */
+    @Value(
+            "${org.apereo.portal.events.aggr.PortalRawEventsAggregatorImpl.aggregationPartitionTimeout:PT5M}")
+    public void setAggregationPartitionTimeout(ReadablePeriod aggregationPartitionTimeout) {
+        this.aggregationPartitionTimeout = aggregationPartitionTimeout;
+    }
+
     @Value("${org.apereo.portal.events.aggr.PortalRawEventsAggregatorImpl.aggregationDelay:PT30S}")
     public void setAggregationDelay(ReadablePeriod aggregationDelay) {
         this.aggregationDelay = aggregationDelay;
@@ -211,6 +305,36 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao
         this.shutdown = shutdown;
     }
 
+    @Override
+    public Map<String, Long> getAggregatorEventCounts() {
+        final Map<String, Long> eventCounts = new TreeMap<String, Long>();
+        for (final AggregatorStatistics statistics : this.aggregatorStatistics.values()) {
+            eventCounts.put(statistics.getName(), statistics.getEvents());
+        }
+        return eventCounts;
+    }
+
+    @Override
+    public Map<String, Long> getAggregatorTimes() {
+        final Map<String, Long> times = new TreeMap<String, Long>();
+        for (final AggregatorStatistics statistics : this.aggregatorStatistics.values()) {
+            times.put(statistics.getName(), TimeUnit.NANOSECONDS.toMillis(statistics.getTime()));
+        }
+        return times;
+    }
+
+    @Override
+    public Map<String, Double> getAggregatorThroughput() {
+        final Map<String, Double> throughput = new TreeMap<String, Double>();
+        for (final AggregatorStatistics statistics : this.aggregatorStatistics.values()) {
+            final long time = statistics.getTime();
+            throughput.put(
+                    statistics.getName(),
+                    time == 0 ? 0 : statistics.getEvents() / (time / 1000000000d));
+        }
+        return throughput;
+    }
+
     @Override
     public void destroy() throws Exception {
         this.shutdown = true;
@@ -228,15 +352,33 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao
     @RawEventsTransactional
     @Override
     public EventProcessingResult doAggregateRawEvents() {
-        //Do RawTX around AggrTX. The AggrTX is MUCH more likely to fail than the RawTX and this results in both rolling back
-        return this.getTransactionOperations()
-                .execute(
-                        new TransactionCallback<EventProcessingResult>() {
-                            @Override
-                            public EventProcessingResult doInTransaction(TransactionStatus status) {
-                                return doAggregateRawEventsInternal();
-                            }
-                        });
+        //Streamed events merged by the run only exist in the AggrTX, put them back if it fails
+        final List<PortalEvent> mergedStreamedEvents = new ArrayList<PortalEvent>();
+        boolean committed = false;
+        try {
+            //Do RawTX around AggrTX. The AggrTX is MUCH more likely to fail than the RawTX and this results in both rolling back
+            final EventProcessingResult result =
+                    this.getTransactionOperations()
+                            .execute(
+                                    new TransactionCallback<EventProcessingResult>() {
+                                        @Override
+                                        public EventProcessingResult doInTransaction(
+                                                TransactionStatus status) {
+                                            return doAggregateRawEventsInternal(
+                                                    mergedStreamedEvents);
+                                        }
+                                    });
+            committed = true;
+            return result;
+        } finally {
+            if (!mergedStreamedEvents.isEmpty()) {
+                if (committed) {
+                    this.streamedPortalEventBuffer.mergedEvents(mergedStreamedEvents.size());
+                } else {
+                    this.streamedPortalEventBuffer.returnEvents(mergedStreamedEvents);
+                }
+            }
+        }
     }
 
     @AggrEventsTransactional
@@ -472,7 +614,8 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao
         return collectionRoles;
     }
 
-    private EventProcessingResult doAggregateRawEventsInternal() {
+    private EventProcessingResult doAggregateRawEventsInternal(
+            List<PortalEvent> mergedStreamedEvents) {
         if (!this.clusterLockService.isLockOwner(AGGREGATION_LOCK_NAME)) {
             throw new IllegalStateException(
                     "The cluster lock "
@@ -480,7 +623,9 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao
                             + " must be owned by the current thread and server");
         }
 
-        if (!this.portalEventDimensionPopulator.isCheckedDimensions()) {
+        final boolean populateDimensions =
+                !this.portalEventDimensionPopulator.isCheckedDimensions();
+        if (populateDimensions) {
             //First time aggregation has happened, run populateDimensions to ensure enough dimension data exists
             final boolean populatedDimensions =
                     this.portalEventAggregationManager.populateDimensions();
@@ -541,35 +686,75 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao
         final String currentName = currentThread.getName();
         final MutableInt events = new MutableInt();
         final MutableObject lastEventDate = new MutableObject(newestEventTime);
+        final AggregateEventsHandler aggregateEventsHandler =
+                new AggregateEventsHandler(
+                        events, lastEventDate, eventAggregatorStatus, !populateDimensions);
+        final StreamedEventsMerger streamedEventsMerger =
+                new StreamedEventsMerger(
+                        aggregateEventsHandler,
+                        this.streamedPortalEventBuffer != null
+                                ? this.streamedPortalEventBuffer.takeEvents(newestEventTime)
+                                : Collections.<PortalEvent>emptyList());
 
         boolean complete;
+        boolean completeBeforeCommit = false;
+        aggregateEventsHandler.open();
         try {
-            currentThread.setName(currentName + "-" + lastAggregated + "_" + newestEventTime);
+            try {
+                currentThread.setName(currentName + "-" + lastAggregated + "_" + newestEventTime);
 
-            logger.debug(
-                    "Starting aggregation of events between {} (inc) and {} (exc)",
-                    lastAggregated,
-                    newestEventTime);
-
-            //Do aggregation, capturing the start and end dates
-            eventAggregatorStatus.setLastStart(DateTime.now());
-
-            complete =
-                    portalEventDao.aggregatePortalEvents(
-                            lastAggregated,
-                            newestEventTime,
-                            this.eventAggregationBatchSize,
-                            new AggregateEventsHandler(
-                                    events, lastEventDate, eventAggregatorStatus));
-
-            eventAggregatorStatus.setLastEventDate((DateTime) lastEventDate.getValue());
-            eventAggregatorStatus.setLastEnd(DateTime.now());
+                logger.debug(
+                        "Starting aggregation of events between {} (inc) and {} (exc)",
+                        lastAggregated,
+                        newestEventTime);
+
+                //Do aggregation, capturing the start and end dates
+                eventAggregatorStatus.setLastStart(DateTime.now());
+
+                complete =
+                        portalEventDao.aggregatePortalEvents(
+                                lastAggregated,
+                                newestEventTime,
+                                this.eventAggregationBatchSize,
+                                streamedEventsMerger);
+
+                //Merge streamed events after the last raw event unless the batch size cut it off
+                if (complete
+                        && (this.eventAggregationBatchSize <= 0
+                                || streamedEventsMerger.getRawEvents()
+                                        < this.eventAggregationBatchSize)) {
+                    complete = streamedEventsMerger.mergeStreamedEvents(Long.MAX_VALUE);
+                }
+
+                //Wait for the aggregator partitions to catch up and flush their changes
+                aggregateEventsHandler.finish();
+
+                eventAggregatorStatus.setLastEventDate((DateTime) lastEventDate.getValue());
+                eventAggregatorStatus.setLastEnd(DateTime.now());
+            } finally {
+                currentThread.setName(currentName);
+            }
+
+            //Store the results of the aggregation
+            eventAggregationManagementDao.updateEventAggregatorStatus(eventAggregatorStatus);
+
+            //Surface database errors before the partitions commit with the run
+            entityManager.flush();
+            aggregateEventsHandler.completeBeforeCommit();
+            completeBeforeCommit = true;
         } finally {
-            currentThread.setName(currentName);
-        }
+            if (!completeBeforeCommit) {
+                aggregateEventsHandler.rollback();
+            }
+            aggregateEventsHandler.close();
 
-        //Store the results of the aggregation
-        eventAggregationManagementDao.updateEventAggregatorStatus(eventAggregatorStatus);
+            //Streamed events not reached by this run are merged by the next one
+            mergedStreamedEvents.addAll(streamedEventsMerger.getMergedEvents());
+            if (this.streamedPortalEventBuffer != null) {
+                this.streamedPortalEventBuffer.returnEvents(
+                        streamedEventsMerger.getUnmergedEvents());
+            }
+        }
 
         complete =
                 complete
@@ -686,15 +871,144 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao
                                 Map<AggregationInterval, AggregationIntervalInfo>>();
         private final AggregatedGroupConfig defaultAggregatedGroupConfig;
 
+        //Aggregator partitions, empty when aggregating serially
+        private final Map<IPortalEventAggregator<PortalEvent>, AggregatorPartition> partitions;
+        private final Map<
+                        Map<AggregationInterval, AggregationIntervalInfo>,
+                        Map<AggregationInterval, IntervalInfoRef>>
+                intervalInfoRefs =
+                        new IdentityHashMap<
+                                Map<AggregationInterval, AggregationIntervalInfo>,
+                                Map<AggregationInterval, IntervalInfoRef>>();
+        private final ExecutorService partitionExecutor = aggregationExecutor;
+
+        /**
+         * @param partitioned If the interval aware aggregators can be run on partitions, must be
+         *     false if the transaction has created dimensions the partitions can't see yet
+         */
         private AggregateEventsHandler(
                 MutableInt eventCounter,
                 MutableObject lastEventDate,
-                IEventAggregatorStatus eventAggregatorStatus) {
+                IEventAggregatorStatus eventAggregatorStatus,
+                boolean partitioned) {
             this.eventCounter = eventCounter;
             this.lastEventDate = lastEventDate;
             this.eventAggregatorStatus = eventAggregatorStatus;
             this.defaultAggregatedGroupConfig =
                     eventAggregationManagementDao.getDefaultAggregatedGroupConfig();
+            this.partitions = this.createPartitions(partitioned);
+        }
+
+        /**
+         * Spread the interval aware aggregators over aggregationThreads partitions, aggregators of
+         * the same class share a partition as they share state in the {@link
+         * EventAggregationContext}
+         */
+        private Map<IPortalEventAggregator<PortalEvent>, AggregatorPartition> createPartitions(
+                boolean partitioned) {
+            final int threads = aggregationThreads;
+            if (!partitioned || threads <= 1 || this.partitionExecutor == null) {
+                return Collections.emptyMap();
+            }
+
+            final ListMultimap<Class<?>, IntervalAwarePortalEventAggregator<PortalEvent>>
+                    aggregatorsByType = ArrayListMultimap.create();
+            for (final IntervalAwarePortalEventAggregator<PortalEvent> portalEventAggregator :
+                    intervalAwarePortalEventAggregators) {
+                aggregatorsByType.put(
+                        PortalRawEventsAggregatorImpl.this.getClass(portalEventAggregator),
+                        portalEventAggregator);
+            }
+
+            final long timeout =
+                    aggregationPartitionTimeout.toPeriod().toStandardDuration().getMillis();
+            final int partitionCount = Math.min(threads, aggregatorsByType.keySet().size());
+            final List<AggregatorPartition> partitionList =
+                    new ArrayList<AggregatorPartition>(partitionCount);
+            for (int i = 0; i < partitionCount; i++) {
+                partitionList.add(
+                        new AggregatorPartition(
+                                "aggr" + i,
+                                aggregationPartitionQueueSize,
+                                getTransactionOperations(),
+                                new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        //Match the flush mode of the main aggregation transaction
+                                        getEntityManager().setFlushMode(FlushModeType.COMMIT);
+                                    }
+                                },
+                                new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        getEntityManager().flush();
+                                    }
+                                },
+                                new PartitionEntityResolver(
+                                        aggregatedGroupLookupDao,
+                                        dateDimensionDao,
+                                        timeDimensionDao),
+                                timeout));
+            }
+
+            final Map<IPortalEventAggregator<PortalEvent>, AggregatorPartition> partitions =
+                    new IdentityHashMap<IPortalEventAggregator<PortalEvent>, AggregatorPartition>();
+            int index = 0;
+            for (final Collection<IntervalAwarePortalEventAggregator<PortalEvent>> aggregators :
+                    aggregatorsByType.asMap().values()) {
+                final AggregatorPartition partition = partitionList.get(index++ % partitionCount);
+                for (final IntervalAwarePortalEventAggregator<PortalEvent> aggregator :
+                        aggregators) {
+                    partitions.put(aggregator, partition);
+                }
+            }
+            return partitions;
+        }
+
+        /**
+         * Mark the aggregation thread as partitioned, mappings it creates must be visible to the
+         * partitions right away
+         */
+        public void open() {
+            if (!this.partitions.isEmpty()) {
+                PartitionedAggregation.begin();
+            }
+        }
+
+        /** Wait for all partitions to aggregate the events submitted to them */
+        public void finish() {
+            for (final AggregatorPartition partition : ImmutableSet.copyOf(partitions.values())) {
+                partition.finish();
+            }
+        }
+
+        /**
+         * Commit the partition transactions as part of the current AggrEventsDb transaction, a
+         * partition that fails to commit fails that transaction. They are rolled back if it does
+         * not commit.
+         */
+        public void completeBeforeCommit() {
+            for (final AggregatorPartition partition : ImmutableSet.copyOf(partitions.values())) {
+                partition.completeBeforeCommit();
+            }
+        }
+
+        /** Roll back the partition transactions */
+        public void rollback() {
+            for (final AggregatorPartition partition : ImmutableSet.copyOf(partitions.values())) {
+                try {
+                    partition.complete(false);
+                } catch (RuntimeException e) {
+                    logger.error("Failed to roll back " + partition, e);
+                }
+            }
+        }
+
+        /** Clear the partitioned mark of the aggregation thread */
+        public void close() {
+            if (!this.partitions.isEmpty()) {
+                PartitionedAggregation.end();
+            }
         }
 
         @Override
@@ -732,6 +1046,7 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao
 
                     this.aggregatorReadOnlyIntervalInfo
                             .clear(); //Clear out cached per-aggregator interval info whenever a current interval info changes
+                    this.intervalInfoRefs.clear();
 
                     intervalCrossed = true;
                 }
@@ -829,8 +1144,8 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao
                     }
 
                     //Aggregation magic happens here!
-                    portalEventAggregator.aggregateEvent(
-                            item, eventSession, eventAggregationContext, aggregatorIntervalInfo);
+                    this.aggregateEvent(
+                            portalEventAggregator, item, eventSession, aggregatorIntervalInfo);
                 }
             }
 
@@ -838,11 +1153,121 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao
             for (final SimplePortalEventAggregator<PortalEvent> portalEventAggregator :
                     simplePortalEventAggregators) {
                 if (checkSupports(portalEventAggregator, item)) {
+                    final long start = System.nanoTime();
                     portalEventAggregator.aggregateEvent(item, eventSession);
+                    this.recordEvent(portalEventAggregator, System.nanoTime() - start);
                 }
             }
         }
 
+        /** Aggregate the event on the calling thread or on the aggregator's partition */
+        private void aggregateEvent(
+                final IntervalAwarePortalEventAggregator<PortalEvent> portalEventAggregator,
+                final PortalEvent item,
+                final EventSession eventSession,
+                final Map<AggregationInterval, AggregationIntervalInfo> aggregatorIntervalInfo) {
+            final AggregatorPartition partition = this.partitions.get(portalEventAggregator);
+            if (partition == null) {
+                final long start = System.nanoTime();
+                portalEventAggregator.aggregateEvent(
+                        item, eventSession, eventAggregationContext, aggregatorIntervalInfo);
+                this.recordEvent(portalEventAggregator, System.nanoTime() - start);
+                return;
+            }
+
+            final EventSessionRef eventSessionRef = this.getEventSessionRef(eventSession);
+            final Map<AggregationInterval, IntervalInfoRef> intervalInfoRef =
+                    this.getIntervalInfoRef(aggregatorIntervalInfo);
+            partition.submit(
+                    this.partitionExecutor,
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            final PartitionEntityResolver entityResolver =
+                                    partition.getEntityResolver();
+                            final long start = System.nanoTime();
+                            portalEventAggregator.aggregateEvent(
+                                    item,
+                                    entityResolver.resolve(eventSessionRef),
+                                    partition.getEventAggregationContext(),
+                                    entityResolver.resolve(intervalInfoRef));
+                            recordEvent(portalEventAggregator, System.nanoTime() - start);
+                        }
+                    });
+        }
+
+        /** Handle the boundary on the calling thread or on the aggregator's partition */
+        private void handleIntervalBoundary(
+                final IntervalAwarePortalEventAggregator<PortalEvent> portalEventAggregator,
+                final AggregationInterval interval,
+                final Map<AggregationInterval, AggregationIntervalInfo> aggregatorIntervalInfo) {
+            final AggregatorPartition partition = this.partitions.get(portalEventAggregator);
+            if (partition == null) {
+                final long start = System.nanoTime();
+                portalEventAggregator.handleIntervalBoundary(
+                        interval, eventAggregationContext, aggregatorIntervalInfo);
+                this.recordTime(portalEventAggregator, System.nanoTime() - start);
+                return;
+            }
+
+            final Map<AggregationInterval, IntervalInfoRef> intervalInfoRef =
+                    this.getIntervalInfoRef(aggregatorIntervalInfo);
+            partition.submit(
+                    this.partitionExecutor,
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            final long start = System.nanoTime();
+                            portalEventAggregator.handleIntervalBoundary(
+                                    interval,
+                                    partition.getEventAggregationContext(),
+                                    partition.getEntityResolver().resolve(intervalInfoRef));
+                            recordTime(portalEventAggregator, System.nanoTime() - start);
+                        }
+                    });
+        }
+
+        /** @return The id only copy of the event session to hand to a partition, cached */
+        private EventSessionRef getEventSessionRef(EventSession eventSession) {
+            if (eventSession == null) {
+                return null;
+            }
+
+            final CacheKey key = CacheKey.build(EVENT_SESSION_REF_CACHE_KEY_SOURCE, eventSession);
+            EventSessionRef eventSessionRef = this.eventAggregationContext.getAttribute(key);
+            if (eventSessionRef == null) {
+                eventSessionRef = PartitionEntityResolver.createRef(eventSession);
+                this.eventAggregationContext.setAttribute(key, eventSessionRef);
+            }
+            return eventSessionRef;
+        }
+
+        /** @return The id only copy of the interval info to hand to a partition, cached */
+        private Map<AggregationInterval, IntervalInfoRef> getIntervalInfoRef(
+                Map<AggregationInterval, AggregationIntervalInfo> aggregatorIntervalInfo) {
+            Map<AggregationInterval, IntervalInfoRef> intervalInfoRef =
+                    this.intervalInfoRefs.get(aggregatorIntervalInfo);
+            if (intervalInfoRef == null) {
+                intervalInfoRef = PartitionEntityResolver.createRef(aggregatorIntervalInfo);
+                this.intervalInfoRefs.put(aggregatorIntervalInfo, intervalInfoRef);
+            }
+            return intervalInfoRef;
+        }
+
+        private void recordEvent(IPortalEventAggregator<PortalEvent> aggregator, long time) {
+            final AggregatorStatistics statistics = aggregatorStatistics.get(aggregator);
+            if (statistics != null) {
+                statistics.recordEvent(time);
+            }
+        }
+
+        private void recordTime(IPortalEventAggregator<PortalEvent> aggregator, long time) {
+            final AggregatorStatistics statistics = aggregatorStatistics.get(aggregator);
+            if (statistics != null) {
+                statistics.recordTime(time);
+            }
+        }
+
         /**
          * @deprecated This method exists until uPortal 4.1 when
          *     IPortalEventAggregator#supports(Class) can be deleted
@@ -892,8 +1317,8 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao
                 if (aggregatorIntervalConfig.isIncluded(interval)) {
                     final Map<AggregationInterval, AggregationIntervalInfo> aggregatorIntervalInfo =
                             this.getAggregatorIntervalInfo(aggregatorType);
-                    portalEventAggregator.handleIntervalBoundary(
-                            interval, eventAggregationContext, aggregatorIntervalInfo);
+                    this.handleIntervalBoundary(
+                            portalEventAggregator, interval, aggregatorIntervalInfo);
                 }
             }
         }
@@ -942,4 +1367,95 @@ public class PortalRawEventsAggregatorImpl extends BaseAggrEventsJpaDao
             return config;
         }
     }
+
+    /**
+     * Passes raw events read from the database to the aggregation handler, first handing it any
+     * streamed events with an earlier or equal timestamp so the handler sees a single stream of
+     * events in timestamp order.
+     */
+    private static final class StreamedEventsMerger implements Function<PortalEvent, Boolean> {
+        private final Function<PortalEvent, Boolean> handler;
+        private final List<PortalEvent> streamedEvents;
+        private int mergedEvents = 0;
+        private int rawEvents = 0;
+
+        public StreamedEventsMerger(
+                Function<PortalEvent, Boolean> handler, List<PortalEvent> streamedEvents) {
+            this.handler = handler;
+            this.streamedEvents = streamedEvents;
+        }
+
+        @Override
+        public Boolean apply(PortalEvent event) {
+            if (!this.mergeStreamedEvents(event.getTimestamp())) {
+                return false;
+            }
+            this.rawEvents++;
+            return this.handler.apply(event);
+        }
+
+        /**
+         * Hand the streamed events up to and including the timestamp to the handler
+         *
+         * @return false if the handler stopped aggregation
+         */
+        public boolean mergeStreamedEvents(long timestamp) {
+            while (this.mergedEvents < this.streamedEvents.size()) {
+                final PortalEvent streamedEvent = this.streamedEvents.get(this.mergedEvents);
+                if (streamedEvent.getTimestamp() > timestamp) {
+                    return true;
+                }
+                if (!this.handler.apply(streamedEvent)) {
+                    return false;
+                }
+                this.mergedEvents++;
+            }
+            return true;
+        }
+
+        /** @return Number of raw events handled */
+        public int getRawEvents() {
+            return this.rawEvents;
+        }
+
+        public List<PortalEvent> getMergedEvents() {
+            return this.streamedEvents.subList(0, this.mergedEvents);
+        }
+
+        public List<PortalEvent> getUnmergedEvents() {
+            return this.streamedEvents.subList(this.mergedEvents, this.streamedEvents.size());
+        }
+    }
+
+    /** Events and time spent per aggregator, updated from the aggregation and partition threads */
+    private static final class AggregatorStatistics {
+        private final String name;
+        private final AtomicLong events = new AtomicLong();
+        private final AtomicLong time = new AtomicLong();
+
+        AggregatorStatistics(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public long getEvents() {
+            return this.events.get();
+        }
+
+        public long getTime() {
+            return this.time.get();
+        }
+
+        public void recordEvent(long time) {
+            this.events.incrementAndGet();
+            this.time.addAndGet(time);
+        }
+
+        public void recordTime(long time) {
+            this.time.addAndGet(time);
+        }
+    }
 }
@@ -0,0 +1,36 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.aggr;
+
+import java.util.Map;
+
+/** JMX stats and settings for raw event aggregation */
+public interface PortalRawEventsAggregatorMXBean {
+
+    /** @return Number of threads interval aware aggregators are spread over, 1 for serial */
+    int getAggregationThreads();
+
+    /** @param aggregationThreads Threads to spread interval aware aggregators over */
+    void setAggregationThreads(int aggregationThreads);
+
+    /** @return Number of events handed to each aggregator, by aggregator bean name */
+    Map<String, Long> getAggregatorEventCounts();
+
+    /** @return Milliseconds spent in each aggregator, by aggregator bean name */
+    Map<String, Long> getAggregatorTimes();
+
+    /** @return Events aggregated per second of aggregator time, by aggregator bean name */
+    Map<String, Double> getAggregatorThroughput();
+}
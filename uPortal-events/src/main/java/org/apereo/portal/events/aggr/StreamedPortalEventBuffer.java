@@ -0,0 +1,299 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.aggr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apereo.portal.IPortalInfoProvider;
+import org.apereo.portal.concurrency.locking.ClusterMutex;
+import org.apereo.portal.concurrency.locking.IClusterLockService;
+import org.apereo.portal.events.PortalEvent;
+import org.apereo.portal.events.handlers.db.IPortalEventDao;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Holds high volume portal events in memory on the node that runs aggregation so they are merged
+ * straight into the aggregations by {@link PortalRawEventsAggregator} instead of being written to
+ * and read back from the raw events table.
+ *
+ * <p>Only events of the configured streamed types are buffered and only while this node holds the
+ * aggregation lock. The lock is checked by every aggregation run and every {@link #flush()}, if no
+ * check has confirmed the lock within the active timeout the buffered events are stored as raw
+ * events. The active timeout is kept well below the aggregation delay so the events are stored
+ * before a new lock holder aggregates past them. On every other node, when the buffer is full or
+ * when the node shuts down the events are stored as raw events so they are still aggregated by
+ * whichever node holds the aggregation lock.
+ *
+ * <p>Buffered events only exist in memory, they are lost if the node crashes.
+ */
+@ManagedResource("uPortal:section=Events,name=StreamedPortalEventBuffer")
+@Service
+public class StreamedPortalEventBuffer implements StreamedPortalEventBufferMXBean, DisposableBean {
+    private static final Comparator<PortalEvent> TIMESTAMP_ORDER =
+            new Comparator<PortalEvent>() {
+                @Override
+                public int compare(PortalEvent o1, PortalEvent o2) {
+                    final long t1 = o1.getTimestamp();
+                    final long t2 = o2.getTimestamp();
+                    return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+                }
+            };
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Queue<PortalEvent> events = new ConcurrentLinkedQueue<PortalEvent>();
+    private final AtomicInteger bufferedEvents = new AtomicInteger();
+    private final AtomicLong streamedEvents = new AtomicLong();
+    private final AtomicLong mergedEvents = new AtomicLong();
+    private final AtomicLong fallbackEvents = new AtomicLong();
+
+    private IPortalEventDao portalEventDao;
+    private IClusterLockService clusterLockService;
+    private IPortalInfoProvider portalInfoProvider;
+    private Class<?>[] streamedEventTypes = new Class<?>[0];
+    private int maxBufferedEvents = 100000;
+    private long activeTimeout = 15000;
+
+    //Last time this node was confirmed to hold the aggregation lock, 0 if it does not hold it
+    private volatile long lastLockCheck = 0;
+    private volatile boolean shutdown = false;
+
+    @Autowired
+    public void setPortalEventDao(IPortalEventDao portalEventDao) {
+        this.portalEventDao = portalEventDao;
+    }
+
+    @Autowired
+    public void setClusterLockService(IClusterLockService clusterLockService) {
+        this.clusterLockService = clusterLockService;
+    }
+
+    @Autowired
+    public void setPortalInfoProvider(IPortalInfoProvider portalInfoProvider) {
+        this.portalInfoProvider = portalInfoProvider;
+    }
+
+    /**
+     * Event types, checked with instanceof, that are buffered instead of stored as raw events.
+     * Defaults to none which disables streaming.
+     */
+    @Value("${org.apereo.portal.events.aggr.StreamedPortalEventBuffer.streamedEvents:}")
+    public void setStreamedEvents(Class<?>[] streamedEventTypes) {
+        this.streamedEventTypes = streamedEventTypes != null ? streamedEventTypes : new Class<?>[0];
+    }
+
+    /** Events held in memory before new events fall back to raw storage, defaults to 100000. */
+    @Value("${org.apereo.portal.events.aggr.StreamedPortalEventBuffer.maxBufferedEvents:100000}")
+    public void setMaxBufferedEvents(int maxBufferedEvents) {
+        this.maxBufferedEvents = maxBufferedEvents;
+    }
+
+    /**
+     * Milliseconds after the last check that confirmed this node holds the aggregation lock that
+     * events are still buffered. Must be well below the aggregation delay and above the flush
+     * period, defaults to 15000.
+     */
+    @Value("${org.apereo.portal.events.aggr.StreamedPortalEventBuffer.activeTimeout:15000}")
+    public void setActiveTimeout(long activeTimeout) {
+        this.activeTimeout = activeTimeout;
+    }
+
+    @Override
+    public int getBufferedEventCount() {
+        return this.bufferedEvents.get();
+    }
+
+    @Override
+    public int getMaxBufferedEvents() {
+        return this.maxBufferedEvents;
+    }
+
+    @Override
+    public boolean isActive() {
+        return !this.shutdown
+                && this.lastLockCheck + this.activeTimeout > System.currentTimeMillis();
+    }
+
+    @Override
+    public long getStreamedEventCount() {
+        return this.streamedEvents.get();
+    }
+
+    @Override
+    public long getMergedEventCount() {
+        return this.mergedEvents.get();
+    }
+
+    @Override
+    public long getFallbackEventCount() {
+        return this.fallbackEvents.get();
+    }
+
+    /** @return true if events of this type are configured to be streamed */
+    public boolean isStreamed(PortalEvent event) {
+        for (final Class<?> streamedEventType : this.streamedEventTypes) {
+            if (streamedEventType.isInstance(event)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Buffer the event if it is a streamed type and this node is aggregating.
+     *
+     * @return true if the event was buffered and must not be stored as a raw event
+     */
+    public boolean offer(PortalEvent event) {
+        if (!this.isStreamed(event) || !this.isActive()) {
+            return false;
+        }
+
+        if (this.bufferedEvents.incrementAndGet() > this.maxBufferedEvents) {
+            this.bufferedEvents.decrementAndGet();
+            this.fallbackEvents.incrementAndGet();
+            return false;
+        }
+
+        this.events.add(event);
+        this.streamedEvents.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Remove and return the buffered events older than the specified time. Must be called by the
+     * aggregation run, if it holds the aggregation lock this node starts, or keeps, buffering
+     * streamed events.
+     *
+     * @param end Exclusive end time of the events to take
+     * @return The events in timestamp order
+     */
+    public List<PortalEvent> takeEvents(DateTime end) {
+        this.checkLock(
+                this.clusterLockService.isLockOwner(
+                        PortalRawEventsAggregator.AGGREGATION_LOCK_NAME),
+                true);
+
+        final long endMillis = end.getMillis();
+        final List<PortalEvent> taken = new ArrayList<PortalEvent>();
+        for (final Iterator<PortalEvent> eventItr = this.events.iterator(); eventItr.hasNext(); ) {
+            final PortalEvent event = eventItr.next();
+            if (event.getTimestamp() < endMillis) {
+                eventItr.remove();
+                taken.add(event);
+            }
+        }
+        this.bufferedEvents.addAndGet(-taken.size());
+
+        Collections.sort(taken, TIMESTAMP_ORDER);
+        return taken;
+    }
+
+    /** Put back taken events that were not merged, they are taken again by the next run */
+    public void returnEvents(Collection<PortalEvent> unmerged) {
+        this.bufferedEvents.addAndGet(unmerged.size());
+        this.events.addAll(unmerged);
+    }
+
+    /** Record the number of taken events that were merged by a committed aggregation run */
+    public void mergedEvents(int merged) {
+        this.mergedEvents.addAndGet(merged);
+    }
+
+    /**
+     * Store the buffered events as raw events if this node no longer holds the aggregation lock,
+     * called periodically.
+     */
+    public void flush() {
+        try {
+            this.checkLock(this.isLastLockOwner(), false);
+        } finally {
+            if (!this.isActive()) {
+                this.storeBufferedEvents();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        this.shutdown = true;
+        this.storeBufferedEvents();
+    }
+
+    /** @return true if this node holds the aggregation lock or was the last node to hold it */
+    private boolean isLastLockOwner() {
+        final ClusterMutex clusterMutex =
+                this.clusterLockService.getClusterMutex(
+                        PortalRawEventsAggregator.AGGREGATION_LOCK_NAME);
+        final String serverId =
+                clusterMutex.isLocked()
+                        ? clusterMutex.getServerId()
+                        : clusterMutex.getPreviousServerId();
+        return this.portalInfoProvider.getUniqueServerName().equals(serverId);
+    }
+
+    /**
+     * Record the result of an aggregation lock check, a failed check stops buffering right away.
+     *
+     * @param activate If a successful check can start buffering, otherwise it only extends it
+     */
+    private void checkLock(boolean lockOwner, boolean activate) {
+        if (!lockOwner) {
+            if (this.lastLockCheck != 0) {
+                logger.info(
+                        "This node no longer holds the aggregation lock, streamed events will be stored as raw events");
+                this.lastLockCheck = 0;
+            }
+        } else if (activate || this.lastLockCheck != 0) {
+            this.lastLockCheck = System.currentTimeMillis();
+        }
+    }
+
+    private void storeBufferedEvents() {
+        final List<PortalEvent> buffered = new ArrayList<PortalEvent>();
+        for (PortalEvent event = this.events.poll(); event != null; event = this.events.poll()) {
+            buffered.add(event);
+        }
+        if (buffered.isEmpty()) {
+            return;
+        }
+        this.bufferedEvents.addAndGet(-buffered.size());
+
+        logger.debug("Storing {} buffered events as raw events", buffered.size());
+        try {
+            this.portalEventDao.storePortalEvents(buffered);
+            this.fallbackEvents.addAndGet(buffered.size());
+        } catch (RuntimeException e) {
+            //Keep the events so the next flush can try again
+            this.returnEvents(buffered);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.aggr;
+
+/** JMX stats for the node local buffer of streamed portal events */
+public interface StreamedPortalEventBufferMXBean {
+
+    /** @return Number of events waiting to be merged into the aggregations */
+    int getBufferedEventCount();
+
+    /** @return Maximum number of events that can be held before they are stored as raw events */
+    int getMaxBufferedEvents();
+
+    /** @return true if this node is running aggregation and so is buffering streamed events */
+    boolean isActive();
+
+    /** @return Number of events captured by the buffer instead of being stored as raw events */
+    long getStreamedEventCount();
+
+    /** @return Number of buffered events that have been merged into the aggregations */
+    long getMergedEventCount();
+
+    /** @return Number of streamed events that fell back to being stored as raw events */
+    long getFallbackEventCount();
+}
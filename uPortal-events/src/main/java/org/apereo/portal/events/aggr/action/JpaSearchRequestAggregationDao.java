@@ -30,6 +30,7 @@ import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import org.apereo.portal.events.aggr.AggregationInterval;
 import org.apereo.portal.events.aggr.BaseAggregationImpl_;
+import org.apereo.portal.events.aggr.BaseGroupedAggregationDiscriminator;
 import org.apereo.portal.events.aggr.DateDimension;
 import org.apereo.portal.events.aggr.JpaBaseAggregationDao;
 import org.apereo.portal.events.aggr.TimeDimension;
@@ -144,6 +145,12 @@ public class JpaSearchRequestAggregationDao
                 timeDimension, dateDimension, interval, aggregatedGroup, searchTerm);
     }
 
+    @Override
+    protected BaseGroupedAggregationDiscriminator createAggregationDiscriminator(
+            AggregatedGroupMapping aggregatedGroup, Object[] values) {
+        return new SearchRequestAggregationDiscriminatorImpl(aggregatedGroup);
+    }
+
     @Override
     protected SearchRequestAggregationKey getAggregationKey(SearchRequestAggregationImpl instance) {
         return instance.getAggregationKey();
@@ -151,7 +158,7 @@ public class JpaSearchRequestAggregationDao
 
     @Override
     protected void bindAggregationSpecificKeyParameters(
-            TypedQuery<SearchRequestAggregationImpl> query, Set<SearchRequestAggregationKey> keys) {
+            TypedQuery<?> query, Set<SearchRequestAggregationKey> keys) {
         query.setParameter(this.searchTermParameter, extractSearchTerms(keys));
     }
 
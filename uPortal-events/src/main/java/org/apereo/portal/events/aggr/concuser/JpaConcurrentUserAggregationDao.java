@@ -20,6 +20,7 @@ import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import org.apereo.portal.events.aggr.AggregationInterval;
+import org.apereo.portal.events.aggr.BaseGroupedAggregationDiscriminator;
 import org.apereo.portal.events.aggr.DateDimension;
 import org.apereo.portal.events.aggr.JpaBaseAggregationDao;
 import org.apereo.portal.events.aggr.TimeDimension;
@@ -60,6 +61,12 @@ public class JpaConcurrentUserAggregationDao
                 timeDimension, dateDimension, interval, aggregatedGroup);
     }
 
+    @Override
+    protected BaseGroupedAggregationDiscriminator createAggregationDiscriminator(
+            AggregatedGroupMapping aggregatedGroup, Object[] values) {
+        return new ConcurrentUserAggregationDiscriminatorImpl(aggregatedGroup);
+    }
+
     @Override
     protected ConcurrentUserAggregationKey getAggregationKey(
             ConcurrentUserAggregationImpl instance) {
@@ -23,6 +23,7 @@ import javax.persistence.FlushModeType;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import org.apereo.portal.events.aggr.PartitionedAggregation;
 import org.apereo.portal.groups.CompositeEntityIdentifier;
 import org.apereo.portal.groups.ICompositeGroupService;
 import org.apereo.portal.groups.IEntityGroup;
@@ -31,9 +32,14 @@ import org.apereo.portal.jpa.OpenEntityManager;
 import org.apereo.portal.jpa.cache.EntityManagerCache;
 import org.apereo.portal.utils.cache.CacheKey;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /** JPA dao to manage aggregated group mappings */
 @Repository
@@ -43,12 +49,25 @@ public class JpaAggregatedGroupLookupDao extends BaseAggrEventsJpaDao
 
     private EntityManagerCache entityManagerCache;
     private ICompositeGroupService compositeGroupService;
+    private TransactionOperations newTransactionOperations;
 
     @Autowired
     public void setEntityManagerCache(EntityManagerCache entityManagerCache) {
         this.entityManagerCache = entityManagerCache;
     }
 
+    /** Mappings created during a partitioned aggregation run use a new transaction */
+    @Autowired
+    public void setPlatformTransactionManager(
+            @Qualifier(BaseAggrEventsJpaDao.PERSISTENCE_UNIT_NAME)
+                    PlatformTransactionManager platformTransactionManager) {
+        final TransactionTemplate transactionTemplate =
+                new TransactionTemplate(platformTransactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transactionTemplate.afterPropertiesSet();
+        this.newTransactionOperations = transactionTemplate;
+    }
+
     @Autowired
     public void setCompositeGroupService(ICompositeGroupService compositeGroupService) {
         this.compositeGroupService = compositeGroupService;
@@ -94,25 +113,44 @@ public class JpaAggregatedGroupLookupDao extends BaseAggrEventsJpaDao
             return groupMapping;
         }
 
-        return this.getTransactionOperations()
-                .execute(
-                        new TransactionCallback<AggregatedGroupMapping>() {
-                            @Override
-                            public AggregatedGroupMapping doInTransaction(
-                                    TransactionStatus status) {
-                                final AggregatedGroupMappingImpl aggregatedGroupMapping =
-                                        new AggregatedGroupMappingImpl(groupService, groupName);
-                                getEntityManager().persist(aggregatedGroupMapping);
-
-                                logger.debug("Created {}", aggregatedGroupMapping);
-                                entityManagerCache.put(
-                                        BaseAggrEventsJpaDao.PERSISTENCE_UNIT_NAME,
-                                        key,
-                                        aggregatedGroupMapping);
-
-                                return aggregatedGroupMapping;
-                            }
-                        });
+        //A partitioned run creates the mapping in its own transaction so the other threads of the
+        //run can reference it right away
+        final TransactionOperations transactionOperations =
+                PartitionedAggregation.isPartitioned()
+                        ? this.newTransactionOperations
+                        : this.getTransactionOperations();
+        final long groupMappingId;
+        synchronized (this) {
+            groupMappingId =
+                    transactionOperations.execute(
+                            new TransactionCallback<Long>() {
+                                @Override
+                                public Long doInTransaction(TransactionStatus status) {
+                                    //Another thread may have created the mapping
+                                    final NaturalIdQuery<AggregatedGroupMappingImpl> query =
+                                            createNaturalIdQuery(AggregatedGroupMappingImpl.class);
+                                    query.using(
+                                            AggregatedGroupMappingImpl_.groupService,
+                                            groupService);
+                                    query.using(AggregatedGroupMappingImpl_.groupName, groupName);
+                                    AggregatedGroupMappingImpl aggregatedGroupMapping =
+                                            query.load();
+                                    if (aggregatedGroupMapping == null) {
+                                        aggregatedGroupMapping =
+                                                new AggregatedGroupMappingImpl(
+                                                        groupService, groupName);
+                                        getEntityManager().persist(aggregatedGroupMapping);
+                                        logger.debug("Created {}", aggregatedGroupMapping);
+                                    }
+
+                                    return aggregatedGroupMapping.getId();
+                                }
+                            });
+        }
+
+        groupMapping = this.getGroupMapping(groupMappingId);
+        this.entityManagerCache.put(BaseAggrEventsJpaDao.PERSISTENCE_UNIT_NAME, key, groupMapping);
+        return groupMapping;
     }
 
     private final Set<String> warnedGroupKeys =
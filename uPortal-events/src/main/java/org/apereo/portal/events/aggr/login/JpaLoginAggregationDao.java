@@ -20,6 +20,7 @@ import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import org.apereo.portal.events.aggr.AggregationInterval;
+import org.apereo.portal.events.aggr.BaseGroupedAggregationDiscriminator;
 import org.apereo.portal.events.aggr.DateDimension;
 import org.apereo.portal.events.aggr.JpaBaseAggregationDao;
 import org.apereo.portal.events.aggr.TimeDimension;
@@ -55,6 +56,12 @@ public class JpaLoginAggregationDao
         return new LoginAggregationImpl(timeDimension, dateDimension, interval, aggregatedGroup);
     }
 
+    @Override
+    protected BaseGroupedAggregationDiscriminator createAggregationDiscriminator(
+            AggregatedGroupMapping aggregatedGroup, Object[] values) {
+        return new LoginAggregationDiscriminatorImpl(aggregatedGroup);
+    }
+
     @Override
     protected LoginAggregationKey getAggregationKey(LoginAggregationImpl instance) {
         return instance.getAggregationKey();
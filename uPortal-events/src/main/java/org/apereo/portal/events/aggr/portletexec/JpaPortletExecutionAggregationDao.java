@@ -24,7 +24,9 @@ import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.ParameterExpression;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
 import org.apereo.portal.events.aggr.AggregationInterval;
+import org.apereo.portal.events.aggr.BaseGroupedAggregationDiscriminator;
 import org.apereo.portal.events.aggr.DateDimension;
 import org.apereo.portal.events.aggr.JpaBaseAggregationDao;
 import org.apereo.portal.events.aggr.TimeDimension;
@@ -80,11 +82,24 @@ public class JpaPortletExecutionAggregationDao
                         .in(executionTypeParameter));
     }
 
+    @Override
+    protected void addDiscriminatorSelections(
+            Root<PortletExecutionAggregationImpl> root, List<Selection<?>> selections) {
+        selections.add(root.get(PortletExecutionAggregationImpl_.aggregatedPortlet));
+        selections.add(root.get(PortletExecutionAggregationImpl_.executionType));
+    }
+
+    @Override
+    protected BaseGroupedAggregationDiscriminator createAggregationDiscriminator(
+            AggregatedGroupMapping aggregatedGroup, Object[] values) {
+        return new PortletExecutionAggregationDiscriminatorImpl(
+                aggregatedGroup, (AggregatedPortletMapping) values[0], (ExecutionType) values[1]);
+    }
+
     // The execution type is obtained from the first PortletExecutionAggregationKey.
     @Override
     protected void bindAggregationSpecificKeyParameters(
-            TypedQuery<PortletExecutionAggregationImpl> query,
-            Set<PortletExecutionAggregationKey> keys) {
+            TypedQuery<?> query, Set<PortletExecutionAggregationKey> keys) {
         query.setParameter(this.portletMappingParameter, extractAggregatePortletMappings(keys));
         query.setParameter(this.executionTypeParameter, extractExecutionTypes(keys));
     }
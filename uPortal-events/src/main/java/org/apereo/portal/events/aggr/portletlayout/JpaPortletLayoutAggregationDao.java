@@ -28,8 +28,10 @@ import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.ParameterExpression;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
 import org.apereo.portal.events.aggr.AggregationInterval;
 import org.apereo.portal.events.aggr.BaseAggregationImpl_;
+import org.apereo.portal.events.aggr.BaseGroupedAggregationDiscriminator;
 import org.apereo.portal.events.aggr.DateDimension;
 import org.apereo.portal.events.aggr.JpaBaseAggregationDao;
 import org.apereo.portal.events.aggr.TimeDimension;
@@ -182,7 +184,7 @@ public class JpaPortletLayoutAggregationDao
 
     @Override
     protected void bindAggregationSpecificKeyParameters(
-            TypedQuery<PortletLayoutAggregationImpl> query, Set<PortletLayoutAggregationKey> keys) {
+            TypedQuery<?> query, Set<PortletLayoutAggregationKey> keys) {
         query.setParameter(this.portletMappingParameter, extractAggregatePortletMappings(keys));
     }
 
@@ -203,6 +205,19 @@ public class JpaPortletLayoutAggregationDao
                 (AggregatedPortletMappingImpl) key.getPortletMapping());
     }
 
+    @Override
+    protected void addDiscriminatorSelections(
+            Root<PortletLayoutAggregationImpl> root, List<Selection<?>> selections) {
+        selections.add(root.get(PortletLayoutAggregationImpl_.aggregatedPortlet));
+    }
+
+    @Override
+    protected BaseGroupedAggregationDiscriminator createAggregationDiscriminator(
+            AggregatedGroupMapping aggregatedGroup, Object[] values) {
+        return new PortletLayoutAggregationDiscriminatorImpl(
+                aggregatedGroup, (AggregatedPortletMapping) values[0]);
+    }
+
     @Override
     protected PortletLayoutAggregationImpl createAggregationInstance(
             PortletLayoutAggregationKey key) {
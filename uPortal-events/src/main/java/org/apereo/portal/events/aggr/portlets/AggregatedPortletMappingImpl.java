@@ -80,6 +80,10 @@ public final class AggregatedPortletMappingImpl implements AggregatedPortletMapp
         this.fname = fname;
     }
 
+    long getId() {
+        return this.id;
+    }
+
     @Override
     public String getFname() {
         return this.fname;
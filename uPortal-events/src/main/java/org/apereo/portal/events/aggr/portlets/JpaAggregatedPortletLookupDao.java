@@ -21,6 +21,7 @@ import javax.persistence.FlushModeType;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import org.apereo.portal.events.aggr.PartitionedAggregation;
 import org.apereo.portal.jpa.BaseAggrEventsJpaDao;
 import org.apereo.portal.jpa.OpenEntityManager;
 import org.apereo.portal.jpa.cache.EntityManagerCache;
@@ -28,9 +29,14 @@ import org.apereo.portal.portlet.dao.IPortletDefinitionDao;
 import org.apereo.portal.portlet.om.IPortletDefinition;
 import org.apereo.portal.utils.cache.CacheKey;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /** JPA dao to manage aggregated tab mappings */
 @Repository
@@ -40,12 +46,25 @@ public class JpaAggregatedPortletLookupDao extends BaseAggrEventsJpaDao
 
     private EntityManagerCache entityManagerCache;
     private IPortletDefinitionDao portletDefinitionDao;
+    private TransactionOperations newTransactionOperations;
 
     @Autowired
     public void setPortletDefinitionDao(IPortletDefinitionDao portletDefinitionDao) {
         this.portletDefinitionDao = portletDefinitionDao;
     }
 
+    /** Mappings created during a partitioned aggregation run use a new transaction */
+    @Autowired
+    public void setPlatformTransactionManager(
+            @Qualifier(BaseAggrEventsJpaDao.PERSISTENCE_UNIT_NAME)
+                    PlatformTransactionManager platformTransactionManager) {
+        final TransactionTemplate transactionTemplate =
+                new TransactionTemplate(platformTransactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transactionTemplate.afterPropertiesSet();
+        this.newTransactionOperations = transactionTemplate;
+    }
+
     @Autowired
     public void setEntityManagerCache(EntityManagerCache entityManagerCache) {
         this.entityManagerCache = entityManagerCache;
@@ -89,34 +108,53 @@ public class JpaAggregatedPortletLookupDao extends BaseAggrEventsJpaDao
             return portletMapping;
         }
 
-        return this.getTransactionOperations()
-                .execute(
-                        new TransactionCallback<AggregatedPortletMapping>() {
-                            @Override
-                            public AggregatedPortletMapping doInTransaction(
-                                    TransactionStatus status) {
-                                final IPortletDefinition portletDefinition =
-                                        portletDefinitionDao.getPortletDefinitionByFname(fname);
-                                final String name;
-                                if (portletDefinition != null) {
-                                    name = portletDefinition.getName();
-                                } else {
-                                    name = fname;
-                                }
+        //A partitioned run creates the mapping in its own transaction so the other threads of the
+        //run can reference it right away
+        final TransactionOperations transactionOperations =
+                PartitionedAggregation.isPartitioned()
+                        ? this.newTransactionOperations
+                        : this.getTransactionOperations();
+        final long portletMappingId;
+        synchronized (this) {
+            portletMappingId =
+                    transactionOperations.execute(
+                            new TransactionCallback<Long>() {
+                                @Override
+                                public Long doInTransaction(TransactionStatus status) {
+                                    //Another thread may have created the mapping
+                                    final NaturalIdQuery<AggregatedPortletMappingImpl> query =
+                                            createNaturalIdQuery(
+                                                    AggregatedPortletMappingImpl.class);
+                                    query.using(AggregatedPortletMappingImpl_.fname, fname);
+                                    AggregatedPortletMappingImpl aggregatedPortletMapping =
+                                            query.load();
+                                    if (aggregatedPortletMapping == null) {
+                                        final IPortletDefinition portletDefinition =
+                                                portletDefinitionDao.getPortletDefinitionByFname(
+                                                        fname);
+                                        final String name;
+                                        if (portletDefinition != null) {
+                                            name = portletDefinition.getName();
+                                        } else {
+                                            name = fname;
+                                        }
 
-                                final AggregatedPortletMappingImpl aggregatedGroupMapping =
-                                        new AggregatedPortletMappingImpl(name, fname);
-                                getEntityManager().persist(aggregatedGroupMapping);
+                                        aggregatedPortletMapping =
+                                                new AggregatedPortletMappingImpl(name, fname);
+                                        getEntityManager().persist(aggregatedPortletMapping);
+                                        logger.debug("Created {}", aggregatedPortletMapping);
+                                    }
 
-                                logger.debug("Created {}", aggregatedGroupMapping);
-                                entityManagerCache.put(
-                                        BaseAggrEventsJpaDao.PERSISTENCE_UNIT_NAME,
-                                        key,
-                                        aggregatedGroupMapping);
+                                    return aggregatedPortletMapping.getId();
+                                }
+                            });
+        }
 
-                                return aggregatedGroupMapping;
-                            }
-                        });
+        portletMapping =
+                this.getEntityManager().find(AggregatedPortletMappingImpl.class, portletMappingId);
+        this.entityManagerCache.put(
+                BaseAggrEventsJpaDao.PERSISTENCE_UNIT_NAME, key, portletMapping);
+        return portletMapping;
     }
 
     @Override
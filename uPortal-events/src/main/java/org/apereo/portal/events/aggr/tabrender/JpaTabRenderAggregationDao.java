@@ -23,7 +23,9 @@ import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.ParameterExpression;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
 import org.apereo.portal.events.aggr.AggregationInterval;
+import org.apereo.portal.events.aggr.BaseGroupedAggregationDiscriminator;
 import org.apereo.portal.events.aggr.DateDimension;
 import org.apereo.portal.events.aggr.JpaBaseAggregationDao;
 import org.apereo.portal.events.aggr.TimeDimension;
@@ -73,7 +75,7 @@ public class JpaTabRenderAggregationDao
 
     @Override
     protected void bindAggregationSpecificKeyParameters(
-            TypedQuery<TabRenderAggregationImpl> query, Set<TabRenderAggregationKey> keys) {
+            TypedQuery<?> query, Set<TabRenderAggregationKey> keys) {
         query.setParameter(this.tabMappingParameter, extractAggregateTabMappings(keys));
     }
 
@@ -94,6 +96,19 @@ public class JpaTabRenderAggregationDao
                 (AggregatedTabMappingImpl) key.getTabMapping());
     }
 
+    @Override
+    protected void addDiscriminatorSelections(
+            Root<TabRenderAggregationImpl> root, List<Selection<?>> selections) {
+        selections.add(root.get(TabRenderAggregationImpl_.aggregatedTab));
+    }
+
+    @Override
+    protected BaseGroupedAggregationDiscriminator createAggregationDiscriminator(
+            AggregatedGroupMapping aggregatedGroup, Object[] values) {
+        return new TabRenderAggregationDiscriminatorImpl(
+                aggregatedGroup, (AggregatedTabMapping) values[0]);
+    }
+
     @Override
     protected TabRenderAggregationImpl createAggregationInstance(TabRenderAggregationKey key) {
         final TimeDimension timeDimension = key.getTimeDimension();
@@ -26,6 +26,7 @@ import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
+import org.apereo.portal.events.aggr.PartitionedAggregation;
 import org.apereo.portal.jpa.BaseAggrEventsJpaDao;
 import org.apereo.portal.jpa.BasePortalJpaDao;
 import org.apereo.portal.jpa.OpenEntityManager;
@@ -36,8 +37,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /** JPA dao to manage aggregated tab mappings */
 @Repository
@@ -50,6 +55,7 @@ public class JpaAggregatedTabLookupDao extends BaseAggrEventsJpaDao
     private EntityManagerCache entityManagerCache;
     private JdbcOperations portalJdbcOperations;
     private Ehcache layoutNodeIdNameResolutionCache;
+    private TransactionOperations newTransactionOperations;
 
     @Autowired
     @Qualifier(
@@ -64,6 +70,18 @@ public class JpaAggregatedTabLookupDao extends BaseAggrEventsJpaDao
         this.portalJdbcOperations = portalJdbcOperations;
     }
 
+    /** Mappings created during a partitioned aggregation run use a new transaction */
+    @Autowired
+    public void setPlatformTransactionManager(
+            @Qualifier(BaseAggrEventsJpaDao.PERSISTENCE_UNIT_NAME)
+                    PlatformTransactionManager platformTransactionManager) {
+        final TransactionTemplate transactionTemplate =
+                new TransactionTemplate(platformTransactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transactionTemplate.afterPropertiesSet();
+        this.newTransactionOperations = transactionTemplate;
+    }
+
     @Autowired
     public void setEntityManagerCache(EntityManagerCache entityManagerCache) {
         this.entityManagerCache = entityManagerCache;
@@ -114,24 +132,41 @@ public class JpaAggregatedTabLookupDao extends BaseAggrEventsJpaDao
             return tabMapping;
         }
 
-        return this.getTransactionOperations()
-                .execute(
-                        new TransactionCallback<AggregatedTabMapping>() {
-                            @Override
-                            public AggregatedTabMapping doInTransaction(TransactionStatus status) {
-                                final AggregatedTabMappingImpl aggregatedGroupMapping =
-                                        new AggregatedTabMappingImpl(fragmentName, tabName);
-                                getEntityManager().persist(aggregatedGroupMapping);
-
-                                logger.debug("Created {}", aggregatedGroupMapping);
-                                entityManagerCache.put(
-                                        BaseAggrEventsJpaDao.PERSISTENCE_UNIT_NAME,
-                                        key,
-                                        aggregatedGroupMapping);
-
-                                return aggregatedGroupMapping;
-                            }
-                        });
+        //A partitioned run creates the mapping in its own transaction so the other threads of the
+        //run can reference it right away
+        final TransactionOperations transactionOperations =
+                PartitionedAggregation.isPartitioned()
+                        ? this.newTransactionOperations
+                        : this.getTransactionOperations();
+        final long tabMappingId;
+        synchronized (this) {
+            tabMappingId =
+                    transactionOperations.execute(
+                            new TransactionCallback<Long>() {
+                                @Override
+                                public Long doInTransaction(TransactionStatus status) {
+                                    //Another thread may have created the mapping
+                                    final NaturalIdQuery<AggregatedTabMappingImpl> query =
+                                            createNaturalIdQuery(AggregatedTabMappingImpl.class);
+                                    query.using(
+                                            AggregatedTabMappingImpl_.fragmentName, fragmentName);
+                                    query.using(AggregatedTabMappingImpl_.tabName, tabName);
+                                    AggregatedTabMappingImpl aggregatedTabMapping = query.load();
+                                    if (aggregatedTabMapping == null) {
+                                        aggregatedTabMapping =
+                                                new AggregatedTabMappingImpl(fragmentName, tabName);
+                                        getEntityManager().persist(aggregatedTabMapping);
+                                        logger.debug("Created {}", aggregatedTabMapping);
+                                    }
+
+                                    return aggregatedTabMapping.getId();
+                                }
+                            });
+        }
+
+        tabMapping = this.getTabMapping(tabMappingId);
+        this.entityManagerCache.put(BaseAggrEventsJpaDao.PERSISTENCE_UNIT_NAME, key, tabMapping);
+        return tabMapping;
     }
 
     @Override
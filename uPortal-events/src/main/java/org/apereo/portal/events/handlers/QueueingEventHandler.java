@@ -14,51 +14,204 @@
  */
 package org.apereo.portal.events.handlers;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
+import org.apache.commons.lang.StringUtils;
 import org.apereo.portal.spring.context.FilteringApplicationListener;
+import org.apereo.portal.utils.threading.BoundedMpscQueue;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.ApplicationEvent;
 
 /**
- * Queues PortalEvents in a local {@link ConcurrentLinkedQueue} and flushes the events to the
+ * Queues PortalEvents in a local bounded {@link BoundedMpscQueue} and flushes the events to the
  * configured {@link BatchingEventHandler} when {@link #flush()} is called. This class must be used
  * with some external timer that will call {@link #flush()} at regular intervals
+ *
+ * <p>When the queue is full the {@link OverflowPolicy} decides what happens to new events. With
+ * {@link OverflowPolicy#SPILL} events that do not fit in the queue, and batches that fail to flush,
+ * are appended to a local file that is replayed by the next successful {@link #flush()}. Spilling
+ * requires the subclass to implement {@link #writeSpilledEvent(ApplicationEvent, DataOutput)} and
+ * {@link #readSpilledEvent(DataInput)}, otherwise those events are dropped.
  */
 public abstract class QueueingEventHandler<E extends ApplicationEvent>
-        extends FilteringApplicationListener<E> implements DisposableBean {
+        extends FilteringApplicationListener<E>
+        implements DisposableBean, QueueingEventHandlerMXBean {
+
+    /** What to do with an event that does not fit in the queue */
+    public enum OverflowPolicy {
+        /** Wait up to maxBlockTime for space in the queue, then drop the event */
+        BLOCK,
+        /** Drop the event, low priority events are dropped before the queue is full */
+        DROP,
+        /** Append the event to the spill file */
+        SPILL;
+    }
 
-    private final Queue<E> eventQueue = new ConcurrentLinkedQueue<E>();
     private final Lock flushLock = new ReentrantLock();
+    private final Object spillMonitor = new Object();
+    private final AtomicLong droppedEventCount = new AtomicLong();
+    private final AtomicLong spilledEventCount = new AtomicLong();
+    private final AtomicLong spillBytes = new AtomicLong();
+    private final AtomicLong replayedEventCount = new AtomicLong();
+    private volatile BoundedMpscQueue<E> eventQueue = new BoundedMpscQueue<E>(1 << 16);
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+    private volatile long maxBlockTime = 10;
+    private volatile double lowPriorityThreshold = .75;
+    private Set<Class<? extends ApplicationEvent>> lowPriorityEvents = Collections.emptySet();
+    private File spillFile;
     private int batchSize = 25;
 
     //Used to hold events to flush, MUST only be read/written from within the flushLock
     private List<E> eventBuffer = new ArrayList<E>(this.batchSize);
 
+    //MUST only be read/written from within the spillMonitor
+    private DataOutputStream spillOutput;
+
+    //Start out true so a spill file left by a previous run is replayed
+    private volatile boolean spillPending = true;
+
     /** The maximum number of events to be flushed to the {@link BatchingEventHandler} per call. */
     public void setBatchSize(int batchSize) {
         this.batchSize = batchSize;
         eventBuffer = new ArrayList<E>(this.batchSize);
     }
 
+    /**
+     * Maximum number of events waiting to be flushed, rounded up to a power of two. Defaults to
+     * 65536. Must be set before any events are queued.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.eventQueue = new BoundedMpscQueue<E>(queueCapacity);
+    }
+
+    /** What to do with an event when the queue is full, defaults to {@link OverflowPolicy#DROP} */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Milliseconds the publishing thread waits for space in the queue with {@link
+     * OverflowPolicy#BLOCK}, defaults to 10.
+     */
+    public void setMaxBlockTime(long maxBlockTime) {
+        this.maxBlockTime = maxBlockTime;
+    }
+
+    /**
+     * Event types dropped first with {@link OverflowPolicy#DROP}, once the queue is more than
+     * lowPriorityThreshold full. Subclasses of the listed types are included.
+     */
+    public void setLowPriorityEvents(
+            Collection<Class<? extends ApplicationEvent>> lowPriorityEvents) {
+        this.lowPriorityEvents =
+                new LinkedHashSet<Class<? extends ApplicationEvent>>(lowPriorityEvents);
+    }
+
+    /** Fraction of the queue capacity above which low priority events are dropped, default .75 */
+    public void setLowPriorityThreshold(double lowPriorityThreshold) {
+        this.lowPriorityThreshold = lowPriorityThreshold;
+    }
+
+    /**
+     * File events are spilled to with {@link OverflowPolicy#SPILL}. Defaults to the simple name of
+     * the handler class in the java.io.tmpdir directory.
+     */
+    public void setSpillFile(String spillFile) {
+        this.spillFile = StringUtils.isBlank(spillFile) ? null : new File(spillFile);
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return this.eventQueue.size();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return this.eventQueue.getCapacity();
+    }
+
+    @Override
+    public String getOverflowPolicy() {
+        return this.overflowPolicy.name();
+    }
+
+    @Override
+    public long getDroppedEventCount() {
+        return this.droppedEventCount.get();
+    }
+
+    @Override
+    public long getSpilledEventCount() {
+        return this.spilledEventCount.get();
+    }
+
+    @Override
+    public long getSpillBytes() {
+        return this.spillBytes.get();
+    }
+
+    @Override
+    public long getReplayedEventCount() {
+        return this.replayedEventCount.get();
+    }
+
     /* (non-Javadoc)
      * @see org.springframework.beans.factory.DisposableBean#destroy()
      */
     @Override
     public final void destroy() throws Exception {
         this.flush();
+
+        synchronized (this.spillMonitor) {
+            this.closeSpillOutput();
+        }
     }
 
     /* (non-Javadoc)
      * @see org.apereo.portal.spring.context.FilteringApplicationListener#onFilteredApplicationEvent(org.springframework.context.ApplicationEvent)
      */
     @Override
-    protected final void onFilteredApplicationEvent(E event) {
-        this.eventQueue.offer(event);
+    protected void onFilteredApplicationEvent(E event) {
+        final BoundedMpscQueue<E> queue = this.eventQueue;
+        switch (this.overflowPolicy) {
+            case BLOCK:
+                if (!queue.offer(event) && !this.offer(queue, event)) {
+                    this.dropEvent(event);
+                }
+                break;
+            case SPILL:
+                if (!queue.offer(event)) {
+                    this.spillEvents(Collections.singletonList(event));
+                }
+                break;
+            default:
+                if (this.isLowPriority(event)
+                        && queue.size() >= queue.getCapacity() * this.lowPriorityThreshold) {
+                    this.dropEvent(event);
+                } else if (!queue.offer(event)) {
+                    this.dropEvent(event);
+                }
+        }
     }
 
     /**
@@ -69,6 +222,29 @@ public abstract class QueueingEventHandler<E extends ApplicationEvent>
      */
     protected abstract void onApplicationEvents(Iterable<E> events);
 
+    /**
+     * Write an event to the spill file, called with {@link OverflowPolicy#SPILL}. The default
+     * implementation throws {@link UnsupportedOperationException} which drops the event.
+     *
+     * @param event Event to write
+     * @param out Spill file to write to
+     */
+    protected void writeSpilledEvent(E event, DataOutput out) throws IOException {
+        throw new UnsupportedOperationException(
+                this.getClass().getName() + " does not support spilling events");
+    }
+
+    /**
+     * Read an event written by {@link #writeSpilledEvent(ApplicationEvent, DataOutput)}
+     *
+     * @param in Spill file to read from
+     * @return The event
+     */
+    protected E readSpilledEvent(DataInput in) throws IOException {
+        throw new UnsupportedOperationException(
+                this.getClass().getName() + " does not support spilling events");
+    }
+
     /**
      * Flushes the queued PortalEvents to the configured {@link BatchingEventHandler}. If <code>
      * force</code> is false flushing only happens if there are enough events in the queue and a
@@ -76,11 +252,14 @@ public abstract class QueueingEventHandler<E extends ApplicationEvent>
      * flushed and the calling thread will wait until any previously executing flush call completes
      * before flushing
      *
+     * <p>If all queued events are handled, events spilled by earlier calls are replayed.
+     *
      * @param force Forces flushing events to the {@link BatchingEventHandler} even if there are
      *     fewer than <code>flushCount</code> PortalEvents in the queue.
      */
     public final void flush() {
-        if (eventQueue.isEmpty()) {
+        final boolean replay = this.spillPending && this.overflowPolicy == OverflowPolicy.SPILL;
+        if (eventQueue.isEmpty() && !replay) {
             //No events to flush
             logger.trace("No events to flush, returning.");
             return;
@@ -93,6 +272,7 @@ public abstract class QueueingEventHandler<E extends ApplicationEvent>
             return;
         }
         try {
+            boolean failed = false;
             while (!this.eventQueue.isEmpty()) {
                 //Clear the buffer for re-use
                 eventBuffer.clear();
@@ -100,44 +280,30 @@ public abstract class QueueingEventHandler<E extends ApplicationEvent>
                 //Pop events off the queue into the buffer
                 while (!this.eventQueue.isEmpty() && eventBuffer.size() < this.batchSize) {
                     final E event = eventQueue.poll();
+                    if (event == null) {
+                        //Producer has claimed the slot but not published yet
+                        break;
+                    }
                     eventBuffer.add(event);
                 }
 
+                if (eventBuffer.isEmpty()) {
+                    continue;
+                }
+
                 if (this.logger.isDebugEnabled()) {
                     this.logger.debug("Flushing " + eventBuffer.size() + " events");
                 }
 
                 //Write events out to batching listener
-                try {
-                    this.onApplicationEvents(eventBuffer);
-                } catch (Throwable t) {
-                    this.logger.error(
-                            "An exception was thrown while trying to flush "
-                                    + eventBuffer.size()
-                                    + " events",
-                            t);
-
-                    final StringBuilder failedEvents = new StringBuilder();
-                    failedEvents.append(
-                            "The following events that were being flushed, some may have been persisted correctly");
-
-                    for (final E portalEvent : eventBuffer) {
-                        failedEvents.append("\n\t");
-                        try {
-                            failedEvents.append(portalEvent.toString());
-                        } catch (Exception e) {
-                            failedEvents
-                                    .append("toString failed on a PortalEvent of type '")
-                                    .append(portalEvent.getClass())
-                                    .append("': ")
-                                    .append(e);
-                        }
-                    }
-
-                    this.logger.error(failedEvents.toString(), t);
+                if (!this.handleEvents(eventBuffer)) {
+                    failed = true;
                 }
             }
 
+            if (replay && !failed) {
+                this.replaySpilledEvents();
+            }
         } finally {
             //Clear the buffer to avoid memory leaks
             eventBuffer.clear();
@@ -145,4 +311,205 @@ public abstract class QueueingEventHandler<E extends ApplicationEvent>
             this.flushLock.unlock();
         }
     }
+
+    /** @return true if the events were handled, false if they were spilled or logged */
+    private boolean handleEvents(List<E> events) {
+        try {
+            this.onApplicationEvents(events);
+            return true;
+        } catch (Throwable t) {
+            if (this.overflowPolicy == OverflowPolicy.SPILL) {
+                this.logger.error(
+                        "An exception was thrown while trying to flush "
+                                + events.size()
+                                + " events, spilling them to "
+                                + this.getSpillFile(),
+                        t);
+                this.spillEvents(events);
+                return false;
+            }
+
+            this.logger.error(
+                    "An exception was thrown while trying to flush " + events.size() + " events",
+                    t);
+
+            final StringBuilder failedEvents = new StringBuilder();
+            failedEvents.append(
+                    "The following events that were being flushed, some may have been persisted correctly");
+
+            for (final E portalEvent : events) {
+                failedEvents.append("\n\t");
+                try {
+                    failedEvents.append(portalEvent.toString());
+                } catch (Exception e) {
+                    failedEvents
+                            .append("toString failed on a PortalEvent of type '")
+                            .append(portalEvent.getClass())
+                            .append("': ")
+                            .append(e);
+                }
+            }
+
+            this.logger.error(failedEvents.toString(), t);
+            return false;
+        }
+    }
+
+    /** Retry the offer until there is space in the queue or maxBlockTime passes */
+    private boolean offer(BoundedMpscQueue<E> queue, E event) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.maxBlockTime);
+        while (System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            if (queue.offer(event)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isLowPriority(E event) {
+        for (final Class<? extends ApplicationEvent> type : this.lowPriorityEvents) {
+            if (type.isInstance(event)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void dropEvent(E event) {
+        final long dropped = this.droppedEventCount.incrementAndGet();
+        //Only log occasionally, dropping happens when the portal is already overloaded
+        if (dropped == 1 || dropped % 10000 == 0) {
+            this.logger.warn(
+                    "Event queue is full, dropped "
+                            + dropped
+                            + " events so far. Most recent: "
+                            + event.getClass().getName());
+        }
+    }
+
+    private File getSpillFile() {
+        final File spillFile = this.spillFile;
+        if (spillFile != null) {
+            return spillFile;
+        }
+        return new File(
+                System.getProperty("java.io.tmpdir"), this.getClass().getSimpleName() + ".spill");
+    }
+
+    private void spillEvents(List<E> events) {
+        synchronized (this.spillMonitor) {
+            try {
+                if (this.spillOutput == null) {
+                    this.spillOutput =
+                            new DataOutputStream(
+                                    new BufferedOutputStream(
+                                            new FileOutputStream(this.getSpillFile(), true)));
+                }
+
+                for (final E event : events) {
+                    final int start = this.spillOutput.size();
+                    this.writeSpilledEvent(event, this.spillOutput);
+                    this.spillBytes.addAndGet(this.spillOutput.size() - start);
+                    this.spilledEventCount.incrementAndGet();
+                }
+                this.spillOutput.flush();
+                this.spillPending = true;
+            } catch (UnsupportedOperationException e) {
+                this.logger.warn("Spilling is not supported, dropping events", e);
+                for (final E event : events) {
+                    this.dropEvent(event);
+                }
+            } catch (IOException e) {
+                this.logger.error(
+                        "Failed to spill " + events.size() + " events to " + this.getSpillFile(),
+                        e);
+                this.closeSpillOutput();
+                for (final E event : events) {
+                    this.dropEvent(event);
+                }
+            }
+        }
+    }
+
+    /** MUST be called from within the spillMonitor */
+    private void closeSpillOutput() {
+        if (this.spillOutput == null) {
+            return;
+        }
+        try {
+            this.spillOutput.close();
+        } catch (IOException e) {
+            this.logger.warn("Failed to close spill file " + this.getSpillFile(), e);
+        }
+        this.spillOutput = null;
+    }
+
+    /** MUST be called from within the flushLock */
+    private void replaySpilledEvents() {
+        final File spillFile = this.getSpillFile();
+        final File replayFile = new File(spillFile.getPath() + ".replay");
+        synchronized (this.spillMonitor) {
+            this.closeSpillOutput();
+            this.spillPending = false;
+
+            //A replay file is left behind if the portal stopped during a replay
+            if (!replayFile.exists()) {
+                if (!spillFile.exists()) {
+                    return;
+                }
+                if (!spillFile.renameTo(replayFile)) {
+                    this.logger.warn("Failed to rename " + spillFile + " to " + replayFile);
+                    this.spillPending = true;
+                    return;
+                }
+            }
+        }
+
+        this.logger.info("Replaying events spilled to " + replayFile);
+        final List<E> replayBuffer = new ArrayList<E>(this.batchSize);
+        try {
+            final DataInputStream in =
+                    new DataInputStream(new BufferedInputStream(new FileInputStream(replayFile)));
+            try {
+                boolean failed = false;
+                while (this.readSpilledEvents(in, replayBuffer)) {
+                    if (failed) {
+                        //Still failing, move the rest of the events back to the spill file
+                        this.spillEvents(replayBuffer);
+                    } else if (this.handleEvents(replayBuffer)) {
+                        this.replayedEventCount.addAndGet(replayBuffer.size());
+                    } else {
+                        failed = true;
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            this.logger.error(
+                    "Failed to read spilled events from "
+                            + replayFile
+                            + ", the remaining events in it are discarded",
+                    e);
+        }
+
+        if (!replayFile.delete()) {
+            this.logger.warn("Failed to delete " + replayFile);
+        }
+    }
+
+    /** @return false if there were no more events to read */
+    private boolean readSpilledEvents(DataInputStream in, List<E> replayBuffer)
+            throws IOException {
+        replayBuffer.clear();
+        try {
+            while (replayBuffer.size() < this.batchSize) {
+                replayBuffer.add(this.readSpilledEvent(in));
+            }
+        } catch (EOFException e) {
+            //End of the spill file
+        }
+        return !replayBuffer.isEmpty();
+    }
 }
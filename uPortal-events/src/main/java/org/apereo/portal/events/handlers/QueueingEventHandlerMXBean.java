@@ -0,0 +1,40 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.handlers;
+
+/** JMX stats for the bounded event queue of a {@link QueueingEventHandler} */
+public interface QueueingEventHandlerMXBean {
+
+    /** @return Number of events waiting to be flushed */
+    int getQueueDepth();
+
+    /** @return Maximum number of events that can wait to be flushed */
+    int getQueueCapacity();
+
+    /** @return What happens to an event when the queue is full (BLOCK, DROP or SPILL) */
+    String getOverflowPolicy();
+
+    /** @return Number of events discarded because the queue was full */
+    long getDroppedEventCount();
+
+    /** @return Number of events written to the spill file */
+    long getSpilledEventCount();
+
+    /** @return Number of bytes written to the spill file */
+    long getSpillBytes();
+
+    /** @return Number of spilled events that have been read back and handled */
+    long getReplayedEventCount();
+}
@@ -19,7 +19,11 @@ import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Function;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import javax.persistence.EntityManager;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
@@ -40,9 +44,10 @@ import org.springframework.dao.support.DataAccessUtils;
 import org.springframework.stereotype.Repository;
 
 /**
- * Stores portal events using JPA/Hibenate no internal batch segmentation is done to the passed list
- * of {@link PortalEvent}s. If a {@link PortalEvent} is not mapped as a persistent entity a message
- * is logged at the WARN level and the event is ignored.
+ * Stores portal events using JPA/Hibenate. Events passed to {@link #storePortalEvents(Iterable)}
+ * are flushed every {@link #setStoreBatchSize(int)} events so each flush is written as a single
+ * JDBC batch. If a {@link PortalEvent} is not mapped as a persistent entity a message is logged at
+ * the WARN level and the event is ignored.
  */
 @Repository
 public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalEventDao {
@@ -52,6 +57,7 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
     private String selectQuery;
     private String selectUnaggregatedQuery;
     private int flushPeriod = 1000;
+    private int storeBatchSize = 100;
     private CriteriaQuery<DateTime> findNewestPersistentPortalEventTimestampQuery;
     private CriteriaQuery<DateTime> findOldestPersistentPortalEventTimestampQuery;
     private ParameterExpression<DateTime> startTimeParameter;
@@ -72,6 +78,17 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
         this.flushPeriod = flushPeriod;
     }
 
+    /**
+     * Number of events persisted between flushes during a call to {@link
+     * #storePortalEvents(Iterable)}, defaults to 100. Should match hibernate.jdbc.batch_size of the
+     * raw events persistence unit so every flush is sent to the database as one JDBC batch.
+     */
+    @Value(
+            "${org.apereo.portal.events.handlers.db.JpaPortalEventStore.storeBatchSize:100}")
+    public void setStoreBatchSize(int storeBatchSize) {
+        this.storeBatchSize = storeBatchSize;
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
         this.startTimeParameter = this.createParameterExpression(DateTime.class, "startTime");
@@ -182,26 +199,27 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
     @Override
     @RawEventsTransactional
     public void storePortalEvents(PortalEvent... portalEvents) {
-        for (final PortalEvent portalEvent : portalEvents) {
-            try {
-                storePortalEvent(portalEvent);
-            } catch (IllegalArgumentException iae) {
-                this.logger.warn(
-                        portalEvent.getClass().getName()
-                                + " is not mapped as a persistent entity and will not be stored. "
-                                + portalEvent
-                                + " Exception="
-                                + iae.getMessage());
-            }
-        }
+        this.storePortalEvents(Arrays.asList(portalEvents));
     }
 
     @Override
     @RawEventsTransactional
     public void storePortalEvents(Iterable<PortalEvent> portalEvents) {
+        final EntityManager entityManager = this.getEntityManager();
+
+        //Re-used for serializing every event in the batch
+        final StringWriter eventDataWriter = new StringWriter(1024);
+        final List<PersistentPortalEvent> pendingEvents =
+                new ArrayList<PersistentPortalEvent>(this.storeBatchSize);
+
         for (final PortalEvent portalEvent : portalEvents) {
             try {
-                storePortalEvent(portalEvent);
+                eventDataWriter.getBuffer().setLength(0);
+                final String portalEventData = this.toString(portalEvent, eventDataWriter);
+                final PersistentPortalEvent persistentPortalEvent =
+                        new PersistentPortalEvent(portalEvent, portalEventData);
+                entityManager.persist(persistentPortalEvent);
+                pendingEvents.add(persistentPortalEvent);
             } catch (IllegalArgumentException iae) {
                 this.logger.warn(
                         portalEvent.getClass().getName()
@@ -210,7 +228,30 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
                                 + " Exception="
                                 + iae.getMessage());
             }
+
+            if (pendingEvents.size() >= this.storeBatchSize) {
+                this.flushStoredEvents(entityManager, pendingEvents);
+            }
+        }
+
+        this.flushStoredEvents(entityManager, pendingEvents);
+    }
+
+    /**
+     * Writes the pending events to the database and detaches them so the persistence context does
+     * not grow with the number of events stored in the transaction.
+     */
+    protected void flushStoredEvents(
+            EntityManager entityManager, List<PersistentPortalEvent> pendingEvents) {
+        if (pendingEvents.isEmpty()) {
+            return;
         }
+
+        entityManager.flush();
+        for (final PersistentPortalEvent persistentPortalEvent : pendingEvents) {
+            entityManager.detach(persistentPortalEvent);
+        }
+        pendingEvents.clear();
     }
 
     @Override
@@ -375,4 +416,18 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
             throw new RuntimeException("Failed to serialize PortalEvent data", e);
         }
     }
+
+    /** Serialize the event using the passed writer, which must be empty, as the buffer */
+    protected String toString(PortalEvent event, StringWriter writer) {
+        try {
+            mapper.writeValue(writer, event);
+            return writer.toString();
+        } catch (JsonParseException e) {
+            throw new RuntimeException("Failed to serialize PortalEvent data", e);
+        } catch (JsonMappingException e) {
+            throw new RuntimeException("Failed to serialize PortalEvent data", e);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to serialize PortalEvent data", e);
+        }
+    }
 }
@@ -14,13 +14,23 @@
  */
 package org.apereo.portal.events.handlers.db;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import org.apereo.portal.events.PortalEvent;
+import org.apereo.portal.events.aggr.StreamedPortalEventBuffer;
 import org.apereo.portal.events.handlers.QueueingEventHandler;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.util.ClassUtils;
 
 /** Hands off queued portal events for storage by the IPortalEventDao */
+@ManagedResource("uPortal:section=Events,name=PortalEventDaoQueuingEventHandler")
 public class PortalEventDaoQueuingEventHandler extends QueueingEventHandler<PortalEvent> {
     private IPortalEventDao portalEventDao;
+    private ObjectMapper mapper;
+    private StreamedPortalEventBuffer streamedPortalEventBuffer;
 
     /** @param portalEventDao the portalEventDao to set */
     @Autowired
@@ -28,8 +38,52 @@ public class PortalEventDaoQueuingEventHandler extends QueueingEventHandler<Port
         this.portalEventDao = portalEventDao;
     }
 
+    @Autowired
+    public void setMapper(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /** Streamed events taken by the buffer are aggregated from memory and not stored */
+    @Autowired(required = false)
+    public void setStreamedPortalEventBuffer(StreamedPortalEventBuffer streamedPortalEventBuffer) {
+        this.streamedPortalEventBuffer = streamedPortalEventBuffer;
+    }
+
+    @Override
+    protected void onFilteredApplicationEvent(PortalEvent event) {
+        if (this.streamedPortalEventBuffer == null
+                || !this.streamedPortalEventBuffer.offer(event)) {
+            super.onFilteredApplicationEvent(event);
+        }
+    }
+
     @Override
     protected void onApplicationEvents(Iterable<PortalEvent> events) {
         this.portalEventDao.storePortalEvents(events);
     }
+
+    @Override
+    protected void writeSpilledEvent(PortalEvent event, DataOutput out) throws IOException {
+        final byte[] eventData = this.mapper.writeValueAsBytes(event);
+        out.writeUTF(event.getClass().getName());
+        out.writeInt(eventData.length);
+        out.write(eventData);
+    }
+
+    @Override
+    protected PortalEvent readSpilledEvent(DataInput in) throws IOException {
+        final String eventType = in.readUTF();
+        final byte[] eventData = new byte[in.readInt()];
+        in.readFully(eventData);
+
+        final Class<? extends PortalEvent> eventClass;
+        try {
+            eventClass =
+                    ClassUtils.forName(eventType, this.getClass().getClassLoader())
+                            .asSubclass(PortalEvent.class);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown spilled event type: " + eventType, e);
+        }
+        return this.mapper.readValue(eventData, eventClass);
+    }
 }
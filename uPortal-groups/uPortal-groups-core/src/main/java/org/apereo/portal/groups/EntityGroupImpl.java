@@ -127,8 +127,8 @@ public class EntityGroupImpl extends GroupMemberImpl implements IEntityGroup {
             throw new GroupsException(this + " and " + gm + " have different entity types.");
         }
 
-        // Circular reference check:
-        if (gm.isGroup() && gm.asGroup().deepContains(this)) {
+        // Circular reference check, walks the children so it reflects pending changes:
+        if (gm.isGroup() && primDeepContains(gm.asGroup(), this)) {
             throw new GroupsException(
                     "Adding " + gm + " to " + this + " creates a circular reference.");
         }
@@ -163,13 +163,29 @@ public class EntityGroupImpl extends GroupMemberImpl implements IEntityGroup {
     }
 
     /**
-     * Checks recursively if <code>GroupMember</code> gm is a member of this.
+     * Checks recursively if <code>GroupMember</code> gm is a member of this by looking for this in
+     * the cached ancestor groups of gm.
      *
      * @return boolean
      * @param gm org.apereo.portal.groups.IGroupMember
      */
     @Override
     public boolean deepContains(IGroupMember gm) throws GroupsException {
+        return this.contains(gm) || gm.getAncestorGroups().contains(this);
+    }
+
+    /**
+     * Checks recursively if <code>GroupMember</code> gm is a member of this by walking down the
+     * member groups. Reflects pending changes.
+     */
+    private static boolean primDeepContains(IEntityGroup group, IGroupMember gm)
+            throws GroupsException {
+        return group instanceof EntityGroupImpl
+                ? ((EntityGroupImpl) group).primDeepContains(gm)
+                : group.deepContains(gm);
+    }
+
+    private boolean primDeepContains(IGroupMember gm) throws GroupsException {
         if (this.contains(gm)) {
             return true;
         }
@@ -179,7 +195,7 @@ public class EntityGroupImpl extends GroupMemberImpl implements IEntityGroup {
         while (it.hasNext() && !found) {
             IEntityGroup group = (IEntityGroup) it.next();
             if (group != null) {
-                found = group.deepContains(gm);
+                found = primDeepContains(group, gm);
             } else {
                 // Something bad has happened:  we've abruptly lost a group node to
                 // which this group node refers.  This is an ERROR condition, but we
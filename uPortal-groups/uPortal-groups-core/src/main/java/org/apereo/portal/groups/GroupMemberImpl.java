@@ -44,6 +44,7 @@ public abstract class GroupMemberImpl implements IGroupMember {
     private EntityIdentifier underlyingEntityIdentifier;
 
     private final Cache parentGroupsCache;
+    private final Cache ancestorGroupsCache;
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     /** GroupMemberImpl constructor */
@@ -58,17 +59,65 @@ public abstract class GroupMemberImpl implements IGroupMember {
         CacheManager cacheManager = context.getBean("cacheManager", CacheManager.class);
         this.parentGroupsCache =
                 cacheManager.getCache("org.apereo.portal.groups.GroupMemberImpl.parentGroups");
+        this.ancestorGroupsCache =
+                cacheManager.getCache("org.apereo.portal.groups.GroupMemberImpl.ancestorGroups");
     }
 
+    //Members whose ancestors are being built on this thread, guards against circular references
+    private static final ThreadLocal<Set<EntityIdentifier>> ANCESTORS_IN_PROGRESS =
+            new ThreadLocal<Set<EntityIdentifier>>() {
+                @Override
+                protected Set<EntityIdentifier> initialValue() {
+                    return new HashSet<>();
+                }
+            };
+
     /**
-     * Returns an <code>Iterator</code> over the <code>Set</code> of this <code>IGroupMember's
-     * </code> recursively-retrieved parent groups.
+     * Returns the <code>Set</code> of this <code>IGroupMember's</code> recursively-retrieved parent
+     * groups. The set is cached per member and is built from the cached ancestor sets of the parent
+     * groups, so the groups near the top of a hierarchy are only walked once for all of the
+     * members below them.
      *
-     * @return Iterator
+     * @return Set
      */
     @Override
     public Set<IEntityGroup> getAncestorGroups() throws GroupsException {
-        return primGetAncestorGroups(this, new HashSet<IEntityGroup>());
+
+        final EntityIdentifier cacheKey = getUnderlyingEntityIdentifier();
+        Element element = ancestorGroupsCache.get(cacheKey);
+
+        if (element == null) {
+            final Set<EntityIdentifier> inProgress = ANCESTORS_IN_PROGRESS.get();
+            if (!inProgress.add(cacheKey)) {
+                // Circular reference, fall back to a walk that tracks the groups it has seen
+                return primGetAncestorGroups(this, new HashSet<IEntityGroup>());
+            }
+            try {
+                final Set<IEntityGroup> groups = buildAncestorGroupsSet();
+                element = new Element(cacheKey, groups);
+                ancestorGroupsCache.put(element);
+            } finally {
+                inProgress.remove(cacheKey);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        final Set<IEntityGroup> rslt = (Set<IEntityGroup>) element.getObjectValue();
+        return rslt;
+    }
+
+    private Set<IEntityGroup> buildAncestorGroupsSet() throws GroupsException {
+        logger.debug(
+                "Constructing ancestorGroups for member='{}'", getUnderlyingEntityIdentifier());
+
+        final Set<IEntityGroup> rslt = new HashSet<>();
+        for (IEntityGroup group : getParentGroups()) {
+            if (rslt.add(group)) {
+                rslt.addAll(group.getAncestorGroups());
+            }
+        }
+
+        return Collections.unmodifiableSet(rslt);
     }
 
     /**
@@ -136,7 +185,7 @@ public abstract class GroupMemberImpl implements IGroupMember {
      */
     @Override
     public boolean isDeepMemberOf(IEntityGroup group) throws GroupsException {
-        return isMemberOf(group) ? true : group.deepContains(this);
+        return isMemberOf(group) ? true : getAncestorGroups().contains(group);
     }
 
     /** @return boolean */
@@ -213,8 +262,18 @@ public abstract class GroupMemberImpl implements IGroupMember {
     }
 
     protected void invalidateInParentGroupsCache(Set<IGroupMember> members) {
+        boolean groupChanged = false;
         for (IGroupMember member : members) {
-            parentGroupsCache.remove(member.getEntityIdentifier());
+            // Keyed like getParentGroups(), an entity's EntityIdentifier is its leaf identifier
+            final EntityIdentifier cacheKey = member.getUnderlyingEntityIdentifier();
+            parentGroupsCache.remove(cacheKey);
+            ancestorGroupsCache.remove(cacheKey);
+            groupChanged |= member.isGroup();
+        }
+
+        // The ancestors of everything below a group that changed parents are stale as well
+        if (groupChanged) {
+            ancestorGroupsCache.removeAll();
         }
     }
 }
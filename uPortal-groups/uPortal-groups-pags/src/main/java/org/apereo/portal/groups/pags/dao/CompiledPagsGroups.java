@@ -0,0 +1,242 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.groups.pags.dao;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apereo.portal.groups.pags.IPersonTester;
+import org.apereo.portal.groups.pags.testers.StringEqualsTester;
+import org.apereo.portal.security.IPerson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * All PAGS group definitions compiled into a single structure that finds every group a person is
+ * a direct member of in one pass.
+ *
+ * <p>Identical tests (same tester class, attribute and test value) are created once and shared by
+ * every group that uses them, each is run at most once per evaluation. String equality tests are
+ * indexed by attribute name and test value so they are answered by looking up the person's
+ * attribute values instead of being run one by one.
+ *
+ * @since 5.0
+ */
+/* package-private */ final class CompiledPagsGroups {
+    private static final Logger logger = LoggerFactory.getLogger(CompiledPagsGroups.class);
+
+    private static final byte UNKNOWN = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte ERROR = 3;
+
+    private final Map<String, IPersonAttributesGroupDefinition> definitions =
+            new LinkedHashMap<String, IPersonAttributesGroupDefinition>();
+    private final List<CompiledGroup> groups = new ArrayList<CompiledGroup>();
+    private final List<IPersonTester> testers = new ArrayList<IPersonTester>();
+
+    //attribute name -> test value -> index of the shared StringEqualsTester
+    private final Map<String, Map<String, Integer>> equalityIndex =
+            new HashMap<String, Map<String, Integer>>();
+
+    public CompiledPagsGroups(Set<IPersonAttributesGroupDefinition> definitions) {
+        final Map<String, Integer> testIndexes = new HashMap<String, Integer>();
+
+        groups:
+        for (final IPersonAttributesGroupDefinition definition : definitions) {
+            if (this.definitions.containsKey(definition.getName())) {
+                logger.error("More than one PAGS group with name {} found.", definition.getName());
+                continue;
+            }
+            this.definitions.put(definition.getName(), definition);
+
+            final List<int[]> testGroups = new ArrayList<int[]>();
+            for (final IPersonAttributesGroupTestGroupDefinition testGroup :
+                    definition.getTestGroups()) {
+                final Set<IPersonAttributesGroupTestDefinition> tests = testGroup.getTests();
+                final int[] testGroupIndexes = new int[tests.size()];
+                int i = 0;
+                for (final IPersonAttributesGroupTestDefinition test : tests) {
+                    final Integer testIndex = this.getTestIndex(test, testIndexes);
+                    if (testIndex == null) {
+                        //Same as PagsGroup, a group with a broken test has no person members
+                        continue groups;
+                    }
+                    testGroupIndexes[i++] = testIndex;
+                }
+                testGroups.add(testGroupIndexes);
+            }
+
+            //A group without tests only contains other groups
+            if (!testGroups.isEmpty()) {
+                this.groups.add(new CompiledGroup(definition.getName(), testGroups));
+            }
+        }
+    }
+
+    /** @return The definition of the named group, null if there is no such group */
+    public IPersonAttributesGroupDefinition getDefinition(String name) {
+        return this.definitions.get(name);
+    }
+
+    /** @return Number of distinct tests shared by all of the groups */
+    public int getTestCount() {
+        return this.testers.size();
+    }
+
+    /** @return Names of the groups the person is a direct member of */
+    public Set<String> evaluate(IPerson person) {
+        final byte[] results = new byte[this.testers.size()];
+        this.evaluateEqualityTests(person, results);
+
+        final Set<String> memberships = new HashSet<String>();
+        for (final CompiledGroup group : this.groups) {
+            if (this.isMember(group, person, results)) {
+                memberships.add(group.name);
+            }
+        }
+        return Collections.unmodifiableSet(memberships);
+    }
+
+    private boolean isMember(CompiledGroup group, IPerson person, byte[] results) {
+        testGroups:
+        for (final int[] testGroup : group.testGroups) {
+            for (final int testIndex : testGroup) {
+                final byte result = this.test(testIndex, person, results);
+                if (result == ERROR) {
+                    return false;
+                }
+                if (result == FALSE) {
+                    continue testGroups;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private byte test(int testIndex, IPerson person, byte[] results) {
+        byte result = results[testIndex];
+        if (result == UNKNOWN) {
+            final IPersonTester tester = this.testers.get(testIndex);
+            try {
+                result = tester.test(person) ? TRUE : FALSE;
+            } catch (Exception e) {
+                logger.error("Exception running {} for person {}", tester, person.getName(), e);
+                result = ERROR;
+            }
+            results[testIndex] = result;
+        }
+        return result;
+    }
+
+    /** Answer all of the string equality tests from the person's attribute values */
+    private void evaluateEqualityTests(IPerson person, byte[] results) {
+        for (final Map.Entry<String, Map<String, Integer>> attributeEntry :
+                this.equalityIndex.entrySet()) {
+            final Object[] values = person.getAttributeValues(attributeEntry.getKey());
+            final Map<String, Integer> valueTests = attributeEntry.getValue();
+
+            //Leave anything unusual to the testers themselves
+            if (values != null && !areStrings(values)) {
+                continue;
+            }
+
+            for (final Integer testIndex : valueTests.values()) {
+                results[testIndex] = FALSE;
+            }
+            if (values != null) {
+                for (final Object value : values) {
+                    final Integer testIndex = valueTests.get(value);
+                    if (testIndex != null) {
+                        results[testIndex] = TRUE;
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean areStrings(Object[] values) {
+        for (final Object value : values) {
+            if (!(value instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return Index of the shared tester for the test, null if the tester could not be created */
+    private Integer getTestIndex(
+            IPersonAttributesGroupTestDefinition test, Map<String, Integer> testIndexes) {
+        final String key =
+                test.getTesterClassName()
+                        + "\u0000"
+                        + test.getAttributeName()
+                        + "\u0000"
+                        + test.getTestValue();
+        Integer testIndex = testIndexes.get(key);
+        if (testIndex == null) {
+            final IPersonTester tester = createTester(test);
+            if (tester == null) {
+                return null;
+            }
+
+            testIndex = this.testers.size();
+            this.testers.add(tester);
+            testIndexes.put(key, testIndex);
+
+            if (tester.getClass() == StringEqualsTester.class && test.getTestValue() != null) {
+                Map<String, Integer> valueTests = this.equalityIndex.get(test.getAttributeName());
+                if (valueTests == null) {
+                    valueTests = new HashMap<String, Integer>();
+                    this.equalityIndex.put(test.getAttributeName(), valueTests);
+                }
+                valueTests.put(test.getTestValue(), testIndex);
+            }
+        }
+        return testIndex;
+    }
+
+    /** @return The tester for the test definition, null if it could not be created */
+    static IPersonTester createTester(IPersonAttributesGroupTestDefinition test) {
+        try {
+            Class<?> testerClass = Class.forName(test.getTesterClassName());
+            Constructor<?> c =
+                    testerClass.getConstructor(IPersonAttributesGroupTestDefinition.class);
+            Object o = c.newInstance(test);
+            return (IPersonTester) o;
+        } catch (Exception e) {
+            logger.error("Error in initializing tester class: {}", test.getTesterClassName(), e);
+            return null;
+        }
+    }
+
+    private static final class CompiledGroup {
+        private final String name;
+        //Each test group is the indexes of its testers, a person must pass all of them
+        private final List<int[]> testGroups;
+
+        public CompiledGroup(String name, List<int[]> testGroups) {
+            this.name = name;
+            this.testGroups = testGroups;
+        }
+    }
+}
@@ -14,7 +14,6 @@
  */
 package org.apereo.portal.groups.pags.dao;
 
-import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -61,16 +60,18 @@ public class EntityPersonAttributesGroupStore
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private static final Class<IPerson> IPERSON_CLASS = IPerson.class;
     private static final EntityIdentifier[] EMPTY_SEARCH_RESULTS = new EntityIdentifier[0];
+    private static final String COMPILED_GROUPS_CACHE_KEY = CompiledPagsGroups.class.getName();
     private IPersonAttributesGroupDefinitionDao personAttributesGroupDefinitionDao;
 
     /** Caches IEntityGroup (EntityGroupImpl) instances */
     private final Cache entityGroupCache;
 
-    /** Caches PagsGroup instances */
+    /** Caches PagsGroup instances and the CompiledPagsGroups for all of the groups */
     private final Cache pagsGroupCache;
 
     /**
      * Caches the result of evaluating a single IGroupMember's (direct) membership in a PAGS group
+     * and the names of all the PAGS groups a person directly belongs to
      */
     private final Cache membershipCache;
 
@@ -116,6 +117,11 @@ public class EntityPersonAttributesGroupStore
             }
         }
 
+        if (!member.isGroup()) {
+            //All of a person's memberships are found in one pass and cached together
+            return getPersonMemberships(member).contains(group.getName());
+        }
+
         final MembershipCacheKey cacheKey =
                 new MembershipCacheKey(
                         group.getEntityIdentifier(), member.getUnderlyingEntityIdentifier());
@@ -128,33 +134,9 @@ public class EntityPersonAttributesGroupStore
                     member.getKey(),
                     member.getLeafType().getSimpleName());
 
-            boolean answer = false; // default
             final PagsGroup groupDef = convertEntityToGroupDef(group);
-            if (member.isGroup()) {
-                final String key = ((IEntityGroup) member).getLocalKey();
-                answer = groupDef.hasMember(key);
-            } else {
-                try {
-                    final IPersonAttributeDao pa =
-                            PersonAttributeDaoLocator.getPersonAttributeDao();
-                    final IPersonAttributes personAttributes = pa.getPerson(member.getKey());
-
-                    if (personAttributes != null) {
-                        final RestrictedPerson rp = PersonFactory.createRestrictedPerson();
-                        rp.setAttributes(personAttributes.getAttributes());
-                        answer = groupDef.contains(rp);
-                    }
-                } catch (Exception ex) {
-                    logger.error(
-                            "Exception acquiring attributes for member "
-                                    + member
-                                    + " while checking if group "
-                                    + group
-                                    + " contains this member.",
-                            ex);
-                    return false;
-                }
-            }
+            final String key = ((IEntityGroup) member).getLocalKey();
+            final boolean answer = groupDef.hasMember(key);
 
             element = new Element(cacheKey, answer);
             membershipCache.put(element);
@@ -163,6 +145,61 @@ public class EntityPersonAttributesGroupStore
         return (Boolean) element.getObjectValue();
     }
 
+    /**
+     * Names of the PAGS groups the person is a direct member of. The result is cached until it
+     * expires or {@link PagsMembershipCacheAuthenticationListener} purges it when the person logs
+     * in.
+     */
+    @SuppressWarnings("unchecked")
+    private Set<String> getPersonMemberships(IGroupMember member) {
+        final MembershipCacheKey cacheKey =
+                new MembershipCacheKey(member.getUnderlyingEntityIdentifier());
+        Element element = membershipCache.get(cacheKey);
+        if (element == null) {
+            logger.debug("Finding PAGS groups that contain person {}", member.getKey());
+
+            Set<String> memberships = Collections.emptySet();
+            try {
+                final IPersonAttributeDao pa = PersonAttributeDaoLocator.getPersonAttributeDao();
+                final IPersonAttributes personAttributes = pa.getPerson(member.getKey());
+
+                if (personAttributes != null) {
+                    final RestrictedPerson rp = PersonFactory.createRestrictedPerson();
+                    rp.setAttributes(personAttributes.getAttributes());
+                    memberships = getCompiledGroups().evaluate(rp);
+                }
+            } catch (Exception ex) {
+                logger.error(
+                        "Exception acquiring attributes for member "
+                                + member
+                                + " while finding the groups that contain this member.",
+                        ex);
+                return Collections.emptySet();
+            }
+
+            element = new Element(cacheKey, memberships);
+            membershipCache.put(element);
+        }
+
+        return (Set<String>) element.getObjectValue();
+    }
+
+    /** All of the PAGS group definitions compiled for evaluation, cached like PagsGroups */
+    private CompiledPagsGroups getCompiledGroups() {
+        Element element = this.pagsGroupCache.get(COMPILED_GROUPS_CACHE_KEY);
+        if (element == null) {
+            final CompiledPagsGroups compiledGroups =
+                    new CompiledPagsGroups(
+                            personAttributesGroupDefinitionDao
+                                    .getPersonAttributesGroupDefinitions());
+            logger.debug(
+                    "Compiled PAGS groups with {} distinct tests", compiledGroups.getTestCount());
+            element = new Element(COMPILED_GROUPS_CACHE_KEY, compiledGroups);
+            this.pagsGroupCache.put(element);
+        }
+        return (CompiledPagsGroups) element.getObjectValue();
+    }
+
     private PagsGroup convertEntityToGroupDef(IEntityGroup group) {
         IPersonAttributesGroupDefinition pagsGroup = getPagsGroupDefByName(group.getName());
         return initGroupDef(pagsGroup);
@@ -249,13 +286,12 @@ public class EntityPersonAttributesGroupStore
     private Iterator<IEntityGroup> findParentGroupsForEntity(IEntity member)
             throws GroupsException {
 
-        Set<IPersonAttributesGroupDefinition> pagsGroups =
-                personAttributesGroupDefinitionDao.getPersonAttributesGroupDefinitions();
+        final CompiledPagsGroups compiledGroups = getCompiledGroups();
         List<IEntityGroup> results = new ArrayList<IEntityGroup>();
-        for (IPersonAttributesGroupDefinition pagsGroup : pagsGroups) {
-            IEntityGroup group = convertPagsGroupToEntity(pagsGroup);
-            if (contains(group, member)) {
-                results.add(group);
+        for (String groupName : getPersonMemberships(member)) {
+            IPersonAttributesGroupDefinition pagsGroup = compiledGroups.getDefinition(groupName);
+            if (pagsGroup != null) {
+                results.add(convertPagsGroupToEntity(pagsGroup));
             }
         }
         return results.iterator();
@@ -428,16 +464,7 @@ public class EntityPersonAttributesGroupStore
     }
 
     private IPersonTester initializeTester(IPersonAttributesGroupTestDefinition test) {
-        try {
-            Class<?> testerClass = Class.forName(test.getTesterClassName());
-            Constructor<?> c =
-                    testerClass.getConstructor(IPersonAttributesGroupTestDefinition.class);
-            Object o = c.newInstance(test);
-            return (IPersonTester) o;
-        } catch (Exception e) {
-            logger.error("Error in initializing tester class: {}", test.getTesterClassName(), e);
-            return null;
-        }
+        return CompiledPagsGroups.createTester(test);
     }
 
     private Set<IEntityGroup> getParentGroups(String name, Set<IEntityGroup> groups)
@@ -30,6 +30,11 @@ import org.apereo.portal.EntityIdentifier;
         this.memberId = memberId;
     }
 
+    /** Key for the set of all the PAGS groups the member directly belongs to */
+    public MembershipCacheKey(final EntityIdentifier memberId) {
+        this(null, memberId);
+    }
+
     public EntityIdentifier getMemberId() {
         return memberId;
     }
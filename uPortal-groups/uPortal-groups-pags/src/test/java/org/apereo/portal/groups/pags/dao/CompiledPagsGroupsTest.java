@@ -0,0 +1,136 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.groups.pags.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.apereo.portal.groups.pags.testers.RegexTester;
+import org.apereo.portal.groups.pags.testers.StringEqualsTester;
+import org.apereo.portal.security.IPerson;
+import org.apereo.portal.security.provider.PersonImpl;
+import org.junit.Test;
+
+public class CompiledPagsGroupsTest {
+
+    @Test
+    public void testEvaluate() {
+        final Set<IPersonAttributesGroupDefinition> definitions =
+                new LinkedHashSet<IPersonAttributesGroupDefinition>();
+        definitions.add(group("Students", testGroup(equalsTest("affiliation", "student"))));
+        definitions.add(group("Staff", testGroup(equalsTest("affiliation", "staff"))));
+        definitions.add(
+                group(
+                        "Student Workers",
+                        testGroup(
+                                equalsTest("affiliation", "student"),
+                                equalsTest("affiliation", "staff"))));
+        definitions.add(
+                group(
+                        "Mail Users",
+                        testGroup(regexTest("mail", ".*@example\\.edu")),
+                        testGroup(equalsTest("affiliation", "staff"))));
+        definitions.add(group("Everyone"));
+
+        final CompiledPagsGroups compiledGroups = new CompiledPagsGroups(definitions);
+        //Shared student and staff tests plus the regex
+        assertEquals(3, compiledGroups.getTestCount());
+        assertNotNull(compiledGroups.getDefinition("Everyone"));
+        assertNull(compiledGroups.getDefinition("Faculty"));
+
+        assertEquals(
+                new HashSet<String>(Arrays.asList("Students", "Mail Users")),
+                compiledGroups.evaluate(person("student", "jdoe@example.edu")));
+        assertEquals(
+                new HashSet<String>(
+                        Arrays.asList("Students", "Staff", "Student Workers", "Mail Users")),
+                compiledGroups.evaluate(person("student", "staff")));
+        assertEquals(
+                Collections.<String>emptySet(),
+                compiledGroups.evaluate(person("alum", "alum@example.com")));
+        assertEquals(Collections.<String>emptySet(), compiledGroups.evaluate(new PersonImpl()));
+    }
+
+    @Test
+    public void testBrokenTester() {
+        final IPersonAttributesGroupTestDefinition broken =
+                test("org.example.MissingTester", "affiliation", "staff");
+        final Set<IPersonAttributesGroupDefinition> definitions =
+                new LinkedHashSet<IPersonAttributesGroupDefinition>();
+        definitions.add(group("Broken", testGroup(broken)));
+        definitions.add(group("Students", testGroup(equalsTest("affiliation", "student"))));
+
+        final CompiledPagsGroups compiledGroups = new CompiledPagsGroups(definitions);
+        assertEquals(
+                Collections.singleton("Students"),
+                compiledGroups.evaluate(person("student", "staff")));
+    }
+
+    private static IPerson person(String... affiliations) {
+        final IPerson person = new PersonImpl();
+        person.setUserName("jdoe");
+        person.setAttribute("affiliation", Arrays.<Object>asList((Object[]) affiliations));
+        person.setAttribute("mail", Arrays.<Object>asList((Object[]) affiliations));
+        return person;
+    }
+
+    private static IPersonAttributesGroupDefinition group(
+            String name, IPersonAttributesGroupTestGroupDefinition... testGroups) {
+        final IPersonAttributesGroupDefinition group = mock(IPersonAttributesGroupDefinition.class);
+        when(group.getName()).thenReturn(name);
+        when(group.getTestGroups())
+                .thenReturn(
+                        new LinkedHashSet<IPersonAttributesGroupTestGroupDefinition>(
+                                Arrays.asList(testGroups)));
+        return group;
+    }
+
+    private static IPersonAttributesGroupTestGroupDefinition testGroup(
+            IPersonAttributesGroupTestDefinition... tests) {
+        final IPersonAttributesGroupTestGroupDefinition testGroup =
+                mock(IPersonAttributesGroupTestGroupDefinition.class);
+        when(testGroup.getTests())
+                .thenReturn(
+                        new LinkedHashSet<IPersonAttributesGroupTestDefinition>(
+                                Arrays.asList(tests)));
+        return testGroup;
+    }
+
+    private static IPersonAttributesGroupTestDefinition equalsTest(String attribute, String value) {
+        return test(StringEqualsTester.class.getName(), attribute, value);
+    }
+
+    private static IPersonAttributesGroupTestDefinition regexTest(String attribute, String value) {
+        return test(RegexTester.class.getName(), attribute, value);
+    }
+
+    private static IPersonAttributesGroupTestDefinition test(
+            String testerClassName, String attribute, String value) {
+        final IPersonAttributesGroupTestDefinition test =
+                mock(IPersonAttributesGroupTestDefinition.class);
+        when(test.getTesterClassName()).thenReturn(testerClassName);
+        when(test.getAttributeName()).thenReturn(attribute);
+        when(test.getTestValue()).thenReturn(value);
+        return test;
+    }
+}
@@ -190,6 +190,19 @@ public interface IPortalDataHandlerService {
     public void exportAllDataOfType(
             Set<String> typeIds, File directory, BatchExportOptions options);
 
+    /**
+     * Export all the portal data for each type and write it to an archive that can be imported
+     * with {@link #importDataArchive(Resource, BatchImportOptions)}. The data of each type is
+     * added to the archive once the type is exported, under a directory named for the type.
+     *
+     * @param typeIds TypeIds from {@link #getExportPortalDataTypes()} to export all data for
+     * @param archive File to write the archive to, a gzip compressed tar archive if the name ends
+     *     with .tar.gz or .tgz and a zip archive otherwise
+     * @param options Optional set of options to better control the export
+     * @since 5.0
+     */
+    public void exportDataArchive(Set<String> typeIds, File archive, BatchExportOptions options);
+
     /**
      * Export all portal data for all data type and save it to the specified directory
      *
@@ -18,15 +18,19 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.io.Files;
 import com.google.common.io.InputSupplier;
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -60,14 +64,18 @@ import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
 import org.apache.commons.compress.archivers.ar.ArArchiveInputStream;
 import org.apache.commons.compress.archivers.cpio.CpioArchiveInputStream;
 import org.apache.commons.compress.archivers.jar.JarArchiveInputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.compress.compressors.CompressorInputStream;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
 import org.apache.commons.compress.compressors.pack200.Pack200CompressorInputStream;
 import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
 import org.apache.commons.io.FileUtils;
@@ -114,6 +122,8 @@ public class JaxbPortalDataHandlerService implements IPortalDataHandlerService {
 
     private static final String REPORT_FORMAT = "%s,%s,%.2fms\n";
 
+    private static final long PROGRESS_LOG_INTERVAL = TimeUnit.SECONDS.toNanos(30);
+
     private static final MediaType MT_JAVA_ARCHIVE = MediaType.application("java-archive");
     private static final MediaType MT_CPIO = MediaType.application("x-cpio");
     private static final MediaType MT_AR = MediaType.application("x-archive");
@@ -158,6 +168,7 @@ public class JaxbPortalDataHandlerService implements IPortalDataHandlerService {
 
     private long maxWait = -1;
     private TimeUnit maxWaitTimeUnit = TimeUnit.MILLISECONDS;
+    private int maxPreparedImports = 200;
 
     @Autowired
     public void setXmlUtilities(XmlUtilities xmlUtilities) {
@@ -181,6 +192,14 @@ public class JaxbPortalDataHandlerService implements IPortalDataHandlerService {
         this.maxWaitTimeUnit = maxWaitTimeUnit;
     }
 
+    /**
+     * Maximum number of files a batch import parses ahead of the files being imported. Parsing
+     * continues into the files of the next data types while the current data type is imported.
+     */
+    public void setMaxPreparedImports(int maxPreparedImports) {
+        this.maxPreparedImports = maxPreparedImports;
+    }
+
     /** Order in which data types should be imported. */
     @javax.annotation.Resource(name = "dataTypeImportOrder")
     public void setDataTypeImportOrder(List<IPortalDataType> dataTypeImportOrder) {
@@ -556,73 +575,124 @@ public class JaxbPortalDataHandlerService implements IPortalDataHandlerService {
             final ConcurrentMap<PortalDataKey, Queue<Resource>> dataToImport =
                     fileProcessor.getDataToImport();
 
-            //Import the data files
+            //Queue the data files in import order
+            final Map<PortalDataKey, Integer> fileCounts =
+                    new LinkedHashMap<PortalDataKey, Integer>();
+            final Queue<PreparedImport> pendingImports = new LinkedList<PreparedImport>();
             for (final PortalDataKey portalDataKey : this.dataKeyImportOrder) {
                 final Queue<Resource> files = dataToImport.remove(portalDataKey);
                 if (files == null) {
                     continue;
                 }
 
-                final Queue<ImportFuture<?>> importFutures = new LinkedList<ImportFuture<?>>();
-                final List<FutureHolder<?>> failedFutures = new LinkedList<FutureHolder<?>>();
-
-                final int fileCount = files.size();
-                logger.info("Importing {} files of type {}", fileCount, portalDataKey);
-                reportWriter.println(portalDataKey + "," + fileCount);
+                fileCounts.put(portalDataKey, files.size());
+                for (final Resource file : files) {
+                    pendingImports.offer(new PreparedImport(file, portalDataKey));
+                }
+            }
 
-                while (!files.isEmpty()) {
-                    final Resource file = files.poll();
+            //Import the data files, a data type is imported once all earlier types are imported
+            //but files are parsed ahead of the imports, across data types
+            final Queue<PreparedImport> preparedImports = new LinkedList<PreparedImport>();
+            final AtomicLong importedCount = new AtomicLong();
+            final long importStart = System.nanoTime();
+            long lastProgressLog = importStart;
+            try {
+                for (final Map.Entry<PortalDataKey, Integer> fileCountEntry :
+                        fileCounts.entrySet()) {
+                    final PortalDataKey portalDataKey = fileCountEntry.getKey();
+                    final int fileCount = fileCountEntry.getValue();
+
+                    final Queue<ImportFuture<?>> importFutures = new LinkedList<ImportFuture<?>>();
+                    final List<FutureHolder<?>> failedFutures = new LinkedList<FutureHolder<?>>();
+
+                    logger.info("Importing {} files of type {}", fileCount, portalDataKey);
+                    reportWriter.println(portalDataKey + "," + fileCount);
+                    final long typeStart = System.nanoTime();
+
+                    for (int i = 0; i < fileCount; i++) {
+                        this.prepareImports(pendingImports, preparedImports, directoryUriStr);
+                        final PreparedImport preparedImport = preparedImports.poll();
+
+                        //Check for completed futures on every iteration, needed to fail as fast as possible on an import exception
+                        final List<FutureHolder<?>> newFailed =
+                                waitForFutures(importFutures, reportWriter, logDirectory, false);
+                        failedFutures.addAll(newFailed);
+
+                        //Wait for the file to be parsed before submitting the import so threads
+                        //in the pool never wait on each other
+                        preparedImport.awaitPrepared();
+
+                        //Create import task
+                        final Callable<Object> task =
+                                new Callable<Object>() {
+                                    @Override
+                                    public Object call() throws Exception {
+                                        IMPORT_BASE_DIR.set(directoryUriStr);
+                                        final long start = System.nanoTime();
+                                        try {
+                                            return preparedImport.getImport().call();
+                                        } finally {
+                                            preparedImport.addImportTime(System.nanoTime() - start);
+                                            importedCount.incrementAndGet();
+                                            IMPORT_BASE_DIR.remove();
+                                        }
+                                    }
+                                };
+
+                        //Submit the import task
+                        final Future<?> importFuture = this.importExportThreadPool.submit(task);
+
+                        //Add the future for tracking
+                        importFutures.offer(
+                                new ImportFuture(
+                                        importFuture,
+                                        preparedImport.getResource(),
+                                        portalDataKey,
+                                        preparedImport.getImportTime()));
+
+                        final long now = System.nanoTime();
+                        if (now - lastProgressLog >= PROGRESS_LOG_INTERVAL) {
+                            lastProgressLog = now;
+                            logImportProgress(
+                                    importedCount.get(), resourceCount, now - importStart);
+                        }
+                    }
 
-                    //Check for completed futures on every iteration, needed to fail as fast as possible on an import exception
+                    //Wait for all of the imports on of this type to complete
                     final List<FutureHolder<?>> newFailed =
-                            waitForFutures(importFutures, reportWriter, logDirectory, false);
+                            waitForFutures(importFutures, reportWriter, logDirectory, true);
                     failedFutures.addAll(newFailed);
 
-                    final AtomicLong importTime = new AtomicLong(-1);
-
-                    //Create import task
-                    final Callable<Object> task =
-                            new CallableWithoutResult() {
-                                @Override
-                                protected void callWithoutResult() {
-                                    IMPORT_BASE_DIR.set(directoryUriStr);
-                                    importTime.set(System.nanoTime());
-                                    try {
-                                        importData(file, portalDataKey);
-                                    } finally {
-                                        importTime.set(System.nanoTime() - importTime.get());
-                                        IMPORT_BASE_DIR.remove();
-                                    }
-                                }
-                            };
-
-                    //Submit the import task
-                    final Future<?> importFuture = this.importExportThreadPool.submit(task);
+                    if (failOnError && !failedFutures.isEmpty()) {
+                        throw new RuntimeException(
+                                failedFutures.size()
+                                        + " "
+                                        + portalDataKey
+                                        + " entities failed to import.\n\n"
+                                        + "\tPer entity exception logs and a full report can be found in "
+                                        + logDirectory
+                                        + "\n");
+                    }
 
-                    //Add the future for tracking
-                    importFutures.offer(
-                            new ImportFuture(importFuture, file, portalDataKey, importTime));
+                    final long typeTime = System.nanoTime() - typeStart;
+                    logger.info(
+                            "Imported {} files of type {} in {}ms ({} files/second)",
+                            fileCount,
+                            portalDataKey,
+                            TimeUnit.NANOSECONDS.toMillis(typeTime),
+                            String.format("%.1f", getRate(fileCount, typeTime)));
+                    reportWriter.flush();
                 }
-
-                //Wait for all of the imports on of this type to complete
-                final List<FutureHolder<?>> newFailed =
-                        waitForFutures(importFutures, reportWriter, logDirectory, true);
-                failedFutures.addAll(newFailed);
-
-                if (failOnError && !failedFutures.isEmpty()) {
-                    throw new RuntimeException(
-                            failedFutures.size()
-                                    + " "
-                                    + portalDataKey
-                                    + " entities failed to import.\n\n"
-                                    + "\tPer entity exception logs and a full report can be found in "
-                                    + logDirectory
-                                    + "\n");
+            } finally {
+                //Stop parsing ahead if the import failed
+                for (final PreparedImport preparedImport : preparedImports) {
+                    preparedImport.cancel();
                 }
-
-                reportWriter.flush();
             }
 
+            logImportProgress(importedCount.get(), resourceCount, System.nanoTime() - importStart);
+
             if (!dataToImport.isEmpty()) {
                 throw new IllegalStateException(
                         "The following PortalDataKeys are not listed in the dataTypeImportOrder List: "
@@ -638,6 +708,54 @@ public class JaxbPortalDataHandlerService implements IPortalDataHandlerService {
         }
     }
 
+    /** Submit parse tasks for pending imports until {@link #maxPreparedImports} are queued */
+    private void prepareImports(
+            Queue<PreparedImport> pendingImports,
+            Queue<PreparedImport> preparedImports,
+            final String directoryUriStr) {
+        while (!pendingImports.isEmpty()
+                && (preparedImports.isEmpty()
+                        || preparedImports.size() < this.maxPreparedImports)) {
+            final PreparedImport preparedImport = pendingImports.poll();
+
+            final Callable<Callable<Object>> task =
+                    new Callable<Callable<Object>>() {
+                        @Override
+                        public Callable<Object> call() throws Exception {
+                            IMPORT_BASE_DIR.set(directoryUriStr);
+                            final long start = System.nanoTime();
+                            try {
+                                return prepareImport(
+                                        preparedImport.getResource(),
+                                        preparedImport.getDataKey());
+                            } finally {
+                                preparedImport.addImportTime(System.nanoTime() - start);
+                                IMPORT_BASE_DIR.remove();
+                            }
+                        }
+                    };
+
+            preparedImport.setPrepareFuture(this.importExportThreadPool.submit(task));
+            preparedImports.offer(preparedImport);
+        }
+    }
+
+    private void logImportProgress(long importedCount, long resourceCount, long time) {
+        logger.info(
+                "Imported {} of {} files in {}s ({} files/second)",
+                importedCount,
+                resourceCount,
+                TimeUnit.NANOSECONDS.toSeconds(time),
+                String.format("%.1f", getRate(importedCount, time)));
+    }
+
+    private static double getRate(long count, long time) {
+        if (time <= 0) {
+            return 0;
+        }
+        return count / (time / 1000000000.0);
+    }
+
     /** Determine directory to log import/export reports to */
     private File determineLogDirectory(final BatchOptions options, String operation) {
         File logDirectoryParent = options != null ? options.getLogDirectoryParent() : null;
@@ -671,6 +789,74 @@ public class JaxbPortalDataHandlerService implements IPortalDataHandlerService {
         //Get a StAX reader for the source to determine info about the data to import
         final BufferedXMLEventReader bufferedXmlEventReader = createSourceXmlEventReader(source);
 
+        final String systemId = source.getSystemId();
+        final Set<PortalDataKey> postProcessedPortalDataKeys =
+                getPostProcessedPortalDataKeys(systemId, portalDataKey, bufferedXmlEventReader);
+
+        this.importData(systemId, postProcessedPortalDataKeys, bufferedXmlEventReader);
+    }
+
+    /**
+     * Parse the data in a resource ahead of its import. Data with a registered importer is
+     * unmarshalled so the returned import only has to store it, data that needs to be upgraded is
+     * upgraded and imported by the returned import.
+     *
+     * @return The import of the parsed data
+     */
+    protected final Callable<Object> prepareImport(
+            final Resource resource, final PortalDataKey portalDataKey) {
+        final InputStream resourceStream;
+        try {
+            resourceStream = resource.getInputStream();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not load InputStream for resource: " + resource, e);
+        }
+
+        try {
+            final String systemId = ResourceUtils.getResourceUri(resource);
+            final BufferedXMLEventReader bufferedXmlEventReader =
+                    createSourceXmlEventReader(new StreamSource(resourceStream, systemId));
+            final Set<PortalDataKey> postProcessedPortalDataKeys =
+                    getPostProcessedPortalDataKeys(systemId, portalDataKey, bufferedXmlEventReader);
+
+            final IDataImporter<Object> dataImporter =
+                    postProcessedPortalDataKeys.size() == 1
+                            ? this.portalDataImporters.get(
+                                    DataAccessUtils.singleResult(postProcessedPortalDataKeys))
+                            : null;
+            if (dataImporter == null) {
+                //Upgrade or ordered import of multiple data keys, the events are already buffered
+                return new CallableWithoutResult() {
+                    @Override
+                    protected void callWithoutResult() {
+                        importData(systemId, postProcessedPortalDataKeys, bufferedXmlEventReader);
+                    }
+                };
+            }
+
+            this.logger.debug("Parsing: {}", getPartialSystemId(systemId));
+            final Object data = unmarshallData(bufferedXmlEventReader, dataImporter);
+            return new CallableWithoutResult() {
+                @Override
+                protected void callWithoutResult() {
+                    dataImporter.importData(data);
+                    logger.info("Imported : {}", getPartialSystemId(systemId));
+                }
+            };
+        } finally {
+            IOUtils.closeQuietly(resourceStream);
+        }
+    }
+
+    /**
+     * @param portalDataKey Optional PortalDataKey of the data, determined from the root element if
+     *     null
+     * @return The keys to import the data as after post processing by the data type
+     */
+    private Set<PortalDataKey> getPostProcessedPortalDataKeys(
+            String systemId,
+            PortalDataKey portalDataKey,
+            BufferedXMLEventReader bufferedXmlEventReader) {
         //If no PortalDataKey was passed build it from the source
         if (portalDataKey == null) {
             final StartElement rootElement = StaxUtils.getRootElement(bufferedXmlEventReader);
@@ -678,8 +864,6 @@ public class JaxbPortalDataHandlerService implements IPortalDataHandlerService {
             bufferedXmlEventReader.reset();
         }
 
-        final String systemId = source.getSystemId();
-
         //Post Process the PortalDataKey to see if more complex import operations are needed
         final IPortalDataType portalDataType = this.dataKeyTypes.get(portalDataKey);
         if (portalDataType == null) {
@@ -693,7 +877,13 @@ public class JaxbPortalDataHandlerService implements IPortalDataHandlerService {
                 portalDataType.postProcessPortalDataKey(
                         systemId, portalDataKey, bufferedXmlEventReader);
         bufferedXmlEventReader.reset();
+        return postProcessedPortalDataKeys;
+    }
 
+    private void importData(
+            String systemId,
+            Set<PortalDataKey> postProcessedPortalDataKeys,
+            BufferedXMLEventReader bufferedXmlEventReader) {
         //If only a single result from post processing import
         if (postProcessedPortalDataKeys.size() == 1) {
             this.importOrUpgradeData(
@@ -949,6 +1139,53 @@ public class JaxbPortalDataHandlerService implements IPortalDataHandlerService {
     @Override
     public void exportAllDataOfType(
             Set<String> typeIds, File directory, BatchExportOptions options) {
+        this.exportAllDataOfType(typeIds, directory, null, options);
+    }
+
+    @Override
+    public void exportDataArchive(Set<String> typeIds, File archive, BatchExportOptions options) {
+        final String archiveName = archive.getName().toLowerCase();
+        final File tempDir = Files.createTempDir();
+        OutputStream fileStream = null;
+        ArchiveOutputStream archiveStream = null;
+        boolean complete = false;
+        try {
+            fileStream = new BufferedOutputStream(new FileOutputStream(archive));
+            if (archiveName.endsWith(".tar.gz") || archiveName.endsWith(".tgz")) {
+                final TarArchiveOutputStream tarStream =
+                        new TarArchiveOutputStream(new GzipCompressorOutputStream(fileStream));
+                tarStream.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+                archiveStream = tarStream;
+            } else {
+                archiveStream = new ZipArchiveOutputStream(fileStream);
+            }
+
+            this.exportAllDataOfType(typeIds, tempDir, archiveStream, options);
+
+            archiveStream.finish();
+            complete = true;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write data archive: " + archive, e);
+        } finally {
+            IOUtils.closeQuietly(archiveStream);
+            IOUtils.closeQuietly(fileStream);
+            FileUtils.deleteQuietly(tempDir);
+            if (!complete) {
+                //Don't leave a partial archive behind
+                FileUtils.deleteQuietly(archive);
+            }
+        }
+    }
+
+    /**
+     * @param archiveStream Optional archive to move the exported files of each type to once the
+     *     type is exported
+     */
+    private void exportAllDataOfType(
+            Set<String> typeIds,
+            File directory,
+            ArchiveOutputStream archiveStream,
+            BatchExportOptions options) {
         final Queue<ExportFuture<?>> exportFutures = new ConcurrentLinkedQueue<ExportFuture<?>>();
         final boolean failOnError = options != null ? options.isFailOnError() : true;
 
@@ -1022,14 +1259,60 @@ public class JaxbPortalDataHandlerService implements IPortalDataHandlerService {
                                     + "\tPer entity exception logs and a full report can be found in "
                                     + logDirectory);
                 }
+
+                if (archiveStream != null) {
+                    this.moveToArchive(typeDir, typeId, archiveStream);
+                }
             }
         } catch (InterruptedException e) {
             throw new RuntimeException("Interrupted while waiting for entities to export", e);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to add exported entities to the data archive", e);
         } finally {
             IOUtils.closeQuietly(reportWriter);
         }
     }
 
+    /** Add the exported files of a type to the archive and delete them */
+    private void moveToArchive(File typeDir, String typeId, ArchiveOutputStream archiveStream)
+            throws IOException {
+        final int fileCount = this.addToArchive(typeDir, typeId + "/", archiveStream);
+        logger.info("Added {} files of type {} to the data archive", fileCount, typeId);
+
+        FileUtils.deleteDirectory(typeDir);
+    }
+
+    /**
+     * Add the files in the directory and its sub-directories to the archive
+     *
+     * @param path Path of the directory in the archive, ends with a /
+     * @return The number of files added
+     */
+    private int addToArchive(File directory, String path, ArchiveOutputStream archiveStream)
+            throws IOException {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+
+        Arrays.sort(files);
+        int fileCount = 0;
+        for (final File file : files) {
+            final String entryName = path + file.getName();
+            if (file.isDirectory()) {
+                fileCount += this.addToArchive(file, entryName + "/", archiveStream);
+                continue;
+            }
+
+            final ArchiveEntry entry = archiveStream.createArchiveEntry(file, entryName);
+            archiveStream.putArchiveEntry(entry);
+            Files.copy(file, archiveStream);
+            archiveStream.closeArchiveEntry();
+            fileCount++;
+        }
+        return fileCount;
+    }
+
     @Override
     public void exportAllData(File directory, BatchExportOptions options) {
         final Set<IPortalDataType> portalDataTypes;
@@ -1242,6 +1525,68 @@ public class JaxbPortalDataHandlerService implements IPortalDataHandlerService {
         }
     }
 
+    /** A file of a batch import, parsed ahead of its import */
+    private static class PreparedImport {
+        private final Resource resource;
+        private final PortalDataKey dataKey;
+        private final AtomicLong importTime = new AtomicLong();
+        private Future<Callable<Object>> prepareFuture;
+
+        public PreparedImport(Resource resource, PortalDataKey dataKey) {
+            this.resource = resource;
+            this.dataKey = dataKey;
+        }
+
+        public Resource getResource() {
+            return this.resource;
+        }
+
+        public PortalDataKey getDataKey() {
+            return this.dataKey;
+        }
+
+        /** @return Time spent parsing and importing the file */
+        public AtomicLong getImportTime() {
+            return this.importTime;
+        }
+
+        public void addImportTime(long time) {
+            this.importTime.addAndGet(time);
+        }
+
+        public void setPrepareFuture(Future<Callable<Object>> prepareFuture) {
+            this.prepareFuture = prepareFuture;
+        }
+
+        /** Wait for parsing to complete, failures are thrown by {@link #getImport()} */
+        public void awaitPrepared() throws InterruptedException {
+            try {
+                this.prepareFuture.get();
+            } catch (ExecutionException e) {
+                //Reported when the import is run
+            } catch (CancellationException e) {
+                //Reported when the import is run
+            }
+        }
+
+        /** @return The import of the parsed data, throws the parse failure if parsing failed */
+        public Callable<Object> getImport() throws Exception {
+            try {
+                return this.prepareFuture.get();
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            }
+        }
+
+        public void cancel() {
+            this.prepareFuture.cancel(true);
+        }
+    }
+
     private static class ExportFuture<T> extends FutureHolder<T> {
         private final String typeId;
         private final String dataId;
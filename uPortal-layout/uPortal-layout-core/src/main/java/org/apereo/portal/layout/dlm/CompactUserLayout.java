@@ -0,0 +1,897 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.layout.dlm;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Characters;
+import javax.xml.stream.events.Comment;
+import javax.xml.stream.events.EndElement;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.ProcessingInstruction;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import org.apereo.portal.xml.stream.BaseXMLEventReader;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Immutable copy of a user's layout document used for rendering. Each element is a single object
+ * that is also its own StAX start element event, holding its attributes and children in arrays.
+ * Attributes and end element events, along with the element names they hold, are interned and
+ * shared between all layouts, most of them are the same for every user that gets the same
+ * fragments.
+ *
+ * <p>The reader returned by {@link #getXMLEventReader()} walks the tree directly and returns the
+ * same events as a reader over the DOM the layout was created from, only the start and end
+ * document events are created per reader.
+ *
+ * <p>Elements with an ID attribute are indexed so the layout manager can answer node queries
+ * without a DOM. {@link #copyTo(Document)} rebuilds the DOM when the layout is edited.
+ *
+ * @since 5.0
+ */
+public final class CompactUserLayout {
+    private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newFactory();
+    private static final Interner<Object> INTERNER = Interners.newWeakInterner();
+
+    private static final Location NO_LOCATION =
+            new Location() {
+                @Override
+                public int getLineNumber() {
+                    return -1;
+                }
+
+                @Override
+                public int getColumnNumber() {
+                    return -1;
+                }
+
+                @Override
+                public int getCharacterOffset() {
+                    return -1;
+                }
+
+                @Override
+                public String getPublicId() {
+                    return null;
+                }
+
+                @Override
+                public String getSystemId() {
+                    return null;
+                }
+            };
+
+    private static final LayoutAttribute[] NO_ATTRIBUTES = new LayoutAttribute[0];
+    private static final Namespace[] NO_NAMESPACES = new Namespace[0];
+    private static final XMLEvent[] NO_CHILDREN = new XMLEvent[0];
+    private static final QName ID_NAME = new QName(Constants.ATT_ID);
+    private static final QName HIDDEN_NAME = new QName(Constants.ATT_HIDDEN);
+    private static final QName FNAME_NAME = new QName("fname");
+
+    private final LayoutElement root;
+    private final int elementCount;
+    //Elements with an ID attribute, sorted by ID
+    private final String[] ids;
+    private final LayoutElement[] elementsById;
+
+    private CompactUserLayout(LayoutElement root, int elementCount) {
+        this.root = root;
+        this.elementCount = elementCount;
+
+        final SortedMap<String, LayoutElement> index = new TreeMap<String, LayoutElement>();
+        indexElement(root, index);
+        this.ids = index.keySet().toArray(new String[index.size()]);
+        this.elementsById = index.values().toArray(new LayoutElement[index.size()]);
+    }
+
+    /** Copy the layout document into a compact layout */
+    public static CompactUserLayout create(Document layout) {
+        final int[] elementCount = new int[1];
+        final LayoutElement root = createElement(layout.getDocumentElement(), null, elementCount);
+        return new CompactUserLayout(root, elementCount[0]);
+    }
+
+    /** @return Number of elements in the layout */
+    public int getElementCount() {
+        return this.elementCount;
+    }
+
+    /** @return true if the layout has an element with the ID */
+    public boolean containsElement(String id) {
+        return this.getElementById(id) != null;
+    }
+
+    /** @return The name of the element with the ID, null if there is no such element */
+    public String getElementName(String id) {
+        final LayoutElement element = this.getElementById(id);
+        return element != null ? element.name.getLocalPart() : null;
+    }
+
+    /**
+     * @return The ID of the parent of the element, an empty string if the parent has no ID and
+     *     null if the element is the root of the layout or does not exist
+     */
+    public String getParentId(String id) {
+        final LayoutElement element = this.getElementById(id);
+        if (element == null || element.parent == null) {
+            return null;
+        }
+        return element.parent.getId();
+    }
+
+    /**
+     * @return The ID of the next sibling element, an empty string if the sibling has no ID and null
+     *     if there is no next sibling or the element does not exist
+     */
+    public String getNextSiblingId(String id) {
+        return this.getSiblingId(id, 1);
+    }
+
+    /**
+     * @return The ID of the previous sibling element, an empty string if the sibling has no ID and
+     *     null if there is no previous sibling or the element does not exist
+     */
+    public String getPreviousSiblingId(String id) {
+        return this.getSiblingId(id, -1);
+    }
+
+    /**
+     * @param visibleOnly Only include children with a hidden attribute of false
+     * @return The IDs of the child elements, an empty string for children without an ID. Empty if
+     *     the element does not exist.
+     */
+    public List<String> getChildIds(String id, boolean visibleOnly) {
+        final LayoutElement element = this.getElementById(id);
+        if (element == null) {
+            return Collections.emptyList();
+        }
+
+        final List<String> childIds = new ArrayList<String>();
+        for (final XMLEvent child : element.children) {
+            if (child instanceof LayoutElement) {
+                final LayoutElement childElement = (LayoutElement) child;
+                if (!visibleOnly || "false".equals(childElement.getAttributeValue(HIDDEN_NAME))) {
+                    childIds.add(childElement.getId());
+                }
+            }
+        }
+        return childIds;
+    }
+
+    /** @return The IDs of all channel elements in document order */
+    public List<String> getChannelIds() {
+        final List<String> channelIds = new ArrayList<String>();
+        this.findChannels(this.root, null, channelIds);
+        return channelIds;
+    }
+
+    /** @return The ID of the first channel with the functional name, null if there is none */
+    public String getChannelId(String fname) {
+        return this.getChannelId(this.root, fname);
+    }
+
+    /**
+     * @return The ID of the first channel with the functional name below the folder, null if there
+     *     is none or there is no folder with the ID
+     */
+    public String getChannelId(String folderId, String fname) {
+        final LayoutElement folder = this.getElementById(folderId);
+        if (folder == null || !Constants.ELM_FOLDER.equals(folder.name.getLocalPart())) {
+            return null;
+        }
+        return this.getChannelId(folder, fname);
+    }
+
+    /**
+     * Copy the element with the ID into the document without adding it to the document's tree.
+     *
+     * @param deep Also copy the children of the element
+     * @return The copied element, null if there is no element with the ID
+     */
+    public Element copyElement(String id, Document document, boolean deep) {
+        final LayoutElement element = this.getElementById(id);
+        if (element == null) {
+            return null;
+        }
+        return copyElement(element, document, deep);
+    }
+
+    /**
+     * Copy the layout into an empty document, elements with an ID attribute have it registered as
+     * their ID so {@link Document#getElementById(String)} finds them.
+     */
+    public void copyTo(Document document) {
+        document.appendChild(copyElement(this.root, document, true));
+    }
+
+    /** @return A new reader over the layout, starting with the start document event */
+    public XMLEventReader getXMLEventReader() {
+        return new LayoutEventReader(this.root);
+    }
+
+    private static LayoutElement createElement(
+            Element element, LayoutElement parent, int[] elementCount) {
+        elementCount[0]++;
+
+        final List<LayoutAttribute> attributes = new ArrayList<LayoutAttribute>();
+        final List<Namespace> namespaces = new ArrayList<Namespace>();
+        final NamedNodeMap attributeNodes = element.getAttributes();
+        for (int i = 0; i < attributeNodes.getLength(); i++) {
+            final Node attributeNode = attributeNodes.item(i);
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attributeNode.getNamespaceURI())) {
+                if (XMLConstants.XMLNS_ATTRIBUTE.equals(attributeNode.getNodeName())) {
+                    namespaces.add(EVENT_FACTORY.createNamespace(attributeNode.getNodeValue()));
+                } else {
+                    namespaces.add(
+                            EVENT_FACTORY.createNamespace(
+                                    attributeNode.getLocalName(), attributeNode.getNodeValue()));
+                }
+            } else {
+                attributes.add(
+                        intern(
+                                new LayoutAttribute(
+                                        getName(attributeNode), attributeNode.getNodeValue())));
+            }
+        }
+
+        final LayoutElement layoutElement =
+                new LayoutElement(
+                        getName(element),
+                        attributes.toArray(NO_ATTRIBUTES),
+                        namespaces.isEmpty() ? NO_NAMESPACES : namespaces.toArray(NO_NAMESPACES),
+                        parent);
+
+        final List<XMLEvent> children = new ArrayList<XMLEvent>();
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            switch (child.getNodeType()) {
+                case Node.ELEMENT_NODE:
+                    children.add(createElement((Element) child, layoutElement, elementCount));
+                    break;
+                case Node.TEXT_NODE:
+                    children.add(EVENT_FACTORY.createCharacters(child.getNodeValue()));
+                    break;
+                case Node.CDATA_SECTION_NODE:
+                    children.add(EVENT_FACTORY.createCData(child.getNodeValue()));
+                    break;
+                case Node.COMMENT_NODE:
+                    children.add(EVENT_FACTORY.createComment(child.getNodeValue()));
+                    break;
+                case Node.PROCESSING_INSTRUCTION_NODE:
+                    children.add(
+                            EVENT_FACTORY.createProcessingInstruction(
+                                    child.getNodeName(), child.getNodeValue()));
+                    break;
+                default:
+                    //Entity references are expanded when the layout is loaded
+                    break;
+            }
+        }
+        layoutElement.children = children.isEmpty() ? NO_CHILDREN : children.toArray(NO_CHILDREN);
+
+        return layoutElement;
+    }
+
+    private static void indexElement(LayoutElement element, Map<String, LayoutElement> index) {
+        final String id = element.getAttributeValue(ID_NAME);
+        if (id != null) {
+            index.put(id, element);
+        }
+        for (final XMLEvent child : element.children) {
+            if (child instanceof LayoutElement) {
+                indexElement((LayoutElement) child, index);
+            }
+        }
+    }
+
+    private LayoutElement getElementById(String id) {
+        final int index = Arrays.binarySearch(this.ids, id);
+        return index >= 0 ? this.elementsById[index] : null;
+    }
+
+    private String getSiblingId(String id, int direction) {
+        final LayoutElement element = this.getElementById(id);
+        if (element == null || element.parent == null) {
+            return null;
+        }
+
+        final XMLEvent[] siblings = element.parent.children;
+        int index = Arrays.asList(siblings).indexOf(element) + direction;
+        for (; index >= 0 && index < siblings.length; index += direction) {
+            if (siblings[index] instanceof LayoutElement) {
+                return ((LayoutElement) siblings[index]).getId();
+            }
+        }
+        return null;
+    }
+
+    private String getChannelId(LayoutElement element, String fname) {
+        final List<String> channelIds = new ArrayList<String>(1);
+        this.findChannels(element, fname, channelIds);
+        if (channelIds.isEmpty() || channelIds.get(0).isEmpty()) {
+            return null;
+        }
+        return channelIds.get(0);
+    }
+
+    private void findChannels(LayoutElement element, String fname, List<String> channelIds) {
+        if (Constants.ELM_CHANNEL.equals(element.name.getLocalPart())
+                && (fname == null || fname.equals(element.getAttributeValue(FNAME_NAME)))) {
+            channelIds.add(element.getId());
+            if (fname != null) {
+                return;
+            }
+        }
+        for (final XMLEvent child : element.children) {
+            if (child instanceof LayoutElement) {
+                this.findChannels((LayoutElement) child, fname, channelIds);
+                if (fname != null && !channelIds.isEmpty()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static Element copyElement(LayoutElement element, Document document, boolean deep) {
+        final Element copy;
+        final String namespaceURI = element.name.getNamespaceURI();
+        if (namespaceURI.isEmpty() && element.name.getLocalPart().indexOf(':') >= 0) {
+            //DOM Level 1 node
+            copy = document.createElement(element.name.getLocalPart());
+        } else {
+            copy =
+                    document.createElementNS(
+                            emptyToNull(namespaceURI), getQualifiedName(element.name));
+        }
+
+        for (final Namespace namespace : element.namespaces) {
+            final String prefix = namespace.getPrefix();
+            copy.setAttributeNS(
+                    XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                    prefix.isEmpty()
+                            ? XMLConstants.XMLNS_ATTRIBUTE
+                            : XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix,
+                    namespace.getNamespaceURI());
+        }
+        for (final LayoutAttribute attribute : element.attributes) {
+            final String attributeNamespaceURI = attribute.name.getNamespaceURI();
+            if (attributeNamespaceURI.isEmpty()
+                    && attribute.name.getLocalPart().indexOf(':') >= 0) {
+                copy.setAttribute(attribute.name.getLocalPart(), attribute.value);
+            } else {
+                copy.setAttributeNS(
+                        emptyToNull(attributeNamespaceURI),
+                        getQualifiedName(attribute.name),
+                        attribute.value);
+            }
+        }
+        if (copy.hasAttribute(Constants.ATT_ID)) {
+            copy.setIdAttribute(Constants.ATT_ID, true);
+        }
+
+        if (deep) {
+            for (final XMLEvent child : element.children) {
+                switch (child.getEventType()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        copy.appendChild(copyElement((LayoutElement) child, document, true));
+                        break;
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.CHARACTERS:
+                        final Characters characters = child.asCharacters();
+                        copy.appendChild(
+                                characters.isCData()
+                                        ? document.createCDATASection(characters.getData())
+                                        : document.createTextNode(characters.getData()));
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        copy.appendChild(document.createComment(((Comment) child).getText()));
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        final ProcessingInstruction processingInstruction =
+                                (ProcessingInstruction) child;
+                        copy.appendChild(
+                                document.createProcessingInstruction(
+                                        processingInstruction.getTarget(),
+                                        processingInstruction.getData()));
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        return copy;
+    }
+
+    private static String getQualifiedName(QName name) {
+        final String prefix = name.getPrefix();
+        if (prefix.isEmpty()) {
+            return name.getLocalPart();
+        }
+        return prefix + ":" + name.getLocalPart();
+    }
+
+    private static String emptyToNull(String namespaceURI) {
+        return namespaceURI.isEmpty() ? null : namespaceURI;
+    }
+
+    private static QName getName(Node node) {
+        final String localName = node.getLocalName();
+        if (localName == null) {
+            //DOM Level 1 node
+            return new QName(node.getNodeName());
+        }
+
+        final String namespaceURI = node.getNamespaceURI();
+        final String prefix = node.getPrefix();
+        return new QName(
+                namespaceURI != null ? namespaceURI : XMLConstants.NULL_NS_URI,
+                localName,
+                prefix != null ? prefix : XMLConstants.DEFAULT_NS_PREFIX);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T intern(T value) {
+        return (T) INTERNER.intern(value);
+    }
+
+    /** Base for the events of the layout, none of them has a location */
+    private abstract static class LayoutEvent implements XMLEvent {
+        @Override
+        public Location getLocation() {
+            return NO_LOCATION;
+        }
+
+        @Override
+        public boolean isStartElement() {
+            return this.getEventType() == XMLStreamConstants.START_ELEMENT;
+        }
+
+        @Override
+        public boolean isAttribute() {
+            return this.getEventType() == XMLStreamConstants.ATTRIBUTE;
+        }
+
+        @Override
+        public boolean isNamespace() {
+            return false;
+        }
+
+        @Override
+        public boolean isEndElement() {
+            return this.getEventType() == XMLStreamConstants.END_ELEMENT;
+        }
+
+        @Override
+        public boolean isEntityReference() {
+            return false;
+        }
+
+        @Override
+        public boolean isProcessingInstruction() {
+            return false;
+        }
+
+        @Override
+        public boolean isCharacters() {
+            return false;
+        }
+
+        @Override
+        public boolean isStartDocument() {
+            return false;
+        }
+
+        @Override
+        public boolean isEndDocument() {
+            return false;
+        }
+
+        @Override
+        public StartElement asStartElement() {
+            return (StartElement) this;
+        }
+
+        @Override
+        public EndElement asEndElement() {
+            return (EndElement) this;
+        }
+
+        @Override
+        public Characters asCharacters() {
+            throw new ClassCastException(this + " is not a Characters event");
+        }
+
+        @Override
+        public QName getSchemaType() {
+            return null;
+        }
+
+        @Override
+        public void writeAsEncodedUnicode(Writer writer) throws XMLStreamException {
+            try {
+                writer.write(this.toString());
+            } catch (IOException e) {
+                throw new XMLStreamException(e);
+            }
+        }
+
+        //QName.equals ignores the prefix
+        protected static boolean equals(QName name, QName other) {
+            return name.equals(other) && name.getPrefix().equals(other.getPrefix());
+        }
+
+        protected static String toString(QName name) {
+            final String prefix = name.getPrefix();
+            if (prefix.isEmpty()) {
+                return name.getLocalPart();
+            }
+            return prefix + ":" + name.getLocalPart();
+        }
+    }
+
+    private static final class LayoutAttribute extends LayoutEvent implements Attribute {
+        private final QName name;
+        private final String value;
+
+        public LayoutAttribute(QName name, String value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public int getEventType() {
+            return XMLStreamConstants.ATTRIBUTE;
+        }
+
+        @Override
+        public QName getName() {
+            return this.name;
+        }
+
+        @Override
+        public String getValue() {
+            return this.value;
+        }
+
+        @Override
+        public String getDTDType() {
+            return "CDATA";
+        }
+
+        @Override
+        public boolean isSpecified() {
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.name.hashCode() + this.value.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof LayoutAttribute)) return false;
+            final LayoutAttribute other = (LayoutAttribute) obj;
+            return equals(this.name, other.name) && this.value.equals(other.value);
+        }
+
+        @Override
+        public String toString() {
+            return toString(this.name) + "=\"" + this.value + "\"";
+        }
+    }
+
+    private static final class LayoutElement extends LayoutEvent implements StartElement {
+        private final QName name;
+        private final LayoutAttribute[] attributes;
+        private final Namespace[] namespaces;
+        private final LayoutElement parent;
+        private final EndElement endElement;
+        //Set once all of the children are created
+        private XMLEvent[] children;
+
+        public LayoutElement(
+                QName name,
+                LayoutAttribute[] attributes,
+                Namespace[] namespaces,
+                LayoutElement parent) {
+            this.attributes = attributes;
+            this.namespaces = namespaces;
+            this.parent = parent;
+
+            //The interned end element also provides the shared name
+            if (namespaces.length == 0) {
+                this.endElement = intern(new LayoutEndElement(name, namespaces));
+                this.name = this.endElement.getName();
+            } else {
+                this.endElement = new LayoutEndElement(name, namespaces);
+                this.name = name;
+            }
+        }
+
+        @Override
+        public int getEventType() {
+            return XMLStreamConstants.START_ELEMENT;
+        }
+
+        @Override
+        public QName getName() {
+            return this.name;
+        }
+
+        @Override
+        public Iterator<Attribute> getAttributes() {
+            return Collections.<Attribute>unmodifiableList(Arrays.asList(this.attributes))
+                    .iterator();
+        }
+
+        @Override
+        public Iterator<Namespace> getNamespaces() {
+            return Collections.unmodifiableList(Arrays.asList(this.namespaces)).iterator();
+        }
+
+        @Override
+        public Attribute getAttributeByName(QName name) {
+            for (final LayoutAttribute attribute : this.attributes) {
+                if (attribute.name.equals(name)) {
+                    return attribute;
+                }
+            }
+            return null;
+        }
+
+        /** @return Value of the attribute, null if the element doesn't have it */
+        public String getAttributeValue(QName name) {
+            final Attribute attribute = this.getAttributeByName(name);
+            return attribute != null ? attribute.getValue() : null;
+        }
+
+        /** @return Value of the ID attribute, an empty string if the element doesn't have one */
+        public String getId() {
+            final String id = this.getAttributeValue(ID_NAME);
+            return id != null ? id : "";
+        }
+
+        @Override
+        public NamespaceContext getNamespaceContext() {
+            return new NamespaceContext() {
+                @Override
+                public String getNamespaceURI(String prefix) {
+                    return LayoutElement.this.getNamespaceURI(prefix);
+                }
+
+                @Override
+                public String getPrefix(String namespaceURI) {
+                    for (LayoutElement e = LayoutElement.this; e != null; e = e.parent) {
+                        for (final Namespace namespace : e.namespaces) {
+                            if (namespace.getNamespaceURI().equals(namespaceURI)) {
+                                return namespace.getPrefix();
+                            }
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                public Iterator<String> getPrefixes(String namespaceURI) {
+                    final String prefix = this.getPrefix(namespaceURI);
+                    if (prefix == null) {
+                        return Collections.<String>emptyIterator();
+                    }
+                    return Collections.singleton(prefix).iterator();
+                }
+            };
+        }
+
+        @Override
+        public String getNamespaceURI(String prefix) {
+            if (XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+                return XMLConstants.XML_NS_URI;
+            }
+            if (XMLConstants.XMLNS_ATTRIBUTE.equals(prefix)) {
+                return XMLConstants.XMLNS_ATTRIBUTE_NS_URI;
+            }
+            for (LayoutElement e = this; e != null; e = e.parent) {
+                for (final Namespace namespace : e.namespaces) {
+                    if (namespace.getPrefix().equals(prefix)) {
+                        return namespace.getNamespaceURI();
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder("<").append(toString(this.name));
+            for (final Namespace namespace : this.namespaces) {
+                builder.append(' ').append(namespace);
+            }
+            for (final LayoutAttribute attribute : this.attributes) {
+                builder.append(' ').append(attribute);
+            }
+            return builder.append('>').toString();
+        }
+    }
+
+    private static final class LayoutEndElement extends LayoutEvent implements EndElement {
+        private final QName name;
+        private final Namespace[] namespaces;
+
+        public LayoutEndElement(QName name, Namespace[] namespaces) {
+            this.name = name;
+            this.namespaces = namespaces;
+        }
+
+        @Override
+        public int getEventType() {
+            return XMLStreamConstants.END_ELEMENT;
+        }
+
+        @Override
+        public QName getName() {
+            return this.name;
+        }
+
+        @Override
+        public Iterator<Namespace> getNamespaces() {
+            return Collections.unmodifiableList(Arrays.asList(this.namespaces)).iterator();
+        }
+
+        //Only end elements without namespaces are interned
+        @Override
+        public int hashCode() {
+            return this.name.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof LayoutEndElement)) return false;
+            final LayoutEndElement other = (LayoutEndElement) obj;
+            return equals(this.name, other.name)
+                    && Arrays.equals(this.namespaces, other.namespaces);
+        }
+
+        @Override
+        public String toString() {
+            return "</" + toString(this.name) + ">";
+        }
+    }
+
+    /** Depth first walk of the layout tree using an array based stack */
+    private static final class LayoutEventReader extends BaseXMLEventReader {
+        private final LayoutElement root;
+
+        private LayoutElement[] elements = new LayoutElement[16];
+        private int[] childIndexes = new int[16];
+        private int depth = 0;
+        private boolean started = false;
+        private boolean ended = false;
+        private XMLEvent peekedEvent;
+
+        public LayoutEventReader(LayoutElement root) {
+            //All methods that would use the delegate are overridden
+            super(null);
+            this.root = root;
+        }
+
+        @Override
+        protected XMLEvent internalNextEvent() throws XMLStreamException {
+            final XMLEvent event = this.peek();
+            if (event == null) {
+                throw new NoSuchElementException();
+            }
+            this.peekedEvent = null;
+            return event;
+        }
+
+        @Override
+        public XMLEvent peek() {
+            if (this.peekedEvent == null) {
+                this.peekedEvent = this.advance();
+            }
+            return this.peekedEvent;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.peek() != null;
+        }
+
+        private XMLEvent advance() {
+            if (!this.started) {
+                this.started = true;
+                return EVENT_FACTORY.createStartDocument();
+            }
+            if (this.depth == 0) {
+                if (this.elements[0] == null) {
+                    this.push(this.root);
+                    return this.root;
+                }
+                if (!this.ended) {
+                    this.ended = true;
+                    return EVENT_FACTORY.createEndDocument();
+                }
+                return null;
+            }
+
+            final int current = this.depth - 1;
+            final LayoutElement element = this.elements[current];
+            final int childIndex = this.childIndexes[current];
+            if (childIndex < element.children.length) {
+                this.childIndexes[current] = childIndex + 1;
+                final XMLEvent child = element.children[childIndex];
+                if (child instanceof LayoutElement) {
+                    this.push((LayoutElement) child);
+                }
+                return child;
+            }
+
+            this.depth--;
+            return element.endElement;
+        }
+
+        private void push(LayoutElement element) {
+            if (this.depth == this.elements.length) {
+                this.elements = Arrays.copyOf(this.elements, this.depth * 2);
+                this.childIndexes = Arrays.copyOf(this.childIndexes, this.depth * 2);
+            }
+            this.elements[this.depth] = element;
+            this.childIndexes[this.depth] = 0;
+            this.depth++;
+        }
+
+        @Override
+        public Object getProperty(String name) throws IllegalArgumentException {
+            throw new IllegalArgumentException("Property " + name + " is not supported");
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            //NO-OP
+        }
+    }
+}
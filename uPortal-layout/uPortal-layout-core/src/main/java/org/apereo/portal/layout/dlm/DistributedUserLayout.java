@@ -18,14 +18,24 @@ import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Set;
 import org.apereo.portal.layout.om.IStylesheetUserPreferences;
+import org.apereo.portal.utils.DocumentFactory;
 import org.w3c.dom.Document;
 
-/** A user's layout and meta-data about that layout */
+/**
+ * A user's layout and meta-data about that layout.
+ *
+ * <p>The layout is held as a {@link CompactUserLayout} once {@link #releaseLayout()} is called,
+ * which is the form kept in the layout cache. The layout document is only built again when an edit
+ * path asks for it through {@link #getLayout()}, and is kept until the edited layout is released
+ * again after it is saved.
+ */
 public class DistributedUserLayout {
-    private final Document layout;
     private final Set<String> fragmentNames;
     private final IStylesheetUserPreferences distributedStructureStylesheetUserPreferences;
     private final IStylesheetUserPreferences distributedThemeStylesheetUserPreferences;
+    private Document layout;
+    //Null while the layout document has changes the compact layout does not have
+    private CompactUserLayout compactLayout;
 
     /**
      * This constructor seems to be used with fragment owners.
@@ -56,11 +66,70 @@ public class DistributedUserLayout {
         this.distributedThemeStylesheetUserPreferences = distributedThemeStylesheetUserPreferences;
     }
 
-    /** @return The layout document */
-    public Document getLayout() {
+    /**
+     * Only for edit paths, the document is rebuilt from the compact layout if it was released and
+     * is kept until {@link #releaseLayout()} is called. Call {@link #layoutChanged()} after
+     * modifying it. Read only callers should use {@link #getReadOnlyLayout()}.
+     *
+     * @return The layout document
+     */
+    public synchronized Document getLayout() {
+        if (this.layout == null) {
+            final Document layout = DocumentFactory.getThreadDocument();
+            this.compactLayout.copyTo(layout);
+            this.layout = layout;
+        }
         return this.layout;
     }
 
+    /**
+     * @return The layout document if it is held for editing, otherwise a new document built from
+     *     the compact layout that is not kept. The document must not be modified.
+     */
+    public synchronized Document getReadOnlyLayout() {
+        if (this.layout != null) {
+            return this.layout;
+        }
+        final Document layout = DocumentFactory.getThreadDocument();
+        this.compactLayout.copyTo(layout);
+        return layout;
+    }
+
+    /**
+     * @return The layout document if it is held for editing, null if only the compact layout is
+     *     held
+     */
+    public synchronized Document getLayoutIfPresent() {
+        return this.layout;
+    }
+
+    /** @return Compact copy of the layout, created from the layout document if it changed */
+    public synchronized CompactUserLayout getCompactLayout() {
+        if (this.compactLayout == null) {
+            this.compactLayout = CompactUserLayout.create(this.layout);
+        }
+        return this.compactLayout;
+    }
+
+    /**
+     * Discards the compact copy of the layout, must be called after the document is modified. Has
+     * no effect if the document is not held, the compact layout is then current.
+     */
+    public synchronized void layoutChanged() {
+        if (this.layout != null) {
+            this.compactLayout = null;
+        }
+    }
+
+    /**
+     * Drops the layout document, keeping only the compact layout. Called once the layout is
+     * loaded and again after an edited layout is saved.
+     */
+    public synchronized void releaseLayout() {
+        this.getCompactLayout();
+        this.layout = null;
+    }
+
     public IStylesheetUserPreferences getDistributedStructureStylesheetUserPreferences() {
         return this.distributedStructureStylesheetUserPreferences;
     }
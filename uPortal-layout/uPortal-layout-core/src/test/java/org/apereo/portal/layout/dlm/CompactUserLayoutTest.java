@@ -0,0 +1,249 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.layout.dlm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+public class CompactUserLayoutTest {
+    private static final String LAYOUT =
+            "<layout xmlns:dlm=\"http://www.uportal.org/layout/dlm\" ID=\"u1l1\">"
+                    + "<folder ID=\"s1\" name=\"Root folder\" type=\"root\" hidden=\"false\">"
+                    + "<folder ID=\"u2l1s2\" name=\"Welcome\" type=\"regular\" hidden=\"false\""
+                    + " dlm:deleteAllowed=\"false\" dlm:precedence=\"80.0\">"
+                    + "<folder ID=\"u2l1s3\" type=\"regular\" hidden=\"false\">"
+                    + "<channel ID=\"u2l1n4\" fname=\"welcome\" chanID=\"12\" hidden=\"false\">"
+                    + "<parameter name=\"showPlaceholder\" value=\"false\"/>"
+                    + "</channel>"
+                    + "<channel ID=\"u2l1n5\" fname=\"weather\" chanID=\"18\" hidden=\"false\"/>"
+                    + "</folder>"
+                    + "</folder>"
+                    + "<folder ID=\"s6\" name=\"My Tab\" type=\"regular\" hidden=\"false\">"
+                    + "<!-- added by the user -->"
+                    + "<channel ID=\"n7\" fname=\"calendar\" chanID=\"20\" hidden=\"false\"/>"
+                    + "</folder>"
+                    + "</folder>"
+                    + "</layout>";
+
+    @Test
+    public void testSameEventsAsParsedLayout() throws Exception {
+        final CompactUserLayout compactLayout = CompactUserLayout.create(parse(LAYOUT));
+        assertEquals(9, compactLayout.getElementCount());
+
+        final XMLEventReader parsedReader =
+                XMLInputFactory.newFactory().createXMLEventReader(new StringReader(LAYOUT));
+        final List<String> expected = describe(parsedReader);
+        final List<String> actual = describe(compactLayout.getXMLEventReader());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testReader() throws Exception {
+        final XMLEventReader reader = CompactUserLayout.create(parse(LAYOUT)).getXMLEventReader();
+        assertTrue(reader.nextEvent().isStartDocument());
+        assertTrue(reader.peek().isStartElement());
+
+        final StartElement layout = reader.nextEvent().asStartElement();
+        assertEquals("layout", layout.getName().getLocalPart());
+        assertEquals("http://www.uportal.org/layout/dlm", layout.getNamespaceURI("dlm"));
+
+        final StartElement root = reader.nextTag().asStartElement();
+        assertEquals("s1", root.getAttributeByName(new QName("ID")).getValue());
+        assertNull(root.getAttributeByName(new QName("fname")));
+        assertEquals(
+                "http://www.uportal.org/layout/dlm",
+                root.getNamespaceContext().getNamespaceURI("dlm"));
+
+        while (reader.hasNext()) {
+            reader.nextEvent();
+        }
+        assertFalse(reader.hasNext());
+        assertNull(reader.peek());
+    }
+
+    @Test
+    public void testSharedEvents() throws Exception {
+        final XMLEventReader first = CompactUserLayout.create(parse(LAYOUT)).getXMLEventReader();
+        final XMLEventReader second = CompactUserLayout.create(parse(LAYOUT)).getXMLEventReader();
+
+        while (first.hasNext()) {
+            final XMLEvent firstEvent = first.nextEvent();
+            final XMLEvent secondEvent = second.nextEvent();
+            if (firstEvent.isStartElement()) {
+                final Iterator<?> firstAttributes = firstEvent.asStartElement().getAttributes();
+                final Iterator<?> secondAttributes = secondEvent.asStartElement().getAttributes();
+                while (firstAttributes.hasNext()) {
+                    assertSame(firstAttributes.next(), secondAttributes.next());
+                }
+                //Elements that declare namespaces are not shared
+                if (!firstEvent.asStartElement().getNamespaces().hasNext()) {
+                    assertSame(
+                            firstEvent.asStartElement().getName(),
+                            secondEvent.asStartElement().getName());
+                }
+            } else if (firstEvent.isEndElement()
+                    && !firstEvent.asEndElement().getNamespaces().hasNext()) {
+                assertSame(firstEvent, secondEvent);
+            }
+        }
+    }
+
+    @Test
+    public void testCopyTo() throws Exception {
+        final CompactUserLayout compactLayout = CompactUserLayout.create(parse(LAYOUT));
+        final Document document = newDocument();
+        compactLayout.copyTo(document);
+
+        //The copy reads back as the same layout and can be compacted again
+        final List<String> expected = describe(compactLayout.getXMLEventReader());
+        final CompactUserLayout copiedLayout = CompactUserLayout.create(document);
+        assertEquals(expected, describe(copiedLayout.getXMLEventReader()));
+
+        final Element channel = document.getElementById("u2l1n4");
+        assertNotNull(channel);
+        assertEquals("welcome", channel.getAttribute("fname"));
+        assertEquals(
+                "80.0",
+                document.getElementById("u2l1s2")
+                        .getAttributeNS("http://www.uportal.org/layout/dlm", "precedence"));
+    }
+
+    @Test
+    public void testNavigation() throws Exception {
+        final CompactUserLayout compactLayout = CompactUserLayout.create(parse(LAYOUT));
+
+        assertTrue(compactLayout.containsElement("u2l1s3"));
+        assertFalse(compactLayout.containsElement("missing"));
+        assertEquals("folder", compactLayout.getElementName("u2l1s3"));
+        assertEquals("channel", compactLayout.getElementName("n7"));
+        assertNull(compactLayout.getElementName("missing"));
+
+        assertEquals("u2l1s3", compactLayout.getParentId("u2l1n5"));
+        assertEquals("u1l1", compactLayout.getParentId("s1"));
+        assertNull(compactLayout.getParentId("u1l1"));
+        assertNull(compactLayout.getParentId("missing"));
+
+        assertEquals("u2l1n5", compactLayout.getNextSiblingId("u2l1n4"));
+        assertNull(compactLayout.getNextSiblingId("u2l1n5"));
+        assertEquals("u2l1n4", compactLayout.getPreviousSiblingId("u2l1n5"));
+        assertNull(compactLayout.getPreviousSiblingId("u2l1n4"));
+        //The comment before the channel is not a sibling
+        assertNull(compactLayout.getPreviousSiblingId("n7"));
+        assertEquals("s6", compactLayout.getNextSiblingId("u2l1s2"));
+
+        assertEquals(Arrays.asList("u2l1s2", "s6"), compactLayout.getChildIds("s1", true));
+        assertEquals(Arrays.asList("u2l1s2", "s6"), compactLayout.getChildIds("s1", false));
+        //The parameter has neither an ID nor a hidden attribute
+        assertEquals(Collections.singletonList(""), compactLayout.getChildIds("u2l1n4", false));
+        assertEquals(Collections.emptyList(), compactLayout.getChildIds("u2l1n4", true));
+        assertEquals(Collections.emptyList(), compactLayout.getChildIds("missing", false));
+    }
+
+    @Test
+    public void testChannelIds() throws Exception {
+        final CompactUserLayout compactLayout = CompactUserLayout.create(parse(LAYOUT));
+
+        assertEquals(Arrays.asList("u2l1n4", "u2l1n5", "n7"), compactLayout.getChannelIds());
+        assertEquals("u2l1n5", compactLayout.getChannelId("weather"));
+        assertNull(compactLayout.getChannelId("missing"));
+
+        assertEquals("u2l1n5", compactLayout.getChannelId("u2l1s2", "weather"));
+        assertEquals("n7", compactLayout.getChannelId("s6", "calendar"));
+        assertNull(compactLayout.getChannelId("s6", "weather"));
+        //Only folders are searched
+        assertNull(compactLayout.getChannelId("u2l1n4", "welcome"));
+        assertNull(compactLayout.getChannelId("missing", "welcome"));
+    }
+
+    @Test
+    public void testCopyElement() throws Exception {
+        final CompactUserLayout compactLayout = CompactUserLayout.create(parse(LAYOUT));
+        final Document document = newDocument();
+
+        final Element channel = compactLayout.copyElement("u2l1n4", document, true);
+        assertEquals("channel", channel.getTagName());
+        assertEquals("12", channel.getAttribute("chanID"));
+        assertNull(channel.getParentNode());
+        assertEquals(1, channel.getElementsByTagName("parameter").getLength());
+
+        final Element folder = compactLayout.copyElement("u2l1s2", document, false);
+        assertEquals("Welcome", folder.getAttribute("name"));
+        assertEquals(
+                "false",
+                folder.getAttributeNS("http://www.uportal.org/layout/dlm", "deleteAllowed"));
+        assertNull(folder.getFirstChild());
+
+        assertNull(compactLayout.copyElement("missing", document, true));
+    }
+
+    private static Document newDocument() throws Exception {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().newDocument();
+    }
+
+    private static Document parse(String xml) throws Exception {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+    }
+
+    private static List<String> describe(XMLEventReader reader) throws Exception {
+        final List<String> events = new ArrayList<String>();
+        while (reader.hasNext()) {
+            final XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) {
+                final StartElement startElement = event.asStartElement();
+                final Map<String, String> attributes = new TreeMap<String, String>();
+                for (final Iterator<?> itr = startElement.getAttributes(); itr.hasNext(); ) {
+                    final Attribute attribute = (Attribute) itr.next();
+                    attributes.put(attribute.getName().toString(), attribute.getValue());
+                }
+                events.add("start " + startElement.getName() + " " + attributes);
+            } else if (event.isEndElement()) {
+                events.add("end " + event.asEndElement().getName());
+            } else if (event.isCharacters()) {
+                events.add("characters " + event.asCharacters().getData());
+            } else {
+                events.add(Integer.toString(event.getEventType()));
+            }
+        }
+        return events;
+    }
+}
@@ -27,9 +27,6 @@ import java.util.Random;
 import java.util.Set;
 import java.util.Vector;
 import javax.xml.stream.XMLEventReader;
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLStreamException;
-import javax.xml.transform.dom.DOMSource;
 import javax.xml.xpath.XPathConstants;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -56,7 +53,7 @@ import org.apereo.portal.security.IAuthorizationService;
 import org.apereo.portal.security.IPerson;
 import org.apereo.portal.security.PersonFactory;
 import org.apereo.portal.spring.locator.PortletDefinitionRegistryLocator;
-import org.apereo.portal.xml.XmlUtilities;
+import org.apereo.portal.utils.DocumentFactory;
 import org.apereo.portal.xml.xpath.XPathOperations;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -75,7 +72,6 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
 
     private static final Log LOG = LogFactory.getLog(DistributedLayoutManager.class);
 
-    private XmlUtilities xmlUtilities;
     private ILayoutCachingService layoutCachingService;
     private IUserLayoutStore distributedLayoutStore;
     private XPathOperations xpathOperations;
@@ -133,11 +129,6 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
         this.xpathOperations = xpathOperations;
     }
 
-    @Autowired
-    public void setXmlUtilities(XmlUtilities xmlUtilities) {
-        this.xmlUtilities = xmlUtilities;
-    }
-
     @Autowired
     public void setLayoutCachingService(ILayoutCachingService layoutCachingService) {
         this.layoutCachingService = layoutCachingService;
@@ -198,8 +189,15 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
     @Deprecated
     @Override
     public Document getUserLayoutDOM() {
-        final DistributedUserLayout userLayout = getDistributedUserLayout();
-        return userLayout.getLayout();
+        return getLayoutDocument();
+    }
+
+    /**
+     * @return The layout document for editing, built from the compact layout and kept until the
+     *     layout is saved
+     */
+    private Document getLayoutDocument() {
+        return getDistributedUserLayout().getLayout();
     }
 
     protected DistributedUserLayout getDistributedUserLayout() {
@@ -263,30 +261,17 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
             }
 
             setUserLayoutDOM(userLayout);
+
+            // Only the compact layout is cached until the layout is edited
+            userLayout.releaseLayout();
         }
         return userLayout;
     }
 
     @Override
     public XMLEventReader getUserLayoutReader() {
-        Document ul = this.getUserLayoutDOM();
-        if (ul == null) {
-            throw new PortalException(
-                    "User layout has not been initialized for "
-                            + owner.getAttribute(IPerson.USERNAME));
-        }
-
-        final XMLInputFactory xmlInputFactory = this.xmlUtilities.getXmlInputFactory();
-
-        final DOMSource layoutSoure = new DOMSource(ul);
-        try {
-            return xmlInputFactory.createXMLEventReader(layoutSoure);
-        } catch (XMLStreamException e) {
-            throw new RuntimeException(
-                    "Failed to create Layout XMLStreamReader for user: "
-                            + owner.getAttribute(IPerson.USERNAME),
-                    e);
-        }
+        final DistributedUserLayout userLayout = getDistributedUserLayout();
+        return userLayout.getCompactLayout().getXMLEventReader();
     }
 
     public synchronized void loadUserLayout() throws PortalException {
@@ -294,14 +279,14 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
     }
 
     public synchronized void loadUserLayout(boolean reload) throws PortalException {
-        Document uli = null;
+        DistributedUserLayout uli = null;
         try {
             //Clear the loaded document first if this is a forced reload
             if (reload) {
                 this.layoutCachingService.removeCachedLayout(owner, profile);
             }
 
-            uli = getUserLayoutDOM();
+            uli = getDistributedUserLayout();
         } catch (Exception e) {
             throw new PortalException(
                     "Exception encountered while "
@@ -325,7 +310,8 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
     }
 
     public synchronized void saveUserLayout() throws PortalException {
-        Document uld = this.getUserLayoutDOM();
+        final DistributedUserLayout userLayout = getDistributedUserLayout();
+        Document uld = userLayout.getLayout();
 
         if (uld == null) {
             throw new PortalException(
@@ -345,17 +331,19 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
                     e);
         }
 
+        // Callers of getUserLayoutDOM() modify the document directly and then save it, keep only
+        // a new compact copy of the saved layout
+        userLayout.layoutChanged();
+        userLayout.releaseLayout();
         this.channelsAdded = false;
     }
 
     @Override
     public Set<String> getAllSubscribedChannels() {
-        final Document uld = this.getUserLayoutDOM();
-
+        final DistributedUserLayout userLayout = this.getDistributedUserLayout();
+        final Document uld = userLayout.getLayoutIfPresent();
         if (uld == null) {
-            throw new PortalException(
-                    "UserLayout has not been initialized for "
-                            + owner.getAttribute(IPerson.USERNAME));
+            return new LinkedHashSet<String>(userLayout.getCompactLayout().getChannelIds());
         }
 
         final NodeList channelElements = uld.getElementsByTagName(CHANNEL);
@@ -374,16 +362,8 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
     public IUserLayoutNodeDescription getNode(String nodeId) throws PortalException {
         if (nodeId == null) return null;
 
-        Document uld = this.getUserLayoutDOM();
-
-        if (uld == null)
-            throw new PortalException(
-                    "UserLayout has not been initialized for "
-                            + owner.getAttribute(IPerson.USERNAME)
-                            + ".");
-
         // find an element with a given id
-        Element element = uld.getElementById(nodeId);
+        Element element = this.getReadOnlyElement(nodeId);
         if (element == null) {
             throw new PortalException(
                     "Element with ID=\""
@@ -397,6 +377,25 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
         return desc;
     }
 
+    /**
+     * @return The element from the layout document if it is being edited, otherwise a detached copy
+     *     of the element from the compact layout. Null if there is no element with the ID.
+     */
+    private Element getReadOnlyElement(String nodeId) {
+        final DistributedUserLayout userLayout = this.getDistributedUserLayout();
+        final Document uld = userLayout.getLayoutIfPresent();
+        if (uld != null) {
+            return uld.getElementById(nodeId);
+        }
+
+        // Channel descriptions include the channel parameters, folder descriptions only attributes
+        final CompactUserLayout compactLayout = userLayout.getCompactLayout();
+        return compactLayout.copyElement(
+                nodeId,
+                DocumentFactory.getThreadDocument(),
+                Constants.ELM_CHANNEL.equals(compactLayout.getElementName(nodeId)));
+    }
+
     public IUserLayoutNodeDescription addNode(
             IUserLayoutNodeDescription node, String parentId, String nextSiblingId)
             throws PortalException {
@@ -419,7 +418,7 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
                         e);
             }
 
-            Document uld = getUserLayoutDOM();
+            Document uld = getLayoutDocument();
             Element childElement = node.getXML(uld);
             Element parentElement = uld.getElementById(parentId);
             if (nextSiblingId == null) {
@@ -431,7 +430,7 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
             // register element id
             childElement.setIdAttribute(Constants.ATT_ID, true);
             childElement.setAttribute(Constants.ATT_ID, node.getId());
-            this.updateCacheKey();
+            this.layoutModified();
 
             // push into the user's real layout that gets persisted.
             HandlerUtils.createPlfNodeAndPath(childElement, isChannel, owner);
@@ -460,7 +459,7 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
         String oldParentNodeId = getParentId(nodeId);
         if (canMoveNode(node, parent, nextSiblingId)) {
             // must be a folder
-            Document uld = this.getUserLayoutDOM();
+            Document uld = this.getLayoutDocument();
             Element childElement = uld.getElementById(nodeId);
             Element parentElement = uld.getElementById(parentId);
             if (nextSiblingId == null) {
@@ -469,7 +468,7 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
                 Node nextSibling = uld.getElementById(nextSiblingId);
                 parentElement.insertBefore(childElement, nextSibling);
             }
-            this.updateCacheKey();
+            this.layoutModified();
 
             // propagate the change into the PLF
             Element oldParent = uld.getElementById(oldParentNodeId);
@@ -495,7 +494,7 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
             IUserLayoutNodeDescription nodeDescription = this.getNode(nodeId);
             String parentNodeId = this.getParentId(nodeId);
 
-            Document uld = this.getUserLayoutDOM();
+            Document uld = this.getLayoutDocument();
             Element ilfNode = uld.getElementById(nodeId);
             Node parent = ilfNode.getParentNode();
             if (parent != null) {
@@ -508,7 +507,7 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
                                 + owner.getAttribute(IPerson.USERNAME)
                                 + ".");
             }
-            this.updateCacheKey();
+            this.layoutModified();
 
             // now push into the PLF
             TabColumnPrefsHandler.deleteNode(ilfNode, owner);
@@ -573,7 +572,7 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
                     updateFolderNode(nodeId, newFolderDesc, oldFolderDesc);
                 }
             }
-            this.updateCacheKey();
+            this.layoutModified();
             return true;
         }
         return false;
@@ -595,7 +594,7 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
             IUserLayoutFolderDescription newFolderDesc,
             IUserLayoutFolderDescription oldFolderDesc)
             throws PortalException {
-        Element ilfNode = (Element) getUserLayoutDOM().getElementById(nodeId);
+        Element ilfNode = (Element) getLayoutDocument().getElementById(nodeId);
         List<ILayoutProcessingAction> pendingActions = new ArrayList<ILayoutProcessingAction>();
 
         /*
@@ -735,7 +734,7 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
             IUserLayoutChannelDescription newChanDesc,
             IUserLayoutChannelDescription oldChanDesc)
             throws PortalException {
-        Element ilfNode = (Element) getUserLayoutDOM().getElementById(nodeId);
+        Element ilfNode = (Element) getLayoutDocument().getElementById(nodeId);
         List<ILayoutProcessingAction> pendingActions = new ArrayList<ILayoutProcessingAction>();
         boolean isIncorporated = nodeId.startsWith(Constants.FRAGMENT_ID_USER_PREFIX);
 
@@ -992,7 +991,7 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
                     && canAddNode(node, parent, nextSiblingId);
 
         // same parent. which direction are we moving?
-        Document uld = this.getUserLayoutDOM();
+        Document uld = this.getLayoutDocument();
         Element parentE = uld.getElementById(parent.getId());
         Element child = (Element) parentE.getFirstChild();
         int idx = 0;
@@ -1100,8 +1099,22 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
     }
 
     public String getParentId(String nodeId) throws PortalException {
-        Document uld = this.getUserLayoutDOM();
-        Element nelement = uld.getElementById(nodeId);
+        final DistributedUserLayout userLayout = this.getDistributedUserLayout();
+        final Document uld = userLayout.getLayoutIfPresent();
+        if (uld == null) {
+            final CompactUserLayout compactLayout = userLayout.getCompactLayout();
+            final String parentId = compactLayout.getParentId(nodeId);
+            if (parentId != null) {
+                return parentId;
+            }
+            if (compactLayout.containsElement(nodeId)) {
+                throw new PortalException(
+                        "Node with id=\""
+                                + nodeId
+                                + "\" is attached to something other then an element node.");
+            }
+        }
+        Element nelement = uld != null ? uld.getElementById(nodeId) : null;
         if (nelement != null) {
             Node parent = nelement.getParentNode();
             if (parent != null) {
@@ -1125,8 +1138,12 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
     }
 
     public String getNextSiblingId(String nodeId) throws PortalException {
-        Document uld = this.getUserLayoutDOM();
-        Element nelement = uld.getElementById(nodeId);
+        final DistributedUserLayout userLayout = this.getDistributedUserLayout();
+        final Document uld = userLayout.getLayoutIfPresent();
+        if (uld == null && userLayout.getCompactLayout().containsElement(nodeId)) {
+            return userLayout.getCompactLayout().getNextSiblingId(nodeId);
+        }
+        Element nelement = uld != null ? uld.getElementById(nodeId) : null;
         if (nelement != null) {
             Node nsibling = nelement.getNextSibling();
             // scroll to the next element node
@@ -1149,8 +1166,12 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
     }
 
     public String getPreviousSiblingId(String nodeId) throws PortalException {
-        Document uld = this.getUserLayoutDOM();
-        Element nelement = uld.getElementById(nodeId);
+        final DistributedUserLayout userLayout = this.getDistributedUserLayout();
+        final Document uld = userLayout.getLayoutIfPresent();
+        if (uld == null && userLayout.getCompactLayout().containsElement(nodeId)) {
+            return userLayout.getCompactLayout().getPreviousSiblingId(nodeId);
+        }
+        Element nelement = uld != null ? uld.getElementById(nodeId) : null;
         if (nelement != null) {
             Node nsibling = nelement.getPreviousSibling();
             // scroll to the next element node
@@ -1184,7 +1205,12 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
         Vector<String> v = new Vector<String>();
         IUserLayoutNodeDescription node = getNode(nodeId);
         if (node instanceof IUserLayoutFolderDescription) {
-            Document uld = this.getUserLayoutDOM();
+            final DistributedUserLayout userLayout = this.getDistributedUserLayout();
+            final Document uld = userLayout.getLayoutIfPresent();
+            if (uld == null) {
+                v.addAll(userLayout.getCompactLayout().getChildIds(nodeId, visibleOnly));
+                return v.elements();
+            }
             Element felement = uld.getElementById(nodeId);
             for (Node n = felement.getFirstChild(); n != null; n = n.getNextSibling()) {
                 if (n.getNodeType() == Node.ELEMENT_NODE
@@ -1219,6 +1245,16 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
         this.cacheKey = Long.toString(rnd.nextLong());
     }
 
+    /** Updates the cache key and discards the compact layout after the layout DOM is modified */
+    private void layoutModified() {
+        this.updateCacheKey();
+        final DistributedUserLayout userLayout =
+                this.layoutCachingService.getCachedLayout(owner, profile);
+        if (userLayout != null) {
+            userLayout.layoutChanged();
+        }
+    }
+
     public int getLayoutId() {
         return profile.getLayoutId();
     }
@@ -1229,16 +1265,25 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
      */
     @Override
     public String getSubscribeId(String fname) {
-        final Document userLayout = this.getUserLayoutDOM();
-        return new PortletSubscribeIdResolver(fname).traverseDocument(userLayout);
+        final DistributedUserLayout userLayout = this.getDistributedUserLayout();
+        final Document uld = userLayout.getLayoutIfPresent();
+        if (uld == null) {
+            return userLayout.getCompactLayout().getChannelId(fname);
+        }
+        return new PortletSubscribeIdResolver(fname).traverseDocument(uld);
     }
 
     public String getSubscribeId(String parentFolderId, String fname) {
+        final DistributedUserLayout distributedUserLayout = this.getDistributedUserLayout();
+        final Document userLayout = distributedUserLayout.getLayoutIfPresent();
+        if (userLayout == null) {
+            return distributedUserLayout.getCompactLayout().getChannelId(parentFolderId, fname);
+        }
+
         final Map<String, String> variables = new HashMap<String, String>();
         variables.put("parentFolderId", parentFolderId);
         variables.put("fname", fname);
 
-        final Document userLayout = this.getUserLayoutDOM();
         final Element fnameNode =
                 this.xpathOperations.evaluate(
                         "//folder[@ID=$parentFolderId]/descendant::channel[@fname=$fname]",
@@ -1270,7 +1315,7 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
      */
     public String getRootFolderId() {
         if (rootNodeId == null) {
-            Document layout = getUserLayoutDOM();
+            Document layout = getDistributedUserLayout().getReadOnlyLayout();
 
             Element rootNode =
                     this.xpathOperations.evaluate("//layout/folder", layout, XPathConstants.NODE);
@@ -1283,6 +1328,7 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
                                 + ". Resetting corrupted layout.");
                 resetLayout((String) null);
 
+                layout = getDistributedUserLayout().getReadOnlyLayout();
                 rootNode =
                         this.xpathOperations.evaluate(
                                 "//layout/folder", layout, XPathConstants.NODE);
@@ -1406,7 +1452,7 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
             if (person == owner) {
                 this.layoutCachingService.removeCachedLayout(person, profile);
                 updateCacheKey();
-                getUserLayoutDOM();
+                getDistributedUserLayout();
             }
             //if (isFragmentOwner)
             //{
@@ -33,8 +33,10 @@ import org.apereo.portal.security.IAuthorizationPrincipal;
 import org.apereo.portal.security.IPerson;
 import org.apereo.portal.services.AuthorizationService;
 import org.apereo.portal.utils.DocumentFactory;
+import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
 /**
@@ -83,6 +85,105 @@ public class ILFBuilder {
         return result;
     }
 
+    /**
+     * Returns the ids of the channels in the fragments that the user may not render. These are
+     * left out of the user's ILF so together with the fragments they determine its content.
+     */
+    public static Set<String> getUnrenderableChannels(
+            List<Document> sequence, IAuthorizationPrincipal ap) throws AuthorizationException {
+        final Set<String> channelIds = new HashSet<String>();
+        for (final Document document : sequence) {
+            collectChannelIds(document.getDocumentElement(), channelIds);
+        }
+
+        final Set<String> rslt = new HashSet<String>();
+        for (final String channelId : channelIds) {
+            if (!ap.canRender(channelId)) {
+                rslt.add(channelId);
+            }
+        }
+        return rslt;
+    }
+
+    /**
+     * Merges the fragments into an ILF skeleton that can be shared by all users with the same
+     * fragments and unrenderable channels. The layout and root elements of the skeleton have no
+     * attributes, {@link #constructILF(Document, CompactUserLayout)} gives each user's copy the
+     * attributes of their PLF. The skeleton is returned as an immutable {@link CompactUserLayout}
+     * so it can be copied by many threads at once, a DOM is not safe to read concurrently.
+     *
+     * @param PLF Any PLF, only used for the names of the layout and root elements
+     */
+    public static CompactUserLayout constructSkeleton(
+            Document PLF, List<Document> sequence, Set<String> unrenderableChannels) {
+        final Document result = DocumentFactory.getThreadDocument();
+        final Element ilfLayout = (Element) result.importNode(PLF.getDocumentElement(), false);
+        removeAttributes(ilfLayout);
+        result.appendChild(ilfLayout);
+        final Element ilfRoot =
+                (Element) result.importNode(PLF.getDocumentElement().getFirstChild(), false);
+        removeAttributes(ilfRoot);
+        ilfLayout.appendChild(ilfRoot);
+
+        for (final Document document : sequence) {
+            final Element fragmentRoot = (Element) document.getDocumentElement().getFirstChild();
+            mergeChildren(fragmentRoot, ilfRoot, null, unrenderableChannels, new HashSet());
+        }
+        return CompactUserLayout.create(result);
+    }
+
+    /**
+     * Constructs a user's ILF from a copy of a skeleton built by {@link
+     * #constructSkeleton(Document, List, Set)}. The result is the same as {@link
+     * #constructILF(Document, List, IPerson)} for the fragments the skeleton was built from.
+     */
+    public static Document constructILF(Document PLF, CompactUserLayout skeleton) {
+        final Document result = DocumentFactory.getThreadDocument();
+        skeleton.copyTo(result);
+        final Element plfLayout = PLF.getDocumentElement();
+        final Element ilfLayout = result.getDocumentElement();
+        copyAttributes(plfLayout, ilfLayout);
+        final Element plfRoot = (Element) plfLayout.getFirstChild();
+        final Element ilfRoot = (Element) ilfLayout.getFirstChild();
+        copyAttributes(plfRoot, ilfRoot);
+
+        if (ilfRoot.getAttribute(Constants.ATT_ID) != null)
+            ilfRoot.setIdAttribute(Constants.ATT_ID, true);
+
+        return result;
+    }
+
+    private static void collectChannelIds(Element element, Set<String> channelIds) {
+        if (element.getTagName().equals("channel")) {
+            channelIds.add(element.getAttribute("chanID"));
+        }
+        for (Node item = element.getFirstChild(); item != null; item = item.getNextSibling()) {
+            if (item instanceof Element) {
+                collectChannelIds((Element) item, channelIds);
+            }
+        }
+    }
+
+    private static void removeAttributes(Element element) {
+        final NamedNodeMap attributes = element.getAttributes();
+        while (attributes.getLength() > 0) {
+            element.removeAttributeNode((Attr) attributes.item(0));
+        }
+    }
+
+    private static void copyAttributes(Element source, Element dest) {
+        final Document destDoc = dest.getOwnerDocument();
+        final NamedNodeMap attributes = source.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final Attr attr = (Attr) destDoc.importNode(attributes.item(i), true);
+            if (attr.getLocalName() == null) {
+                dest.setAttributeNode(attr);
+            } else {
+                dest.setAttributeNodeNS(attr);
+            }
+        }
+    }
+
     /**
      * Passes the layout root of each of these documents to mergeChildren causing all children of
      * newLayout to be merged into compositeLayout following merging protocal for distributed layout
@@ -97,19 +198,25 @@ public class ILFBuilder {
         Element fragmentRoot = (Element) fragmentLayout.getFirstChild();
         Element compositeLayout = composite.getDocumentElement();
         Element compositeRoot = (Element) compositeLayout.getFirstChild();
-        mergeChildren(fragmentRoot, compositeRoot, ap, new HashSet());
+        mergeChildren(fragmentRoot, compositeRoot, ap, null, new HashSet());
     }
 
     /**
      * @param source parent of children
      * @param dest receiver of children
-     * @param ap User's authorization principal for determining if they can view a channel
+     * @param ap User's authorization principal for determining if they can view a channel, null
+     *     to use unrenderableChannels instead
+     * @param unrenderableChannels Ids of the channels the user can not view
      * @param visitedNodes A Set of nodes from the source tree that have been visited to get to this
      *     node, used to ensure a loop doesn't exist in the source tree.
      * @throws AuthorizationException
      */
     private static void mergeChildren(
-            Element source, Element dest, IAuthorizationPrincipal ap, Set visitedNodes)
+            Element source,
+            Element dest,
+            IAuthorizationPrincipal ap,
+            Set<String> unrenderableChannels,
+            Set visitedNodes)
             throws AuthorizationException {
         //Record this node in the visited nodes set. If add returns false a loop has been detected
         if (!visitedNodes.add(source)) {
@@ -139,13 +246,13 @@ public class ILFBuilder {
                 Element child = (Element) item;
                 Element newChild = null;
 
-                if (null != child && mergeAllowed(child, ap)) {
+                if (null != child && mergeAllowed(child, ap, unrenderableChannels)) {
                     newChild = (Element) destDoc.importNode(child, false);
                     dest.appendChild(newChild);
                     String id = newChild.getAttribute(Constants.ATT_ID);
                     if (id != null && !id.equals(""))
                         newChild.setIdAttribute(Constants.ATT_ID, true);
-                    mergeChildren(child, newChild, ap, visitedNodes);
+                    mergeChildren(child, newChild, ap, unrenderableChannels, visitedNodes);
                 }
             }
 
@@ -166,11 +273,15 @@ public class ILFBuilder {
      * @throws AuthorizationException
      * @throws NumberFormatException
      */
-    private static boolean mergeAllowed(Element child, IAuthorizationPrincipal ap)
+    private static boolean mergeAllowed(
+            Element child, IAuthorizationPrincipal ap, Set<String> unrenderableChannels)
             throws AuthorizationException {
         if (!child.getTagName().equals("channel")) return true;
 
         String channelPublishId = child.getAttribute("chanID");
+        if (ap == null) {
+            return !unrenderableChannels.contains(channelPublishId);
+        }
         return ap.canRender(channelPublishId);
     }
 
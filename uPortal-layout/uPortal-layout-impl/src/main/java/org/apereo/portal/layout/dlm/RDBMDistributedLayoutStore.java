@@ -16,8 +16,6 @@ package org.apereo.portal.layout.dlm;
 
 import com.google.common.cache.Cache;
 import java.io.StringWriter;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -34,18 +32,19 @@ import java.util.regex.Pattern;
 import net.sf.ehcache.Ehcache;
 import org.apache.commons.lang.StringUtils;
 import org.apereo.portal.AuthorizationException;
+import org.apereo.portal.EntityIdentifier;
 import org.apereo.portal.IUserIdentityStore;
 import org.apereo.portal.IUserProfile;
 import org.apereo.portal.PortalException;
 import org.apereo.portal.i18n.LocaleManager;
 import org.apereo.portal.io.xml.IPortalDataHandlerService;
-import org.apereo.portal.jdbc.RDBMServices;
 import org.apereo.portal.layout.LayoutStructure;
 import org.apereo.portal.layout.StructureParameter;
 import org.apereo.portal.layout.StylesheetUserPreferencesImpl;
 import org.apereo.portal.layout.dao.IStylesheetUserPreferencesDao;
 import org.apereo.portal.layout.om.IStylesheetDescriptor;
 import org.apereo.portal.layout.om.IStylesheetUserPreferences;
+import org.apereo.portal.layout.simple.LayoutStructureRows;
 import org.apereo.portal.layout.simple.RDBMUserLayoutStore;
 import org.apereo.portal.portlet.dao.IPortletEntityDao;
 import org.apereo.portal.portlet.dao.jpa.PortletPreferenceImpl;
@@ -56,9 +55,11 @@ import org.apereo.portal.portlet.om.IPortletEntity;
 import org.apereo.portal.portlet.om.IPortletPreference;
 import org.apereo.portal.portlet.registry.IPortletEntityRegistry;
 import org.apereo.portal.properties.PropertiesManager;
+import org.apereo.portal.security.IAuthorizationPrincipal;
 import org.apereo.portal.security.IPerson;
 import org.apereo.portal.security.provider.BrokenSecurityContext;
 import org.apereo.portal.security.provider.PersonImpl;
+import org.apereo.portal.services.AuthorizationService;
 import org.apereo.portal.utils.DocumentFactory;
 import org.apereo.portal.utils.IFragmentDefinitionUtils;
 import org.apereo.portal.utils.MapPopulator;
@@ -104,6 +105,7 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
     private FragmentActivator fragmentActivator;
 
     private Ehcache fragmentNodeInfoCache;
+    private Ehcache ilfSkeletonCache;
 
     private boolean errorOnMissingPortlet = true;
     private boolean errorOnMissingUser = true;
@@ -175,6 +177,13 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
         this.fragmentNodeInfoCache = fragmentNodeInfoCache;
     }
 
+    @Autowired
+    public void setIlfSkeletonCache(
+            @Qualifier("org.apereo.portal.layout.dlm.RDBMDistributedLayoutStore.ilfSkeletonCache")
+                    Ehcache ilfSkeletonCache) {
+        this.ilfSkeletonCache = ilfSkeletonCache;
+    }
+
     @Value("${org.apereo.portal.io.layout.errorOnMissingPortlet:true}")
     public void setErrorOnMissingPortlet(boolean errorOnMissingPortlet) {
         this.errorOnMissingPortlet = errorOnMissingPortlet;
@@ -1339,7 +1348,7 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
             final Document PLF,
             final List<Document> applicableLayouts,
             final IntegrationResult integrationResult) {
-        final Document ILF = ILFBuilder.constructILF(PLF, applicableLayouts, person);
+        final Document ILF = this.constructILF(person, PLF, applicableLayouts);
         PLFIntegrator.mergePLFintoILF(PLF, ILF, integrationResult);
         if (logger.isDebugEnabled()) {
             logger.debug(
@@ -1354,6 +1363,33 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
         return ILF;
     }
 
+    /**
+     * Creates the ILF from a copy of the merged fragment layouts shared by all users with the same
+     * applicable fragments and the same fragment channels they may not render.
+     */
+    private Document constructILF(
+            final IPerson person, final Document PLF, final List<Document> applicableLayouts) {
+        final EntityIdentifier ei = person.getEntityIdentifier();
+        final IAuthorizationPrincipal ap =
+                AuthorizationService.instance().newPrincipal(ei.getKey(), ei.getType());
+        final Set<String> unrenderableChannels =
+                ILFBuilder.getUnrenderableChannels(applicableLayouts, ap);
+
+        final IlfSkeletonKey key = new IlfSkeletonKey(applicableLayouts, unrenderableChannels);
+        net.sf.ehcache.Element element = this.ilfSkeletonCache.get(key);
+        if (element == null) {
+            logger.debug(
+                    "Constructing ILF skeleton of {} fragment layouts for {}",
+                    applicableLayouts.size(),
+                    person.getAttribute(IPerson.USERNAME));
+            final CompactUserLayout skeleton =
+                    ILFBuilder.constructSkeleton(PLF, applicableLayouts, unrenderableChannels);
+            element = new net.sf.ehcache.Element(key, skeleton);
+            this.ilfSkeletonCache.put(element);
+        }
+        return ILFBuilder.constructILF(PLF, (CompactUserLayout) element.getObjectValue());
+    }
+
     private DistributedUserLayout createDistributedUserLayout(
             final IPerson person,
             final IUserProfile profile,
@@ -1719,14 +1755,13 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
     }
 
     @Override
-    protected int saveStructure(Node node, PreparedStatement structStmt, PreparedStatement parmStmt)
-            throws SQLException {
+    protected int saveStructure(Node node, LayoutStructureRows rows) {
         if (node == null) { // No more
             return 0;
         }
         if (node.getNodeName().equals("parameter")) {
             //parameter, skip it and go on to the next node
-            return this.saveStructure(node.getNextSibling(), structStmt, parmStmt);
+            return this.saveStructure(node.getNextSibling(), rows);
         }
         if (!(node instanceof Element)) {
             return 0;
@@ -1768,36 +1803,27 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
         }
 
         if (node.hasChildNodes()) {
-            childStructId = this.saveStructure(node.getFirstChild(), structStmt, parmStmt);
+            childStructId = this.saveStructure(node.getFirstChild(), rows);
         }
-        nextStructId = this.saveStructure(node.getNextSibling(), structStmt, parmStmt);
-        structStmt.clearParameters();
-        structStmt.setInt(1, saveStructId);
-        structStmt.setInt(2, nextStructId);
-        structStmt.setInt(3, childStructId);
+        nextStructId = this.saveStructure(node.getNextSibling(), rows);
 
-        final String externalId = structure.getAttribute("external_id");
+        String externalId = structure.getAttribute("external_id");
         if (externalId != null && externalId.trim().length() > 0) {
-            final Integer eID = new Integer(externalId);
-            structStmt.setInt(4, eID.intValue());
-        } else {
-            structStmt.setNull(4, java.sql.Types.NUMERIC);
-        }
-        if (isChannel) {
-            structStmt.setInt(5, chanId);
-            structStmt.setNull(6, java.sql.Types.VARCHAR);
+            externalId = String.valueOf(Integer.parseInt(externalId.trim()));
         } else {
-            structStmt.setNull(5, java.sql.Types.NUMERIC);
-            structStmt.setString(6, structure.getAttribute("name"));
-        }
-        final String structType = structure.getAttribute("type");
-        structStmt.setString(7, structType);
-        structStmt.setString(8, RDBMServices.dbFlag(xmlBool(structure.getAttribute("hidden"))));
-        structStmt.setString(9, RDBMServices.dbFlag(xmlBool(structure.getAttribute("immutable"))));
-        structStmt.setString(
-                10, RDBMServices.dbFlag(xmlBool(structure.getAttribute("unremovable"))));
-        logger.debug(structStmt.toString());
-        structStmt.executeUpdate();
+            externalId = null;
+        }
+        rows.addStruct(
+                saveStructId,
+                nextStructId,
+                childStructId,
+                externalId,
+                isChannel ? chanId : null,
+                isChannel ? null : structure.getAttribute("name"),
+                structure.getAttribute("type"),
+                xmlBool(structure.getAttribute("hidden")),
+                xmlBool(structure.getAttribute("immutable")),
+                xmlBool(structure.getAttribute("unremovable")));
 
         // code to persist extension attributes for dlm
         final NamedNodeMap attribs = node.getAttributes();
@@ -1810,12 +1836,7 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
                     && !name.equals(Constants.ATT_FRAGMENT)
                     && !name.equals(Constants.ATT_PRECEDENCE)) {
                 // a cp extension attribute. Push into param table.
-                parmStmt.clearParameters();
-                parmStmt.setInt(1, saveStructId);
-                parmStmt.setString(2, name);
-                parmStmt.setString(3, attrib.getNodeValue());
-                logger.debug(parmStmt.toString());
-                parmStmt.executeUpdate();
+                rows.addParameter(saveStructId, name, attrib.getNodeValue());
             }
         }
         final NodeList parameters = node.getChildNodes();
@@ -1835,12 +1856,7 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
                         // override only for adhoc or if diff from chan def
                         final IPortletDefinitionParameter cp = portletDef.getParameter(parmName);
                         if (cp == null || !cp.getValue().equals(parmValue)) {
-                            parmStmt.clearParameters();
-                            parmStmt.setInt(1, saveStructId);
-                            parmStmt.setString(2, parmName);
-                            parmStmt.setString(3, parmValue);
-                            logger.debug(parmStmt.toString());
-                            parmStmt.executeUpdate();
+                            rows.addParameter(saveStructId, parmName, parmValue);
                         }
                     }
                 }
@@ -1917,4 +1933,46 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
                                     };
                                 }
                             }));
+
+    /**
+     * Identifies an ILF skeleton. The fragment layouts are compared by identity, a fragment layout
+     * that is reloaded or updated by its owner is a new instance so it gets a new skeleton.
+     */
+    private static final class IlfSkeletonKey {
+        private final List<Document> layouts;
+        private final Set<String> unrenderableChannels;
+        private final int hash;
+
+        public IlfSkeletonKey(List<Document> layouts, Set<String> unrenderableChannels) {
+            this.layouts = new ArrayList<Document>(layouts);
+            this.unrenderableChannels = unrenderableChannels;
+
+            int hash = unrenderableChannels.hashCode();
+            for (final Document layout : layouts) {
+                hash = 31 * hash + System.identityHashCode(layout);
+            }
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof IlfSkeletonKey)) return false;
+            final IlfSkeletonKey other = (IlfSkeletonKey) obj;
+            if (this.hash != other.hash || this.layouts.size() != other.layouts.size()) {
+                return false;
+            }
+            for (int i = 0; i < this.layouts.size(); i++) {
+                if (this.layouts.get(i) != other.layouts.get(i)) {
+                    return false;
+                }
+            }
+            return this.unrenderableChannels.equals(other.unrenderableChannels);
+        }
+    }
 }
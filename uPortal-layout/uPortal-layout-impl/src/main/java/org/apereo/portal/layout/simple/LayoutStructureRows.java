@@ -0,0 +1,353 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.layout.simple;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang.StringUtils;
+import org.apereo.portal.jdbc.RDBMServices;
+
+/**
+ * The UP_LAYOUT_STRUCT and UP_LAYOUT_PARAM rows of a single user layout. Rows built from the PLF
+ * are compared with the rows already in the database so only the changed rows are written.
+ */
+public class LayoutStructureRows {
+    private final Map<Integer, StructRow> structs = new LinkedHashMap<Integer, StructRow>();
+    private final Map<ParamKey, String> params = new LinkedHashMap<ParamKey, String>();
+
+    /** Add a UP_LAYOUT_STRUCT row, null externalId and chanId are stored as NULL */
+    public void addStruct(
+            int structId,
+            int nextStructId,
+            int childStructId,
+            String externalId,
+            Integer chanId,
+            String name,
+            String type,
+            boolean hidden,
+            boolean immutable,
+            boolean unremovable) {
+        this.structs.put(
+                structId,
+                new StructRow(
+                        structId,
+                        nextStructId,
+                        childStructId,
+                        externalId,
+                        chanId,
+                        name,
+                        type,
+                        hidden,
+                        immutable,
+                        unremovable));
+    }
+
+    /** Add a UP_LAYOUT_PARAM row */
+    public void addParameter(int structId, String name, String value) {
+        this.params.put(new ParamKey(structId, name), value);
+    }
+
+    /**
+     * Add a row read from a query selecting STRUCT_ID, NEXT_STRUCT_ID, CHLD_STRUCT_ID, EXTERNAL_ID,
+     * CHAN_ID, NAME, TYPE, HIDDEN, IMMUTABLE, UNREMOVABLE
+     */
+    public void addStruct(ResultSet rs) throws SQLException {
+        final int chanId = rs.getInt("CHAN_ID");
+        final Integer nullableChanId = rs.wasNull() ? null : chanId;
+        this.addStruct(
+                rs.getInt("STRUCT_ID"),
+                rs.getInt("NEXT_STRUCT_ID"),
+                rs.getInt("CHLD_STRUCT_ID"),
+                StringUtils.trimToNull(rs.getString("EXTERNAL_ID")),
+                nullableChanId,
+                rs.getString("NAME"),
+                rs.getString("TYPE"),
+                RDBMServices.dbFlag(rs.getString("HIDDEN")),
+                RDBMServices.dbFlag(rs.getString("IMMUTABLE")),
+                RDBMServices.dbFlag(rs.getString("UNREMOVABLE")));
+    }
+
+    /** Add a row read from a query selecting STRUCT_ID, STRUCT_PARM_NM, STRUCT_PARM_VAL */
+    public void addParameter(ResultSet rs) throws SQLException {
+        this.addParameter(
+                rs.getInt("STRUCT_ID"),
+                rs.getString("STRUCT_PARM_NM"),
+                rs.getString("STRUCT_PARM_VAL"));
+    }
+
+    public int getStructCount() {
+        return this.structs.size();
+    }
+
+    public int getParameterCount() {
+        return this.params.size();
+    }
+
+    /** @return The changes needed to turn the previously stored rows into these rows */
+    public Changes diff(LayoutStructureRows previous) {
+        final Changes changes = new Changes();
+
+        for (final Map.Entry<ParamKey, String> paramEntry : previous.params.entrySet()) {
+            if (!this.params.containsKey(paramEntry.getKey())) {
+                changes.deletedParams.add(paramEntry.getKey());
+            }
+        }
+        for (final Integer structId : previous.structs.keySet()) {
+            if (!this.structs.containsKey(structId)) {
+                changes.deletedStructs.add(structId);
+            }
+        }
+        for (final StructRow struct : this.structs.values()) {
+            final StructRow previousStruct = previous.structs.get(struct.getStructId());
+            if (previousStruct == null) {
+                changes.insertedStructs.add(struct);
+            } else if (!struct.equals(previousStruct)) {
+                changes.updatedStructs.add(struct);
+            }
+        }
+        for (final Map.Entry<ParamKey, String> paramEntry : this.params.entrySet()) {
+            final ParamKey key = paramEntry.getKey();
+            if (!previous.params.containsKey(key)) {
+                changes.insertedParams.put(key, paramEntry.getValue());
+            } else if (!StringUtils.defaultString(paramEntry.getValue())
+                    .equals(StringUtils.defaultString(previous.params.get(key)))) {
+                changes.updatedParams.put(key, paramEntry.getValue());
+            }
+        }
+
+        return changes;
+    }
+
+    /** Rows to delete, update and insert, in the order they should be written */
+    public static final class Changes {
+        private final List<ParamKey> deletedParams = new ArrayList<ParamKey>();
+        private final List<Integer> deletedStructs = new ArrayList<Integer>();
+        private final List<StructRow> updatedStructs = new ArrayList<StructRow>();
+        private final List<StructRow> insertedStructs = new ArrayList<StructRow>();
+        private final Map<ParamKey, String> updatedParams = new LinkedHashMap<ParamKey, String>();
+        private final Map<ParamKey, String> insertedParams = new LinkedHashMap<ParamKey, String>();
+
+        public List<ParamKey> getDeletedParams() {
+            return Collections.unmodifiableList(this.deletedParams);
+        }
+
+        public List<Integer> getDeletedStructs() {
+            return Collections.unmodifiableList(this.deletedStructs);
+        }
+
+        public List<StructRow> getUpdatedStructs() {
+            return Collections.unmodifiableList(this.updatedStructs);
+        }
+
+        public List<StructRow> getInsertedStructs() {
+            return Collections.unmodifiableList(this.insertedStructs);
+        }
+
+        public Map<ParamKey, String> getUpdatedParams() {
+            return Collections.unmodifiableMap(this.updatedParams);
+        }
+
+        public Map<ParamKey, String> getInsertedParams() {
+            return Collections.unmodifiableMap(this.insertedParams);
+        }
+
+        /** @return Number of rows written by these changes, one statement per row */
+        public int getRowCount() {
+            return this.deletedParams.size()
+                    + this.deletedStructs.size()
+                    + this.updatedStructs.size()
+                    + this.insertedStructs.size()
+                    + this.updatedParams.size()
+                    + this.insertedParams.size();
+        }
+
+        public boolean isEmpty() {
+            return this.getRowCount() == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Changes [deletedParams="
+                    + this.deletedParams.size()
+                    + ", deletedStructs="
+                    + this.deletedStructs.size()
+                    + ", updatedStructs="
+                    + this.updatedStructs.size()
+                    + ", insertedStructs="
+                    + this.insertedStructs.size()
+                    + ", updatedParams="
+                    + this.updatedParams.size()
+                    + ", insertedParams="
+                    + this.insertedParams.size()
+                    + "]";
+        }
+    }
+
+    /** A UP_LAYOUT_STRUCT row, empty and null strings are treated as equal */
+    public static final class StructRow {
+        private final int structId;
+        private final int nextStructId;
+        private final int childStructId;
+        private final String externalId;
+        private final Integer chanId;
+        private final String name;
+        private final String type;
+        private final boolean hidden;
+        private final boolean immutable;
+        private final boolean unremovable;
+
+        StructRow(
+                int structId,
+                int nextStructId,
+                int childStructId,
+                String externalId,
+                Integer chanId,
+                String name,
+                String type,
+                boolean hidden,
+                boolean immutable,
+                boolean unremovable) {
+            this.structId = structId;
+            this.nextStructId = nextStructId;
+            this.childStructId = childStructId;
+            this.externalId = externalId;
+            this.chanId = chanId;
+            this.name = name;
+            this.type = type;
+            this.hidden = hidden;
+            this.immutable = immutable;
+            this.unremovable = unremovable;
+        }
+
+        public int getStructId() {
+            return this.structId;
+        }
+
+        public int getNextStructId() {
+            return this.nextStructId;
+        }
+
+        public int getChildStructId() {
+            return this.childStructId;
+        }
+
+        public String getExternalId() {
+            return this.externalId;
+        }
+
+        public Integer getChanId() {
+            return this.chanId;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getType() {
+            return this.type;
+        }
+
+        public boolean isHidden() {
+            return this.hidden;
+        }
+
+        public boolean isImmutable() {
+            return this.immutable;
+        }
+
+        public boolean isUnremovable() {
+            return this.unremovable;
+        }
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + this.structId;
+            result = prime * result + this.nextStructId;
+            result = prime * result + this.childStructId;
+            result = prime * result + StringUtils.defaultString(this.externalId).hashCode();
+            result = prime * result + (this.chanId == null ? 0 : this.chanId.hashCode());
+            result = prime * result + StringUtils.defaultString(this.name).hashCode();
+            result = prime * result + StringUtils.defaultString(this.type).hashCode();
+            result = prime * result + (this.hidden ? 1231 : 1237);
+            result = prime * result + (this.immutable ? 1231 : 1237);
+            result = prime * result + (this.unremovable ? 1231 : 1237);
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null) return false;
+            if (getClass() != obj.getClass()) return false;
+            final StructRow other = (StructRow) obj;
+            return this.structId == other.structId
+                    && this.nextStructId == other.nextStructId
+                    && this.childStructId == other.childStructId
+                    && StringUtils.defaultString(this.externalId)
+                            .equals(StringUtils.defaultString(other.externalId))
+                    && (this.chanId == null
+                            ? other.chanId == null
+                            : this.chanId.equals(other.chanId))
+                    && StringUtils.defaultString(this.name)
+                            .equals(StringUtils.defaultString(other.name))
+                    && StringUtils.defaultString(this.type)
+                            .equals(StringUtils.defaultString(other.type))
+                    && this.hidden == other.hidden
+                    && this.immutable == other.immutable
+                    && this.unremovable == other.unremovable;
+        }
+    }
+
+    /** Primary key of a UP_LAYOUT_PARAM row within a layout */
+    public static final class ParamKey {
+        private final int structId;
+        private final String name;
+
+        ParamKey(int structId, String name) {
+            this.structId = structId;
+            this.name = name;
+        }
+
+        public int getStructId() {
+            return this.structId;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.structId + (this.name == null ? 0 : this.name.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null) return false;
+            if (getClass() != obj.getClass()) return false;
+            final ParamKey other = (ParamKey) obj;
+            return this.structId == other.structId
+                    && (this.name == null ? other.name == null : this.name.equals(other.name));
+        }
+    }
+}
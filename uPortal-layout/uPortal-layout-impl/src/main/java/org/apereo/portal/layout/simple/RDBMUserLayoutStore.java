@@ -39,6 +39,7 @@ import org.apereo.portal.i18n.LocaleManager;
 import org.apereo.portal.jdbc.DatabaseMetaDataImpl;
 import org.apereo.portal.jdbc.IDatabaseMetadata;
 import org.apereo.portal.jdbc.IJoinQueryString;
+import org.apereo.portal.jdbc.RDBMServices;
 import org.apereo.portal.jpa.BasePortalJpaDao;
 import org.apereo.portal.layout.IUserLayoutStore;
 import org.apereo.portal.layout.LayoutStructure;
@@ -1112,9 +1113,208 @@ public abstract class RDBMUserLayoutStore implements IUserLayoutStore, Initializ
 
     protected abstract Element getStructure(Document doc, LayoutStructure ls);
 
-    protected abstract int saveStructure(
-            Node node, PreparedStatement structStmt, PreparedStatement parmStmt)
-            throws SQLException;
+    /**
+     * Add the UP_LAYOUT_STRUCT and UP_LAYOUT_PARAM rows for the node, its children and its
+     * following siblings.
+     *
+     * @return The struct id of the node, 0 if there is no node to save
+     */
+    protected abstract int saveStructure(Node node, LayoutStructureRows rows);
+
+    /** Load the stored UP_LAYOUT_STRUCT and UP_LAYOUT_PARAM rows of the layout */
+    private LayoutStructureRows getStructureRows(Connection con, int userId, int layoutId)
+            throws SQLException {
+        final LayoutStructureRows rows = new LayoutStructureRows();
+
+        String sql =
+                "SELECT STRUCT_ID, NEXT_STRUCT_ID, CHLD_STRUCT_ID, EXTERNAL_ID, CHAN_ID, NAME, TYPE, HIDDEN, IMMUTABLE, UNREMOVABLE FROM UP_LAYOUT_STRUCT WHERE USER_ID=? AND LAYOUT_ID=?";
+        PreparedStatement pstmt = con.prepareStatement(sql);
+        try {
+            pstmt.setInt(1, userId);
+            pstmt.setInt(2, layoutId);
+            logger.debug(sql);
+            final ResultSet rs = pstmt.executeQuery();
+            try {
+                while (rs.next()) {
+                    rows.addStruct(rs);
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            pstmt.close();
+        }
+
+        sql =
+                "SELECT STRUCT_ID, STRUCT_PARM_NM, STRUCT_PARM_VAL FROM UP_LAYOUT_PARAM WHERE USER_ID=? AND LAYOUT_ID=?";
+        pstmt = con.prepareStatement(sql);
+        try {
+            pstmt.setInt(1, userId);
+            pstmt.setInt(2, layoutId);
+            logger.debug(sql);
+            final ResultSet rs = pstmt.executeQuery();
+            try {
+                while (rs.next()) {
+                    rows.addParameter(rs);
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            pstmt.close();
+        }
+
+        return rows;
+    }
+
+    /** Write the changed layout rows, each kind of change is sent as a single JDBC batch */
+    private void saveStructureChanges(
+            Connection con, int userId, int layoutId, LayoutStructureRows.Changes changes)
+            throws SQLException {
+        if (!changes.getDeletedParams().isEmpty()) {
+            final String sql =
+                    "DELETE FROM UP_LAYOUT_PARAM WHERE USER_ID=? AND LAYOUT_ID=? AND STRUCT_ID=? AND STRUCT_PARM_NM=?";
+            final PreparedStatement pstmt = con.prepareStatement(sql);
+            try {
+                logger.debug(sql);
+                for (final LayoutStructureRows.ParamKey param : changes.getDeletedParams()) {
+                    pstmt.setInt(1, userId);
+                    pstmt.setInt(2, layoutId);
+                    pstmt.setInt(3, param.getStructId());
+                    pstmt.setString(4, param.getName());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            } finally {
+                pstmt.close();
+            }
+        }
+
+        if (!changes.getDeletedStructs().isEmpty()) {
+            final String sql =
+                    "DELETE FROM UP_LAYOUT_STRUCT WHERE USER_ID=? AND LAYOUT_ID=? AND STRUCT_ID=?";
+            final PreparedStatement pstmt = con.prepareStatement(sql);
+            try {
+                logger.debug(sql);
+                for (final Integer structId : changes.getDeletedStructs()) {
+                    pstmt.setInt(1, userId);
+                    pstmt.setInt(2, layoutId);
+                    pstmt.setInt(3, structId);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            } finally {
+                pstmt.close();
+            }
+        }
+
+        if (!changes.getUpdatedStructs().isEmpty()) {
+            final String sql =
+                    "UPDATE UP_LAYOUT_STRUCT SET NEXT_STRUCT_ID=?, CHLD_STRUCT_ID=?, EXTERNAL_ID=?, CHAN_ID=?, NAME=?, TYPE=?, HIDDEN=?, IMMUTABLE=?, UNREMOVABLE=? WHERE USER_ID=? AND LAYOUT_ID=? AND STRUCT_ID=?";
+            final PreparedStatement pstmt = con.prepareStatement(sql);
+            try {
+                logger.debug(sql);
+                for (final LayoutStructureRows.StructRow struct : changes.getUpdatedStructs()) {
+                    setStructColumns(pstmt, 1, struct);
+                    pstmt.setInt(10, userId);
+                    pstmt.setInt(11, layoutId);
+                    pstmt.setInt(12, struct.getStructId());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            } finally {
+                pstmt.close();
+            }
+        }
+
+        if (!changes.getInsertedStructs().isEmpty()) {
+            final String sql =
+                    "INSERT INTO UP_LAYOUT_STRUCT (USER_ID, LAYOUT_ID, STRUCT_ID, NEXT_STRUCT_ID, CHLD_STRUCT_ID, EXTERNAL_ID, CHAN_ID, NAME, TYPE, HIDDEN, IMMUTABLE, UNREMOVABLE) VALUES (?,?,?,?,?,?,?,?,?,?,?,?)";
+            final PreparedStatement pstmt = con.prepareStatement(sql);
+            try {
+                logger.debug(sql);
+                for (final LayoutStructureRows.StructRow struct : changes.getInsertedStructs()) {
+                    pstmt.setInt(1, userId);
+                    pstmt.setInt(2, layoutId);
+                    pstmt.setInt(3, struct.getStructId());
+                    setStructColumns(pstmt, 4, struct);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            } finally {
+                pstmt.close();
+            }
+        }
+
+        if (!changes.getUpdatedParams().isEmpty()) {
+            final String sql =
+                    "UPDATE UP_LAYOUT_PARAM SET STRUCT_PARM_VAL=? WHERE USER_ID=? AND LAYOUT_ID=? AND STRUCT_ID=? AND STRUCT_PARM_NM=?";
+            final PreparedStatement pstmt = con.prepareStatement(sql);
+            try {
+                logger.debug(sql);
+                for (final Map.Entry<LayoutStructureRows.ParamKey, String> param :
+                        changes.getUpdatedParams().entrySet()) {
+                    pstmt.setString(1, param.getValue());
+                    pstmt.setInt(2, userId);
+                    pstmt.setInt(3, layoutId);
+                    pstmt.setInt(4, param.getKey().getStructId());
+                    pstmt.setString(5, param.getKey().getName());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            } finally {
+                pstmt.close();
+            }
+        }
+
+        if (!changes.getInsertedParams().isEmpty()) {
+            final String sql =
+                    "INSERT INTO UP_LAYOUT_PARAM (USER_ID, LAYOUT_ID, STRUCT_ID, STRUCT_PARM_NM, STRUCT_PARM_VAL) VALUES (?,?,?,?,?)";
+            final PreparedStatement pstmt = con.prepareStatement(sql);
+            try {
+                logger.debug(sql);
+                for (final Map.Entry<LayoutStructureRows.ParamKey, String> param :
+                        changes.getInsertedParams().entrySet()) {
+                    pstmt.setInt(1, userId);
+                    pstmt.setInt(2, layoutId);
+                    pstmt.setInt(3, param.getKey().getStructId());
+                    pstmt.setString(4, param.getKey().getName());
+                    pstmt.setString(5, param.getValue());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            } finally {
+                pstmt.close();
+            }
+        }
+    }
+
+    /** Set NEXT_STRUCT_ID through UNREMOVABLE starting at the parameter index */
+    private static void setStructColumns(
+            PreparedStatement pstmt, int index, LayoutStructureRows.StructRow struct)
+            throws SQLException {
+        pstmt.setInt(index, struct.getNextStructId());
+        pstmt.setInt(index + 1, struct.getChildStructId());
+        if (struct.getExternalId() != null) {
+            pstmt.setInt(index + 2, Integer.parseInt(struct.getExternalId()));
+        } else {
+            pstmt.setNull(index + 2, java.sql.Types.NUMERIC);
+        }
+        if (struct.getChanId() != null) {
+            pstmt.setInt(index + 3, struct.getChanId());
+        } else {
+            pstmt.setNull(index + 3, java.sql.Types.NUMERIC);
+        }
+        if (struct.getName() != null) {
+            pstmt.setString(index + 4, struct.getName());
+        } else {
+            pstmt.setNull(index + 4, java.sql.Types.VARCHAR);
+        }
+        pstmt.setString(index + 5, struct.getType());
+        pstmt.setString(index + 6, RDBMServices.dbFlag(struct.isHidden()));
+        pstmt.setString(index + 7, RDBMServices.dbFlag(struct.isImmutable()));
+        pstmt.setString(index + 8, RDBMServices.dbFlag(struct.isUnremovable()));
+    }
 
     /**
      * Save the user layout.
@@ -1166,70 +1366,27 @@ public abstract class RDBMUserLayoutStore implements IUserLayoutStore, Initializ
                                             firstLayout = true;
                                         }
 
-                                        String sql =
-                                                "DELETE FROM UP_LAYOUT_PARAM WHERE USER_ID=? AND LAYOUT_ID=?";
-                                        PreparedStatement pstmt = con.prepareStatement(sql);
-                                        try {
-                                            pstmt.clearParameters();
-                                            pstmt.setInt(1, userId);
-                                            pstmt.setInt(2, layoutId);
-                                            logger.debug(sql);
-                                            pstmt.executeUpdate();
-                                        } finally {
-                                            pstmt.close();
-                                        }
-
-                                        sql =
-                                                "DELETE FROM UP_LAYOUT_STRUCT WHERE USER_ID=? AND LAYOUT_ID=?";
-                                        pstmt = con.prepareStatement(sql);
-                                        try {
-                                            pstmt.clearParameters();
-                                            pstmt.setInt(1, userId);
-                                            pstmt.setInt(2, layoutId);
-                                            logger.debug(sql);
-                                            pstmt.executeUpdate();
-                                        } finally {
-                                            pstmt.close();
-                                        }
-
-                                        PreparedStatement structStmt =
-                                                con.prepareStatement(
-                                                        "INSERT INTO UP_LAYOUT_STRUCT "
-                                                                + "(USER_ID, LAYOUT_ID, STRUCT_ID, NEXT_STRUCT_ID, CHLD_STRUCT_ID,EXTERNAL_ID,CHAN_ID,NAME,TYPE,HIDDEN,IMMUTABLE,UNREMOVABLE) "
-                                                                + "VALUES ("
-                                                                + userId
-                                                                + ","
-                                                                + layoutId
-                                                                + ",?,?,?,?,?,?,?,?,?,?)");
-
-                                        PreparedStatement parmStmt =
-                                                con.prepareStatement(
-                                                        "INSERT INTO UP_LAYOUT_PARAM "
-                                                                + "(USER_ID, LAYOUT_ID, STRUCT_ID, STRUCT_PARM_NM, STRUCT_PARM_VAL) "
-                                                                + "VALUES ("
-                                                                + userId
-                                                                + ","
-                                                                + layoutId
-                                                                + ",?,?,?)");
-
-                                        int firstStructId;
-                                        try {
-                                            firstStructId =
-                                                    saveStructure(
-                                                            layoutXML
-                                                                    .getFirstChild()
-                                                                    .getFirstChild(),
-                                                            structStmt,
-                                                            parmStmt);
-                                        } finally {
-                                            structStmt.close();
-                                            parmStmt.close();
-                                        }
+                                        //Only write the rows that differ from the stored layout
+                                        final LayoutStructureRows structureRows =
+                                                new LayoutStructureRows();
+                                        final int firstStructId =
+                                                saveStructure(
+                                                        layoutXML.getFirstChild().getFirstChild(),
+                                                        structureRows);
+                                        final LayoutStructureRows.Changes changes =
+                                                structureRows.diff(
+                                                        getStructureRows(con, userId, layoutId));
+                                        saveStructureChanges(con, userId, layoutId, changes);
+                                        logger.debug(
+                                                "setUserLayout(): Saving {} rows for user {}: {}",
+                                                changes.getRowCount(),
+                                                userId,
+                                                changes);
 
                                         //Check to see if the user has a matching layout
-                                        sql =
+                                        String sql =
                                                 "SELECT * FROM UP_USER_LAYOUT WHERE USER_ID=? AND LAYOUT_ID=?";
-                                        pstmt = con.prepareStatement(sql);
+                                        PreparedStatement pstmt = con.prepareStatement(sql);
                                         try {
                                             pstmt.clearParameters();
                                             pstmt.setInt(1, userId);
@@ -44,27 +44,37 @@ import org.w3c.dom.Node;
 public class SimpleLayout implements IUserLayout {
 
     private final DistributedUserLayout userLayout;
-    private final Document layout;
     private final String layoutId;
+    private Document layout;
 
     private final Log log = LogFactory.getLog(getClass());
 
     public SimpleLayout(DistributedUserLayout userLayout, String layoutId) {
         this.userLayout = userLayout;
-        this.layout = this.userLayout.getLayout();
         this.layoutId = layoutId;
     }
 
+    /**
+     * The layout is only read here, so the cached compact layout is copied into a document the
+     * first time it is needed instead of being expanded and retained by the user's layout.
+     */
+    private Document getLayout() {
+        if (this.layout == null) {
+            this.layout = this.userLayout.getReadOnlyLayout();
+        }
+        return this.layout;
+    }
+
     @Override
     public IUserLayoutNodeDescription getNodeDescription(String nodeId) throws PortalException {
-        Element element = layout.getElementById(nodeId);
+        Element element = getLayout().getElementById(nodeId);
         return UserLayoutNodeDescription.createUserLayoutNodeDescription(element);
     }
 
     @Override
     public String getParentId(String nodeId) throws PortalException {
         String parentId = null;
-        Element element = layout.getElementById(nodeId);
+        Element element = getLayout().getElementById(nodeId);
         if (element != null) {
             Node parent = element.getParentNode();
             if (parent != null && parent.getNodeType() == Node.ELEMENT_NODE) {
@@ -80,7 +90,7 @@ public class SimpleLayout implements IUserLayout {
         Vector v = new Vector();
         IUserLayoutNodeDescription node = getNodeDescription(nodeId);
         if (node instanceof IUserLayoutFolderDescription) {
-            Element element = layout.getElementById(nodeId);
+            Element element = getLayout().getElementById(nodeId);
             for (Node n = element.getFirstChild(); n != null; n = n.getNextSibling()) {
                 if (n.getNodeType() == Node.ELEMENT_NODE) {
                     Element e = (Element) n;
@@ -104,7 +114,7 @@ public class SimpleLayout implements IUserLayout {
     @Override
     public String findNodeId(XPathExpression xpathExpression) throws PortalException {
         try {
-            return xpathExpression.evaluate(this.layout);
+            return xpathExpression.evaluate(this.getLayout());
         } catch (XPathExpressionException e) {
             throw new PortalException(
                     "Exception while executing XPathExpression: " + xpathExpression, e);
@@ -113,7 +123,7 @@ public class SimpleLayout implements IUserLayout {
 
     @Override
     public String findNodeId(INodeIdResolver finder) {
-        return finder.traverseDocument(this.layout);
+        return finder.traverseDocument(this.getLayout());
     }
 
     @Override
@@ -124,7 +134,8 @@ public class SimpleLayout implements IUserLayout {
             String expression = "/layout/folder";
             XPathFactory fac = XPathFactory.newInstance();
             XPath xpath = fac.newXPath();
-            Element rootNodeE = (Element) xpath.evaluate(expression, layout, XPathConstants.NODE);
+            Element rootNodeE =
+                    (Element) xpath.evaluate(expression, getLayout(), XPathConstants.NODE);
 
             rootNode = rootNodeE.getAttribute("ID");
         } catch (Exception e) {
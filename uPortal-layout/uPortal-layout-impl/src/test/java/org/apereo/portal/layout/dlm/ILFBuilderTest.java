@@ -0,0 +1,128 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.layout.dlm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.apereo.portal.utils.DocumentFactory;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class ILFBuilderTest {
+    private static final String PLF =
+            "<layout xmlns:dlm=\"http://www.uportal.org/layout/dlm\" ID=\"u5l1\">"
+                    + "<folder ID=\"s1\" name=\"Root folder\" type=\"root\" hidden=\"false\"/>"
+                    + "</layout>";
+    private static final String FRAGMENT =
+            "<layout xmlns:dlm=\"http://www.uportal.org/layout/dlm\" ID=\"u2l1\">"
+                    + "<folder ID=\"s1\" name=\"Root folder\" type=\"root\" hidden=\"false\">"
+                    + "<folder ID=\"u2l1s2\" name=\"Welcome\" type=\"regular\" hidden=\"false\""
+                    + " dlm:deleteAllowed=\"false\" dlm:precedence=\"80.0\">"
+                    + "<channel ID=\"u2l1n3\" fname=\"welcome\" chanID=\"12\" hidden=\"false\"/>"
+                    + "<channel ID=\"u2l1n4\" fname=\"weather\" chanID=\"18\" hidden=\"false\"/>"
+                    + "</folder>"
+                    + "</folder>"
+                    + "</layout>";
+
+    @Test
+    public void testConstructILFFromSkeleton() throws Exception {
+        final Document plf = parse(PLF);
+        final CompactUserLayout skeleton =
+                ILFBuilder.constructSkeleton(
+                        plf,
+                        Collections.singletonList(parse(FRAGMENT)),
+                        Collections.singleton("18"));
+
+        final Document ilf = ILFBuilder.constructILF(plf, skeleton);
+        assertEquals("u5l1", ilf.getDocumentElement().getAttribute("ID"));
+        assertEquals("Root folder", ilf.getElementById("s1").getAttribute("name"));
+        assertEquals(
+                "80.0",
+                ilf.getElementById("u2l1s2")
+                        .getAttributeNS("http://www.uportal.org/layout/dlm", "precedence"));
+        assertNotNull(ilf.getElementById("u2l1n3"));
+        //The user may not render the weather channel
+        assertNull(ilf.getElementById("u2l1n4"));
+    }
+
+    @Test(timeout = 30000)
+    public void testConstructILFConcurrently() throws Exception {
+        final Document plf = parse(PLF);
+        final CompactUserLayout skeleton =
+                ILFBuilder.constructSkeleton(
+                        plf,
+                        Collections.singletonList(parse(FRAGMENT)),
+                        Collections.<String>emptySet());
+        final String expected = toString(ILFBuilder.constructILF(plf, skeleton));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<List<String>>> futures = new ArrayList<Future<List<String>>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(
+                        executor.submit(
+                                new Callable<List<String>>() {
+                                    @Override
+                                    public List<String> call() throws Exception {
+                                        //Each thread has its own PLF, the skeleton is shared
+                                        final Document threadPlf = parse(PLF);
+                                        final List<String> layouts = new ArrayList<String>();
+                                        for (int j = 0; j < 100; j++) {
+                                            final Document ilf =
+                                                    ILFBuilder.constructILF(threadPlf, skeleton);
+                                            assertNotNull(ilf.getElementById("u2l1n4"));
+                                            layouts.add(ILFBuilderTest.toString(ilf));
+                                        }
+                                        return layouts;
+                                    }
+                                }));
+            }
+            for (final Future<List<String>> future : futures) {
+                for (final String layout : future.get()) {
+                    assertEquals(expected, layout);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Document parse(String xml) throws Exception {
+        return DocumentFactory.getDocumentFromStream(
+                new ByteArrayInputStream(xml.getBytes("UTF-8")), "layout");
+    }
+
+    private static String toString(Document document) throws Exception {
+        final StringWriter writer = new StringWriter();
+        TransformerFactory.newInstance()
+                .newTransformer()
+                .transform(new DOMSource(document), new StreamResult(writer));
+        return writer.toString();
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.layout.simple;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares the rows written by the diff based layout save with the rows the old delete and
+ * re-insert save wrote for some typical layout edits.
+ */
+public class LayoutStructureRowsTest {
+    private static final int TABS = 5;
+    private static final int COLUMNS = 3;
+    private static final int PORTLETS = 8;
+
+    //tab -> column -> portlet struct ids
+    private List<List<List<Integer>>> layout;
+    private int nextStructId;
+
+    @Before
+    public void setup() {
+        this.nextStructId = 2;
+        this.layout = new ArrayList<List<List<Integer>>>();
+        for (int t = 0; t < TABS; t++) {
+            final List<List<Integer>> tab = new ArrayList<List<Integer>>();
+            for (int c = 0; c < COLUMNS; c++) {
+                final List<Integer> column = new ArrayList<Integer>();
+                for (int p = 0; p < PORTLETS; p++) {
+                    column.add(this.nextStructId++);
+                }
+                tab.add(column);
+            }
+            this.layout.add(tab);
+        }
+    }
+
+    @Test
+    public void testUnchanged() {
+        final LayoutStructureRows stored = this.buildRows();
+        final LayoutStructureRows.Changes changes = this.buildRows().diff(stored);
+
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void testMovePortlet() {
+        final LayoutStructureRows stored = this.buildRows();
+
+        final Integer portlet = this.layout.get(1).get(0).remove(3);
+        this.layout.get(1).get(2).add(portlet);
+        final LayoutStructureRows.Changes changes = this.buildRows().diff(stored);
+
+        //Previous sibling, moved portlet and new previous sibling
+        assertEquals(3, changes.getUpdatedStructs().size());
+        assertEquals(3, changes.getRowCount());
+        assertTrue(changes.getRowCount() * 20 < fullRewriteRowCount(stored));
+    }
+
+    @Test
+    public void testAddPortlet() {
+        final LayoutStructureRows stored = this.buildRows();
+
+        this.layout.get(2).get(1).add(0, this.nextStructId++);
+        final LayoutStructureRows.Changes changes = this.buildRows().diff(stored);
+
+        //Column now points at the new portlet which has one parameter
+        assertEquals(1, changes.getInsertedStructs().size());
+        assertEquals(1, changes.getUpdatedStructs().size());
+        assertEquals(1, changes.getInsertedParams().size());
+        assertEquals(3, changes.getRowCount());
+    }
+
+    @Test
+    public void testRemoveTab() {
+        final LayoutStructureRows stored = this.buildRows();
+
+        this.layout.remove(TABS - 1);
+        final LayoutStructureRows.Changes changes = this.buildRows().diff(stored);
+
+        assertEquals(1 + COLUMNS + COLUMNS * PORTLETS, changes.getDeletedStructs().size());
+        assertEquals(COLUMNS * PORTLETS, changes.getDeletedParams().size());
+        //Previous tab now ends the list
+        assertEquals(1, changes.getUpdatedStructs().size());
+        assertTrue(changes.getInsertedStructs().isEmpty());
+    }
+
+    @Test
+    public void testChangeParameter() {
+        final LayoutStructureRows stored = this.buildRows();
+
+        final LayoutStructureRows updated = this.buildRows();
+        updated.addParameter(this.layout.get(0).get(0).get(0), "color", "blue");
+        final LayoutStructureRows.Changes changes = updated.diff(stored);
+
+        assertEquals(1, changes.getUpdatedParams().size());
+        assertEquals(1, changes.getRowCount());
+    }
+
+    /** Two DELETE statements followed by an INSERT per row */
+    private static int fullRewriteRowCount(LayoutStructureRows rows) {
+        return 2 + rows.getStructCount() + rows.getParameterCount();
+    }
+
+    private LayoutStructureRows buildRows() {
+        final LayoutStructureRows rows = new LayoutStructureRows();
+        final int firstTab = this.layout.isEmpty() ? 0 : this.getTabId(0);
+        rows.addStruct(1, 0, firstTab, null, null, "root", "root", false, false, false);
+
+        for (int t = 0; t < this.layout.size(); t++) {
+            final List<List<Integer>> tab = this.layout.get(t);
+            final int nextTab = t + 1 < this.layout.size() ? this.getTabId(t + 1) : 0;
+            rows.addStruct(
+                    this.getTabId(t),
+                    nextTab,
+                    this.getColumnId(t, 0),
+                    null,
+                    null,
+                    "Tab " + t,
+                    "regular",
+                    false,
+                    false,
+                    false);
+
+            for (int c = 0; c < tab.size(); c++) {
+                final List<Integer> column = tab.get(c);
+                final int nextColumn = c + 1 < tab.size() ? this.getColumnId(t, c + 1) : 0;
+                rows.addStruct(
+                        this.getColumnId(t, c),
+                        nextColumn,
+                        column.isEmpty() ? 0 : column.get(0),
+                        null,
+                        null,
+                        "Column",
+                        "regular",
+                        false,
+                        false,
+                        false);
+
+                for (int p = 0; p < column.size(); p++) {
+                    final int portlet = column.get(p);
+                    final int nextPortlet = p + 1 < column.size() ? column.get(p + 1) : 0;
+                    rows.addStruct(
+                            portlet,
+                            nextPortlet,
+                            0,
+                            null,
+                            portlet,
+                            null,
+                            null,
+                            false,
+                            false,
+                            false);
+                    rows.addParameter(portlet, "color", "red");
+                }
+            }
+        }
+        return rows;
+    }
+
+    //Folder ids are kept clear of the portlet ids
+    private int getTabId(int tab) {
+        return 10000 + tab * 100;
+    }
+
+    private int getColumnId(int tab, int column) {
+        return this.getTabId(tab) + column + 1;
+    }
+}
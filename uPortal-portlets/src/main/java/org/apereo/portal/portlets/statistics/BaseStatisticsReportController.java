@@ -24,11 +24,16 @@ import com.google.visualization.datasource.datatable.TableCell;
 import com.google.visualization.datasource.datatable.TableRow;
 import com.google.visualization.datasource.datatable.value.DateTimeValue;
 import com.google.visualization.datasource.datatable.value.DateValue;
+import com.google.visualization.datasource.datatable.value.NumberValue;
 import com.google.visualization.datasource.datatable.value.TimeOfDayValue;
 import com.google.visualization.datasource.datatable.value.Value;
 import com.google.visualization.datasource.datatable.value.ValueType;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -39,6 +44,7 @@ import java.util.TreeMap;
 import java.util.TreeSet;
 import javax.portlet.ResourceURL;
 import org.apache.commons.lang.StringUtils;
+import org.apereo.portal.events.aggr.AggregationColumns;
 import org.apereo.portal.events.aggr.AggregationInterval;
 import org.apereo.portal.events.aggr.AggregationIntervalHelper;
 import org.apereo.portal.events.aggr.BaseAggregation;
@@ -327,6 +333,42 @@ public abstract class BaseStatisticsReportController<
      */
     protected abstract List<Value> createRowValues(T aggr, F form);
 
+    /**
+     * Names of the int properties of the aggregation the report values are created from. When
+     * not null the report is built from {@link BaseAggregationDao#getAggregationColumns(DateTime,
+     * DateTime, Set, List, AggregatedGroupMapping...)} and {@link
+     * #createRowValuesFromColumns(int[], BaseReportForm)} instead of loading the aggregations.
+     *
+     * <p>Default behavior is to return null and report from the aggregations.
+     *
+     * @param form The original query form
+     * @return Property names in the order of the column descriptions, null to load the
+     *     aggregations
+     */
+    protected List<String> getAggregationColumns(F form) {
+        return null;
+    }
+
+    /**
+     * Convert the aggregation column values into report values, the order of the values returned
+     * must match the column descriptions returned by {@link
+     * #getColumnDescriptions(BaseGroupedAggregationDiscriminator, BaseReportForm)}.
+     *
+     * <p>Default behavior is one number per column.
+     *
+     * @param values Values of the columns returned by {@link
+     *     #getAggregationColumns(BaseReportForm)}, all 0 if there is no aggregation for the row
+     * @param form The original query form
+     * @return List of row values for the aggregation
+     */
+    protected List<Value> createRowValuesFromColumns(int[] values, F form) {
+        final List<Value> rowValues = new ArrayList<Value>(values.length);
+        for (final int value : values) {
+            rowValues.add(new NumberValue(value));
+        }
+        return rowValues;
+    }
+
     /**
      * @param form The form submitted by the user
      * @return The model and view to render
@@ -468,6 +510,21 @@ public abstract class BaseStatisticsReportController<
         //interval and discriminator data is used from the keys.
         final Set<K> keys = createAggregationsQueryKeyset(columnGroups, form);
         final BaseAggregationDao<T, K> baseAggregationDao = this.getBaseAggregationDao();
+
+        final List<String> columns = this.getAggregationColumns(form);
+        if (columns != null) {
+            final AggregationColumns aggregationColumns =
+                    baseAggregationDao.getAggregationColumns(
+                            startDateTime,
+                            endDateTime,
+                            keys,
+                            columns,
+                            extractGroupsArray(columnGroups));
+            this.addAggregationColumnRows(
+                    table, form, reportTimes, dateTimeColumnType, columnGroups, aggregationColumns);
+            return table;
+        }
+
         final Collection<T> aggregations =
                 baseAggregationDao.getAggregations(
                         startDateTime, endDateTime, keys, extractGroupsArray(columnGroups));
@@ -500,39 +557,7 @@ public abstract class BaseStatisticsReportController<
             final TableRow row = new TableRow();
 
             // add the date to the first cell
-            final Value dateTimeValue;
-            switch (dateTimeColumnType) {
-                case DATE:
-                    {
-                        dateTimeValue =
-                                new DateValue(
-                                        rowTime.getYear(),
-                                        rowTime.getMonthOfYear() - 1,
-                                        rowTime.getDayOfMonth());
-                        break;
-                    }
-                case TIMEOFDAY:
-                    {
-                        dateTimeValue =
-                                new TimeOfDayValue(
-                                        rowTime.getHourOfDay(), rowTime.getMinuteOfHour(), 0);
-                        break;
-                    }
-                default:
-                    {
-                        dateTimeValue =
-                                new DateTimeValue(
-                                        rowTime.getYear(),
-                                        rowTime.getMonthOfYear() - 1,
-                                        rowTime.getDayOfMonth(),
-                                        rowTime.getHourOfDay(),
-                                        rowTime.getMinuteOfHour(),
-                                        0,
-                                        0);
-                        break;
-                    }
-            }
-            row.addCell(new TableCell(dateTimeValue));
+            row.addCell(new TableCell(createDateTimeValue(dateTimeColumnType, rowTime)));
 
             for (final PeekingIterator<T> groupedAggregationIteratorEntry :
                     groupedAggregationIterators.values()) {
@@ -565,6 +590,122 @@ public abstract class BaseStatisticsReportController<
         return table;
     }
 
+    /**
+     * Add a row for each report time with the values of each column group, the aggregation column
+     * rows are ordered by date/time so each column group is filled by advancing a cursor over its
+     * rows.
+     */
+    private void addAggregationColumnRows(
+            DataTable table,
+            F form,
+            List<DateTime> reportTimes,
+            ValueType dateTimeColumnType,
+            Set<D> columnGroups,
+            AggregationColumns aggregationColumns)
+            throws TypeMismatchException {
+        //Index of the column group of each discriminator, in the order the columns were added
+        final List<D> sortedGroups = new ArrayList<D>(columnGroups);
+        Collections.sort(sortedGroups, getDiscriminatorComparator());
+        final Map<BaseGroupedAggregationDiscriminator, Integer> groupIndexes =
+                new HashMap<BaseGroupedAggregationDiscriminator, Integer>();
+        for (final D group : sortedGroups) {
+            groupIndexes.put(group, groupIndexes.size());
+        }
+
+        //Bucket the rows by column group, keeping them in date/time order
+        final int size = aggregationColumns.size();
+        final int groupCount = sortedGroups.size();
+        final int[] rowGroups = new int[size];
+        final int[] groupStarts = new int[groupCount + 1];
+        for (int row = 0; row < size; row++) {
+            final Integer groupIndex = groupIndexes.get(aggregationColumns.getDiscriminator(row));
+            rowGroups[row] = groupIndex != null ? groupIndex : -1;
+            if (groupIndex != null) {
+                groupStarts[groupIndex + 1]++;
+            }
+        }
+        for (int group = 0; group < groupCount; group++) {
+            groupStarts[group + 1] += groupStarts[group];
+        }
+        final int[] groupRows = new int[groupStarts[groupCount]];
+        final int[] cursors = Arrays.copyOf(groupStarts, groupCount);
+        for (int row = 0; row < size; row++) {
+            if (rowGroups[row] >= 0) {
+                groupRows[cursors[rowGroups[row]]++] = row;
+            }
+        }
+        System.arraycopy(groupStarts, 0, cursors, 0, groupCount);
+
+        final int columnCount = aggregationColumns.getColumnNames().size();
+        for (final DateTime rowTime : reportTimes) {
+            final TableRow row = new TableRow();
+            row.addCell(new TableCell(createDateTimeValue(dateTimeColumnType, rowTime)));
+
+            final long rowMillis = rowTime.getMillis();
+            for (int group = 0; group < groupCount; group++) {
+                final int[] values = new int[columnCount];
+
+                //Skip data before the time slot, use it if it is for the time slot
+                final int groupEnd = groupStarts[group + 1];
+                while (cursors[group] < groupEnd
+                        && aggregationColumns.getDateTime(groupRows[cursors[group]]) < rowMillis) {
+                    cursors[group]++;
+                }
+                if (cursors[group] < groupEnd) {
+                    final int aggregationRow = groupRows[cursors[group]];
+                    if (aggregationColumns.getDateTime(aggregationRow) == rowMillis) {
+                        cursors[group]++;
+                        for (int column = 0; column < columnCount; column++) {
+                            values[column] = aggregationColumns.getValue(column, aggregationRow);
+                        }
+                    }
+                }
+
+                for (final Value value : createRowValuesFromColumns(values, form)) {
+                    row.addCell(value);
+                }
+            }
+
+            table.addRow(row);
+        }
+    }
+
+    private static Value createDateTimeValue(ValueType dateTimeColumnType, DateTime rowTime) {
+        final Value dateTimeValue;
+        switch (dateTimeColumnType) {
+            case DATE:
+                {
+                    dateTimeValue =
+                            new DateValue(
+                                    rowTime.getYear(),
+                                    rowTime.getMonthOfYear() - 1,
+                                    rowTime.getDayOfMonth());
+                    break;
+                }
+            case TIMEOFDAY:
+                {
+                    dateTimeValue =
+                            new TimeOfDayValue(
+                                    rowTime.getHourOfDay(), rowTime.getMinuteOfHour(), 0);
+                    break;
+                }
+            default:
+                {
+                    dateTimeValue =
+                            new DateTimeValue(
+                                    rowTime.getYear(),
+                                    rowTime.getMonthOfYear() - 1,
+                                    rowTime.getDayOfMonth(),
+                                    rowTime.getHourOfDay(),
+                                    rowTime.getMinuteOfHour(),
+                                    0,
+                                    0);
+                    break;
+                }
+        }
+        return dateTimeValue;
+    }
+
     // Return the set of AggregatedGroupMappings based upon the set of column groups.
     // Since an AggregatedGroupMapping may occur multiple times in the column groups,
     // use a Set to filter down to unique values.
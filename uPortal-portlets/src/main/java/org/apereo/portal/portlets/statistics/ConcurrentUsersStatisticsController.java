@@ -138,6 +138,11 @@ public class ConcurrentUsersStatisticsController
         return Collections.<Value>singletonList(new NumberValue(concurrentUsers));
     }
 
+    @Override
+    protected List<String> getAggregationColumns(ConcurrentUserReportForm form) {
+        return Collections.singletonList("concurrentUsers");
+    }
+
     @Override
     protected ConcurrentUserAggregationDiscriminator createGroupedDiscriminatorInstance(
             AggregatedGroupMapping groupMapping) {
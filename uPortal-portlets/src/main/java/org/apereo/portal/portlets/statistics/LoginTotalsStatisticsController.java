@@ -168,6 +168,18 @@ public class LoginTotalsStatisticsController
         }
     }
 
+    @Override
+    protected List<String> getAggregationColumns(LoginReportForm form) {
+        if (form.isTotalLogins() && form.isUniqueLogins()) {
+            //THE ORDER OF RETURNED COLUMNS HERE MUST MATCH THE ORDER OF THE COLUMNS RETURNED IN getColumnDescriptions
+            return ImmutableList.of("uniqueLoginCount", "loginCount");
+        } else if (form.isUniqueLogins()) {
+            return Collections.singletonList("uniqueLoginCount");
+        } else {
+            return Collections.singletonList("loginCount");
+        }
+    }
+
     @Override
     protected LoginAggregationDiscriminator createGroupedDiscriminatorInstance(
             AggregatedGroupMapping groupMapping) {
@@ -60,4 +60,9 @@ public class PortletAddStatisticsController
         int count = aggr != null ? aggr.getAddCount() : 0;
         return Collections.<Value>singletonList(new NumberValue(count));
     }
+
+    @Override
+    protected List<String> getAggregationColumns(PortletAddReportForm form) {
+        return Collections.singletonList("addCount");
+    }
 }
@@ -60,4 +60,9 @@ public class PortletDeleteStatisticsController
         int count = aggr != null ? aggr.getDeleteCount() : 0;
         return Collections.<Value>singletonList(new NumberValue(count));
     }
+
+    @Override
+    protected List<String> getAggregationColumns(PortletDeleteReportForm form) {
+        return Collections.singletonList("delCount");
+    }
 }
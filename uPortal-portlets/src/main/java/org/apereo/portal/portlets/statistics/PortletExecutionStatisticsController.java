@@ -296,4 +296,9 @@ public class PortletExecutionStatisticsController
         int count = aggr != null ? aggr.getExecutionCount() : 0;
         return Collections.<Value>singletonList(new NumberValue(count));
     }
+
+    @Override
+    protected List<String> getAggregationColumns(PortletExecutionReportForm form) {
+        return Collections.singletonList("count");
+    }
 }
@@ -60,4 +60,9 @@ public class PortletMoveStatisticsController
         int count = aggr != null ? aggr.getMoveCount() : 0;
         return Collections.<Value>singletonList(new NumberValue(count));
     }
+
+    @Override
+    protected List<String> getAggregationColumns(PortletMoveReportForm form) {
+        return Collections.singletonList("moveCount");
+    }
 }
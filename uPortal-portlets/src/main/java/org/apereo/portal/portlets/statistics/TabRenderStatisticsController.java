@@ -229,4 +229,9 @@ public class TabRenderStatisticsController
         int count = aggr != null ? aggr.getRenderCount() : 0;
         return Collections.<Value>singletonList(new NumberValue(count));
     }
+
+    @Override
+    protected List<String> getAggregationColumns(TabRenderReportForm form) {
+        return Collections.singletonList("count");
+    }
 }
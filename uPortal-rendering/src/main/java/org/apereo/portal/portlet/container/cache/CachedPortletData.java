@@ -14,23 +14,40 @@
  */
 package org.apereo.portal.portlet.container.cache;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.TimeUnit;
 import javax.portlet.CacheControl;
+import org.apache.commons.io.IOUtils;
 import org.apereo.portal.portlet.rendering.PortletOutputHandler;
+import org.apereo.portal.portlet.rendering.PortletResourceOutputHandler;
 
-/** Java bean to represent the data cached for a portlet request via {@link CacheControl}s. */
+/**
+ * Java bean to represent the data cached for a portlet request via {@link CacheControl}s.
+ *
+ * <p>Output written to the portlet's writer is stored UTF-8 encoded, which for typical markup takes
+ * half the memory of a String. It is decoded in chunks as it is replayed, or written as is to a
+ * resource response that is UTF-8 encoded. Output with unpaired surrogates, which UTF-8 can't
+ * represent, is stored as UTF-16 chars instead so it replays unchanged.
+ */
 public class CachedPortletData<T extends Serializable>
         implements CachedPortletResultHolder<T>, Serializable {
-    private static final long serialVersionUID = 5509299103587289000L;
+    private static final long serialVersionUID = -3617526423049853395L;
 
     private final T portletResult;
 
-    private final String cachedWriterOutput;
-    private final byte[] cachedStreamOutput;
+    private byte[] cachedWriterOutput;
+    private boolean cachedWriterOutputUtf16;
+    private byte[] cachedStreamOutput;
 
     private final String contentType;
 
@@ -42,7 +59,7 @@ public class CachedPortletData<T extends Serializable>
     /** @param expirationTime Time in seconds the content is valid for (from now) */
     public CachedPortletData(
             T portletResult,
-            String cachedWriterOutput,
+            CharSequence cachedWriterOutput,
             byte[] cachedStreamOutput,
             String contentType,
             boolean publicScope,
@@ -55,7 +72,14 @@ public class CachedPortletData<T extends Serializable>
         }
 
         this.portletResult = portletResult;
-        this.cachedWriterOutput = cachedWriterOutput;
+        if (cachedWriterOutput != null) {
+            try {
+                this.cachedWriterOutput = encodeUtf8(cachedWriterOutput);
+            } catch (CharacterCodingException e) {
+                this.cachedWriterOutput = encodeUtf16(cachedWriterOutput);
+                this.cachedWriterOutputUtf16 = true;
+            }
+        }
         this.cachedStreamOutput = cachedStreamOutput;
 
         this.contentType = contentType;
@@ -72,14 +96,41 @@ public class CachedPortletData<T extends Serializable>
         }
 
         if (this.cachedWriterOutput != null) {
-            final PrintWriter printWriter = portletOutputHandler.getPrintWriter();
-            printWriter.write(this.cachedWriterOutput);
+            if (this.cachedWriterOutputUtf16) {
+                final PrintWriter printWriter = portletOutputHandler.getPrintWriter();
+                printWriter.append(decodeUtf16(this.cachedWriterOutput));
+            } else if (isUtf8(portletOutputHandler)) {
+                //The stored bytes are what the response's writer would have produced
+                final OutputStream outputStream = portletOutputHandler.getOutputStream();
+                outputStream.write(this.cachedWriterOutput);
+            } else {
+                final PrintWriter printWriter = portletOutputHandler.getPrintWriter();
+                IOUtils.copy(
+                        new InputStreamReader(
+                                new ByteArrayInputStream(this.cachedWriterOutput),
+                                StandardCharsets.UTF_8),
+                        printWriter);
+            }
         } else if (this.cachedStreamOutput != null) {
             final OutputStream outputStream = portletOutputHandler.getOutputStream();
             outputStream.write(cachedStreamOutput);
         }
     }
 
+    /**
+     * Replaces the stored output with an identical one from the store so cached data with the same
+     * output shares a single copy. Must be called before this data is cached.
+     */
+    void shareOutput(SharedPortletOutputStore sharedOutputStore, String portletDefinitionId) {
+        if (this.cachedWriterOutput != null) {
+            this.cachedWriterOutput =
+                    sharedOutputStore.share(portletDefinitionId, this.cachedWriterOutput);
+        } else if (this.cachedStreamOutput != null) {
+            this.cachedStreamOutput =
+                    sharedOutputStore.share(portletDefinitionId, this.cachedStreamOutput);
+        }
+    }
+
     /**
      * The time since the epoch in milliseconds that this content expires. -1 if it never expires
      */
@@ -103,8 +154,26 @@ public class CachedPortletData<T extends Serializable>
         return portletResult;
     }
 
+    /** @return The output written to the portlet's writer, decoded from the stored bytes */
     public String getCachedWriterOutput() {
-        return cachedWriterOutput;
+        if (cachedWriterOutput == null) {
+            return null;
+        }
+        if (cachedWriterOutputUtf16) {
+            return decodeUtf16(cachedWriterOutput).toString();
+        }
+        return new String(cachedWriterOutput, StandardCharsets.UTF_8);
+    }
+
+    /** @return Number of bytes used to store the portlet's output */
+    public int getCachedOutputSize() {
+        if (cachedWriterOutput != null) {
+            return cachedWriterOutput.length;
+        }
+        if (cachedStreamOutput != null) {
+            return cachedStreamOutput.length;
+        }
+        return 0;
     }
 
     public byte[] getCachedStreamOutput() {
@@ -128,4 +197,42 @@ public class CachedPortletData<T extends Serializable>
     public boolean isPublicScope() {
         return publicScope;
     }
+
+    /**
+     * Only resource responses expose their character encoding, render output is collected as
+     * chars by the portal and goes through the writer.
+     */
+    private static boolean isUtf8(PortletOutputHandler portletOutputHandler) {
+        if (!(portletOutputHandler instanceof PortletResourceOutputHandler)) {
+            return false;
+        }
+        final String characterEncoding =
+                ((PortletResourceOutputHandler) portletOutputHandler).getCharacterEncoding();
+        try {
+            return characterEncoding != null
+                    && StandardCharsets.UTF_8.equals(Charset.forName(characterEncoding));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /** @throws CharacterCodingException If the output has unpaired surrogates */
+    private static byte[] encodeUtf8(CharSequence output) throws CharacterCodingException {
+        final ByteBuffer encoded =
+                StandardCharsets.UTF_8.newEncoder().encode(CharBuffer.wrap(output));
+        final byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        return bytes;
+    }
+
+    /** Stores the chars as they are, the UTF-16 charset rejects unpaired surrogates too */
+    private static byte[] encodeUtf16(CharSequence output) {
+        final ByteBuffer encoded = ByteBuffer.allocate(output.length() * 2);
+        encoded.asCharBuffer().append(output);
+        return encoded.array();
+    }
+
+    private static CharBuffer decodeUtf16(byte[] bytes) {
+        return ByteBuffer.wrap(bytes).asCharBuffer();
+    }
 }
@@ -56,7 +56,7 @@ public class CachingPortletOutputHandler implements PortletOutputHandler {
 
         return new CachedPortletData<T>(
                 portletResult,
-                this.cachingWriter != null ? this.cachingWriter.toString() : null,
+                this.cachingWriter != null ? this.cachingWriter.getBuilder() : null,
                 this.cachingOutputStream != null ? this.cachingOutputStream.toByteArray() : null,
                 contentType,
                 cacheControl.isPublicScope(),
@@ -15,8 +15,11 @@
 package org.apereo.portal.portlet.container.cache;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.TreeMap;
 import javax.portlet.CacheControl;
 import javax.portlet.MimeResponse;
 import javax.servlet.http.HttpServletRequest;
@@ -41,6 +44,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.support.RequestContextUtils;
 
@@ -48,8 +52,10 @@ import org.springframework.web.servlet.support.RequestContextUtils;
  * Default implementation of {@link IPortletCacheControlService}. {@link CacheControl}s are stored
  * in a {@link Map} stored as a {@link HttpServletRequest} attribute.
  */
+@ManagedResource("uPortal:section=Cache,name=PortletOutputCaches")
 @Service
-public class PortletCacheControlServiceImpl implements IPortletCacheControlService {
+public class PortletCacheControlServiceImpl
+        implements IPortletCacheControlService, PortletCacheControlServiceMXBean {
     private static final String IF_NONE_MATCH = "If-None-Match";
     private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
 
@@ -70,6 +76,9 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
     private Ehcache privateScopePortletResourceOutputCache;
     private Ehcache publicScopePortletResourceOutputCache;
 
+    //Outputs shared between entries of the private render and resource output caches
+    private final SharedPortletOutputStore sharedOutputStore = new SharedPortletOutputStore();
+
     // default to 100 KB
     private int cacheSizeThreshold = 102400;
 
@@ -139,6 +148,50 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
         return cacheSizeThreshold;
     }
 
+    @Override
+    public Map<String, Long> getOutputCacheSizesInBytes() {
+        final Map<String, Long> sizes = new TreeMap<String, Long>();
+        for (final Ehcache outputCache : this.getOutputCaches()) {
+            //Cheap for caches sized by maxBytesLocalHeap, the pool tracks their size
+            sizes.put(outputCache.getName(), outputCache.calculateInMemorySize());
+        }
+        return sizes;
+    }
+
+    @Override
+    public Map<String, Integer> getOutputCacheElementCounts() {
+        final Map<String, Integer> counts = new TreeMap<String, Integer>();
+        for (final Ehcache outputCache : this.getOutputCaches()) {
+            counts.put(outputCache.getName(), outputCache.getSize());
+        }
+        return counts;
+    }
+
+    @Override
+    public int getSharedPrivateOutputCount() {
+        return this.sharedOutputStore.size();
+    }
+
+    @Override
+    public Map<String, Double> getPrivateOutputDeduplicationRatios() {
+        return this.sharedOutputStore.getDeduplicationRatios();
+    }
+
+    @Override
+    public Map<String, Long> getPrivateOutputBytesShared() {
+        return this.sharedOutputStore.getBytesShared();
+    }
+
+    private List<Ehcache> getOutputCaches() {
+        return Arrays.asList(
+                this.privateScopePortletRenderHeaderOutputCache,
+                this.publicScopePortletRenderHeaderOutputCache,
+                this.privateScopePortletRenderOutputCache,
+                this.publicScopePortletRenderOutputCache,
+                this.privateScopePortletResourceOutputCache,
+                this.publicScopePortletResourceOutputCache);
+    }
+
     @Autowired
     public void setPortletWindowRegistry(IPortletWindowRegistry portletWindowRegistry) {
         this.portletWindowRegistry = portletWindowRegistry;
@@ -436,7 +489,8 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
                 cacheState,
                 cachedPortletData,
                 this.publicScopePortletRenderHeaderOutputCache,
-                this.privateScopePortletRenderHeaderOutputCache);
+                this.privateScopePortletRenderHeaderOutputCache,
+                false);
     }
 
     @Override
@@ -452,7 +506,8 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
                 cacheState,
                 cachedPortletData,
                 this.publicScopePortletRenderOutputCache,
-                this.privateScopePortletRenderOutputCache);
+                this.privateScopePortletRenderOutputCache,
+                true);
     }
 
     @Override
@@ -468,7 +523,8 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
                 cacheState,
                 cachedPortletResourceData,
                 this.publicScopePortletResourceOutputCache,
-                this.privateScopePortletResourceOutputCache);
+                this.privateScopePortletResourceOutputCache,
+                true);
     }
 
     private <D extends CachedPortletResultHolder<T>, T extends Serializable>
@@ -478,7 +534,8 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
                     CacheState<D, T> cacheState,
                     D cachedPortletData,
                     Ehcache publicOutputCache,
-                    Ehcache privateOutputCache) {
+                    Ehcache privateOutputCache,
+                    boolean sharePrivateOutput) {
 
         final IPortletWindow portletWindow =
                 this.portletWindowRegistry.getPortletWindow(httpRequest, portletWindowId);
@@ -502,11 +559,31 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
                                 sessionId, portletWindowId, entityId, publicCacheKey);
             }
 
+            if (sharePrivateOutput) {
+                this.shareOutput(cachedPortletData, portletWindow);
+            }
+
             this.cacheElement(privateOutputCache, privateCacheKey, cachedPortletData, cacheControl);
             logger.debug("Cached private data under key {} for {}", privateCacheKey, portletWindow);
         }
     }
 
+    /** Swap the output of the data for an identical copy that other users' entries already use */
+    private void shareOutput(CachedPortletResultHolder<?> data, IPortletWindow portletWindow) {
+        final CachedPortletData<?> cachedPortletData;
+        if (data instanceof CachedPortletResourceData) {
+            cachedPortletData = ((CachedPortletResourceData<?>) data).getCachedPortletData();
+        } else if (data instanceof CachedPortletData) {
+            cachedPortletData = (CachedPortletData<?>) data;
+        } else {
+            return;
+        }
+
+        final IPortletDefinitionId portletDefinitionId =
+                portletWindow.getPortletEntity().getPortletDefinitionId();
+        cachedPortletData.shareOutput(this.sharedOutputStore, portletDefinitionId.getStringId());
+    }
+
     /**
      * Construct an appropriate Cache {@link Element} for the cacheKey and data. The element's ttl
      * will be set depending on whether expiration or validation method is indicated from the
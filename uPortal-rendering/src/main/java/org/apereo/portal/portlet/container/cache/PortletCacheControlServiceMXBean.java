@@ -0,0 +1,42 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.container.cache;
+
+import java.util.Map;
+
+/** JMX stats for the caches of portlet output used by the {@link PortletCacheControlServiceImpl} */
+public interface PortletCacheControlServiceMXBean {
+
+    /** @return Heap used by each portlet output cache in bytes, keyed by cache name */
+    Map<String, Long> getOutputCacheSizesInBytes();
+
+    /** @return Number of entries in each portlet output cache, keyed by cache name */
+    Map<String, Integer> getOutputCacheElementCounts();
+
+    /** @return Number of distinct outputs shared by the private render and resource caches */
+    int getSharedPrivateOutputCount();
+
+    /**
+     * @return For each portlet, by portlet definition id, the fraction of its privately cached
+     *     outputs that reused an identical output cached for another user
+     */
+    Map<String, Double> getPrivateOutputDeduplicationRatios();
+
+    /**
+     * @return For each portlet, by portlet definition id, the bytes of private output that were
+     *     not copied
+     */
+    Map<String, Long> getPrivateOutputBytesShared();
+}
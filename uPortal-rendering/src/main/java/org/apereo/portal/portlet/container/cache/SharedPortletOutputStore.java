@@ -0,0 +1,111 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.container.cache;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apereo.portal.utils.ConcurrentMapUtils;
+
+/**
+ * Content addressed store of portlet output shared between private-scope cache entries. Portlets
+ * that cache privately often produce the same markup for many users, storing each distinct output
+ * once makes the memory used grow with the number of distinct outputs instead of with the number
+ * of users.
+ *
+ * <p>Outputs are keyed by their SHA-256 hash and only weakly referenced by the store. An output is
+ * held for as long as a cache entry refers to it and is dropped by the garbage collector once the
+ * last entry using it is evicted, so no reference counts have to be kept in step with the caches.
+ *
+ * @since 5.0
+ */
+/* package-private */ final class SharedPortletOutputStore {
+    private static final HashFunction HASH_FUNCTION = Hashing.sha256();
+
+    private final ConcurrentMap<HashCode, byte[]> outputs =
+            CacheBuilder.newBuilder().weakValues().<HashCode, byte[]>build().asMap();
+
+    private final ConcurrentMap<String, OutputStats> outputStats =
+            new ConcurrentHashMap<String, OutputStats>();
+
+    /**
+     * @param portletDefinitionId The portlet that produced the output, for the statistics
+     * @return An identical output already in the store, or the output itself once it is added
+     */
+    public byte[] share(String portletDefinitionId, byte[] output) {
+        final OutputStats stats = this.getOutputStats(portletDefinitionId);
+        stats.stored.incrementAndGet();
+
+        final HashCode hash = HASH_FUNCTION.hashBytes(output);
+        final byte[] shared = this.outputs.putIfAbsent(hash, output);
+        if (shared == null || !Arrays.equals(shared, output)) {
+            return output;
+        }
+
+        stats.shared.incrementAndGet();
+        stats.bytesShared.addAndGet(output.length);
+        return shared;
+    }
+
+    /** @return Number of distinct outputs currently held */
+    public int size() {
+        return this.outputs.size();
+    }
+
+    /**
+     * @return For each portlet the fraction of its stored outputs that reused an identical output,
+     *     0 if none did
+     */
+    public Map<String, Double> getDeduplicationRatios() {
+        final Map<String, Double> ratios = new TreeMap<String, Double>();
+        for (final Map.Entry<String, OutputStats> entry : this.outputStats.entrySet()) {
+            final OutputStats stats = entry.getValue();
+            final long stored = stats.stored.get();
+            ratios.put(entry.getKey(), stored == 0 ? 0 : (double) stats.shared.get() / stored);
+        }
+        return ratios;
+    }
+
+    /** @return For each portlet the bytes of output that reused an identical output */
+    public Map<String, Long> getBytesShared() {
+        final Map<String, Long> bytes = new TreeMap<String, Long>();
+        for (final Map.Entry<String, OutputStats> entry : this.outputStats.entrySet()) {
+            bytes.put(entry.getKey(), entry.getValue().bytesShared.get());
+        }
+        return bytes;
+    }
+
+    private OutputStats getOutputStats(String portletDefinitionId) {
+        final OutputStats stats = this.outputStats.get(portletDefinitionId);
+        if (stats != null) {
+            return stats;
+        }
+        return ConcurrentMapUtils.putIfAbsent(
+                this.outputStats, portletDefinitionId, new OutputStats());
+    }
+
+    private static final class OutputStats {
+        private final AtomicLong stored = new AtomicLong();
+        private final AtomicLong shared = new AtomicLong();
+        private final AtomicLong bytesShared = new AtomicLong();
+    }
+}
@@ -15,13 +15,13 @@
 package org.apereo.portal.portlet.registry;
 
 import com.google.common.base.Function;
+import com.google.common.util.concurrent.Striped;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 import javax.portlet.WindowState;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
@@ -56,7 +56,6 @@ import org.apereo.portal.services.AuthorizationService;
 import org.apereo.portal.url.IPortalRequestUtils;
 import org.apereo.portal.user.IUserInstance;
 import org.apereo.portal.user.IUserInstanceManager;
-import org.apereo.portal.utils.ConcurrentMapUtils;
 import org.apereo.portal.utils.web.PortalWebUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,7 +63,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.orm.hibernate3.HibernateOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
-import org.springframework.web.util.WebUtils;
 
 /**
  * Provides access to IPortletEntity objects and convenience methods for creating and converting
@@ -80,13 +78,15 @@ public class PortletEntityRegistryImpl implements IPortletEntityRegistry {
             PortletEntityRegistryImpl.class.getName() + ".PORTLET_ENTITY_DATA";
     private static final String PORTLET_ENTITY_ATTRIBUTE =
             PortletEntityRegistryImpl.class.getName() + ".PORTLET_ENTITY.thread-";
-    private static final String PORTLET_ENTITY_LOCK_MAP_ATTRIBUTE =
-            PortletEntityRegistryImpl.class.getName() + ".PORTLET_ENTITY_LOCK_MAP_ATTRIBUTE";
     private static final String PORTLET_DEFINITION_LOOKUP_MAP_ATTRIBUTE =
             PortletEntityRegistryImpl.class.getName() + ".PORTLET_DEFINITION_LOOKUP_MAP_ATTRIBUTE";
 
     protected final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    //Entity ids include the user so the locks are shared by all sessions, striping them avoids
+    //creating and keeping a lock for every entity a session touches
+    private final Striped<Lock> portletEntityLocks = Striped.lazyWeakLock(4096);
+
     private IUserInstanceManager userInstanceManager;
     private IPortletEntityDao portletEntityDao;
     private IPortletDefinitionRegistry portletDefinitionRegistry;
@@ -446,17 +446,7 @@ public class PortletEntityRegistryImpl implements IPortletEntityRegistry {
 
     @Override
     public Lock getPortletEntityLock(HttpServletRequest request, IPortletEntityId portletEntityId) {
-        final ConcurrentMap<IPortletEntityId, Lock> lockMap = getPortletEntityLockMap(request);
-
-        //See if the lock already exist, return if it does
-        Lock lock = lockMap.get(portletEntityId);
-        if (lock != null) {
-            return lock;
-        }
-
-        //Create a new lock and do a putIfAbsent to avoid synchronizing but still get a single lock instance for the session.
-        lock = createPortletEntityLock();
-        return ConcurrentMapUtils.putIfAbsent(lockMap, portletEntityId, lock);
+        return this.portletEntityLocks.get(portletEntityId);
     }
 
     protected IPortletDefinition getPortletDefinition(
@@ -812,17 +802,6 @@ public class PortletEntityRegistryImpl implements IPortletEntityRegistry {
         return portletEntityId;
     }
 
-    protected Lock createPortletEntityLock() {
-        return new ReentrantLock(true);
-    }
-
-    protected ConcurrentMap<IPortletEntityId, Lock> getPortletEntityLockMap(
-            HttpServletRequest request) {
-        request = portalRequestUtils.getOriginalPortalRequest(request);
-        final HttpSession session = request.getSession();
-        return PortalWebUtils.getMapSessionAttribute(session, PORTLET_ENTITY_LOCK_MAP_ATTRIBUTE);
-    }
-
     protected PortletEntityCache<IPortletEntity> getPortletEntityMap(HttpServletRequest request) {
         request = portalRequestUtils.getOriginalPortletOrPortalRequest(request);
 
@@ -835,7 +814,7 @@ public class PortletEntityRegistryImpl implements IPortletEntityRegistry {
                 (PortletEntityCache<IPortletEntity>) request.getAttribute(entityMapAttribute);
         if (cache == null) {
             cache = new PortletEntityCache<IPortletEntity>(false);
-            request.setAttribute(PORTLET_ENTITY_ATTRIBUTE, cache);
+            request.setAttribute(entityMapAttribute, cache);
         }
 
         return cache;
@@ -845,18 +824,8 @@ public class PortletEntityRegistryImpl implements IPortletEntityRegistry {
             HttpServletRequest request) {
         request = portalRequestUtils.getOriginalPortalRequest(request);
         final HttpSession session = request.getSession();
-        final Object mutex = WebUtils.getSessionMutex(session);
-        synchronized (mutex) {
-            @SuppressWarnings("unchecked")
-            PortletEntityCache<PortletEntityData> cache =
-                    (PortletEntityCache<PortletEntityData>)
-                            session.getAttribute(PORTLET_ENTITY_DATA_ATTRIBUTE);
-            if (cache == null) {
-                cache = new PortletEntityCache<PortletEntityData>();
-                session.setAttribute(PORTLET_ENTITY_DATA_ATTRIBUTE, cache);
-            }
-            return cache;
-        }
+        return PortalWebUtils.getOrCreateSessionAttribute(
+                session, PORTLET_ENTITY_DATA_ATTRIBUTE, PortletEntityCache::new);
     }
 
     protected IPortletEntity wrapPortletEntityData(final PortletEntityData portletEntityData) {
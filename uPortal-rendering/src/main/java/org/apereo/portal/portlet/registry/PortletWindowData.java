@@ -81,7 +81,7 @@ class PortletWindowData implements IPortletWindowDescriptor, Serializable {
      */
     public void setRenderParameters(Map<String, String[]> renderParameters) {
         Validate.notNull(renderParameters, "renderParameters can not be null");
-        this.renderParameters = renderParameters;
+        this.renderParameters = compact(renderParameters);
     }
 
     /* (non-Javadoc)
@@ -96,7 +96,7 @@ class PortletWindowData implements IPortletWindowDescriptor, Serializable {
      */
     public void setPublicRenderParameters(Map<String, String[]> publicRenderParameters) {
         Validate.notNull(publicRenderParameters, "publicRenderParameters can not be null");
-        this.publicRenderParameters = publicRenderParameters;
+        this.publicRenderParameters = compact(publicRenderParameters);
     }
 
     /* (non-Javadoc)
@@ -231,6 +231,23 @@ class PortletWindowData implements IPortletWindowDescriptor, Serializable {
                 + "]";
     }
 
+    /**
+     * Most windows have no or a single parameter, avoid keeping a sized hash map for each of them
+     * in the session.
+     */
+    private static Map<String, String[]> compact(Map<String, String[]> parameters) {
+        switch (parameters.size()) {
+            case 0:
+                return Collections.emptyMap();
+            case 1:
+                final Map.Entry<String, String[]> parameter =
+                        parameters.entrySet().iterator().next();
+                return Collections.singletonMap(parameter.getKey(), parameter.getValue());
+            default:
+                return parameters;
+        }
+    }
+
     private void writeObject(ObjectOutputStream oos) throws IOException {
         oos.defaultWriteObject();
         oos.writeObject(this.portletMode.toString());
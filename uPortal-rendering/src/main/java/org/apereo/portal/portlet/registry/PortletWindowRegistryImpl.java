@@ -59,7 +59,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.web.util.WebUtils;
 
 /**
  * Provides the default implementation of the window registry, the backing for the storage of
@@ -773,7 +772,6 @@ public class PortletWindowRegistryImpl implements IPortletWindowRegistry {
         return this.getPortletWindowDataMap(request, true);
     }
 
-    @SuppressWarnings("unchecked")
     protected PortletWindowCache<PortletWindowData> getPortletWindowDataMap(
             HttpServletRequest request, boolean create) {
         request = portalRequestUtils.getOriginalPortalRequest(request);
@@ -782,41 +780,15 @@ public class PortletWindowRegistryImpl implements IPortletWindowRegistry {
             return null;
         }
 
-        PortletWindowCache<PortletWindowData> windowCache;
-
-        final Object mutex = WebUtils.getSessionMutex(session);
-        synchronized (mutex) {
-            windowCache =
-                    (PortletWindowCache<PortletWindowData>)
-                            session.getAttribute(PORTLET_WINDOW_DATA_ATTRIBUTE);
-            if (windowCache == null) {
-                windowCache = new PortletWindowCache<PortletWindowData>();
-                session.setAttribute(PORTLET_WINDOW_DATA_ATTRIBUTE, windowCache);
-            }
-        }
-
-        return windowCache;
+        return PortalWebUtils.getOrCreateSessionAttribute(
+                session, PORTLET_WINDOW_DATA_ATTRIBUTE, PortletWindowCache::new);
     }
 
-    @SuppressWarnings("unchecked")
     protected PortletWindowCache<PortletWindowData> getStatelessPortletWindowDataMap(
             HttpServletRequest request, boolean create) {
         request = portalRequestUtils.getOriginalPortalRequest(request);
-
-        PortletWindowCache<PortletWindowData> windowCache;
-
-        final Object mutex = PortalWebUtils.getRequestAttributeMutex(request);
-        synchronized (mutex) {
-            windowCache =
-                    (PortletWindowCache<PortletWindowData>)
-                            request.getAttribute(PORTLET_WINDOW_DATA_ATTRIBUTE);
-            if (windowCache == null) {
-                windowCache = new PortletWindowCache<PortletWindowData>();
-                request.setAttribute(PORTLET_WINDOW_DATA_ATTRIBUTE, windowCache);
-            }
-        }
-
-        return windowCache;
+        return PortalWebUtils.getOrCreateRequestAttribute(
+                request, PORTLET_WINDOW_DATA_ATTRIBUTE, PortletWindowCache::new);
     }
 
     protected PortletWindowData getOrCreateDefaultPortletWindowData(
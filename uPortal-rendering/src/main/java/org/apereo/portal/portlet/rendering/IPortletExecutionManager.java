@@ -94,6 +94,24 @@ public interface IPortletExecutionManager {
             HttpServletRequest request,
             HttpServletResponse response);
 
+    /**
+     * @return true if the specified portlet's HEAD output is available without waiting, either
+     *     because its header render has completed or because the portlet produces no HEAD output.
+     */
+    boolean isPortletRenderHeaderComplete(
+            IPortletWindowId portletWindowId,
+            HttpServletRequest request,
+            HttpServletResponse response);
+
+    /**
+     * @return true if the specified portlet's BODY render has been started during this request and
+     *     has completed.
+     */
+    boolean isPortletRenderComplete(
+            IPortletWindowId portletWindowId,
+            HttpServletRequest request,
+            HttpServletResponse response);
+
     /**
      * @param portletWindowId
      * @param request
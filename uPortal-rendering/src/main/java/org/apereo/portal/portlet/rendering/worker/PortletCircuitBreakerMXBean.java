@@ -0,0 +1,68 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.rendering.worker;
+
+import java.util.Map;
+
+/** JMX stats and settings for the per portlet bulkheads and circuit breakers */
+public interface PortletCircuitBreakerMXBean {
+
+    /** @return Maximum number of concurrent executions per portlet, 0 for no limit */
+    int getMaxConcurrentExecutions();
+
+    /** @param maxConcurrentExecutions Maximum concurrent executions per portlet, 0 for no limit */
+    void setMaxConcurrentExecutions(int maxConcurrentExecutions);
+
+    /** @return Consecutive timeouts or errors that open a portlet's circuit, 0 if disabled */
+    int getFailureThreshold();
+
+    /** @param failureThreshold Consecutive timeouts or errors that open a portlet's circuit */
+    void setFailureThreshold(int failureThreshold);
+
+    /** @return Milliseconds a circuit stays open before a probe execution is allowed */
+    long getOpenDuration();
+
+    /** @param openDuration Milliseconds a circuit stays open before a probe is allowed */
+    void setOpenDuration(long openDuration);
+
+    /** @return Circuit state (CLOSED, OPEN or HALF_OPEN) by portlet */
+    Map<String, String> getCircuitStates();
+
+    /** @return Currently running executions by portlet */
+    Map<String, Integer> getActiveExecutions();
+
+    /** @return Current number of consecutive timeouts or errors by portlet */
+    Map<String, Integer> getConsecutiveFailures();
+
+    /** @return Number of executions rejected by the bulkhead or an open circuit by portlet */
+    Map<String, Long> getRejectedExecutions();
+
+    /** @return Number of times the circuit has opened by portlet */
+    Map<String, Long> getCircuitOpenCounts();
+
+    /** @return Total number of executions rejected */
+    long getRejectedExecutionsTotal();
+
+    /** @return Number of portlets with a circuit that is not closed */
+    int getOpenCircuitCount();
+
+    /**
+     * Close the circuit for a portlet, allowing executions again
+     *
+     * @param fname The fname of the portlet
+     * @return true if a circuit was found for the fname
+     */
+    boolean closeCircuit(String fname);
+}
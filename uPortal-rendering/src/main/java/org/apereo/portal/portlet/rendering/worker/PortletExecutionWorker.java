@@ -181,21 +181,23 @@ abstract class PortletExecutionWorker<V> implements IPortletExecutionWorker<V> {
             this.future = this.executorService.submit(callable);
         } catch (final Exception e) {
             //All is not well do the basic portlet execution lifecycle and then, return a Future that simply rethrows the exception
+            //The post execution interceptors are passed the exception, the portlet never ran
 
-            final Callable<Future<V>> callable =
-                    new ExecutionLifecycleCallable<Future<V>>(
-                            new Callable<Future<V>>() {
+            final Callable<V> callable =
+                    new ExecutionLifecycleCallable<V>(
+                            new Callable<V>() {
                                 @Override
-                                public Future<V> call() throws Exception {
-                                    return Futures.immediateFailedFuture(e);
+                                public V call() throws Exception {
+                                    throw e;
                                 }
                             });
 
             try {
-                this.future = callable.call();
+                callable.call();
             } catch (Exception e1) {
-                //We know this will never throw
+                //We know this will always throw e
             }
+            this.future = Futures.immediateFailedFuture(e);
         }
     }
 
@@ -0,0 +1,55 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.rendering;
+
+/** Flush policy configuration and output statistics for the top level rendering pipeline */
+public interface DynamicRenderingPipelineMXBean {
+
+    /** @return Number of characters buffered before the output is flushed */
+    int getFlushBufferSize();
+
+    /** @param flushBufferSize Number of characters buffered before the output is flushed */
+    void setFlushBufferSize(int flushBufferSize);
+
+    /** @return Maximum time in ms that buffered output is held before it is flushed */
+    long getMaxFlushDelay();
+
+    /** @param maxFlushDelay Maximum time in ms that buffered output is held before it is flushed */
+    void setMaxFlushDelay(long maxFlushDelay);
+
+    /** @return If the output is flushed once the end of the HEAD element has been rendered */
+    boolean isFlushAfterHead();
+
+    /**
+     * @param flushAfterHead If the output is flushed once the end of the HEAD element has been
+     *     rendered
+     */
+    void setFlushAfterHead(boolean flushAfterHead);
+
+    /** @return Number of requests rendered */
+    long getRenderCount();
+
+    /** @return Total bytes written by all rendered requests */
+    long getBytesWritten();
+
+    /** @return Total flushes performed by all rendered requests */
+    long getFlushCount();
+
+    /** @return Average bytes written per rendered request */
+    double getAverageBytesPerRender();
+
+    /** @return Average flushes performed per rendered request */
+    double getAverageFlushesPerRender();
+}
@@ -0,0 +1,156 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.rendering;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces the character data written by the top level renderer. Data is written to the response
+ * and flushed once the buffer is full or the flush delay has passed, and whenever a pipeline
+ * component signals a rendering boundary via {@link #flush(HttpServletRequest)}, rather than once
+ * per event.
+ *
+ * <p>Not thread safe, a buffer is only used by the thread rendering the request it is bound to.
+ */
+public class PipelineOutputBuffer {
+    private static final String REQUEST_ATTRIBUTE = PipelineOutputBuffer.class.getName();
+
+    private static final Logger logger = LoggerFactory.getLogger(PipelineOutputBuffer.class);
+
+    private final HttpServletResponse response;
+    private final PrintWriter writer;
+    private final int bufferSize;
+    private final long maxFlushDelay;
+    private final StringBuilder buffer;
+
+    private long lastFlushTime;
+    private long bytesWritten = 0;
+    private int flushCount = 0;
+
+    /**
+     * @param response The response to write to
+     * @param bufferSize Number of characters to buffer before flushing, 0 flushes after every write
+     * @param maxFlushDelay Maximum time in ms that buffered data is held before the next write
+     *     flushes it
+     */
+    public PipelineOutputBuffer(HttpServletResponse response, int bufferSize, long maxFlushDelay)
+            throws IOException {
+        this.response = response;
+        this.writer = response.getWriter();
+        this.bufferSize = Math.max(bufferSize, 0);
+        this.maxFlushDelay = TimeUnit.MILLISECONDS.toNanos(Math.max(maxFlushDelay, 0));
+        this.buffer = new StringBuilder(Math.min(Math.max(this.bufferSize, 16), 64 * 1024));
+        this.lastFlushTime = System.nanoTime();
+    }
+
+    /** Make the buffer available to pipeline components rendering the request */
+    public static void bind(HttpServletRequest request, PipelineOutputBuffer outputBuffer) {
+        request.setAttribute(REQUEST_ATTRIBUTE, outputBuffer);
+    }
+
+    /** Remove the buffer bound to the request */
+    public static void unbind(HttpServletRequest request) {
+        request.removeAttribute(REQUEST_ATTRIBUTE);
+    }
+
+    /** @return The buffer bound to the request, null if the request is not being rendered */
+    public static PipelineOutputBuffer getOutputBuffer(HttpServletRequest request) {
+        return (PipelineOutputBuffer) request.getAttribute(REQUEST_ATTRIBUTE);
+    }
+
+    /**
+     * Flush the buffer bound to the request, if any. Called by pipeline components at rendering
+     * boundaries, for example before waiting on a portlet that has not completed, so the client
+     * receives everything rendered so far. Failures are logged and ignored, a closed connection
+     * is reported by the top level renderer's final flush.
+     */
+    public static void flush(HttpServletRequest request) {
+        final PipelineOutputBuffer outputBuffer = getOutputBuffer(request);
+        if (outputBuffer == null) {
+            return;
+        }
+
+        try {
+            outputBuffer.flush();
+        } catch (IOException e) {
+            logger.debug("Failed to flush rendered output for {}", request.getRequestURI(), e);
+        }
+    }
+
+    /** Append the data to the buffer, flushing if the size or time threshold has been reached */
+    public void write(String data) throws IOException {
+        if (data.length() == 0) {
+            return;
+        }
+
+        this.buffer.append(data);
+        if (this.buffer.length() >= this.bufferSize
+                || System.nanoTime() - this.lastFlushTime >= this.maxFlushDelay) {
+            this.flush();
+        }
+    }
+
+    /** Write any buffered data to the response and flush it to the client */
+    public void flush() throws IOException {
+        if (this.buffer.length() == 0) {
+            return;
+        }
+
+        this.bytesWritten += getUtf8Length(this.buffer);
+        this.writer.append(this.buffer);
+        this.buffer.setLength(0);
+
+        this.writer.flush();
+        this.response.flushBuffer();
+
+        this.flushCount++;
+        this.lastFlushTime = System.nanoTime();
+    }
+
+    /** @return Number of bytes, UTF-8 encoded, flushed to the response */
+    public long getBytesWritten() {
+        return this.bytesWritten;
+    }
+
+    /** @return Number of times data has been flushed to the response */
+    public int getFlushCount() {
+        return this.flushCount;
+    }
+
+    private static long getUtf8Length(CharSequence data) {
+        long length = 0;
+        for (int i = 0; i < data.length(); i++) {
+            final char c = data.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                //Surrogate pair, 4 bytes for both chars
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
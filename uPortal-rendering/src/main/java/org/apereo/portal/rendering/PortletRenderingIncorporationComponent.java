@@ -27,19 +27,44 @@ import org.apereo.portal.character.stream.events.PortletLinkPlaceholderEvent;
 import org.apereo.portal.character.stream.events.PortletNewItemCountPlaceholderEvent;
 import org.apereo.portal.character.stream.events.PortletTitlePlaceholderEvent;
 import org.apereo.portal.portlet.om.IPortletWindowId;
+import org.apereo.portal.portlet.registry.IPortletWindowRegistry;
 import org.apereo.portal.portlet.rendering.IPortletExecutionManager;
 import org.apereo.portal.utils.cache.CacheKey;
 import org.springframework.beans.factory.annotation.Autowired;
 
-/** Inserts the results of portlet's rendering into the character stream */
+/**
+ * Inserts the results of portlet's rendering into the character stream. Before waiting on a portlet
+ * that has not completed rendering the output rendered so far is flushed to the client via {@link
+ * PipelineOutputBuffer#flush(HttpServletRequest)}.
+ *
+ * <p>In progressive mode portlets that have not completed rendering do not block the page, their
+ * content is streamed into placeholders at the end of the page, see {@link
+ * ProgressivePortletEventReader}.
+ */
 public class PortletRenderingIncorporationComponent extends CharacterPipelineComponentWrapper {
     private IPortletExecutionManager portletExecutionManager;
+    private IPortletWindowRegistry portletWindowRegistry;
+    private boolean progressiveRendering = false;
 
     @Autowired
     public void setPortletExecutionManager(IPortletExecutionManager portletExecutionManager) {
         this.portletExecutionManager = portletExecutionManager;
     }
 
+    @Autowired
+    public void setPortletWindowRegistry(IPortletWindowRegistry portletWindowRegistry) {
+        this.portletWindowRegistry = portletWindowRegistry;
+    }
+
+    /**
+     * @param progressiveRendering If true the content of portlets that have not completed rendering
+     *     is written at the end of the page as each portlet completes, instead of in document
+     *     order. Defaults to false.
+     */
+    public void setProgressiveRendering(boolean progressiveRendering) {
+        this.progressiveRendering = progressiveRendering;
+    }
+
     /* (non-Javadoc)
      * @see org.apereo.portal.rendering.PipelineComponent#getCacheKey(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
      */
@@ -61,7 +86,17 @@ public class PortletRenderingIncorporationComponent extends CharacterPipelineCom
         final PipelineEventReader<CharacterEventReader, CharacterEvent> pipelineEventReader =
                 this.wrappedComponent.getEventReader(request, response);
 
-        final CharacterEventReader eventReader = pipelineEventReader.getEventReader();
+        CharacterEventReader eventReader = pipelineEventReader.getEventReader();
+        if (this.progressiveRendering) {
+            eventReader =
+                    new ProgressivePortletEventReader(
+                            eventReader,
+                            request,
+                            response,
+                            this.portletExecutionManager,
+                            this.portletWindowRegistry);
+        }
+
         final PortletIncorporatingEventReader portletIncorporatingEventReader =
                 new PortletIncorporatingEventReader(eventReader, request, response);
 
@@ -83,6 +118,14 @@ public class PortletRenderingIncorporationComponent extends CharacterPipelineCom
             this.response = response;
         }
 
+        /** Flush rendered output if the portlet's render result is not yet available */
+        private void flushIfRenderIncomplete(IPortletWindowId portletWindowId) {
+            if (!portletExecutionManager.isPortletRenderComplete(
+                    portletWindowId, this.request, this.response)) {
+                PipelineOutputBuffer.flush(this.request);
+            }
+        }
+
         @Override
         protected CharacterEvent filterEvent(CharacterEvent event, boolean peek) {
             switch (event.getEventType()) {
@@ -93,6 +136,11 @@ public class PortletRenderingIncorporationComponent extends CharacterPipelineCom
                         final IPortletWindowId portletWindowId =
                                 headerPlaceholderEvent.getPortletWindowId();
 
+                        if (!portletExecutionManager.isPortletRenderHeaderComplete(
+                                portletWindowId, this.request, this.response)) {
+                            PipelineOutputBuffer.flush(this.request);
+                        }
+
                         final String output =
                                 portletExecutionManager.getPortletHeadOutput(
                                         portletWindowId, this.request, this.response);
@@ -105,6 +153,7 @@ public class PortletRenderingIncorporationComponent extends CharacterPipelineCom
                                 (PortletContentPlaceholderEvent) event;
                         final IPortletWindowId portletWindowId =
                                 contentPlaceholderEvent.getPortletWindowId();
+                        this.flushIfRenderIncomplete(portletWindowId);
 
                         final String output =
                                 portletExecutionManager.getPortletOutput(
@@ -118,6 +167,7 @@ public class PortletRenderingIncorporationComponent extends CharacterPipelineCom
                                 (PortletTitlePlaceholderEvent) event;
                         final IPortletWindowId portletWindowId =
                                 titlePlaceholderEvent.getPortletWindowId();
+                        this.flushIfRenderIncomplete(portletWindowId);
 
                         final String title =
                                 portletExecutionManager.getPortletTitle(
@@ -131,6 +181,7 @@ public class PortletRenderingIncorporationComponent extends CharacterPipelineCom
                                 (PortletNewItemCountPlaceholderEvent) event;
                         final IPortletWindowId portletWindowId =
                                 newItemCountPlaceholderEvent.getPortletWindowId();
+                        this.flushIfRenderIncomplete(portletWindowId);
 
                         final int newItemCount =
                                 portletExecutionManager.getPortletNewItemCount(
@@ -144,6 +195,7 @@ public class PortletRenderingIncorporationComponent extends CharacterPipelineCom
                                 (PortletLinkPlaceholderEvent) event;
                         final IPortletWindowId portletWindowId =
                                 linkPlaceholderEvent.getPortletWindowId();
+                        this.flushIfRenderIncomplete(portletWindowId);
                         final String defaultPortletUrl =
                                 linkPlaceholderEvent.getDefaultPortletUrl();
 
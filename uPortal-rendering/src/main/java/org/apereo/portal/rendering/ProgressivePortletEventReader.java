@@ -0,0 +1,290 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.rendering;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apereo.portal.character.stream.CharacterEventReader;
+import org.apereo.portal.character.stream.events.CharacterDataEvent;
+import org.apereo.portal.character.stream.events.CharacterDataEventImpl;
+import org.apereo.portal.character.stream.events.CharacterEvent;
+import org.apereo.portal.character.stream.events.PortletLinkPlaceholderEvent;
+import org.apereo.portal.character.stream.events.PortletPlaceholderEvent;
+import org.apereo.portal.portlet.om.IPortletDefinition;
+import org.apereo.portal.portlet.om.IPortletWindow;
+import org.apereo.portal.portlet.om.IPortletWindowId;
+import org.apereo.portal.portlet.registry.IPortletWindowRegistry;
+import org.apereo.portal.portlet.rendering.IPortletExecutionManager;
+
+/**
+ * Reader used by {@link PortletRenderingIncorporationComponent} in progressive mode. The content of
+ * a portlet that has not completed rendering is replaced by an empty placeholder element so the
+ * rest of the page can be streamed without waiting. The deferred content is written just before the
+ * end of the BODY element, in the order the portlets complete, each followed by an inline script
+ * that moves it into its placeholder.
+ *
+ * <p>Title, new item count and link placeholders of a portlet that has not completed use the
+ * values from the portlet definition since their dynamic values are only known once the portlet
+ * renders.
+ */
+class ProgressivePortletEventReader implements CharacterEventReader {
+    static final String BODY_END_TAG = "</body>";
+    static final String PLACEHOLDER_ID_PREFIX = "up-progressive-";
+
+    private final CharacterEventReader delegate;
+    private final HttpServletRequest request;
+    private final HttpServletResponse response;
+    private final IPortletExecutionManager portletExecutionManager;
+    private final IPortletWindowRegistry portletWindowRegistry;
+
+    /** Events ready to be returned by the reader */
+    private final Queue<CharacterEvent> pendingEvents = new LinkedList<CharacterEvent>();
+    /** Placeholder ids of portlets whose content has been deferred, in document order */
+    private final Map<IPortletWindowId, String> deferredPortlets =
+            new LinkedHashMap<IPortletWindowId, String>();
+
+    private int placeholderCount = 0;
+    private boolean draining = false;
+    private String bodyEndData = null;
+
+    ProgressivePortletEventReader(
+            CharacterEventReader delegate,
+            HttpServletRequest request,
+            HttpServletResponse response,
+            IPortletExecutionManager portletExecutionManager,
+            IPortletWindowRegistry portletWindowRegistry) {
+        this.delegate = delegate;
+        this.request = request;
+        this.response = response;
+        this.portletExecutionManager = portletExecutionManager;
+        this.portletWindowRegistry = portletWindowRegistry;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return this.fillPendingEvents();
+    }
+
+    @Override
+    public CharacterEvent next() {
+        if (!this.fillPendingEvents()) {
+            throw new NoSuchElementException();
+        }
+        return this.pendingEvents.poll();
+    }
+
+    @Override
+    public CharacterEvent peek() {
+        if (!this.fillPendingEvents()) {
+            throw new NoSuchElementException();
+        }
+        return this.pendingEvents.peek();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        this.delegate.close();
+    }
+
+    /** @return true if there is at least one pending event */
+    private boolean fillPendingEvents() {
+        while (this.pendingEvents.isEmpty()) {
+            if (this.draining) {
+                this.drainDeferredPortlet();
+            } else if (this.delegate.hasNext()) {
+                this.filterEvent(this.delegate.next());
+            } else if (!this.deferredPortlets.isEmpty()) {
+                //No BODY end tag was found, write the deferred content at the end of the document
+                this.draining = true;
+            } else {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void filterEvent(CharacterEvent event) {
+        switch (event.getEventType()) {
+            case PORTLET_CONTENT:
+                {
+                    final IPortletWindowId portletWindowId = getPortletWindowId(event);
+                    if (this.isRenderComplete(portletWindowId)) {
+                        this.pendingEvents.add(event);
+                    } else {
+                        this.deferPortletContent(portletWindowId);
+                    }
+                    break;
+                }
+            case PORTLET_TITLE:
+                {
+                    final IPortletWindowId portletWindowId = getPortletWindowId(event);
+                    if (this.isRenderComplete(portletWindowId)) {
+                        this.pendingEvents.add(event);
+                    } else {
+                        final IPortletDefinition portletDefinition =
+                                this.getPortletDefinition(portletWindowId);
+                        final String locale = this.response.getLocale().toString();
+                        this.pendingEvents.add(
+                                CharacterDataEventImpl.create(portletDefinition.getTitle(locale)));
+                    }
+                    break;
+                }
+            case PORTLET_NEW_ITEM_COUNT:
+                {
+                    final IPortletWindowId portletWindowId = getPortletWindowId(event);
+                    if (this.isRenderComplete(portletWindowId)) {
+                        this.pendingEvents.add(event);
+                    } else {
+                        this.pendingEvents.add(CharacterDataEventImpl.create("0"));
+                    }
+                    break;
+                }
+            case PORTLET_LINK:
+                {
+                    final IPortletWindowId portletWindowId = getPortletWindowId(event);
+                    if (this.isRenderComplete(portletWindowId)) {
+                        this.pendingEvents.add(event);
+                    } else {
+                        final String defaultPortletUrl =
+                                ((PortletLinkPlaceholderEvent) event).getDefaultPortletUrl();
+                        this.pendingEvents.add(CharacterDataEventImpl.create(defaultPortletUrl));
+                    }
+                    break;
+                }
+            case CHARACTER:
+                {
+                    final String data = ((CharacterDataEvent) event).getData();
+                    final int bodyEndIndex =
+                            this.deferredPortlets.isEmpty() ? -1 : data.indexOf(BODY_END_TAG);
+                    if (bodyEndIndex < 0) {
+                        this.pendingEvents.add(event);
+                        break;
+                    }
+
+                    //Write the deferred content just before the end of the BODY element
+                    this.pendingEvents.add(
+                            CharacterDataEventImpl.create(data.substring(0, bodyEndIndex)));
+                    this.bodyEndData = data.substring(bodyEndIndex);
+                    this.draining = true;
+                    break;
+                }
+            default:
+                {
+                    this.pendingEvents.add(event);
+                }
+        }
+    }
+
+    /** Start the portlet if needed and replace its content with a placeholder element */
+    private void deferPortletContent(IPortletWindowId portletWindowId) {
+        if (!this.portletExecutionManager.isPortletRenderRequested(
+                portletWindowId, this.request, this.response)) {
+            this.portletExecutionManager.startPortletRender(
+                    portletWindowId, this.request, this.response);
+        }
+
+        String placeholderId = this.deferredPortlets.get(portletWindowId);
+        if (placeholderId == null) {
+            placeholderId = PLACEHOLDER_ID_PREFIX + this.placeholderCount++;
+            this.deferredPortlets.put(portletWindowId, placeholderId);
+        }
+
+        this.pendingEvents.add(
+                CharacterDataEventImpl.create(
+                        "<div id=\""
+                                + placeholderId
+                                + "\" class=\"up-portlet-progressive-placeholder\""
+                                + " aria-busy=\"true\"></div>"));
+    }
+
+    /**
+     * Write the content of the first deferred portlet that has completed. If none have completed
+     * the output so far is flushed and the first deferred portlet in document order is waited on.
+     */
+    private void drainDeferredPortlet() {
+        if (this.deferredPortlets.isEmpty()) {
+            this.draining = false;
+            if (this.bodyEndData != null) {
+                this.pendingEvents.add(CharacterDataEventImpl.create(this.bodyEndData));
+                this.bodyEndData = null;
+            }
+            return;
+        }
+
+        Map.Entry<IPortletWindowId, String> deferredPortlet = null;
+        for (final Map.Entry<IPortletWindowId, String> entry : this.deferredPortlets.entrySet()) {
+            if (this.isRenderComplete(entry.getKey())) {
+                deferredPortlet = entry;
+                break;
+            }
+        }
+
+        if (deferredPortlet == null) {
+            //Send everything rendered so far before waiting on the portlet
+            PipelineOutputBuffer.flush(this.request);
+            deferredPortlet = this.deferredPortlets.entrySet().iterator().next();
+        }
+
+        final IPortletWindowId portletWindowId = deferredPortlet.getKey();
+        final String placeholderId = deferredPortlet.getValue();
+        this.deferredPortlets.remove(portletWindowId);
+
+        final String output =
+                this.portletExecutionManager.getPortletOutput(
+                        portletWindowId, this.request, this.response);
+
+        final String contentId = placeholderId + "-content";
+        this.pendingEvents.add(
+                CharacterDataEventImpl.create(
+                        "<div id=\"" + contentId + "\" style=\"display:none\">"));
+        this.pendingEvents.add(CharacterDataEventImpl.create(output));
+        this.pendingEvents.add(
+                CharacterDataEventImpl.create(
+                        "</div><script type=\"text/javascript\">(function(){"
+                                + "var c=document.getElementById('"
+                                + contentId
+                                + "'),p=document.getElementById('"
+                                + placeholderId
+                                + "');if(c&&p){while(c.firstChild){p.appendChild(c.firstChild);}"
+                                + "p.removeAttribute('aria-busy');c.parentNode.removeChild(c);}"
+                                + "})();</script>"));
+    }
+
+    private boolean isRenderComplete(IPortletWindowId portletWindowId) {
+        return this.portletExecutionManager.isPortletRenderComplete(
+                portletWindowId, this.request, this.response);
+    }
+
+    private IPortletDefinition getPortletDefinition(IPortletWindowId portletWindowId) {
+        final IPortletWindow portletWindow =
+                this.portletWindowRegistry.getPortletWindow(this.request, portletWindowId);
+        return portletWindow.getPortletEntity().getPortletDefinition();
+    }
+
+    private static IPortletWindowId getPortletWindowId(CharacterEvent event) {
+        return ((PortletPlaceholderEvent) event).getPortletWindowId();
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.rendering.cache;
+
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+/** Read-only {@link ListIterator} over the event array of a {@link CachedEventReader} */
+final class CachedEventIterator<E> implements ListIterator<E> {
+    private final Object[] events;
+    private int cursor = 0;
+
+    CachedEventIterator(Object[] events) {
+        this.events = events;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return this.cursor < this.events.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public E next() {
+        if (this.cursor >= this.events.length) {
+            throw new NoSuchElementException();
+        }
+        return (E) this.events[this.cursor++];
+    }
+
+    @Override
+    public boolean hasPrevious() {
+        return this.cursor > 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public E previous() {
+        if (this.cursor <= 0) {
+            throw new NoSuchElementException();
+        }
+        return (E) this.events[--this.cursor];
+    }
+
+    @Override
+    public int nextIndex() {
+        return this.cursor;
+    }
+
+    @Override
+    public int previousIndex() {
+        return this.cursor - 1;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Cached events are immutable");
+    }
+
+    @Override
+    public void set(E e) {
+        throw new UnsupportedOperationException("Cached events are immutable");
+    }
+
+    @Override
+    public void add(E e) {
+        throw new UnsupportedOperationException("Cached events are immutable");
+    }
+}
@@ -15,27 +15,58 @@
 package org.apereo.portal.rendering.cache;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 
-/** Holder class for an event cache and output properties */
+/**
+ * Holder class for an event cache and output properties. The events are stored in a trimmed,
+ * immutable array so a cache entry costs one reference per event instead of a list node per event.
+ */
 class CachedEventReader<E> implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
-    private final List<E> eventCache;
+    private final Object[] eventCache;
     private final Map<String, String> outputProperties;
+    private final int uniqueEventCount;
+    private final long estimatedSize;
 
-    public CachedEventReader(List<E> eventCache, Map<String, String> outputProperties) {
-        this.eventCache = Collections.unmodifiableList(eventCache);
+    public CachedEventReader(
+            Collection<E> eventCache,
+            Map<String, String> outputProperties,
+            int uniqueEventCount,
+            long estimatedSize) {
+        this.eventCache = eventCache.toArray();
         this.outputProperties = Collections.unmodifiableMap(outputProperties);
+        this.uniqueEventCount = uniqueEventCount;
+        this.estimatedSize = estimatedSize;
     }
 
-    public List<E> getEventCache() {
-        return this.eventCache;
+    /** @return A new read-only iterator over the cached events */
+    public ListIterator<E> getEventIterator() {
+        return new CachedEventIterator<E>(this.eventCache);
     }
 
     public Map<String, String> getOutputProperties() {
         return this.outputProperties;
     }
+
+    /** @return Number of events in the cache entry */
+    public int getEventCount() {
+        return this.eventCache.length;
+    }
+
+    /** @return Number of distinct event instances referenced by the cache entry */
+    public int getUniqueEventCount() {
+        return this.uniqueEventCount;
+    }
+
+    /**
+     * @return Estimated number of bytes used by the entry, counting every distinct event it
+     *     references even when that event instance is shared with other entries.
+     */
+    public long getEstimatedSize() {
+        return this.estimatedSize;
+    }
 }
@@ -17,6 +17,8 @@ package org.apereo.portal.rendering.cache;
 import java.util.ListIterator;
 import org.apereo.portal.character.stream.CharacterEventBufferReader;
 import org.apereo.portal.character.stream.CharacterEventReader;
+import org.apereo.portal.character.stream.events.CharacterDataEvent;
+import org.apereo.portal.character.stream.events.CharacterDataEventImpl;
 import org.apereo.portal.character.stream.events.CharacterEvent;
 import org.apereo.portal.rendering.CharacterPipelineComponent;
 
@@ -29,4 +31,23 @@ public class CachingCharacterPipelineComponent
     protected CharacterEventReader createEventReader(ListIterator<CharacterEvent> eventCache) {
         return new CharacterEventBufferReader(eventCache);
     }
+
+    /** Character data is shared through the {@link CharacterDataEventImpl} event cache */
+    @Override
+    protected CharacterEvent internEvent(CharacterEvent event) {
+        if (event instanceof CharacterDataEvent) {
+            return CharacterDataEventImpl.create(((CharacterDataEvent) event).getData());
+        }
+        return event;
+    }
+
+    @Override
+    protected long estimateEventSize(CharacterEvent event) {
+        if (event instanceof CharacterDataEvent) {
+            final String data = ((CharacterDataEvent) event).getData();
+            return OBJECT_OVERHEAD * 3 + REFERENCE_SIZE + data.length() * 2;
+        }
+
+        return OBJECT_OVERHEAD + REFERENCE_SIZE;
+    }
 }
@@ -14,11 +14,14 @@
  */
 package org.apereo.portal.rendering.cache;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import net.sf.ehcache.Ehcache;
@@ -33,10 +36,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanNameAware;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.naming.SelfNaming;
 
-/** Component that caches events from a wrapped component */
+/**
+ * Component that caches events from a wrapped component. Events are stored in a compact array, with
+ * equal events de-duplicated through {@link #internEvent(Object)}, and replayed without copying.
+ */
 public abstract class CachingPipelineComponent<R, E> extends PipelineComponentWrapper<R, E>
-        implements BeanNameAware {
+        implements BeanNameAware, SelfNaming, CachingPipelineComponentMXBean {
+    /** Estimated bytes for an object header plus padding */
+    protected static final int OBJECT_OVERHEAD = 16;
+    /** Estimated bytes for an object reference */
+    protected static final int REFERENCE_SIZE = 8;
+
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
     private ResourcesElementsProvider resourcesElementsProvider;
@@ -94,34 +106,132 @@ public abstract class CachingPipelineComponent<R, E> extends PipelineComponentWr
             final PipelineEventReader<R, E> pipelineEventReader =
                     this.wrappedComponent.getEventReader(request, response);
 
-            //Copy the events from the reader into a buffer to be cached
-            final List<E> eventCache = new LinkedList<E>();
+            //Copy the events from the reader into a buffer to be cached, de-duplicating events
+            final List<E> eventCache = new ArrayList<E>();
+            final Map<E, Boolean> uniqueEvents = new IdentityHashMap<E, Boolean>();
+            long estimatedSize = OBJECT_OVERHEAD;
             for (final E event : pipelineEventReader) {
-                //TODO add de-duplication logic here
-                eventCache.add(event);
+                final E internedEvent = this.internEvent(event);
+                eventCache.add(internedEvent);
+                estimatedSize += REFERENCE_SIZE;
+                if (uniqueEvents.put(internedEvent, Boolean.TRUE) == null) {
+                    estimatedSize += this.estimateEventSize(internedEvent);
+                }
             }
 
             final Map<String, String> outputProperties = pipelineEventReader.getOutputProperties();
             cachedEventReader =
                     new CachedEventReader<E>(
-                            eventCache, new LinkedHashMap<String, String>(outputProperties));
+                            eventCache,
+                            new LinkedHashMap<String, String>(outputProperties),
+                            uniqueEvents.size(),
+                            estimatedSize);
 
             //Cache the buffer
             element = new Element(cacheKey, cachedEventReader);
             this.cache.put(element);
             logger.debug(
-                    "{} - Cached {} events for key {}", this.beanName, eventCache.size(), cacheKey);
+                    "{} - Cached {} events ({} unique, ~{} bytes) for key {}",
+                    this.beanName,
+                    eventCache.size(),
+                    uniqueEvents.size(),
+                    estimatedSize,
+                    cacheKey);
         } else {
             logger.debug("{} - Found cached events for key {}", this.beanName, cacheKey);
         }
 
-        final List<E> eventCache = cachedEventReader.getEventCache();
         final Map<String, String> outputProperties = cachedEventReader.getOutputProperties();
 
-        final R eventReader = this.createEventReader(eventCache.listIterator());
+        final R eventReader = this.createEventReader(cachedEventReader.getEventIterator());
         return new PipelineEventReaderImpl<R, E>(eventReader, outputProperties);
     }
 
+    @Override
+    public ObjectName getObjectName() throws MalformedObjectNameException {
+        return new ObjectName("uPortal:section=Rendering,name=" + this.beanName);
+    }
+
+    @Override
+    public int getEntryCount() {
+        return this.cache.getSize();
+    }
+
+    @Override
+    public long getEventCount() {
+        long eventCount = 0;
+        for (final CachedEventReader<?> cachedEventReader : this.getCachedEventReaders()) {
+            eventCount += cachedEventReader.getEventCount();
+        }
+        return eventCount;
+    }
+
+    @Override
+    public long getUniqueEventCount() {
+        long uniqueEventCount = 0;
+        for (final CachedEventReader<?> cachedEventReader : this.getCachedEventReaders()) {
+            uniqueEventCount += cachedEventReader.getUniqueEventCount();
+        }
+        return uniqueEventCount;
+    }
+
+    @Override
+    public long getEstimatedSize() {
+        long estimatedSize = 0;
+        for (final CachedEventReader<?> cachedEventReader : this.getCachedEventReaders()) {
+            estimatedSize += cachedEventReader.getEstimatedSize();
+        }
+        return estimatedSize;
+    }
+
+    @Override
+    public long getAverageEntrySize() {
+        final List<CachedEventReader<?>> cachedEventReaders = this.getCachedEventReaders();
+        if (cachedEventReaders.isEmpty()) {
+            return 0;
+        }
+
+        long estimatedSize = 0;
+        for (final CachedEventReader<?> cachedEventReader : cachedEventReaders) {
+            estimatedSize += cachedEventReader.getEstimatedSize();
+        }
+        return estimatedSize / cachedEventReaders.size();
+    }
+
+    @Override
+    public long getMaxEntrySize() {
+        long maxSize = 0;
+        for (final CachedEventReader<?> cachedEventReader : this.getCachedEventReaders()) {
+            maxSize = Math.max(maxSize, cachedEventReader.getEstimatedSize());
+        }
+        return maxSize;
+    }
+
+    /** Snapshot of the entries currently in the cache, read without updating cache statistics */
+    private List<CachedEventReader<?>> getCachedEventReaders() {
+        final List<?> keys = this.cache.getKeys();
+        final List<CachedEventReader<?>> cachedEventReaders =
+                new ArrayList<CachedEventReader<?>>(keys.size());
+        for (final Object key : keys) {
+            final Element element = this.cache.getQuiet(key);
+            if (element != null && element.getObjectValue() instanceof CachedEventReader) {
+                cachedEventReaders.add((CachedEventReader<?>) element.getObjectValue());
+            }
+        }
+        return cachedEventReaders;
+    }
+
+    /**
+     * Return the canonical instance for the event so that equal events are only stored once across
+     * cache entries. The default implementation returns the event unchanged.
+     */
+    protected E internEvent(E event) {
+        return event;
+    }
+
+    /** Estimate the number of bytes retained by the event, used for JMX reporting only */
+    protected abstract long estimateEventSize(E event);
+
     //Ugly!!! Needed because XMLEventReader implements Iterator but does not parameterize it
     protected abstract R createEventReader(ListIterator<E> eventCache);
 }
@@ -0,0 +1,37 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.rendering.cache;
+
+/** JMX view of the memory used by the entries of a {@link CachingPipelineComponent} */
+public interface CachingPipelineComponentMXBean {
+
+    /** @return Number of event buffers currently in the cache */
+    int getEntryCount();
+
+    /** @return Total number of events referenced by all cached event buffers */
+    long getEventCount();
+
+    /** @return Total number of distinct event instances referenced by all cached event buffers */
+    long getUniqueEventCount();
+
+    /** @return Estimated bytes used by all cached event buffers */
+    long getEstimatedSize();
+
+    /** @return Average estimated bytes per cached event buffer */
+    long getAverageEntrySize();
+
+    /** @return Largest estimated bytes of a single cached event buffer */
+    long getMaxEntrySize();
+}
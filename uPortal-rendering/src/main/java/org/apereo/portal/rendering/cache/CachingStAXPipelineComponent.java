@@ -14,8 +14,16 @@
  */
 package org.apereo.portal.rendering.cache;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.Iterator;
 import java.util.ListIterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Characters;
+import javax.xml.stream.events.StartElement;
 import javax.xml.stream.events.XMLEvent;
 import org.apereo.portal.rendering.StAXPipelineComponent;
 import org.apereo.portal.xml.stream.XMLEventBufferReader;
@@ -24,8 +32,73 @@ import org.apereo.portal.xml.stream.XMLEventBufferReader;
 public class CachingStAXPipelineComponent extends CachingPipelineComponent<XMLEventReader, XMLEvent>
         implements StAXPipelineComponent {
 
+    //Weak values so the intern cache never retains events that are no longer in the event cache
+    private final Cache<String, XMLEvent> whitespaceEventCache =
+            CacheBuilder.newBuilder().weakValues().build();
+
     @Override
     protected XMLEventReader createEventReader(ListIterator<XMLEvent> eventCache) {
         return new XMLEventBufferReader(eventCache);
     }
+
+    /**
+     * Whitespace character events make up a large share of the structure document and only differ
+     * in their text, share one instance per distinct whitespace string.
+     */
+    @Override
+    protected XMLEvent internEvent(final XMLEvent event) {
+        if (!event.isCharacters()) {
+            return event;
+        }
+
+        final Characters characters = event.asCharacters();
+        if (characters.isCData() || !characters.isWhiteSpace()) {
+            return event;
+        }
+
+        try {
+            return this.whitespaceEventCache.get(
+                    characters.getData(),
+                    new Callable<XMLEvent>() {
+                        @Override
+                        public XMLEvent call() throws Exception {
+                            return event;
+                        }
+                    });
+        } catch (ExecutionException e) {
+            return event;
+        }
+    }
+
+    @Override
+    protected long estimateEventSize(XMLEvent event) {
+        if (event.isCharacters()) {
+            return OBJECT_OVERHEAD
+                    + REFERENCE_SIZE * 2
+                    + estimateStringSize(event.asCharacters().getData());
+        }
+
+        if (event.isStartElement()) {
+            final StartElement startElement = event.asStartElement();
+            long size = OBJECT_OVERHEAD + REFERENCE_SIZE * 4;
+            for (final Iterator<?> attributes = startElement.getAttributes();
+                    attributes.hasNext(); ) {
+                final Attribute attribute = (Attribute) attributes.next();
+                size +=
+                        OBJECT_OVERHEAD
+                                + REFERENCE_SIZE * 3
+                                + estimateStringSize(attribute.getValue());
+            }
+            return size;
+        }
+
+        return OBJECT_OVERHEAD + REFERENCE_SIZE * 2;
+    }
+
+    private static long estimateStringSize(String value) {
+        if (value == null) {
+            return 0;
+        }
+        return OBJECT_OVERHEAD * 2 + value.length() * 2;
+    }
 }
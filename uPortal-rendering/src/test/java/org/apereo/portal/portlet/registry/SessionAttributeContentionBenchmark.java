@@ -0,0 +1,377 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.registry;
+
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import org.apache.pluto.container.om.portlet.PortletDefinition;
+import org.apereo.portal.portlet.om.AbstractObjectId;
+import org.apereo.portal.portlet.om.IPortletDefinition;
+import org.apereo.portal.portlet.om.IPortletDefinitionId;
+import org.apereo.portal.portlet.om.IPortletEntityId;
+import org.apereo.portal.portlet.om.IPortletWindow;
+import org.apereo.portal.portlet.om.IPortletWindowId;
+import org.apereo.portal.url.IPortalRequestUtils;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * Contention benchmark for the session scoped caches of {@link PortletWindowRegistryImpl} and
+ * {@link PortletEntityRegistryImpl}. Simulates a page firing parallel resource requests for each
+ * session. Every request looks up the session's portlet windows through the window registry, which
+ * resolves their entities through the entity registry, and then takes an entity lock the way
+ * storing portlet preferences does. Compares the registries with subclasses that look the session
+ * caches and entity locks up inside the session mutex, and reports wall clock time and request
+ * latency.
+ *
+ * <p>Not run as part of the build, run the main method by hand. The optional arguments are the
+ * number of sessions (default 20), the number of parallel requests per session (default 30), the
+ * number of portlet windows per session (default 10) and the number of requests each of the
+ * parallel requests runs in turn (default 200).
+ */
+public class SessionAttributeContentionBenchmark {
+    private static final int ROUNDS = 5;
+    private static final int USER_ID = 52;
+
+    //Keeps the lookups from being optimized away
+    private static volatile int sink;
+
+    public static void main(String[] args) throws Exception {
+        final int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        final int requestsPerSession = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        final int windows = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        final int requests = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+        System.out.println(
+                "Benchmarking "
+                        + sessions
+                        + " sessions with "
+                        + requestsPerSession
+                        + " parallel requests looking up "
+                        + windows
+                        + " windows "
+                        + requests
+                        + " times on "
+                        + Runtime.getRuntime().availableProcessors()
+                        + " cpus");
+
+        run("session mutex", new Registries(true), sessions, requestsPerSession, windows, requests);
+        run("registries", new Registries(false), sessions, requestsPerSession, windows, requests);
+    }
+
+    private static void run(
+            String name,
+            Registries registries,
+            int sessions,
+            int requestsPerSession,
+            int windows,
+            int requests)
+            throws Exception {
+        final ExecutorService executorService =
+                Executors.newFixedThreadPool(sessions * requestsPerSession);
+        try {
+            //First round warms up the JIT and is not reported
+            for (int round = 0; round <= ROUNDS; round++) {
+                final Result result =
+                        runRound(
+                                executorService,
+                                registries,
+                                sessions,
+                                requestsPerSession,
+                                windows,
+                                requests);
+                if (round > 0) {
+                    System.out.println(name + " round " + round + ": " + result);
+                }
+            }
+        } finally {
+            executorService.shutdownNow();
+            executorService.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private static Result runRound(
+            ExecutorService executorService,
+            final Registries registries,
+            int sessions,
+            int requestsPerSession,
+            int windows,
+            final int requests)
+            throws InterruptedException {
+        final int threads = sessions * requestsPerSession;
+        final long[] latencies = new long[threads * requests];
+        final AtomicInteger completed = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int s = 0; s < sessions; s++) {
+            final HttpSession session = createSession();
+            final IPortletWindowId[] windowIds = registries.createWindows(session, s, windows);
+            for (int r = 0; r < requestsPerSession; r++) {
+                executorService.execute(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    start.await();
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                    return;
+                                }
+                                for (int i = 0; i < requests; i++) {
+                                    final long started = System.nanoTime();
+                                    sink = registries.request(session, windowIds, i);
+                                    latencies[completed.getAndIncrement()] =
+                                            System.nanoTime() - started;
+                                }
+                                done.countDown();
+                            }
+                        });
+            }
+        }
+
+        final long started = System.nanoTime();
+        start.countDown();
+        done.await();
+        final long elapsed = System.nanoTime() - started;
+
+        final long[] sorted = Arrays.copyOf(latencies, completed.get());
+        Arrays.sort(sorted);
+        return new Result(sorted, elapsed);
+    }
+
+    /** The window and entity registries backed by stubs for everything but their caches */
+    private static final class Registries {
+        private final IPortletDefinitionId portletDefinitionId = new PortletDefinitionId(88);
+        private final PortletEntityRegistryImpl portletEntityRegistry;
+        private final PortletWindowRegistryImpl portletWindowRegistry;
+
+        Registries(boolean sessionMutex) {
+            final IPortalRequestUtils portalRequestUtils =
+                    mock(IPortalRequestUtils.class, withSettings().stubOnly());
+            when(portalRequestUtils.getOriginalPortalRequest(any(HttpServletRequest.class)))
+                    .thenAnswer(returnsFirstArg());
+            when(portalRequestUtils.getOriginalPortletOrPortalRequest(
+                            any(HttpServletRequest.class)))
+                    .thenAnswer(returnsFirstArg());
+
+            final IPortletDefinition portletDefinition =
+                    mock(IPortletDefinition.class, withSettings().stubOnly());
+            when(portletDefinition.getPortletDefinitionId()).thenReturn(portletDefinitionId);
+            final IPortletDefinitionRegistry portletDefinitionRegistry =
+                    mock(IPortletDefinitionRegistry.class, withSettings().stubOnly());
+            when(portletDefinitionRegistry.getPortletDefinition(any(IPortletDefinitionId.class)))
+                    .thenReturn(portletDefinition);
+            when(portletDefinitionRegistry.getParentPortletDescriptor(
+                            any(IPortletDefinitionId.class)))
+                    .thenReturn(mock(PortletDefinition.class, withSettings().stubOnly()));
+
+            if (sessionMutex) {
+                this.portletEntityRegistry = new SessionMutexPortletEntityRegistry();
+                this.portletWindowRegistry = new SessionMutexPortletWindowRegistry();
+            } else {
+                this.portletEntityRegistry = new PortletEntityRegistryImpl();
+                this.portletWindowRegistry = new PortletWindowRegistryImpl();
+            }
+            this.portletEntityRegistry.setPortalRequestUtils(portalRequestUtils);
+            this.portletEntityRegistry.setPortletDefinitionRegistry(portletDefinitionRegistry);
+            this.portletWindowRegistry.setPortalRequestUtils(portalRequestUtils);
+            this.portletWindowRegistry.setPortletDefinitionRegistry(portletDefinitionRegistry);
+            this.portletWindowRegistry.setPortletEntityRegistry(this.portletEntityRegistry);
+        }
+
+        /** Stores window and entity data in the session like the rendering of the page does */
+        IPortletWindowId[] createWindows(HttpSession session, int sessionIndex, int windows) {
+            final HttpServletRequest request = createRequest(session);
+            final PortletWindowCache<PortletWindowData> portletWindowDataMap =
+                    this.portletWindowRegistry.getPortletWindowDataMap(request);
+            final PortletEntityCache<PortletEntityData> portletEntityDataMap =
+                    this.portletEntityRegistry.getPortletEntityDataMap(request);
+
+            final IPortletWindowId[] windowIds = new IPortletWindowId[windows];
+            for (int w = 0; w < windows; w++) {
+                final String layoutNodeId = "n" + sessionIndex + "_" + w;
+                final IPortletEntityId portletEntityId =
+                        new PortletEntityIdImpl(this.portletDefinitionId, layoutNodeId, USER_ID);
+                portletEntityDataMap.storeEntity(
+                        new PortletEntityData(
+                                portletEntityId, this.portletDefinitionId, layoutNodeId, USER_ID));
+
+                windowIds[w] = new PortletWindowIdImpl(portletEntityId, null);
+                portletWindowDataMap.storeWindow(
+                        new PortletWindowData(windowIds[w], portletEntityId));
+            }
+            return windowIds;
+        }
+
+        /**
+         * A resource request, looks up every window of the page and locks the entity of one
+         *
+         * @return Hash of the windows found
+         */
+        int request(HttpSession session, IPortletWindowId[] windowIds, int requestIndex) {
+            final HttpServletRequest request = createRequest(session);
+            int hash = 0;
+            for (final IPortletWindowId windowId : windowIds) {
+                final IPortletWindow portletWindow =
+                        this.portletWindowRegistry.getPortletWindow(request, windowId);
+                hash += portletWindow.getPortletWindowId().hashCode();
+            }
+
+            final IPortletWindowId lockedWindowId = windowIds[requestIndex % windowIds.length];
+            final Lock lock =
+                    this.portletEntityRegistry.getPortletEntityLock(
+                            request, lockedWindowId.getPortletEntityId());
+            lock.lock();
+            lock.unlock();
+            return hash;
+        }
+
+        private static HttpServletRequest createRequest(HttpSession session) {
+            final MockHttpServletRequest request = new MockHttpServletRequest();
+            request.setSession(session);
+            return request;
+        }
+    }
+
+    /** Looks up the session caches and entity locks inside the session mutex */
+    private static final class SessionMutexPortletEntityRegistry
+            extends PortletEntityRegistryImpl {
+        @Override
+        protected PortletEntityCache<PortletEntityData> getPortletEntityDataMap(
+                HttpServletRequest request) {
+            synchronized (WebUtils.getSessionMutex(request.getSession())) {
+                return super.getPortletEntityDataMap(request);
+            }
+        }
+
+        @Override
+        public Lock getPortletEntityLock(
+                HttpServletRequest request, IPortletEntityId portletEntityId) {
+            synchronized (WebUtils.getSessionMutex(request.getSession())) {
+                return super.getPortletEntityLock(request, portletEntityId);
+            }
+        }
+    }
+
+    /** Looks up the session cache inside the session mutex */
+    private static final class SessionMutexPortletWindowRegistry
+            extends PortletWindowRegistryImpl {
+        @Override
+        protected PortletWindowCache<PortletWindowData> getPortletWindowDataMap(
+                HttpServletRequest request, boolean create) {
+            final HttpSession session = request.getSession(create);
+            if (session == null) {
+                return null;
+            }
+            synchronized (WebUtils.getSessionMutex(session)) {
+                return super.getPortletWindowDataMap(request, create);
+            }
+        }
+    }
+
+    private static final class PortletDefinitionId extends AbstractObjectId
+            implements IPortletDefinitionId {
+        private static final long serialVersionUID = 1L;
+
+        private final long longId;
+
+        PortletDefinitionId(long longId) {
+            super(Long.toString(longId));
+            this.longId = longId;
+        }
+
+        @Override
+        public long getLongId() {
+            return this.longId;
+        }
+    }
+
+    /** Session backed by a ConcurrentHashMap, like the servlet container's session */
+    private static HttpSession createSession() {
+        final Map<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+        return (HttpSession)
+                Proxy.newProxyInstance(
+                        HttpSession.class.getClassLoader(),
+                        new Class<?>[] {HttpSession.class},
+                        new InvocationHandler() {
+                            @Override
+                            public Object invoke(Object proxy, Method method, Object[] args) {
+                                switch (method.getName()) {
+                                    case "getAttribute":
+                                        return attributes.get(args[0]);
+                                    case "setAttribute":
+                                        attributes.put((String) args[0], args[1]);
+                                        return null;
+                                    case "hashCode":
+                                        return System.identityHashCode(proxy);
+                                    case "equals":
+                                        return proxy == args[0];
+                                    default:
+                                        throw new UnsupportedOperationException(method.getName());
+                                }
+                            }
+                        });
+    }
+
+    private static final class Result {
+        private final long[] latencies;
+        private final long elapsed;
+
+        private Result(long[] latencies, long elapsed) {
+            this.latencies = latencies;
+            this.elapsed = elapsed;
+        }
+
+        private double percentileMillis(double percentile) {
+            if (this.latencies.length == 0) {
+                return 0;
+            }
+            final int index = (int) Math.ceil(percentile * this.latencies.length) - 1;
+            return this.latencies[Math.max(0, index)] / 1000000d;
+        }
+
+        @Override
+        public String toString() {
+            return "requests="
+                    + this.latencies.length
+                    + " elapsed="
+                    + TimeUnit.NANOSECONDS.toMillis(this.elapsed)
+                    + "ms p50="
+                    + String.format("%.2f", this.percentileMillis(.5))
+                    + "ms p99="
+                    + String.format("%.2f", this.percentileMillis(.99))
+                    + "ms";
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class PipelineOutputBufferTest {
+
+    @Test
+    public void testCoalesceUntilBufferFull() throws Exception {
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final PipelineOutputBuffer outputBuffer =
+                new PipelineOutputBuffer(response, 10, Long.MAX_VALUE);
+
+        outputBuffer.write("<html>");
+        assertEquals("", response.getContentAsString());
+        assertEquals(0, outputBuffer.getFlushCount());
+
+        outputBuffer.write("<head>");
+        assertEquals("<html><head>", response.getContentAsString());
+        assertEquals(1, outputBuffer.getFlushCount());
+        assertEquals(12, outputBuffer.getBytesWritten());
+
+        outputBuffer.write("\u00e9");
+        outputBuffer.flush();
+        outputBuffer.flush();
+        assertEquals(2, outputBuffer.getFlushCount());
+        assertEquals(14, outputBuffer.getBytesWritten());
+    }
+
+    @Test
+    public void testZeroBufferFlushesEveryWrite() throws Exception {
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final PipelineOutputBuffer outputBuffer = new PipelineOutputBuffer(response, 0, 0);
+
+        outputBuffer.write("a");
+        outputBuffer.write("");
+        outputBuffer.write("b");
+        assertEquals("ab", response.getContentAsString());
+        assertEquals(2, outputBuffer.getFlushCount());
+    }
+
+    @Test
+    public void testFlushBoundBuffer() throws Exception {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final PipelineOutputBuffer outputBuffer =
+                new PipelineOutputBuffer(response, 1024, Long.MAX_VALUE);
+
+        //No buffer bound, nothing to do
+        PipelineOutputBuffer.flush(request);
+
+        PipelineOutputBuffer.bind(request, outputBuffer);
+        assertSame(outputBuffer, PipelineOutputBuffer.getOutputBuffer(request));
+
+        outputBuffer.write("<body>");
+        PipelineOutputBuffer.flush(request);
+        assertEquals("<body>", response.getContentAsString());
+        assertEquals(1, outputBuffer.getFlushCount());
+
+        PipelineOutputBuffer.unbind(request);
+        assertNull(PipelineOutputBuffer.getOutputBuffer(request));
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import org.apereo.portal.character.stream.CharacterEventBufferReader;
+import org.apereo.portal.character.stream.events.CharacterDataEvent;
+import org.apereo.portal.character.stream.events.CharacterDataEventImpl;
+import org.apereo.portal.character.stream.events.CharacterEvent;
+import org.apereo.portal.character.stream.events.CharacterEventTypes;
+import org.apereo.portal.character.stream.events.PortletContentPlaceholderEventImpl;
+import org.apereo.portal.portlet.om.IPortletWindowId;
+import org.apereo.portal.portlet.registry.IPortletWindowRegistry;
+import org.apereo.portal.portlet.rendering.IPortletExecutionManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class ProgressivePortletEventReaderTest {
+    private final MockHttpServletRequest request = new MockHttpServletRequest();
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+    private IPortletExecutionManager portletExecutionManager;
+    private IPortletWindowId slowWindowId;
+    private IPortletWindowId fastWindowId;
+
+    @Before
+    public void setup() {
+        this.portletExecutionManager = mock(IPortletExecutionManager.class);
+        this.slowWindowId = mock(IPortletWindowId.class);
+        this.fastWindowId = mock(IPortletWindowId.class);
+
+        when(this.portletExecutionManager.isPortletRenderRequested(
+                        this.slowWindowId, this.request, this.response))
+                .thenReturn(true);
+        when(this.portletExecutionManager.isPortletRenderComplete(
+                        this.fastWindowId, this.request, this.response))
+                .thenReturn(true);
+        when(this.portletExecutionManager.getPortletOutput(
+                        this.slowWindowId, this.request, this.response))
+                .thenReturn("<p>slow</p>");
+    }
+
+    @Test
+    public void testDeferIncompletePortlet() {
+        final CharacterEvent fastContent = new PortletContentPlaceholderEventImpl(fastWindowId);
+        final List<CharacterEvent> events =
+                Arrays.<CharacterEvent>asList(
+                        CharacterDataEventImpl.create("<body>"),
+                        new PortletContentPlaceholderEventImpl(slowWindowId),
+                        fastContent,
+                        CharacterDataEventImpl.create("</body></html>"));
+
+        final ProgressivePortletEventReader eventReader =
+                new ProgressivePortletEventReader(
+                        new CharacterEventBufferReader(events.listIterator()),
+                        this.request,
+                        this.response,
+                        this.portletExecutionManager,
+                        mock(IPortletWindowRegistry.class));
+
+        assertEquals("<body>", getData(eventReader.next()));
+        assertEquals(
+                "<div id=\"up-progressive-0\" class=\"up-portlet-progressive-placeholder\""
+                        + " aria-busy=\"true\"></div>",
+                getData(eventReader.next()));
+
+        //Completed portlets are left for the incorporating reader
+        assertSame(fastContent, eventReader.next());
+
+        final StringBuilder rest = new StringBuilder();
+        while (eventReader.hasNext()) {
+            rest.append(getData(eventReader.next()));
+        }
+        assertFalse(eventReader.hasNext());
+
+        final String deferred = rest.toString();
+        assertTrue(deferred.startsWith("<div id=\"up-progressive-0-content\""));
+        assertTrue(deferred.contains("<p>slow</p>"));
+        assertTrue(deferred.endsWith("</script></body></html>"));
+
+        verify(this.portletExecutionManager)
+                .getPortletOutput(this.slowWindowId, this.request, this.response);
+    }
+
+    @Test
+    public void testPassThroughWhenComplete() {
+        final CharacterEvent fastContent = new PortletContentPlaceholderEventImpl(fastWindowId);
+        final CharacterEvent bodyEnd = CharacterDataEventImpl.create("</body>");
+        final List<CharacterEvent> events = Arrays.<CharacterEvent>asList(fastContent, bodyEnd);
+
+        final ProgressivePortletEventReader eventReader =
+                new ProgressivePortletEventReader(
+                        new CharacterEventBufferReader(events.listIterator()),
+                        this.request,
+                        this.response,
+                        this.portletExecutionManager,
+                        mock(IPortletWindowRegistry.class));
+
+        assertSame(fastContent, eventReader.peek());
+        assertSame(fastContent, eventReader.next());
+        assertSame(bodyEnd, eventReader.next());
+        assertFalse(eventReader.hasNext());
+    }
+
+    private static String getData(CharacterEvent event) {
+        assertEquals(CharacterEventTypes.CHARACTER, event.getEventType());
+        return ((CharacterDataEvent) event).getData();
+    }
+}
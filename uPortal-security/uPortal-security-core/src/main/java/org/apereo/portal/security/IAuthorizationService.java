@@ -14,6 +14,7 @@
  */
 package org.apereo.portal.security;
 
+import java.util.Set;
 import org.apereo.portal.AuthorizationException;
 import org.apereo.portal.groups.GroupsException;
 import org.apereo.portal.groups.IGroupMember;
@@ -172,6 +173,19 @@ public interface IAuthorizationService {
     IPermission[] getPermissionsForPrincipal(
             IAuthorizationPrincipal principal, String owner, String activity, String target)
             throws AuthorizationException;
+    /**
+     * Returns the targets whose <code>IPermissions</code> apply to the target for the owner and
+     * activity: the target itself and the keys of the groups that contain it when the target is
+     * an entity. These are the targets matched by {@link
+     * #getPermissionsForPrincipal(IAuthorizationPrincipal, String, String, String)}.
+     *
+     * @return java.util.Set
+     * @param owner java.lang.String
+     * @param activity java.lang.String
+     * @param target java.lang.String
+     * @since 5.0
+     */
+    Set<String> getPermissionTargetScope(String owner, String activity, String target);
     /**
      * Creates a new <code>IPermission</code> for the <code>principal</code> on behalf of the <code>
      * owner</code>.
@@ -14,13 +14,16 @@
  */
 package org.apereo.portal.security.provider;
 
-import java.util.Date;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import net.sf.ehcache.Cache;
+import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
 import org.apereo.portal.AuthorizationException;
-import org.apereo.portal.groups.GroupsException;
 import org.apereo.portal.groups.IEntityGroup;
 import org.apereo.portal.groups.IGroupMember;
 import org.apereo.portal.permission.IPermissionActivity;
@@ -64,6 +67,10 @@ import org.springframework.stereotype.Service;
  * <p>Principal -- Small group (DENY) -- Bigger group -- Huge group Principal -- Some other group --
  * Bigger other group (GRANT) -- Huge group Results in GRANT because there is an unblocked path to a
  * GRANT.
+ *
+ * <p>The permissions of the Principal and all of its ancestor groups for an owner and activity are
+ * compiled into a {@link PermissionDecisionTable} in one walk up the tree, so every target after
+ * the first is answered without going back to the groups or permission services.
  */
 @Service("anyUnblockedGrantPermissionPolicy")
 public class AnyUnblockedGrantPermissionPolicy implements IPermissionPolicy {
@@ -81,6 +88,25 @@ public class AnyUnblockedGrantPermissionPolicy implements IPermissionPolicy {
     )
     private Cache hasUnblockedGrantCache;
 
+    /**
+     * The ancestor groups cache is cleared whenever a group is added to or removed from another
+     * group. The decision tables are built from the same hierarchy so they are cleared with it.
+     */
+    @Autowired
+    public void setAncestorGroupsCache(
+            @Qualifier("org.apereo.portal.groups.GroupMemberImpl.ancestorGroups")
+                    Cache ancestorGroupsCache) {
+        ancestorGroupsCache
+                .getCacheEventNotificationService()
+                .registerListener(
+                        new CacheEventListenerAdapter() {
+                            @Override
+                            public void notifyRemoveAll(Ehcache cache) {
+                                hasUnblockedGrantCache.removeAll();
+                            }
+                        });
+    }
+
     @Override
     public boolean doesPrincipalHavePermission(
             IAuthorizationService service,
@@ -185,11 +211,12 @@ public class AnyUnblockedGrantPermissionPolicy implements IPermissionPolicy {
         // Search ourselves and all ancestors for an unblocked GRANT.
         boolean rslt;
         try {
-            // Track groups we've already explored to avoid infinite loop
-            final Set<IGroupMember> seenGroups = new HashSet<>();
-            rslt =
-                    hasUnblockedPathToGrantWithCache(
-                            service, principal, owner, activity, target, seenGroups);
+            final PermissionDecisionTable decisionTable =
+                    getDecisionTable(service, principal, owner, activity);
+            final Set<String> targets =
+                    service.getPermissionTargetScope(
+                            owner.getFname(), activity.getFname(), target.getKey());
+            rslt = decisionTable.isGranted(targets);
         } catch (Exception e) {
             log.error(
                     "Error searching for unblocked path to grant for principal [" + principal + "]",
@@ -224,10 +251,10 @@ public class AnyUnblockedGrantPermissionPolicy implements IPermissionPolicy {
     }
 
     /**
-     * Allows an outside actor to force this policy to evaluate and cache an authorization decision.
-     * Permissions checking can be expensive; a well-primed cache can make the task perform better.
-     * This method will create the cache entry whether it exists already or not, forcibly resetting
-     * the TTL.
+     * Allows an outside actor to force this policy to compile and cache the decision table for a
+     * principal, owner and activity. Permissions checking can be expensive; a well-primed cache can
+     * make the task perform better. This method will create the cache entry whether it exists
+     * already or not, forcibly resetting the TTL.
      *
      * @since 4.3
      */
@@ -235,202 +262,143 @@ public class AnyUnblockedGrantPermissionPolicy implements IPermissionPolicy {
             IAuthorizationService service,
             IAuthorizationPrincipal principal,
             IPermissionOwner owner,
-            IPermissionActivity activity,
-            IPermissionTarget target) {
+            IPermissionActivity activity) {
 
-        final Set<IGroupMember> seenGroups = new HashSet<>();
-        final CacheKey cacheKey = getCacheKey(principal, owner, activity, target);
-        final boolean answer =
-                hasUnblockedPathToGrant(service, principal, owner, activity, target, seenGroups);
-        final Element element = new Element(cacheKey, answer);
-        hasUnblockedGrantCache.put(element);
+        final CacheKey cacheKey = getCacheKey(principal, owner, activity);
+        final PermissionDecisionTable decisionTable =
+                buildDecisionTable(service, principal, owner, activity);
+        hasUnblockedGrantCache.put(new Element(cacheKey, decisionTable));
     }
 
-    private boolean hasUnblockedPathToGrantWithCache(
+    private PermissionDecisionTable getDecisionTable(
             IAuthorizationService service,
             IAuthorizationPrincipal principal,
             IPermissionOwner owner,
-            IPermissionActivity activity,
-            IPermissionTarget target,
-            Set<IGroupMember> seenGroups)
-            throws GroupsException {
+            IPermissionActivity activity) {
 
-        final CacheKey cacheKey = getCacheKey(principal, owner, activity, target);
-        Element element = hasUnblockedGrantCache.get(cacheKey);
+        final CacheKey cacheKey = getCacheKey(principal, owner, activity);
+        final PermissionDecisionTable cachedTable =
+                getCachedDecisionTable(cacheKey, System.currentTimeMillis());
+        if (cachedTable != null) {
+            return cachedTable;
+        }
+
+        final PermissionDecisionTable decisionTable =
+                buildDecisionTable(service, principal, owner, activity);
+        hasUnblockedGrantCache.put(new Element(cacheKey, decisionTable));
+        return decisionTable;
+    }
+
+    /** @return The cached decision table if it is still valid, null otherwise */
+    private PermissionDecisionTable getCachedDecisionTable(CacheKey cacheKey, long now) {
+        final Element element = hasUnblockedGrantCache.get(cacheKey);
         if (element == null) {
-            final boolean answer =
-                    hasUnblockedPathToGrant(
-                            service, principal, owner, activity, target, seenGroups);
-            element = new Element(cacheKey, answer);
-            hasUnblockedGrantCache.put(element);
+            return null;
         }
-        return (Boolean) element.getObjectValue();
+        final PermissionDecisionTable decisionTable =
+                (PermissionDecisionTable) element.getObjectValue();
+        return decisionTable.isValid(now) ? decisionTable : null;
     }
 
     /**
-     * This method performs the actual, low-level checking of a single activity and target. Is IS
-     * responsible for performing the same check for affiliated groups in the Groups hierarchy, but
-     * it is NOT responsible for understanding the nuances of relationships some activities and/or
-     * targets have with one another (e.g. MANAGE_APPROVED, ALL_PORTLETS, etc.). It performs the
-     * following steps, in order:
+     * Compiles the permissions of the principal and of every group above it for the owner and
+     * activity into a decision table, walking up the groups tree once. This table can then answer
+     * for any target, it is NOT responsible for understanding the nuances of relationships some
+     * activities and/or targets have with one another (e.g. MANAGE_APPROVED, ALL_PORTLETS, etc.).
      *
-     * <ol>
-     *   <li>Find out if the specified principal is <em>specifically</em> granted or denied; if an
-     *       answer is found in this step, return it
-     *   <li>Find out what groups this principal belongs to; convert each one to a principal and
-     *       seek an answer by invoking ourselves recursively; if an answer is found in this step,
-     *       return it
-     *   <li>Return false (no explicit GRANT means no permission)
-     * </ol>
+     * <p>When a cached table exists for a parent group, such as one loaded by the {@link
+     * PortletPermissionsCachePrimer}, its nodes are copied instead of walking above that group.
      */
-    private boolean hasUnblockedPathToGrant(
+    private PermissionDecisionTable buildDecisionTable(
             IAuthorizationService service,
             IAuthorizationPrincipal principal,
             IPermissionOwner owner,
-            IPermissionActivity activity,
-            IPermissionTarget target,
-            Set<IGroupMember> seenGroups)
-            throws GroupsException {
-
-        if (log.isTraceEnabled()) {
-            log.trace(
-                    "Searching for unblocked path to GRANT for principal '{}' to "
-                            + "'{}' on target '{}' having already checked:  {}",
-                    principal.getKey(),
-                    activity.getFname(),
-                    target.getKey(),
-                    seenGroups);
-        }
-
-        /*
-         * Step #1:  Specific GRANT/DENY attached to this principal
-         */
-        final IPermission[] permissions =
-                service.getPermissionsForPrincipal(
-                        principal, owner.getFname(), activity.getFname(), target.getKey());
-
-        final Set<IPermission> activePermissions = removeInactivePermissions(permissions);
-        final boolean denyExists =
-                containsType(activePermissions, IPermission.PERMISSION_TYPE_DENY);
-        if (denyExists) {
-            // We need go no further;  DENY trumps both GRANT & inherited permissions
-            return false;
-        }
-        final boolean grantExists =
-                containsType(activePermissions, IPermission.PERMISSION_TYPE_GRANT);
-        if (grantExists) {
-            // We need go no further;  explicit GRANT at this level of the hierarchy
-            if (log.isTraceEnabled()) {
-                log.trace(
-                        "Found unblocked path to this permission set including a GRANT:  {}",
-                        activePermissions);
-            }
-            return true;
-        }
-
-        /*
-         * Step #2:  Seek an answer from affiliated groups
-         */
-        IGroupMember principalAsGroupMember = service.getGroupMember(principal);
-        if (seenGroups.contains(principalAsGroupMember)) {
-            if (log.isTraceEnabled()) {
-                log.trace(
-                        "Declining to re-examine principal '{}' for permission to '{}' "
-                                + "on '{}' because this group is among already checked groups:  {}",
-                        principal.getKey(),
-                        activity.getFname(),
-                        target.getKey(),
-                        seenGroups);
-            }
-            return false;
-        }
-        seenGroups.add(principalAsGroupMember);
-        Set<IEntityGroup> immediatelyContainingGroups = principalAsGroupMember.getParentGroups();
-        for (IGroupMember parentGroup : immediatelyContainingGroups) {
-            try {
-                if (parentGroup != null) {
-                    IAuthorizationPrincipal parentPrincipal = service.newPrincipal(parentGroup);
-                    boolean parentHasUnblockedPathToGrant =
-                            hasUnblockedPathToGrantWithCache(
-                                    service, parentPrincipal, owner, activity, target, seenGroups);
-                    if (parentHasUnblockedPathToGrant) {
-                        return true;
+            IPermissionActivity activity) {
+
+        final long now = System.currentTimeMillis();
+        final PermissionDecisionTable.Builder builder = new PermissionDecisionTable.Builder(now);
+
+        // Index of each principal's node in the table, each group is only visited once
+        final Map<String, Integer> nodes = new HashMap<>();
+        final List<IGroupMember> members = new ArrayList<>();
+
+        final IGroupMember principalAsGroupMember = service.getGroupMember(principal);
+        final String principalString = principal.getPrincipalString();
+        nodes.put(
+                principalString,
+                builder.addPrincipal(
+                        principalString,
+                        service.getPermissionsForPrincipal(
+                                principal, owner.getFname(), activity.getFname(), null)));
+        members.add(principalAsGroupMember);
+
+        final List<Integer> memberNodes = new ArrayList<>();
+        memberNodes.add(nodes.get(principalString));
+
+        for (int i = 0; i < members.size(); i++) {
+            final IGroupMember member = members.get(i);
+            final List<Integer> parentNodes = new ArrayList<>();
+            for (IEntityGroup parentGroup : member.getParentGroups()) {
+                try {
+                    if (parentGroup == null) {
+                        continue;
                     }
-                    // Parent didn't have a path to grant, fall through and try another parent (if any)
+                    final IAuthorizationPrincipal parentPrincipal =
+                            service.newPrincipal(parentGroup);
+                    final String parentString = parentPrincipal.getPrincipalString();
+                    Integer parentNode = nodes.get(parentString);
+                    if (parentNode == null) {
+                        final PermissionDecisionTable parentTable =
+                                getCachedDecisionTable(
+                                        getCacheKey(parentPrincipal, owner, activity), now);
+                        if (parentTable != null) {
+                            // The cached table already holds the group and everything above it
+                            parentNode = builder.addTable(parentTable, nodes);
+                        } else {
+                            parentNode =
+                                    builder.addPrincipal(
+                                            parentString,
+                                            service.getPermissionsForPrincipal(
+                                                    parentPrincipal,
+                                                    owner.getFname(),
+                                                    activity.getFname(),
+                                                    null));
+                            nodes.put(parentString, parentNode);
+                            members.add(parentGroup);
+                            memberNodes.add(parentNode);
+                        }
+                    }
+                    parentNodes.add(parentNode);
+                } catch (Exception e) {
+                    // problem evaluating this path, but let's not let it stop
+                    // us from exploring other paths.  Though a portion of the
+                    // group structure is broken, permission may be granted by
+                    // an unbroken portion
+                    log.error(
+                            "Error evaluating permissions of parent group [" + parentGroup + "]",
+                            e);
                 }
-            } catch (Exception e) {
-                // problem evaluating this path, but let's not let it stop
-                // us from exploring other paths.  Though a portion of the
-                // group structure is broken, permission may be granted by
-                // an unbroken portion
-                log.error("Error evaluating permissions of parent group [" + parentGroup + "]", e);
-            }
-        }
-
-        /*
-         * Step #3:  No explicit GRANT means no permission
-         */
-        return false;
-    }
-
-    /**
-     * Returns a Set containing those IPermission instances where the present date is neither after
-     * the permission expiration if present nor before the permission start date if present. Only
-     * permissions objects that have been filtered by this method should be checked.
-     *
-     * @return Potentially empty non-null Set of active permissions.
-     */
-    private Set<IPermission> removeInactivePermissions(final IPermission[] perms) {
-        Date now = new Date();
-
-        Set<IPermission> rslt = new HashSet<>(1);
-
-        for (int i = 0; i < perms.length; i++) {
-            IPermission p = perms[i];
-
-            if ((p.getEffective() == null || !p.getEffective().after(now))
-                    && (p.getExpires() == null || p.getExpires().after(now))) {
-                rslt.add(p);
             }
+            builder.setParents(memberNodes.get(i), parentNodes);
         }
 
-        return rslt;
-    }
-
-    /**
-     * Returns true if a set of IPermission instances contains a permission of the specified type,
-     * otherwise false. Permissions passed to this method <em>must</em> already be filtered of
-     * inactive (expired) instances.
-     *
-     * @return True if the set contains a permission of the sought type, false otherwise
-     * @throws IllegalArgumentException if input set or type is null.
-     */
-    private boolean containsType(final Set<IPermission> permissions, final String soughtType) {
-
-        // Assertions
-        if (permissions == null) {
-            throw new IllegalArgumentException("Cannot check null set for contents.");
-        }
-        if (soughtType == null) {
-            throw new IllegalArgumentException("Cannot search for type null.");
-        }
-
-        boolean rslt = false; // default
-
-        for (IPermission p : permissions) {
-            if (soughtType.equals(p.getType())) {
-                rslt = true;
-            }
+        final PermissionDecisionTable rslt = builder.build();
+        if (log.isTraceEnabled()) {
+            log.trace(
+                    "Compiled decision table of {} principals for principal '{}' to '{}' under "
+                            + "permission owning system '{}'",
+                    rslt.size(),
+                    principal.getKey(),
+                    activity.getFname(),
+                    owner.getFname());
         }
-
         return rslt;
     }
 
     protected CacheKey getCacheKey(
             IAuthorizationPrincipal principal,
             IPermissionOwner owner,
-            IPermissionActivity activity,
-            IPermissionTarget target) {
+            IPermissionActivity activity) {
 
         CacheKey rslt;
         if (principal.isGroup()) {
@@ -442,8 +410,7 @@ public class AnyUnblockedGrantPermissionPolicy implements IPermissionPolicy {
                             AnyUnblockedGrantPermissionPolicy.class.getName(),
                             principal.getPrincipalString(),
                             owner.getFname(),
-                            activity.getFname(),
-                            target.getKey());
+                            activity.getFname());
         } else {
             /*
              * Keys tagged with the username for users;  this practice
@@ -455,8 +422,7 @@ public class AnyUnblockedGrantPermissionPolicy implements IPermissionPolicy {
                             UsernameTaggedCacheEntryPurger.createCacheEntryTag(principal.getKey()),
                             principal.getPrincipalString(),
                             owner.getFname(),
-                            activity.getFname(),
-                            target.getKey());
+                            activity.getFname());
         }
 
         return rslt;
@@ -17,6 +17,7 @@ package org.apereo.portal.security.provider;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -99,6 +100,9 @@ public class AuthorizationImpl implements IAuthorizationService {
     /** The cache to hold permission resolution. */
     private Ehcache doesPrincipalHavePermissionCache;
 
+    /** The cache of permission decisions made by the permission policies. */
+    private Ehcache permissionDecisionCache;
+
     /** The class representing the permission set type. */
     private static final Class<IPermissionSet> PERMISSION_SET_TYPE = IPermissionSet.class;
 
@@ -155,6 +159,14 @@ public class AuthorizationImpl implements IAuthorizationService {
         this.doesPrincipalHavePermissionCache = doesPrincipalHavePermissionCache;
     }
 
+    @Autowired
+    public void setPermissionDecisionCache(
+            @Qualifier(
+                            "org.apereo.portal.security.provider.AnyUnblockedGrantPermissionPolicy.HAS_UNBLOCKED_GRANT")
+                    Ehcache permissionDecisionCache) {
+        this.permissionDecisionCache = permissionDecisionCache;
+    }
+
     @Autowired
     public void setPortletDefinitionRegistry(IPortletDefinitionRegistry portletDefinitionRegistry) {
         this.portletDefinitionRegistry = portletDefinitionRegistry;
@@ -183,6 +195,7 @@ public class AuthorizationImpl implements IAuthorizationService {
             if (this.cachePermissions) {
                 removeFromPermissionsCache(permissions);
             }
+            clearPermissionDecisions();
         }
     }
 
@@ -963,68 +976,10 @@ public class AuthorizationImpl implements IAuthorizationService {
             return perms;
         }
 
-        Set<String> containingGroups;
-
-        if (target != null) {
-
-            final Element element = this.entityParentsCache.get(target);
-            if (element != null) {
-                containingGroups = (Set<String>) element.getObjectValue();
-            } else {
-                containingGroups = new HashSet<String>();
-
-                //Ignore target entity lookups for the various synthetic ALL targets
-                if (!IPermission.ALL_CATEGORIES_TARGET.equals(target)
-                        && !IPermission.ALL_GROUPS_TARGET.equals(target)
-                        && !IPermission.ALL_PORTLETS_TARGET.equals(target)
-                        && !IPermission.ALL_TARGET.equals(target)) {
-
-                    // UP-4410; It would be ideal if the target string indicated it was a group or entity that might be
-                    // a member of a group so we could determine whether to check what groups the target entity might be
-                    // contained within to see if the principal has permission to the containing group, but it does not
-                    // (too significant to refactor database values at this point).  If the owner and activity strings map to
-                    // a type of target that might be a group name or entity name, create a set of the groups the target
-                    // entity is contained in.
-                    boolean checkTargetForContainingGroups = true;
-                    if (owner != null && activity != null) {
-                        IPermissionActivity permissionActivity =
-                                permissionOwner.getPermissionActivity(owner, activity);
-                        if (nonEntityPermissionTargetProviders.contains(
-                                permissionActivity.getTargetProviderKey())) {
-                            checkTargetForContainingGroups = false;
-                        }
-                    }
-                    if (checkTargetForContainingGroups) {
-                        log.debug(
-                                "Target '{}' is an entity. Checking for group or groups containing entity",
-                                target);
-
-                        IGroupMember targetEntity = GroupService.findGroup(target);
-                        if (targetEntity == null) {
-                            if (target.startsWith(IPermission.PORTLET_PREFIX)) {
-                                targetEntity =
-                                        GroupService.getGroupMember(
-                                                target.replace(IPermission.PORTLET_PREFIX, ""),
-                                                IPortletDefinition.class);
-                            } else {
-                                targetEntity = GroupService.getGroupMember(target, IPerson.class);
-                            }
-                        }
-
-                        if (targetEntity != null) {
-                            for (IEntityGroup ancestor : targetEntity.getAncestorGroups()) {
-                                containingGroups.add(ancestor.getKey());
-                            }
-                        }
-                    }
-                }
-
-                this.entityParentsCache.put(new Element(target, containingGroups));
-            }
-
-        } else {
-            containingGroups = new HashSet<String>();
-        }
+        final Set<String> containingGroups =
+                target != null
+                        ? getContainingGroupTargets(owner, activity, target)
+                        : Collections.<String>emptySet();
 
         List<IPermission> al = new ArrayList<IPermission>(perms.length);
 
@@ -1115,6 +1070,83 @@ public class AuthorizationImpl implements IAuthorizationService {
         removeFromPermissionsCache(principals);
     }
 
+    @Override
+    public Set<String> getPermissionTargetScope(String owner, String activity, String target) {
+        final Set<String> rslt =
+                new HashSet<String>(getContainingGroupTargets(owner, activity, target));
+        rslt.add(target);
+        return rslt;
+    }
+
+    /** Keys of the groups containing the target entity, permissions on them apply to the target */
+    @SuppressWarnings("unchecked")
+    private Set<String> getContainingGroupTargets(String owner, String activity, String target) {
+        final Element element = this.entityParentsCache.get(target);
+        if (element != null) {
+            return (Set<String>) element.getObjectValue();
+        }
+
+        final Set<String> containingGroups = new HashSet<String>();
+
+        //Ignore target entity lookups for the various synthetic ALL targets
+        if (!IPermission.ALL_CATEGORIES_TARGET.equals(target)
+                && !IPermission.ALL_GROUPS_TARGET.equals(target)
+                && !IPermission.ALL_PORTLETS_TARGET.equals(target)
+                && !IPermission.ALL_TARGET.equals(target)) {
+
+            // UP-4410; It would be ideal if the target string indicated it was a group or entity that might be
+            // a member of a group so we could determine whether to check what groups the target entity might be
+            // contained within to see if the principal has permission to the containing group, but it does not
+            // (too significant to refactor database values at this point).  If the owner and activity strings map to
+            // a type of target that might be a group name or entity name, create a set of the groups the target
+            // entity is contained in.
+            boolean checkTargetForContainingGroups = true;
+            if (owner != null && activity != null) {
+                IPermissionActivity permissionActivity =
+                        permissionOwner.getPermissionActivity(owner, activity);
+                if (nonEntityPermissionTargetProviders.contains(
+                        permissionActivity.getTargetProviderKey())) {
+                    checkTargetForContainingGroups = false;
+                }
+            }
+            if (checkTargetForContainingGroups) {
+                log.debug(
+                        "Target '{}' is an entity. Checking for group or groups containing entity",
+                        target);
+
+                IGroupMember targetEntity = GroupService.findGroup(target);
+                if (targetEntity == null) {
+                    if (target.startsWith(IPermission.PORTLET_PREFIX)) {
+                        targetEntity =
+                                GroupService.getGroupMember(
+                                        target.replace(IPermission.PORTLET_PREFIX, ""),
+                                        IPortletDefinition.class);
+                    } else {
+                        targetEntity = GroupService.getGroupMember(target, IPerson.class);
+                    }
+                }
+
+                if (targetEntity != null) {
+                    for (IEntityGroup ancestor : targetEntity.getAncestorGroups()) {
+                        containingGroups.add(ancestor.getKey());
+                    }
+                }
+            }
+        }
+
+        this.entityParentsCache.put(new Element(target, containingGroups));
+        return containingGroups;
+    }
+
+    /**
+     * Clears the cached permission decisions, they are computed from the permissions of every
+     * principal and the groups above it so any change may affect any of them.
+     */
+    private void clearPermissionDecisions() {
+        this.doesPrincipalHavePermissionCache.removeAll();
+        this.permissionDecisionCache.removeAll();
+    }
+
     /**
      * Removes <code>IPermissions</code> from the back end store.
      *
@@ -1128,6 +1160,7 @@ public class AuthorizationImpl implements IAuthorizationService {
             if (this.cachePermissions) {
                 removeFromPermissionsCache(permissions);
             }
+            clearPermissionDecisions();
         }
     }
 
@@ -1144,6 +1177,7 @@ public class AuthorizationImpl implements IAuthorizationService {
             if (this.cachePermissions) {
                 removeFromPermissionsCache(permissions);
             }
+            clearPermissionDecisions();
         }
     }
 }
@@ -0,0 +1,230 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.security.provider;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apereo.portal.security.IPermission;
+
+/**
+ * The active permissions of a principal and of every group above it for one owner and activity,
+ * compiled in a single walk up the groups tree. Answers whether there is an unblocked path to a
+ * GRANT for any target from memory, see {@link AnyUnblockedGrantPermissionPolicy}.
+ *
+ * <p>Each principal in the tree is a node holding the principal string, the targets it is
+ * explicitly denied and granted and the indexes of its parent groups, node 0 is the principal the
+ * table was built for. A table built for a group can be merged into the table of a member of the
+ * group, see {@link Builder#addTable(PermissionDecisionTable, Map)}.
+ *
+ * @since 5.0
+ */
+/* package-private */ final class PermissionDecisionTable {
+
+    private final List<String> principals;
+    private final List<Set<String>> deniedTargets;
+    private final List<Set<String>> grantedTargets;
+    private final List<int[]> parents;
+    private final long validUntil;
+
+    private PermissionDecisionTable(Builder builder) {
+        this.principals = builder.principals;
+        this.deniedTargets = builder.deniedTargets;
+        this.grantedTargets = builder.grantedTargets;
+        this.parents = builder.parents;
+        this.validUntil = builder.validUntil;
+    }
+
+    /** @return Number of principals in the table, the principal itself and its ancestor groups */
+    public int size() {
+        return this.parents.size();
+    }
+
+    /**
+     * @return false once a permission in the table has become effective or has expired since the
+     *     table was built
+     */
+    public boolean isValid(long now) {
+        return now < this.validUntil;
+    }
+
+    /**
+     * @param targets The target and the groups containing it, as returned by {@link
+     *     org.apereo.portal.security.IAuthorizationService#getPermissionTargetScope(String,
+     *     String, String)}
+     * @return true if there is a path up the groups tree to a GRANT on one of the targets that is
+     *     not interrupted by a DENY on one of them
+     */
+    public boolean isGranted(Set<String> targets) {
+        return this.isGranted(0, targets, new BitSet(this.parents.size()));
+    }
+
+    private boolean isGranted(int node, Set<String> targets, BitSet seen) {
+        seen.set(node);
+
+        // DENY trumps both GRANT & inherited permissions
+        if (containsAny(this.deniedTargets.get(node), targets)) {
+            return false;
+        }
+        if (containsAny(this.grantedTargets.get(node), targets)) {
+            return true;
+        }
+
+        // A group seen on another path had no unblocked GRANT there either
+        for (final int parent : this.parents.get(node)) {
+            if (!seen.get(parent) && this.isGranted(parent, targets, seen)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsAny(Set<String> permissionTargets, Set<String> targets) {
+        if (permissionTargets.isEmpty()) {
+            return false;
+        }
+        for (final String target : targets) {
+            if (permissionTargets.contains(target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Collects the nodes of a table, parents are set once all of a node's parents are added */
+    static final class Builder {
+        private final List<String> principals = new ArrayList<>();
+        private final List<Set<String>> deniedTargets = new ArrayList<>();
+        private final List<Set<String>> grantedTargets = new ArrayList<>();
+        private final List<int[]> parents = new ArrayList<>();
+        private final Date now;
+        private long validUntil = Long.MAX_VALUE;
+
+        Builder(long now) {
+            this.now = new Date(now);
+        }
+
+        /**
+         * Adds a node for a principal's permissions, only permissions that are currently active
+         * are kept.
+         *
+         * @param principal The principal string of the principal
+         * @return The index of the node
+         */
+        int addPrincipal(String principal, IPermission[] permissions) {
+            Set<String> denied = Collections.emptySet();
+            Set<String> granted = Collections.emptySet();
+            for (final IPermission permission : permissions) {
+                final Date effective = permission.getEffective();
+                final Date expires = permission.getExpires();
+                if (effective != null && effective.after(this.now)) {
+                    this.validUntil = Math.min(this.validUntil, effective.getTime());
+                    continue;
+                }
+                if (expires != null) {
+                    if (!expires.after(this.now)) {
+                        continue;
+                    }
+                    this.validUntil = Math.min(this.validUntil, expires.getTime());
+                }
+
+                if (IPermission.PERMISSION_TYPE_DENY.equals(permission.getType())) {
+                    if (denied.isEmpty()) {
+                        denied = new HashSet<>();
+                    }
+                    denied.add(permission.getTarget());
+                } else if (IPermission.PERMISSION_TYPE_GRANT.equals(permission.getType())) {
+                    if (granted.isEmpty()) {
+                        granted = new HashSet<>();
+                    }
+                    granted.add(permission.getTarget());
+                }
+            }
+
+            return this.addNode(principal, denied, granted);
+        }
+
+        /**
+         * Adds the nodes of a table built for a group, principals that already have a node in this
+         * table keep it and are not added again.
+         *
+         * @param nodes Index of the node of each principal string, updated with the added nodes
+         * @return The index of the node of the group the table was built for
+         */
+        int addTable(PermissionDecisionTable table, Map<String, Integer> nodes) {
+            final int size = table.size();
+            final int[] indexes = new int[size];
+            final BitSet added = new BitSet(size);
+            for (int i = 0; i < size; i++) {
+                final String principal = table.principals.get(i);
+                final Integer node = nodes.get(principal);
+                if (node != null) {
+                    indexes[i] = node;
+                } else {
+                    indexes[i] =
+                            this.addNode(
+                                    principal,
+                                    table.deniedTargets.get(i),
+                                    table.grantedTargets.get(i));
+                    nodes.put(principal, indexes[i]);
+                    added.set(i);
+                }
+            }
+
+            // Parents of the added nodes are mapped to their index in this table
+            for (int i = added.nextSetBit(0); i >= 0; i = added.nextSetBit(i + 1)) {
+                final int[] tableParents = table.parents.get(i);
+                final int[] parentIndexes = new int[tableParents.length];
+                for (int j = 0; j < tableParents.length; j++) {
+                    parentIndexes[j] = indexes[tableParents[j]];
+                }
+                this.parents.set(indexes[i], parentIndexes);
+            }
+
+            this.validUntil = Math.min(this.validUntil, table.validUntil);
+            return indexes[0];
+        }
+
+        private int addNode(String principal, Set<String> denied, Set<String> granted) {
+            this.principals.add(principal);
+            this.deniedTargets.add(denied);
+            this.grantedTargets.add(granted);
+            this.parents.add(null);
+            return this.parents.size() - 1;
+        }
+
+        void setParents(int node, List<Integer> parentNodes) {
+            final int[] indexes = new int[parentNodes.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = parentNodes.get(i);
+            }
+            this.parents.set(node, indexes);
+        }
+
+        PermissionDecisionTable build() {
+            for (int i = 0; i < this.parents.size(); i++) {
+                if (this.parents.get(i) == null) {
+                    this.parents.set(i, new int[0]);
+                }
+            }
+            return new PermissionDecisionTable(this);
+        }
+    }
+}
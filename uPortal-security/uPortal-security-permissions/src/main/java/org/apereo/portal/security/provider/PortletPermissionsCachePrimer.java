@@ -17,7 +17,6 @@ package org.apereo.portal.security.provider;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
@@ -30,15 +29,9 @@ import org.apereo.portal.groups.IGroupMember;
 import org.apereo.portal.permission.IPermissionActivity;
 import org.apereo.portal.permission.IPermissionOwner;
 import org.apereo.portal.permission.dao.IPermissionOwnerDao;
-import org.apereo.portal.permission.target.IPermissionTarget;
-import org.apereo.portal.permission.target.IPermissionTargetProvider;
-import org.apereo.portal.permission.target.IPermissionTargetProviderRegistry;
-import org.apereo.portal.portlet.om.IPortletDefinition;
-import org.apereo.portal.portlet.registry.IPortletDefinitionRegistry;
 import org.apereo.portal.security.IAuthorizationPrincipal;
 import org.apereo.portal.security.IAuthorizationService;
 import org.apereo.portal.security.IPerson;
-import org.apereo.portal.security.PermissionHelper;
 import org.apereo.portal.services.GroupService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,20 +40,18 @@ import org.springframework.beans.factory.annotation.Required;
 
 /**
  * Responsible for pre-loading the permissions cache maintained by the
- * anyUnblockedGrantPermissionPolicy bean with some portlet-related evaluation decisions. This is
- * computationally expensive work, especially for operations that need a decision for every portlet
- * in the registry; it's better to do it outside of a request thread.
+ * anyUnblockedGrantPermissionPolicy bean with the decision tables of some portlet-related
+ * activities for every group. This is computationally expensive work, especially for operations
+ * that need a decision for every portlet in the registry; it's better to do it outside of a request
+ * thread. Groups are loaded from the root down so each table is built on top of the cached tables
+ * of the group's parents, and the tables of users are built on top of those of their groups.
  *
  * @since 4.3
  */
 public class PortletPermissionsCachePrimer {
 
-    @Autowired private IPortletDefinitionRegistry portletDefinitionRegistry;
-
     @Autowired private IPermissionOwnerDao permissionOwnerDao;
 
-    @Autowired private IPermissionTargetProviderRegistry targetProviderRegistry;
-
     @Autowired private IAuthorizationService authorizationService;
 
     @Autowired private AnyUnblockedGrantPermissionPolicy policy;
@@ -104,10 +95,7 @@ public class PortletPermissionsCachePrimer {
             for (String s : y.getValue()) {
                 final IPermissionActivity activity =
                         permissionOwnerDao.getPermissionActivity(y.getKey(), s);
-                final IPermissionTargetProvider targetProvider =
-                        targetProviderRegistry.getTargetProvider(activity.getTargetProviderKey());
-                final NodeWalker walker =
-                        new NodeWalker(rootGroup, owner, activity, targetProvider);
+                final NodeWalker walker = new NodeWalker(rootGroup, owner, activity);
                 final Future<NodeWalkerReport> future = this.executor.submit(walker);
                 futures.put(walker, future);
             }
@@ -143,17 +131,12 @@ public class PortletPermissionsCachePrimer {
         final IEntityGroup rootGroup;
         final IPermissionOwner owner;
         final IPermissionActivity activity;
-        final IPermissionTargetProvider targetProvider;
 
         public NodeWalker(
-                IEntityGroup rootGroup,
-                IPermissionOwner owner,
-                IPermissionActivity activity,
-                IPermissionTargetProvider targetProvider) {
+                IEntityGroup rootGroup, IPermissionOwner owner, IPermissionActivity activity) {
             this.rootGroup = rootGroup;
             this.owner = owner;
             this.activity = activity;
-            this.targetProvider = targetProvider;
         }
 
         @Override
@@ -180,18 +163,11 @@ public class PortletPermissionsCachePrimer {
             visitedNodes.add(group.getUnderlyingEntityIdentifier());
 
             /*
-             * First we load ourselves.
+             * First we load ourselves;  the decision table answers for every portlet.
              */
             final IAuthorizationPrincipal principal = authorizationService.newPrincipal(group);
-            final List<IPortletDefinition> portletDefinitions =
-                    portletDefinitionRegistry.getAllPortletDefinitions();
-            for (IPortletDefinition pdef : portletDefinitions) {
-                final String targetString =
-                        PermissionHelper.permissionTargetIdForPortletDefinition(pdef);
-                final IPermissionTarget target = targetProvider.getTarget(targetString);
-                policy.loadInCache(authorizationService, principal, owner, activity, target);
-                report.incrementCombinationCount();
-            }
+            policy.loadInCache(authorizationService, principal, owner, activity);
+            report.incrementCombinationCount();
 
             /*
              * Then we load our children.
@@ -0,0 +1,188 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.security.provider;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import org.apereo.portal.groups.GroupsException;
+import org.apereo.portal.groups.IEntityGroup;
+import org.apereo.portal.groups.IGroupMember;
+import org.apereo.portal.permission.IPermissionActivity;
+import org.apereo.portal.permission.IPermissionOwner;
+import org.apereo.portal.permission.dao.IPermissionOwnerDao;
+import org.apereo.portal.permission.target.IPermissionTarget;
+import org.apereo.portal.permission.target.IPermissionTarget.TargetType;
+import org.apereo.portal.security.IAuthorizationPrincipal;
+import org.apereo.portal.security.IAuthorizationService;
+import org.apereo.portal.security.IPermission;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AnyUnblockedGrantPermissionPolicyTest {
+    private static final String CACHE_NAME = "AnyUnblockedGrantPermissionPolicyTest";
+
+    @Mock private IPermissionOwnerDao permissionOwnerDao;
+    @Mock private IAuthorizationService service;
+    @Mock private IPermissionOwner owner;
+    @Mock private IPermissionActivity activity;
+    @Mock private IPermissionTarget target;
+
+    @Mock private IAuthorizationPrincipal userPrincipal;
+    @Mock private IGroupMember user;
+
+    private AnyUnblockedGrantPermissionPolicy policy;
+    private Cache hasUnblockedGrantCache;
+
+    @Before
+    public void setup() {
+        hasUnblockedGrantCache = new Cache(CACHE_NAME, 100, false, false, 0, 0);
+        CacheManager.getInstance().addCache(hasUnblockedGrantCache);
+
+        policy = new AnyUnblockedGrantPermissionPolicy();
+        ReflectionTestUtils.setField(policy, "permissionOwnerDao", permissionOwnerDao);
+        ReflectionTestUtils.setField(policy, "hasUnblockedGrantCache", hasUnblockedGrantCache);
+
+        //Checking the all permissions activity skips the super-user check
+        when(permissionOwnerDao.getPermissionActivity(
+                        IPermission.PORTAL_SYSTEM, IPermission.ALL_PERMISSIONS_ACTIVITY))
+                .thenReturn(activity);
+        when(owner.getFname()).thenReturn("owner");
+        when(activity.getFname()).thenReturn("activity");
+        when(target.getTargetType()).thenReturn(TargetType.OTHER);
+        when(target.getKey()).thenReturn("target");
+        when(service.getPermissionTargetScope("owner", "activity", "target"))
+                .thenReturn(Collections.singleton("target"));
+
+        when(userPrincipal.getKey()).thenReturn("user");
+        when(userPrincipal.getPrincipalString()).thenReturn("user.user");
+        when(service.getGroupMember(userPrincipal)).thenReturn(user);
+        this.setPermissions(userPrincipal);
+    }
+
+    @After
+    public void tearDown() {
+        CacheManager.getInstance().removeCache(CACHE_NAME);
+    }
+
+    @Test
+    public void testGrant() {
+        final IEntityGroup group = this.createGroup("group", grant());
+        this.setParents(user, group);
+        this.setParents(group);
+
+        assertTrue(this.hasPermission());
+    }
+
+    @Test
+    public void testDenyBlocksInheritedGrant() {
+        final IEntityGroup group = this.createGroup("group", deny());
+        final IEntityGroup parent = this.createGroup("parent", grant());
+        this.setParents(user, group);
+        this.setParents(group, parent);
+        this.setParents(parent);
+
+        assertFalse(this.hasPermission());
+    }
+
+    @Test
+    public void testParentLookupFailure() {
+        final IEntityGroup broken = mock(IEntityGroup.class);
+        when(service.newPrincipal(broken)).thenThrow(new GroupsException("Broken group"));
+        final IEntityGroup group = this.createGroup("group", grant());
+        this.setParents(user, broken, group);
+        this.setParents(group);
+
+        //The broken group is skipped, the grant on the other path still applies
+        assertTrue(this.hasPermission());
+    }
+
+    @Test
+    public void testPrimedGroupTableReused() {
+        final IEntityGroup group = this.createGroup("group");
+        final IEntityGroup parent = this.createGroup("parent", grant());
+        this.setParents(user, group);
+        this.setParents(group, parent);
+        this.setParents(parent);
+
+        //Prime the group's table, the user's table is built on top of it
+        final IAuthorizationPrincipal groupPrincipal = service.newPrincipal(group);
+        when(service.getGroupMember(groupPrincipal)).thenReturn(group);
+        policy.loadInCache(service, groupPrincipal, owner, activity);
+
+        assertTrue(this.hasPermission());
+
+        final IAuthorizationPrincipal parentPrincipal = service.newPrincipal(parent);
+        verify(service, times(1))
+                .getPermissionsForPrincipal(parentPrincipal, "owner", "activity", null);
+        verify(parent, times(1)).getParentGroups();
+    }
+
+    private boolean hasPermission() {
+        return policy.doesPrincipalHavePermission(service, userPrincipal, owner, activity, target);
+    }
+
+    private IEntityGroup createGroup(String name, IPermission... permissions) {
+        final IEntityGroup group = mock(IEntityGroup.class);
+        final IAuthorizationPrincipal principal = mock(IAuthorizationPrincipal.class);
+        when(principal.isGroup()).thenReturn(true);
+        when(principal.getPrincipalString()).thenReturn("group." + name);
+        when(service.newPrincipal(group)).thenReturn(principal);
+        this.setPermissions(principal, permissions);
+        return group;
+    }
+
+    private void setPermissions(IAuthorizationPrincipal principal, IPermission... permissions) {
+        when(service.getPermissionsForPrincipal(principal, "owner", "activity", null))
+                .thenReturn(permissions);
+    }
+
+    private void setParents(IGroupMember member, IEntityGroup... parents) {
+        final Set<IEntityGroup> parentGroups = new LinkedHashSet<>();
+        Collections.addAll(parentGroups, parents);
+        when(member.getParentGroups()).thenReturn(parentGroups);
+    }
+
+    private static IPermission grant() {
+        return permission(IPermission.PERMISSION_TYPE_GRANT);
+    }
+
+    private static IPermission deny() {
+        return permission(IPermission.PERMISSION_TYPE_DENY);
+    }
+
+    private static IPermission permission(String type) {
+        final PermissionImpl permission = new PermissionImpl("owner");
+        permission.setActivity("activity");
+        permission.setType(type);
+        permission.setTarget("target");
+        return permission;
+    }
+}
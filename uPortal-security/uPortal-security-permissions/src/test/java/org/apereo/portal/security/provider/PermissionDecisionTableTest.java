@@ -0,0 +1,154 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.security.provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.apereo.portal.security.IPermission;
+import org.junit.Test;
+
+public class PermissionDecisionTableTest {
+    private static final long NOW = 1000000L;
+
+    private static final Set<String> TARGET = Collections.singleton("PORTLET_ID.1");
+
+    @Test
+    public void testGrant() {
+        final PermissionDecisionTable.Builder builder = new PermissionDecisionTable.Builder(NOW);
+        final int user = builder.addPrincipal("user", permissions(grant("PORTLET_ID.1")));
+        builder.setParents(user, Collections.<Integer>emptyList());
+
+        final PermissionDecisionTable table = builder.build();
+        assertTrue(table.isGranted(TARGET));
+        assertFalse(table.isGranted(Collections.singleton("PORTLET_ID.2")));
+    }
+
+    @Test
+    public void testInheritedGrant() {
+        final PermissionDecisionTable.Builder builder = new PermissionDecisionTable.Builder(NOW);
+        final int user = builder.addPrincipal("user", permissions());
+        final int group = builder.addPrincipal("group", permissions());
+        final int parent = builder.addPrincipal("parent", permissions(grant("PORTLET_ID.1")));
+        builder.setParents(user, Arrays.asList(group));
+        builder.setParents(group, Arrays.asList(parent));
+
+        assertTrue(builder.build().isGranted(TARGET));
+    }
+
+    @Test
+    public void testDenyBlocksInheritedGrant() {
+        final PermissionDecisionTable.Builder builder = new PermissionDecisionTable.Builder(NOW);
+        final int user = builder.addPrincipal("user", permissions());
+        final int group = builder.addPrincipal("group", permissions(deny("PORTLET_ID.1")));
+        final int parent = builder.addPrincipal("parent", permissions(grant("PORTLET_ID.1")));
+        builder.setParents(user, Arrays.asList(group));
+        builder.setParents(group, Arrays.asList(parent));
+
+        assertFalse(builder.build().isGranted(TARGET));
+    }
+
+    @Test
+    public void testUnblockedPathGrants() {
+        //user -- denied (DENY) -- parent (GRANT), user -- other -- parent (GRANT)
+        final PermissionDecisionTable.Builder builder = new PermissionDecisionTable.Builder(NOW);
+        final int user = builder.addPrincipal("user", permissions());
+        final int denied = builder.addPrincipal("denied", permissions(deny("PORTLET_ID.1")));
+        final int other = builder.addPrincipal("other", permissions());
+        final int parent = builder.addPrincipal("parent", permissions(grant("PORTLET_ID.1")));
+        builder.setParents(user, Arrays.asList(denied, other));
+        builder.setParents(denied, Arrays.asList(parent));
+        builder.setParents(other, Arrays.asList(parent));
+
+        assertTrue(builder.build().isGranted(TARGET));
+    }
+
+    @Test
+    public void testInactivePermissionsIgnored() {
+        final PermissionDecisionTable.Builder builder = new PermissionDecisionTable.Builder(NOW);
+        final IPermission future = grant("PORTLET_ID.1");
+        future.setEffective(new Date(NOW + 100));
+        final IPermission expired = grant("PORTLET_ID.1");
+        expired.setExpires(new Date(NOW));
+        final int user = builder.addPrincipal("user", permissions(future, expired));
+        builder.setParents(user, Collections.<Integer>emptyList());
+
+        final PermissionDecisionTable table = builder.build();
+        assertFalse(table.isGranted(TARGET));
+
+        //The table must be rebuilt once the future permission becomes effective
+        assertTrue(table.isValid(NOW + 99));
+        assertFalse(table.isValid(NOW + 100));
+    }
+
+    @Test
+    public void testAddTable() {
+        //Table of group -- parent (GRANT) as primed for the group
+        final PermissionDecisionTable.Builder groupBuilder =
+                new PermissionDecisionTable.Builder(NOW);
+        final int group = groupBuilder.addPrincipal("group", permissions());
+        final int parent = groupBuilder.addPrincipal("parent", permissions(grant("PORTLET_ID.1")));
+        groupBuilder.setParents(group, Arrays.asList(parent));
+        final PermissionDecisionTable groupTable = groupBuilder.build();
+
+        //user -- denied (DENY) -- parent, user -- group
+        final PermissionDecisionTable.Builder builder = new PermissionDecisionTable.Builder(NOW);
+        final Map<String, Integer> nodes = new HashMap<>();
+        final int user = builder.addPrincipal("user", permissions());
+        final int denied = builder.addPrincipal("denied", permissions(deny("PORTLET_ID.1")));
+        final int deniedParent =
+                builder.addPrincipal("parent", permissions(grant("PORTLET_ID.1")));
+        nodes.put("user", user);
+        nodes.put("denied", denied);
+        nodes.put("parent", deniedParent);
+        builder.setParents(denied, Arrays.asList(deniedParent));
+
+        final int groupNode = builder.addTable(groupTable, nodes);
+        builder.setParents(user, Arrays.asList(denied, groupNode));
+
+        //Only the group node is added, the parent node already in the table is shared
+        final PermissionDecisionTable table = builder.build();
+        assertEquals(4, table.size());
+        assertEquals(Integer.valueOf(groupNode), nodes.get("group"));
+        assertTrue(table.isGranted(TARGET));
+    }
+
+    private static IPermission[] permissions(IPermission... permissions) {
+        return permissions;
+    }
+
+    private static IPermission grant(String target) {
+        return permission(IPermission.PERMISSION_TYPE_GRANT, target);
+    }
+
+    private static IPermission deny(String target) {
+        return permission(IPermission.PERMISSION_TYPE_DENY, target);
+    }
+
+    private static IPermission permission(String type, String target) {
+        final PermissionImpl permission = new PermissionImpl("UP_PORTLET_SUBSCRIBE");
+        permission.setActivity("SUBSCRIBE");
+        permission.setType(type);
+        permission.setTarget(target);
+        return permission;
+    }
+}
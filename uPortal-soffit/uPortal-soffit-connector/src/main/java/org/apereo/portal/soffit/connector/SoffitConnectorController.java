@@ -19,6 +19,13 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.annotation.PostConstruct;
 import javax.portlet.PortletPreferences;
 import javax.portlet.RenderRequest;
@@ -28,13 +35,11 @@ import net.sf.ehcache.Element;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
-import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.util.EntityUtils;
 import org.apereo.portal.soffit.Headers;
 import org.slf4j.Logger;
@@ -62,27 +67,34 @@ public class SoffitConnectorController implements ApplicationContextAware {
     private static final String SERVICE_URL_PREFERENCE =
             CONNECTOR_PREFERENCE_PREFIX + ".serviceUrl";
 
-    private static final int TIMEOUT_SECONDS = 10;
+    private static final String MAX_AGE = "max-age=";
 
-    @Value(
-            "${org.apereo.portlet.soffit.connector.SoffitConnectorController.maxConnectionsPerRoute:20}")
-    private Integer maxConnectionsPerRoute;
+    private static final String STALE_WHILE_REVALIDATE = "stale-while-revalidate=";
 
-    @Value(
-            "${org.apereo.portlet.soffit.connector.SoffitConnectorController.maxConnectionsTotal:50}")
-    private Integer maxConnectionsTotal;
+    private SoffitHttpClient soffitHttpClient;
+    private SoffitResponseCacheStatistics cacheStatistics;
 
-    private final RequestConfig requestConfig =
-            RequestConfig.custom()
-                    .setSocketTimeout(TIMEOUT_SECONDS * 1000)
-                    .setConnectTimeout(TIMEOUT_SECONDS * 1000)
-                    .build();
+    /*
+     * Cache keys of the expired responses that are being revalidated
+     */
+    private final Set<CacheTuple> revalidations =
+            Collections.newSetFromMap(new ConcurrentHashMap<CacheTuple, Boolean>());
 
-    private final HttpClientBuilder httpClientBuilder =
-            HttpClientBuilder.create()
-                    .setDefaultRequestConfig(requestConfig)
-                    .setConnectionManagerShared(
-                            true); // Prevents the client from shutting down the pool
+    /*
+     * Total time in milliseconds to wait for a soffit's response.  The soffit is fetched on one of
+     * the threads of the shared client so a response that trickles in is abandoned at this
+     * deadline rather than holding the portlet thread for a socket timeout per read.
+     */
+    @Value("${org.apereo.portlet.soffit.connector.SoffitConnectorController.fetchTimeout:20000}")
+    private long fetchTimeout;
+
+    /*
+     * Seconds an expired response that has an ETag or Last-Modified date is still shown for while
+     * it's revalidated, unless the soffit sends a stale-while-revalidate directive.
+     */
+    @Value(
+            "${org.apereo.portlet.soffit.connector.SoffitConnectorController.staleWhileRevalidate:60}")
+    private int staleWhileRevalidate;
 
     private ApplicationContext applicationContext;
     private List<IHeaderProvider> headerProviders;
@@ -95,6 +107,16 @@ public class SoffitConnectorController implements ApplicationContextAware {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    @Autowired
+    public void setSoffitHttpClient(SoffitHttpClient soffitHttpClient) {
+        this.soffitHttpClient = soffitHttpClient;
+    }
+
+    @Autowired
+    public void setCacheStatistics(SoffitResponseCacheStatistics cacheStatistics) {
+        this.cacheStatistics = cacheStatistics;
+    }
+
     @Override
     public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
         this.applicationContext = applicationContext;
@@ -102,12 +124,6 @@ public class SoffitConnectorController implements ApplicationContextAware {
 
     @PostConstruct
     public void init() {
-        PoolingHttpClientConnectionManager poolingHttpClientConnectionManager =
-                new PoolingHttpClientConnectionManager();
-        poolingHttpClientConnectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
-        poolingHttpClientConnectionManager.setMaxTotal(maxConnectionsTotal);
-        httpClientBuilder.setConnectionManager(poolingHttpClientConnectionManager);
-
         final Map<String, IHeaderProvider> beans =
                 BeanFactoryUtils.beansOfTypeIncludingAncestors(
                         applicationContext, IHeaderProvider.class);
@@ -125,25 +141,47 @@ public class SoffitConnectorController implements ApplicationContextAware {
                     "Missing portlet prefernce value for " + SERVICE_URL_PREFERENCE);
         }
 
+        final String mode = req.getPortletMode().toString();
+        final String windowState = req.getWindowState().toString();
+        // Don't use private-scope caching for anonymous users
+        final CacheTuple privateKey =
+                req.getRemoteUser() != null
+                        ? new CacheTuple(serviceUrl, mode, windowState, req.getRemoteUser())
+                        : null;
+        final CacheTuple publicKey = new CacheTuple(serviceUrl, mode, windowState);
+
         // First look in cache for an existing response that applies to this request
-        ResponseWrapper responseValue = fetchContentFromCacheIfAvailable(req, serviceUrl);
-        if (responseValue != null) {
-            logger.debug("Response value obtained from cache for serviceUrl '{}'", serviceUrl);
+        ResponseWrapper responseValue = null;
+        final Element cacheElement = fetchContentFromCacheIfAvailable(privateKey, publicKey);
+        if (cacheElement != null) {
+            responseValue = (ResponseWrapper) cacheElement.getObjectValue();
+            if (responseValue.isExpired(System.currentTimeMillis())) {
+                // Show the expired response once more while checking whether it has changed
+                logger.debug(
+                        "Expired response value obtained from cache for serviceUrl '{}';  "
+                                + "revalidating",
+                        serviceUrl);
+                cacheStatistics.staleHit();
+                revalidate(
+                        (CacheTuple) cacheElement.getObjectKey(),
+                        responseValue,
+                        createRequest(serviceUrl, req, res),
+                        privateKey,
+                        publicKey);
+            } else {
+                logger.debug("Response value obtained from cache for serviceUrl '{}'", serviceUrl);
+                cacheStatistics.hit();
+            }
         } else {
 
             logger.debug("No applicable response in cache;  invoking serviceUrl '{}'", serviceUrl);
+            cacheStatistics.miss();
 
-            final HttpGet getMethod = new HttpGet(serviceUrl);
-            try (final CloseableHttpClient httpClient = httpClientBuilder.build()) {
-
-                // Send the data model as encrypted JWT HTTP headers
-                for (IHeaderProvider headerProvider : headerProviders) {
-                    final Header header = headerProvider.createHeader(req, res);
-                    getMethod.addHeader(header);
-                }
+            final HttpGet getMethod = createRequest(serviceUrl, req, res);
+            try {
 
                 // Send the request
-                final HttpResponse httpResponse = httpClient.execute(getMethod);
+                final HttpResponse httpResponse = fetch(getMethod);
                 try {
                     final int statusCode = httpResponse.getStatusLine().getStatusCode();
                     logger.debug(
@@ -151,7 +189,8 @@ public class SoffitConnectorController implements ApplicationContextAware {
 
                     if (statusCode == HttpStatus.SC_OK) {
                         responseValue =
-                                extractResponseAndCacheIfAppropriate(httpResponse, req, serviceUrl);
+                                extractResponseAndCacheIfAppropriate(
+                                        httpResponse, privateKey, publicKey, serviceUrl);
                     } else {
                         logger.error(
                                 "Failed to get content from remote service '{}';  HttpStatus={}",
@@ -170,6 +209,22 @@ public class SoffitConnectorController implements ApplicationContextAware {
                 }
             } catch (IOException e) {
                 logger.error("Failed to invoke serviceUrl '{}'", serviceUrl, e);
+            } catch (TimeoutException e) {
+                logger.error(
+                        "Failed to get content from remote service '{}' within {}ms",
+                        serviceUrl,
+                        fetchTimeout);
+            } catch (RejectedExecutionException e) {
+                // Fail fast rather than queue up portlet threads behind a slow soffit
+                logger.error(
+                        "Failed to invoke serviceUrl '{}';  all soffit fetch threads are busy",
+                        serviceUrl);
+                try {
+                    res.getWriter().write("FAILED!  Too many pending requests");
+                } catch (IOException ioe) {
+                    logger.error(
+                            "Failed to write the response for serviceUrl '{}'", serviceUrl, ioe);
+                }
             }
         }
 
@@ -187,124 +242,268 @@ public class SoffitConnectorController implements ApplicationContextAware {
      * Implementation
      */
 
-    private ResponseWrapper fetchContentFromCacheIfAvailable(
-            final RenderRequest req, final String serviceUrl) {
-
-        ResponseWrapper rslt = null; // default
+    private HttpGet createRequest(
+            final String serviceUrl, final RenderRequest req, final RenderResponse res) {
+        final HttpGet getMethod = new HttpGet(serviceUrl);
+        // Send the data model as encrypted JWT HTTP headers
+        for (IHeaderProvider headerProvider : headerProviders) {
+            final Header header = headerProvider.createHeader(req, res);
+            getMethod.addHeader(header);
+        }
+        return getMethod;
+    }
 
-        final List<CacheTuple> cacheKeysToTry = new ArrayList<>();
-        // Don't use private-scope caching for anonymous users
-        if (req.getRemoteUser() != null) {
-            cacheKeysToTry.add(
-                    // Private-scope cache key
-                    new CacheTuple(
-                            serviceUrl,
-                            req.getPortletMode().toString(),
-                            req.getWindowState().toString(),
-                            req.getRemoteUser()));
+    private HttpResponse fetch(final HttpGet getMethod) throws IOException, TimeoutException {
+        final Future<HttpResponse> future = soffitHttpClient.fetch(getMethod);
+        try {
+            return future.get(fetchTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Releases the connection of the fetch thread
+            getMethod.abort();
+            future.cancel(true);
+            throw e;
+        } catch (InterruptedException e) {
+            getMethod.abort();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + getMethod.getURI(), e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new RuntimeException("Failed to invoke " + getMethod.getURI(), cause);
         }
-        cacheKeysToTry.add(
-                // Public-scope cache key
-                new CacheTuple(
-                        serviceUrl,
-                        req.getPortletMode().toString(),
-                        req.getWindowState().toString()));
+    }
 
-        for (CacheTuple key : cacheKeysToTry) {
-            final Element cacheElement = this.responseCache.get(key);
+    private Element fetchContentFromCacheIfAvailable(
+            final CacheTuple privateKey, final CacheTuple publicKey) {
+        if (privateKey != null) {
+            final Element cacheElement = this.responseCache.get(privateKey);
             if (cacheElement != null) {
-                rslt = (ResponseWrapper) cacheElement.getObjectValue();
-                break;
+                return cacheElement;
             }
         }
+        return this.responseCache.get(publicKey);
+    }
 
-        return rslt;
+    /**
+     * Sends a conditional request for an expired response on a fetch thread. The cached response
+     * is refreshed without transferring it again if the soffit answers 304 Not Modified, and
+     * replaced if the soffit answers with new content. Only one revalidation per cache key is in
+     * flight at a time. If the fetch is rejected the expired response is kept and revalidated on a
+     * later render.
+     */
+    private void revalidate(
+            final CacheTuple cacheTuple,
+            final ResponseWrapper expired,
+            final HttpGet getMethod,
+            final CacheTuple privateKey,
+            final CacheTuple publicKey) {
+
+        if (!revalidations.add(cacheTuple)) {
+            logger.debug("Revalidation of cacheTuple='{}' is already in progress", cacheTuple);
+            return;
+        }
+
+        if (expired.getETag() != null) {
+            getMethod.addHeader(HttpHeaders.IF_NONE_MATCH, expired.getETag());
+        }
+        if (expired.getLastModified() != null) {
+            getMethod.addHeader(HttpHeaders.IF_MODIFIED_SINCE, expired.getLastModified());
+        }
+        cacheStatistics.revalidation();
+
+        final String serviceUrl = cacheTuple.serviceUrl;
+        soffitHttpClient.fetch(
+                getMethod,
+                new FutureCallback<HttpResponse>() {
+                    @Override
+                    public void completed(HttpResponse httpResponse) {
+                        try {
+                            final int statusCode = httpResponse.getStatusLine().getStatusCode();
+                            logger.debug(
+                                    "HTTP response code revalidating url '{}' was '{}'",
+                                    serviceUrl,
+                                    statusCode);
+                            if (statusCode == HttpStatus.SC_NOT_MODIFIED) {
+                                cacheStatistics.notModified();
+                                final ResponseWrapper refreshed =
+                                        expired.revalidated(
+                                                parseCacheControl(httpResponse, serviceUrl),
+                                                getHeaderValue(httpResponse, HttpHeaders.ETAG),
+                                                getHeaderValue(
+                                                        httpResponse, HttpHeaders.LAST_MODIFIED),
+                                                System.currentTimeMillis());
+                                cacheResponse(cacheTuple, refreshed);
+                            } else if (statusCode == HttpStatus.SC_OK) {
+                                responseCache.remove(cacheTuple);
+                                extractResponseAndCacheIfAppropriate(
+                                        httpResponse, privateKey, publicKey, serviceUrl);
+                            } else {
+                                logger.warn(
+                                        "Failed to revalidate content from remote service '{}';  "
+                                                + "HttpStatus={}",
+                                        serviceUrl,
+                                        statusCode);
+                            }
+                        } catch (RuntimeException e) {
+                            logger.warn("Failed to revalidate serviceUrl '{}'", serviceUrl, e);
+                        } finally {
+                            EntityUtils.consumeQuietly(httpResponse.getEntity());
+                            revalidations.remove(cacheTuple);
+                        }
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        logger.warn("Failed to revalidate serviceUrl '{}'", serviceUrl, e);
+                        revalidations.remove(cacheTuple);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        revalidations.remove(cacheTuple);
+                    }
+                });
     }
 
     private ResponseWrapper extractResponseAndCacheIfAppropriate(
-            final HttpResponse httpResponse, final RenderRequest req, final String serviceUrl) {
+            final HttpResponse httpResponse,
+            final CacheTuple privateKey,
+            final CacheTuple publicKey,
+            final String serviceUrl) {
 
         // Extract
         final HttpEntity entity = httpResponse.getEntity();
-        ResponseWrapper rslt;
+        final byte[] bytes;
         try {
-            rslt = new ResponseWrapper(IOUtils.toByteArray(entity.getContent()));
+            bytes = IOUtils.toByteArray(entity.getContent());
         } catch (UnsupportedOperationException | IOException e) {
             throw new RuntimeException("Failed to read the response", e);
         }
 
         // Cache the response if indicated by the remote service
-        final Header cacheControlHeader =
-                httpResponse.getFirstHeader(Headers.CACHE_CONTROL.getName());
-        if (cacheControlHeader != null) {
-            final String cacheControlValue = cacheControlHeader.getValue();
+        final CacheControl cacheControl = parseCacheControl(httpResponse, serviceUrl);
+        final ResponseWrapper rslt =
+                new ResponseWrapper(
+                        bytes,
+                        cacheControl,
+                        getHeaderValue(httpResponse, HttpHeaders.ETAG),
+                        getHeaderValue(httpResponse, HttpHeaders.LAST_MODIFIED),
+                        System.currentTimeMillis());
+        if (cacheControl != null) {
+            CacheTuple cacheTuple = null;
+            if (cacheControl.privateScope) {
+                // Null for anonymous users, who don't get private-scope caching
+                cacheTuple = privateKey;
+            } else if (cacheControl.publicScope) {
+                cacheTuple = publicKey;
+            }
             logger.debug(
-                    "Soffit with serviceUrl='{}' specified cache-control header value='{}'",
-                    serviceUrl,
-                    cacheControlValue);
-            if (cacheControlHeader != null) {
-                switch (cacheControlValue) {
-                    case Headers.CACHE_CONTROL_NOCACHE:
-                        /*
-                         * This value means we can use validation caching based on
-                         * Last-Modified or ETag.  Those things aren't implemented
-                         * yet, so fall through to the handling for 'no-store'.
-                         */
-                    case Headers.CACHE_CONTROL_NOSTORE:
-                        /*
-                         * The value 'no-store' is the default.
-                         */
-                        logger.debug(
-                                "Not caching response due to CacheControl directive of '{}'",
-                                cacheControlValue);
-                        break;
-                    default:
-                        /*
-                         * Looks like we're using the expiration cache feature.
-                         */
-                        CacheTuple cacheTuple = null;
-                        // TODO:  Need to find a polished utility that parses a cache-control header, or write one
-                        final String[] tokens = cacheControlValue.split(",");
-                        // At present, we expect all valid values to be in the form '[public|private], max-age=300'
-                        if (tokens.length == 2) {
-                            final String maxAge = tokens[1].trim().substring("max-age=".length());
-                            int timeToLive = Integer.parseInt(maxAge);
-                            if ("private".equals(tokens[0].trim())) {
-                                cacheTuple =
-                                        new CacheTuple(
-                                                serviceUrl,
-                                                req.getPortletMode().toString(),
-                                                req.getWindowState().toString(),
-                                                req.getRemoteUser());
-                            } else if ("public".equals(tokens[0].trim())) {
-                                cacheTuple =
-                                        new CacheTuple(
-                                                serviceUrl,
-                                                req.getPortletMode().toString(),
-                                                req.getWindowState().toString());
-                            }
-                            logger.debug(
-                                    "Produced cacheTuple='{}' for cacheControlValue='{}'",
-                                    cacheTuple,
-                                    cacheControlValue);
-                            if (cacheTuple != null) {
-                                final Element element = new Element(cacheTuple, rslt);
-                                element.setTimeToLive(timeToLive);
-                                responseCache.put(element);
-                            } else {
-                                logger.warn(
-                                        "The remote soffit specified cacheControlValue='{}', "
-                                                + "but SoffitConnectorController failed to generate a cacheTuple");
-                            }
-                        }
-                        break;
-                }
+                    "Produced cacheTuple='{}' for cacheControl='{}'", cacheTuple, cacheControl);
+            if (cacheTuple != null) {
+                cacheResponse(cacheTuple, rslt);
+            } else if (!cacheControl.privateScope) {
+                logger.warn(
+                        "The remote soffit specified cacheControl='{}', "
+                                + "but SoffitConnectorController failed to generate a cacheTuple",
+                        cacheControl);
             }
         }
 
         return rslt;
     }
 
+    /**
+     * @return The Cache-Control directives of the response if they allow it to be cached, null if
+     *     it must not be cached
+     */
+    private CacheControl parseCacheControl(
+            final HttpResponse httpResponse, final String serviceUrl) {
+        final String cacheControlValue =
+                getHeaderValue(httpResponse, Headers.CACHE_CONTROL.getName());
+        if (cacheControlValue == null) {
+            return null;
+        }
+        logger.debug(
+                "Soffit with serviceUrl='{}' specified cache-control header value='{}'",
+                serviceUrl,
+                cacheControlValue);
+
+        switch (cacheControlValue) {
+            case Headers.CACHE_CONTROL_NOCACHE:
+                /*
+                 * This value means the response must be revalidated before every use.  That isn't
+                 * implemented, so fall through to the handling for 'no-store'.
+                 */
+            case Headers.CACHE_CONTROL_NOSTORE:
+                /*
+                 * The value 'no-store' is the default.
+                 */
+                logger.debug(
+                        "Not caching response due to CacheControl directive of '{}'",
+                        cacheControlValue);
+                return null;
+            default:
+                /*
+                 * Looks like we're using the expiration cache feature.
+                 */
+                // We expect values in the form '[public|private], max-age=300', optionally
+                // followed by ', stale-while-revalidate=60'
+                final CacheControl rslt = new CacheControl();
+                for (final String token : cacheControlValue.split(",")) {
+                    final String directive = token.trim();
+                    try {
+                        if ("private".equals(directive)) {
+                            rslt.privateScope = true;
+                        } else if ("public".equals(directive)) {
+                            rslt.publicScope = true;
+                        } else if (directive.startsWith(MAX_AGE)) {
+                            rslt.maxAge =
+                                    Integer.parseInt(directive.substring(MAX_AGE.length()));
+                        } else if (directive.startsWith(STALE_WHILE_REVALIDATE)) {
+                            rslt.staleWhileRevalidate =
+                                    Integer.parseInt(
+                                            directive.substring(STALE_WHILE_REVALIDATE.length()));
+                        }
+                    } catch (NumberFormatException e) {
+                        logger.warn(
+                                "Ignoring invalid directive '{}' in cache-control header value "
+                                        + "'{}' from serviceUrl='{}'",
+                                directive,
+                                cacheControlValue,
+                                serviceUrl);
+                    }
+                }
+                if (rslt.maxAge <= 0) {
+                    return null;
+                }
+                if (rslt.staleWhileRevalidate < 0) {
+                    rslt.staleWhileRevalidate = staleWhileRevalidate;
+                }
+                return rslt;
+        }
+    }
+
+    private static String getHeaderValue(final HttpResponse httpResponse, final String name) {
+        final Header header = httpResponse.getFirstHeader(name);
+        return header != null ? header.getValue() : null;
+    }
+
+    /*
+     * Responses that can be revalidated are kept past their max-age for the stale-while-
+     * revalidate period, the rest expire from the cache when their max-age is up.
+     */
+    private void cacheResponse(final CacheTuple cacheTuple, final ResponseWrapper response) {
+        int timeToLive = response.maxAge;
+        if (response.getETag() != null || response.getLastModified() != null) {
+            timeToLive += response.staleWhileRevalidate;
+        }
+        final Element element = new Element(cacheTuple, response);
+        element.setTimeToLive(timeToLive);
+        responseCache.put(element);
+    }
+
     /*
      * Nested Types
      */
@@ -384,15 +583,100 @@ public class SoffitConnectorController implements ApplicationContextAware {
         }
     }
 
+    private static final class CacheControl {
+        private boolean publicScope;
+        private boolean privateScope;
+        private int maxAge = -1;
+        private int staleWhileRevalidate = -1;
+
+        @Override
+        public String toString() {
+            return "CacheControl [publicScope="
+                    + publicScope
+                    + ", privateScope="
+                    + privateScope
+                    + ", maxAge="
+                    + maxAge
+                    + ", staleWhileRevalidate="
+                    + staleWhileRevalidate
+                    + "]";
+        }
+    }
+
     public static final class ResponseWrapper {
         private final byte[] bytes;
+        private final String eTag;
+        private final String lastModified;
+        private final int maxAge;
+        private final int staleWhileRevalidate;
+        private final long expires;
 
         public ResponseWrapper(byte[] bytes) {
             this.bytes = bytes;
+            this.eTag = null;
+            this.lastModified = null;
+            this.maxAge = 0;
+            this.staleWhileRevalidate = 0;
+            this.expires = Long.MAX_VALUE;
+        }
+
+        private ResponseWrapper(
+                byte[] bytes,
+                CacheControl cacheControl,
+                String eTag,
+                String lastModified,
+                long now) {
+            this.bytes = bytes;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            if (cacheControl != null) {
+                this.maxAge = cacheControl.maxAge;
+                this.staleWhileRevalidate = cacheControl.staleWhileRevalidate;
+            } else {
+                this.maxAge = 0;
+                this.staleWhileRevalidate = 0;
+            }
+            this.expires = now + TimeUnit.SECONDS.toMillis(this.maxAge);
         }
 
         public byte[] getBytes() {
             return bytes;
         }
+
+        /** @return The ETag of the response, null if the soffit didn't send one */
+        public String getETag() {
+            return eTag;
+        }
+
+        /** @return The Last-Modified date of the response, null if the soffit didn't send one */
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        /** @return true once the max-age of the response has passed */
+        public boolean isExpired(long now) {
+            return now >= expires;
+        }
+
+        /**
+         * @return A copy of this response, with the same content, for a 304 Not Modified answer
+         *     to its revalidation. Directives and validators sent with the 304 replace the
+         *     current ones.
+         */
+        private ResponseWrapper revalidated(
+                CacheControl cacheControl, String eTag, String lastModified, long now) {
+            final CacheControl merged = new CacheControl();
+            merged.maxAge = cacheControl != null ? cacheControl.maxAge : this.maxAge;
+            merged.staleWhileRevalidate =
+                    cacheControl != null
+                            ? cacheControl.staleWhileRevalidate
+                            : this.staleWhileRevalidate;
+            return new ResponseWrapper(
+                    this.bytes,
+                    merged,
+                    eTag != null ? eTag : this.eTag,
+                    lastModified != null ? lastModified : this.lastModified,
+                    now);
+        }
     }
 }
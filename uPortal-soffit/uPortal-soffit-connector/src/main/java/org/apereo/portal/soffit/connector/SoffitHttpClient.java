@@ -0,0 +1,305 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.soffit.connector;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.entity.BufferedHttpEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * The HTTP client used to fetch the content of all soffits. A single client is shared by every
+ * soffit portlet so connections, including their TLS sessions, are kept alive in one pool and
+ * reused across renders instead of being set up again for each request.
+ *
+ * <p>Requests can be run on a pool of fetch threads, see {@link #fetch(HttpUriRequest)}, which
+ * lets the caller give up on a soffit after a total deadline instead of waiting for each read of
+ * a slow response to time out. Fetches wait in a bounded queue when every fetch thread is busy
+ * and are rejected once it is full, callers never run a fetch on their own thread.
+ *
+ * @since 5.0
+ */
+@ManagedResource("uPortal:section=Soffit,name=SoffitHttpClient")
+@Service("soffitHttpClient")
+public class SoffitHttpClient implements SoffitHttpClientMXBean, DisposableBean {
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong failedRequestCount = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+    private final AtomicLong rejectedFetchCount = new AtomicLong();
+
+    private int maxConnectionsPerRoute = 20;
+    private int maxConnectionsTotal = 50;
+    private int timeout = 10000;
+    private long keepAlive = 30000;
+    private int fetchQueueSize = 100;
+
+    private PoolingHttpClientConnectionManager connectionManager;
+    private CloseableHttpClient httpClient;
+    private ThreadPoolExecutor fetchExecutor;
+
+    @Value(
+            "${org.apereo.portlet.soffit.connector.SoffitConnectorController.maxConnectionsPerRoute:20}")
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    @Value(
+            "${org.apereo.portlet.soffit.connector.SoffitConnectorController.maxConnectionsTotal:50}")
+    public void setMaxConnectionsTotal(int maxConnectionsTotal) {
+        this.maxConnectionsTotal = maxConnectionsTotal;
+    }
+
+    /** Connect, socket and connection pool timeout in milliseconds, defaults to 10 seconds */
+    @Value("${org.apereo.portal.soffit.connector.SoffitHttpClient.timeout:10000}")
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Longest time in milliseconds an idle connection is kept alive for, used when the soffit does
+     * not specify a shorter one in a Keep-Alive header. Defaults to 30 seconds.
+     */
+    @Value("${org.apereo.portal.soffit.connector.SoffitHttpClient.keepAlive:30000}")
+    public void setKeepAlive(long keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Number of fetches that wait for a fetch thread once all of them are busy, further fetches are
+     * rejected. Defaults to 100.
+     */
+    @Value("${org.apereo.portal.soffit.connector.SoffitHttpClient.fetchQueueSize:100}")
+    public void setFetchQueueSize(int fetchQueueSize) {
+        this.fetchQueueSize = fetchQueueSize;
+    }
+
+    @PostConstruct
+    public void init() {
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        this.connectionManager.setDefaultMaxPerRoute(this.maxConnectionsPerRoute);
+        this.connectionManager.setMaxTotal(this.maxConnectionsTotal);
+
+        final RequestConfig requestConfig =
+                RequestConfig.custom()
+                        .setSocketTimeout(this.timeout)
+                        .setConnectTimeout(this.timeout)
+                        .setConnectionRequestTimeout(this.timeout)
+                        .build();
+
+        final ConnectionKeepAliveStrategy keepAliveStrategy =
+                new DefaultConnectionKeepAliveStrategy() {
+                    @Override
+                    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                        final long duration = super.getKeepAliveDuration(response, context);
+                        return duration > 0 ? Math.min(duration, keepAlive) : keepAlive;
+                    }
+                };
+
+        this.httpClient =
+                HttpClientBuilder.create()
+                        .setConnectionManager(this.connectionManager)
+                        .setDefaultRequestConfig(requestConfig)
+                        .setKeepAliveStrategy(keepAliveStrategy)
+                        .evictExpiredConnections()
+                        .evictIdleConnections(this.keepAlive, TimeUnit.MILLISECONDS)
+                        .build();
+
+        //One fetch thread per pooled connection, time spent in the queue counts against the
+        //caller's deadline
+        this.fetchExecutor =
+                new ThreadPoolExecutor(
+                        this.maxConnectionsTotal,
+                        this.maxConnectionsTotal,
+                        60,
+                        TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(this.fetchQueueSize),
+                        new CustomizableThreadFactory("soffit-fetch-"),
+                        new ThreadPoolExecutor.AbortPolicy());
+        this.fetchExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        this.fetchExecutor.shutdownNow();
+        this.httpClient.close();
+    }
+
+    /**
+     * Runs the request on a fetch thread, see {@link #execute(HttpUriRequest)}. A caller that
+     * stops waiting for the result should {@link HttpUriRequest#abort()} the request.
+     *
+     * @throws RejectedExecutionException if all fetch threads are busy and the queue is full
+     */
+    public Future<HttpResponse> fetch(final HttpUriRequest request) {
+        try {
+            return this.fetchExecutor.submit(
+                    new Callable<HttpResponse>() {
+                        @Override
+                        public HttpResponse call() throws Exception {
+                            return execute(request);
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            this.rejectedFetchCount.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the request on a fetch thread and hands the response to the callback, for callers that
+     * do not wait for the result. If all fetch threads are busy and the queue is full the callback
+     * fails right away with a {@link RejectedExecutionException}.
+     */
+    public void fetch(final HttpUriRequest request, final FutureCallback<HttpResponse> callback) {
+        try {
+            this.fetchExecutor.execute(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            final HttpResponse response;
+                            try {
+                                response = execute(request);
+                            } catch (Exception e) {
+                                callback.failed(e);
+                                return;
+                            }
+                            callback.completed(response);
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            this.rejectedFetchCount.incrementAndGet();
+            callback.failed(e);
+        }
+    }
+
+    /**
+     * Sends the request and reads the whole response before returning its connection to the pool,
+     * the entity of the returned response is buffered in memory.
+     */
+    public HttpResponse execute(HttpUriRequest request) throws IOException {
+        final long start = System.nanoTime();
+        try (final CloseableHttpResponse response = this.httpClient.execute(request)) {
+            final HttpEntity entity = response.getEntity();
+            if (entity != null) {
+                response.setEntity(new BufferedHttpEntity(entity));
+                EntityUtils.consume(entity);
+            }
+            return response;
+        } catch (IOException | RuntimeException e) {
+            this.failedRequestCount.incrementAndGet();
+            throw e;
+        } finally {
+            this.requestCount.incrementAndGet();
+            final long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            this.totalLatency.addAndGet(latency);
+            long max;
+            do {
+                max = this.maxLatency.get();
+            } while (latency > max && !this.maxLatency.compareAndSet(max, latency));
+        }
+    }
+
+    @Override
+    public int getMaxConnectionsTotal() {
+        return this.maxConnectionsTotal;
+    }
+
+    @Override
+    public int getMaxConnectionsPerRoute() {
+        return this.maxConnectionsPerRoute;
+    }
+
+    @Override
+    public int getLeasedConnections() {
+        return this.getPoolStats().getLeased();
+    }
+
+    @Override
+    public int getAvailableConnections() {
+        return this.getPoolStats().getAvailable();
+    }
+
+    @Override
+    public int getPendingConnections() {
+        return this.getPoolStats().getPending();
+    }
+
+    @Override
+    public int getActiveFetches() {
+        return this.fetchExecutor.getActiveCount();
+    }
+
+    @Override
+    public int getQueuedFetches() {
+        return this.fetchExecutor.getQueue().size();
+    }
+
+    @Override
+    public long getRejectedFetchCount() {
+        return this.rejectedFetchCount.get();
+    }
+
+    @Override
+    public long getRequestCount() {
+        return this.requestCount.get();
+    }
+
+    @Override
+    public long getFailedRequestCount() {
+        return this.failedRequestCount.get();
+    }
+
+    @Override
+    public double getMeanLatency() {
+        final long count = this.requestCount.get();
+        return count == 0 ? 0 : (double) this.totalLatency.get() / count;
+    }
+
+    @Override
+    public long getMaxLatency() {
+        return this.maxLatency.get();
+    }
+
+    private PoolStats getPoolStats() {
+        return this.connectionManager.getTotalStats();
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.soffit.connector;
+
+/** JMX stats for the connection pool and requests of the {@link SoffitHttpClient} */
+public interface SoffitHttpClientMXBean {
+
+    /** @return Maximum number of pooled connections */
+    int getMaxConnectionsTotal();
+
+    /** @return Maximum number of pooled connections to a single soffit host */
+    int getMaxConnectionsPerRoute();
+
+    /** @return Number of connections currently in use by a request */
+    int getLeasedConnections();
+
+    /** @return Number of idle, kept-alive connections waiting to be reused */
+    int getAvailableConnections();
+
+    /** @return Number of requests waiting for a connection to become available */
+    int getPendingConnections();
+
+    /** @return Number of fetches currently running on the fetch threads */
+    int getActiveFetches();
+
+    /** @return Number of fetches waiting for a fetch thread */
+    int getQueuedFetches();
+
+    /** @return Number of fetches rejected because all fetch threads were busy and the queue full */
+    long getRejectedFetchCount();
+
+    /** @return Number of completed requests to soffits, including failed ones */
+    long getRequestCount();
+
+    /** @return Number of requests that failed with an exception, including timeouts */
+    long getFailedRequestCount();
+
+    /** @return Mean time in milliseconds from sending a request to reading the whole response */
+    double getMeanLatency();
+
+    /** @return Longest time in milliseconds from sending a request to reading the whole response */
+    long getMaxLatency();
+}
@@ -0,0 +1,81 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.soffit.connector;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Counts how soffit renders were served by the response cache. Shared by every soffit portlet
+ * through the portal's context.
+ *
+ * @since 5.0
+ */
+@ManagedResource("uPortal:section=Soffit,name=SoffitResponseCache")
+@Service("soffitResponseCacheStatistics")
+public class SoffitResponseCacheStatistics implements SoffitResponseCacheStatisticsMXBean {
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong staleHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong revalidationCount = new AtomicLong();
+    private final AtomicLong notModifiedCount = new AtomicLong();
+
+    void hit() {
+        this.hitCount.incrementAndGet();
+    }
+
+    void staleHit() {
+        this.staleHitCount.incrementAndGet();
+    }
+
+    void miss() {
+        this.missCount.incrementAndGet();
+    }
+
+    void revalidation() {
+        this.revalidationCount.incrementAndGet();
+    }
+
+    void notModified() {
+        this.notModifiedCount.incrementAndGet();
+    }
+
+    @Override
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    @Override
+    public long getStaleHitCount() {
+        return this.staleHitCount.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    @Override
+    public long getRevalidationCount() {
+        return this.revalidationCount.get();
+    }
+
+    @Override
+    public long getNotModifiedCount() {
+        return this.notModifiedCount.get();
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.soffit.connector;
+
+/** JMX stats for the cache of soffit responses used by the {@link SoffitConnectorController} */
+public interface SoffitResponseCacheStatisticsMXBean {
+
+    /** @return Number of renders that used a cached response that had not expired */
+    long getHitCount();
+
+    /** @return Number of renders that used an expired response while it was revalidated */
+    long getStaleHitCount();
+
+    /** @return Number of renders that had to fetch the response from the soffit */
+    long getMissCount();
+
+    /** @return Number of conditional requests sent to revalidate an expired response */
+    long getRevalidationCount();
+
+    /** @return Number of revalidations answered with 304 Not Modified, without a body */
+    long getNotModifiedCount();
+}
@@ -0,0 +1,331 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.soffit.connector;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.portlet.PortletMode;
+import javax.portlet.WindowState;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import org.apache.http.HttpHeaders;
+import org.apereo.portal.soffit.connector.SoffitConnectorController.ResponseWrapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.mock.web.portlet.MockPortletPreferences;
+import org.springframework.mock.web.portlet.MockRenderRequest;
+import org.springframework.mock.web.portlet.MockRenderResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class SoffitConnectorControllerTest {
+
+    private static final String LAST_MODIFIED = "Sat, 17 Oct 2026 10:00:00 GMT";
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final List<Headers> conditionalRequests = new CopyOnWriteArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    //What the soffit answers, changed by the tests between renders
+    private volatile String body = "v1";
+    private volatile String cacheControl = "public, max-age=1";
+    private volatile String eTag = "\"v1\"";
+    private volatile String lastModified = LAST_MODIFIED;
+    private volatile boolean notModified = true;
+
+    private ExecutorService serverExecutor;
+    private HttpServer server;
+    private SoffitHttpClient client;
+    private CacheManager cacheManager;
+    private Cache responseCache;
+    private SoffitResponseCacheStatistics cacheStatistics;
+    private SoffitConnectorController controller;
+
+    @Before
+    public void setup() throws IOException {
+        serverExecutor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(
+                "/soffit",
+                new HttpHandler() {
+                    @Override
+                    public void handle(HttpExchange exchange) throws IOException {
+                        respond(exchange);
+                    }
+                });
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        client = new SoffitHttpClient();
+        client.init();
+
+        cacheManager =
+                new CacheManager(
+                        this.getClass().getResource("/soffitConnectorControllerTestEhcache.xml"));
+        responseCache =
+                cacheManager.getCache(
+                        "org.apereo.portlet.soffit.connector.SoffitConnectorController.RESPONSE_CACHE");
+        cacheStatistics = new SoffitResponseCacheStatistics();
+
+        final StaticApplicationContext applicationContext = new StaticApplicationContext();
+        applicationContext.refresh();
+
+        controller = new SoffitConnectorController();
+        controller.setSoffitHttpClient(client);
+        controller.setCacheStatistics(cacheStatistics);
+        controller.setApplicationContext(applicationContext);
+        controller.init();
+        ReflectionTestUtils.setField(controller, "responseCache", responseCache);
+        ReflectionTestUtils.setField(controller, "fetchTimeout", 5000L);
+        ReflectionTestUtils.setField(controller, "staleWhileRevalidate", 60);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        client.destroy();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        responseCache.removeAll(true);
+        cacheManager.shutdown();
+    }
+
+    @Test(timeout = 10000)
+    public void testStaleResponseServedWhileRevalidating() throws Exception {
+        assertEquals("v1", render());
+        final ResponseWrapper expired = awaitExpired();
+
+        //The soffit holds the conditional request until released
+        body = "v2";
+        notModified = false;
+        assertEquals("v1", render());
+        assertEquals(1, cacheStatistics.getStaleHitCount());
+        assertEquals(1, cacheStatistics.getRevalidationCount());
+        assertSame(expired, getCachedResponse());
+
+        release.countDown();
+        awaitRevalidated(expired);
+        assertEquals("v2", render());
+    }
+
+    @Test(timeout = 10000)
+    public void testConditionalRequestHeaders() throws Exception {
+        release.countDown();
+        render();
+        final ResponseWrapper expired = awaitExpired();
+
+        render();
+        awaitRevalidated(expired);
+
+        assertEquals(1, conditionalRequests.size());
+        final Headers headers = conditionalRequests.get(0);
+        assertEquals("\"v1\"", headers.getFirst(HttpHeaders.IF_NONE_MATCH));
+        assertEquals(LAST_MODIFIED, headers.getFirst(HttpHeaders.IF_MODIFIED_SINCE));
+    }
+
+    @Test(timeout = 10000)
+    public void testNotModifiedRefreshesResponse() throws Exception {
+        release.countDown();
+        render();
+        final ResponseWrapper expired = awaitExpired();
+
+        //The 304 carries new directives and a new ETag, but no Last-Modified date
+        cacheControl = "public, max-age=60";
+        eTag = "\"v1b\"";
+        lastModified = null;
+        render();
+        final ResponseWrapper refreshed = awaitRevalidated(expired);
+
+        assertEquals(1, cacheStatistics.getNotModifiedCount());
+        assertFalse(refreshed.isExpired(System.currentTimeMillis()));
+        assertArrayEquals(expired.getBytes(), refreshed.getBytes());
+        assertEquals("\"v1b\"", refreshed.getETag());
+        assertEquals(LAST_MODIFIED, refreshed.getLastModified());
+        assertEquals(120, getCachedElement().getTimeToLive());
+
+        //Served from the cache without another request
+        assertEquals("v1", render());
+        assertEquals(1, cacheStatistics.getHitCount());
+        assertEquals(2, requestCount.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testOkReplacesResponse() throws Exception {
+        release.countDown();
+        render();
+        final ResponseWrapper expired = awaitExpired();
+
+        body = "v2";
+        cacheControl = "public, max-age=60";
+        eTag = "\"v2\"";
+        notModified = false;
+        render();
+        final ResponseWrapper replaced = awaitRevalidated(expired);
+
+        assertEquals(0, cacheStatistics.getNotModifiedCount());
+        assertFalse(replaced.isExpired(System.currentTimeMillis()));
+        assertArrayEquals("v2".getBytes("UTF-8"), replaced.getBytes());
+        assertEquals("\"v2\"", replaced.getETag());
+
+        assertEquals("v2", render());
+        assertEquals(1, cacheStatistics.getHitCount());
+        assertEquals(2, requestCount.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testOneRevalidationPerKey() throws Exception {
+        render();
+        final ResponseWrapper expired = awaitExpired();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("v1", render());
+        }
+        assertEquals(3, cacheStatistics.getStaleHitCount());
+        assertEquals(1, cacheStatistics.getRevalidationCount());
+
+        release.countDown();
+        awaitRevalidated(expired);
+        assertEquals(1, conditionalRequests.size());
+        assertEquals(2, requestCount.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testStaleWhileRevalidate() throws Exception {
+        cacheControl = "public, max-age=1, stale-while-revalidate=5";
+        render();
+        assertEquals(6, getCachedElement().getTimeToLive());
+    }
+
+    @Test(timeout = 10000)
+    public void testStaleWhileRevalidateDefault() throws Exception {
+        render();
+        assertEquals(61, getCachedElement().getTimeToLive());
+    }
+
+    @Test(timeout = 10000)
+    public void testStaleWhileRevalidateInvalid() throws Exception {
+        cacheControl = "public, max-age=1, stale-while-revalidate=soon";
+        render();
+        assertEquals(61, getCachedElement().getTimeToLive());
+    }
+
+    @Test(timeout = 10000)
+    public void testStaleWhileRevalidateWithoutValidators() throws Exception {
+        //Nothing to revalidate with, so the response expires from the cache at its max-age
+        cacheControl = "public, max-age=1, stale-while-revalidate=5";
+        eTag = null;
+        lastModified = null;
+        render();
+        assertEquals(1, getCachedElement().getTimeToLive());
+    }
+
+    private String render() throws Exception {
+        final MockPortletPreferences preferences = new MockPortletPreferences();
+        preferences.setValue(
+                SoffitConnectorController.CONNECTOR_PREFERENCE_PREFIX + ".serviceUrl",
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/soffit");
+        final MockRenderRequest req = new MockRenderRequest(PortletMode.VIEW, WindowState.NORMAL);
+        req.setPreferences(preferences);
+        final MockRenderResponse res = new MockRenderResponse();
+        controller.invokeService(req, res);
+        return res.getContentAsString();
+    }
+
+    private Element getCachedElement() {
+        final List<?> keys = responseCache.getKeys();
+        return keys.isEmpty() ? null : responseCache.get(keys.get(0));
+    }
+
+    private ResponseWrapper getCachedResponse() {
+        final Element element = getCachedElement();
+        return element != null ? (ResponseWrapper) element.getObjectValue() : null;
+    }
+
+    private ResponseWrapper awaitExpired() throws InterruptedException {
+        final ResponseWrapper response = getCachedResponse();
+        while (!response.isExpired(System.currentTimeMillis())) {
+            Thread.sleep(50);
+        }
+        return response;
+    }
+
+    /*
+     * The expired response is replaced in the cache once its revalidation completes.
+     */
+    private ResponseWrapper awaitRevalidated(ResponseWrapper expired) throws InterruptedException {
+        ResponseWrapper response = getCachedResponse();
+        while (response == null || response == expired) {
+            Thread.sleep(10);
+            response = getCachedResponse();
+        }
+        return response;
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        final Headers requestHeaders = exchange.getRequestHeaders();
+        if (requestHeaders.containsKey(HttpHeaders.IF_NONE_MATCH)
+                || requestHeaders.containsKey(HttpHeaders.IF_MODIFIED_SINCE)) {
+            conditionalRequests.add(requestHeaders);
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (notModified) {
+                addCacheHeaders(exchange);
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+        }
+
+        addCacheHeaders(exchange);
+        final byte[] bytes = body.getBytes("UTF-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (final OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void addCacheHeaders(HttpExchange exchange) {
+        final Headers responseHeaders = exchange.getResponseHeaders();
+        responseHeaders.add(HttpHeaders.CACHE_CONTROL, cacheControl);
+        if (eTag != null) {
+            responseHeaders.add(HttpHeaders.ETAG, eTag);
+        }
+        if (lastModified != null) {
+            responseHeaders.add(HttpHeaders.LAST_MODIFIED, lastModified);
+        }
+    }
+}
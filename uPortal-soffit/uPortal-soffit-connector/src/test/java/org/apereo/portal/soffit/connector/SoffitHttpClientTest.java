@@ -0,0 +1,171 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.soffit.connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SoffitHttpClientTest {
+
+    private final List<Integer> clientPorts = new CopyOnWriteArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private ExecutorService serverExecutor;
+    private HttpServer server;
+    private SoffitHttpClient client;
+
+    @Before
+    public void setup() throws IOException {
+        serverExecutor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(
+                "/fast",
+                new HttpHandler() {
+                    @Override
+                    public void handle(HttpExchange exchange) throws IOException {
+                        respond(exchange);
+                    }
+                });
+        server.createContext(
+                "/slow",
+                new HttpHandler() {
+                    @Override
+                    public void handle(HttpExchange exchange) throws IOException {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        respond(exchange);
+                    }
+                });
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        client = new SoffitHttpClient();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        client.destroy();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test(timeout = 10000)
+    public void testFetchTimeout() throws Exception {
+        client.init();
+
+        final HttpGet request = new HttpGet(getUrl("/slow"));
+        final Future<HttpResponse> future = client.fetch(request);
+        try {
+            //Well before the socket timeout of the client
+            future.get(100, TimeUnit.MILLISECONDS);
+            fail("Expected TimeoutException for a slow soffit");
+        } catch (TimeoutException e) {
+            // Expected;  fall through...
+        }
+        request.abort();
+        future.cancel(true);
+    }
+
+    @Test(timeout = 10000)
+    public void testFetchRejectedWhenBusy() throws Exception {
+        client.setMaxConnectionsTotal(1);
+        client.setMaxConnectionsPerRoute(1);
+        client.setFetchQueueSize(1);
+        client.init();
+
+        //One fetch runs, one waits in the queue
+        final Future<HttpResponse> running = client.fetch(new HttpGet(getUrl("/slow")));
+        final Future<HttpResponse> queued = client.fetch(new HttpGet(getUrl("/slow")));
+
+        try {
+            client.fetch(new HttpGet(getUrl("/fast")));
+            fail("Expected RejectedExecutionException with a full fetch queue");
+        } catch (RejectedExecutionException e) {
+            // Expected;  fall through...
+        }
+
+        @SuppressWarnings("unchecked")
+        final FutureCallback<HttpResponse> callback = mock(FutureCallback.class);
+        client.fetch(new HttpGet(getUrl("/fast")), callback);
+        verify(callback).failed(any(RejectedExecutionException.class));
+        assertEquals(2, client.getRejectedFetchCount());
+        assertEquals(1, client.getQueuedFetches());
+
+        release.countDown();
+        assertEquals(200, running.get().getStatusLine().getStatusCode());
+        assertEquals(200, queued.get().getStatusLine().getStatusCode());
+    }
+
+    @Test(timeout = 10000)
+    public void testConnectionReused() throws Exception {
+        client.init();
+
+        for (int i = 0; i < 3; i++) {
+            final HttpResponse response = client.fetch(new HttpGet(getUrl("/fast"))).get();
+            assertEquals("fast", EntityUtils.toString(response.getEntity()));
+        }
+
+        //Every request was sent on the same kept-alive connection
+        assertEquals(3, clientPorts.size());
+        assertEquals(clientPorts.get(0), clientPorts.get(1));
+        assertEquals(clientPorts.get(0), clientPorts.get(2));
+        assertEquals(1, client.getAvailableConnections());
+        assertEquals(0, client.getLeasedConnections());
+        assertEquals(3, client.getRequestCount());
+    }
+
+    private String getUrl(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        final byte[] body = "fast".getBytes("UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (final OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -22,6 +22,7 @@ import javax.servlet.http.HttpSessionBindingListener;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apereo.portal.url.IPortalRequestUtils;
+import org.apereo.portal.utils.web.PortalWebUtils;
 import org.springframework.beans.factory.ObjectFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.Scope;
@@ -64,17 +65,8 @@ public class PortalSessionScope implements Scope {
     @Override
     public Object get(String name, ObjectFactory<?> objectFactory) {
         final HttpSession session = this.getPortalSesion(true);
-
-        final Object sessionMutex = WebUtils.getSessionMutex(session);
-        synchronized (sessionMutex) {
-            Object scopedObject = session.getAttribute(name);
-            if (scopedObject == null) {
-                scopedObject = objectFactory.getObject();
-                session.setAttribute(name, scopedObject);
-            }
-
-            return scopedObject;
-        }
+        return PortalWebUtils.getOrCreateSessionAttribute(
+                session, name, objectFactory::getObject);
     }
 
     /* (non-Javadoc)
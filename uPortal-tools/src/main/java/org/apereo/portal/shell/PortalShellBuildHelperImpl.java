@@ -27,6 +27,7 @@ import org.apache.commons.lang.StringUtils;
 import org.apereo.portal.IUserIdentityStore;
 import org.apereo.portal.io.xml.IPortalData;
 import org.apereo.portal.io.xml.IPortalDataHandlerService;
+import org.apereo.portal.io.xml.IPortalDataType;
 import org.apereo.portal.io.xml.PortalDataHandlerServiceUtils;
 import org.apereo.portal.jpa.VersionedDataUpdater;
 import org.apereo.portal.tools.DbTest;
@@ -239,7 +240,9 @@ public class PortalShellBuildHelperImpl implements PortalShellBuildHelper {
         PortalShell.LOGGER.info("");
 
         final File dataDirFile = new File(dataDir);
-        if (StringUtils.isNotBlank(type) && StringUtils.isNotBlank(sysid)) {
+        if (isArchive(dataDir)) {
+            dataExportArchive(target, dataDirFile, type, sysid, logDir);
+        } else if (StringUtils.isNotBlank(type) && StringUtils.isNotBlank(sysid)) {
             try {
                 for (final String id : COMMA_DELIM.split(sysid)) {
                     PortalShell.LOGGER.info(
@@ -284,6 +287,48 @@ public class PortalShellBuildHelperImpl implements PortalShellBuildHelper {
         }
     }
 
+    /** @return true if the export target is an archive file rather than a directory */
+    private static boolean isArchive(String dataDir) {
+        final String name = dataDir.toLowerCase();
+        return name.endsWith(".zip") || name.endsWith(".tar.gz") || name.endsWith(".tgz");
+    }
+
+    private void dataExportArchive(
+            String target, File archive, String type, String sysid, String logDir) {
+        if (StringUtils.isNotBlank(sysid)) {
+            throw new IllegalArgumentException(
+                    target
+                            + " of "
+                            + sysid
+                            + " can only write to a directory, not to the archive "
+                            + archive);
+        }
+
+        final Set<String> types;
+        if (StringUtils.isNotBlank(type)) {
+            types = ImmutableSet.copyOf(COMMA_DELIM.split(type));
+            PortalShell.LOGGER.info("Exporting All Data of types " + types + " to: " + archive);
+        } else {
+            final ImmutableSet.Builder<String> typesBuilder = ImmutableSet.builder();
+            for (final IPortalDataType dataType :
+                    portalDataHandlerService.getExportPortalDataTypes()) {
+                typesBuilder.add(dataType.getTypeId());
+            }
+            types = typesBuilder.build();
+            PortalShell.LOGGER.info("Exporting All Data to: " + archive);
+        }
+
+        try {
+            portalDataHandlerService.exportDataArchive(
+                    types,
+                    archive,
+                    new IPortalDataHandlerService.BatchExportOptions()
+                            .setLogDirectoryParent(logDir));
+        } catch (Exception e) {
+            throw new RuntimeException(target + " to " + archive + " failed", e);
+        }
+    }
+
     @Override
     public void dataImport(
             String target, String dataDir, String pattern, String file, String logDir) {
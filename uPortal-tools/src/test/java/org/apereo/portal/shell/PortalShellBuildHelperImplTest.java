@@ -0,0 +1,118 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.shell;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableSet;
+import java.io.File;
+import java.util.Arrays;
+import org.apereo.portal.io.xml.IPortalDataHandlerService;
+import org.apereo.portal.io.xml.IPortalDataHandlerService.BatchExportOptions;
+import org.apereo.portal.io.xml.IPortalDataType;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class PortalShellBuildHelperImplTest {
+    private IPortalDataHandlerService portalDataHandlerService;
+    private PortalShellBuildHelperImpl portalShellBuildHelper;
+
+    @Before
+    public void setup() {
+        portalDataHandlerService = mock(IPortalDataHandlerService.class);
+        portalShellBuildHelper = new PortalShellBuildHelperImpl();
+        portalShellBuildHelper.setPortalDataHandlerService(portalDataHandlerService);
+    }
+
+    @Test
+    public void testExportTypesToArchive() {
+        portalShellBuildHelper.dataExport(
+                "dataExport", "export/data.ZIP", "user,group", null, "logs");
+
+        final ArgumentCaptor<BatchExportOptions> options =
+                ArgumentCaptor.forClass(BatchExportOptions.class);
+        verify(portalDataHandlerService)
+                .exportDataArchive(
+                        eq(ImmutableSet.of("user", "group")),
+                        eq(new File("export/data.ZIP")),
+                        options.capture());
+        assertEquals(new File("logs"), options.getValue().getLogDirectoryParent());
+        verify(portalDataHandlerService, never())
+                .exportAllDataOfType(
+                        anySetOf(String.class), any(File.class), any(BatchExportOptions.class));
+    }
+
+    @Test
+    public void testExportAllToArchive() {
+        final IPortalDataType userType = mock(IPortalDataType.class);
+        when(userType.getTypeId()).thenReturn("user");
+        final IPortalDataType layoutType = mock(IPortalDataType.class);
+        when(layoutType.getTypeId()).thenReturn("layout");
+        when(portalDataHandlerService.getExportPortalDataTypes())
+                .thenReturn(Arrays.asList(userType, layoutType));
+
+        portalShellBuildHelper.dataExport("dataExport", "data.tar.gz", null, null, "logs");
+        portalShellBuildHelper.dataExport("dataExport", "data.tgz", "", null, "logs");
+
+        verify(portalDataHandlerService)
+                .exportDataArchive(
+                        eq(ImmutableSet.of("user", "layout")),
+                        eq(new File("data.tar.gz")),
+                        any(BatchExportOptions.class));
+        verify(portalDataHandlerService)
+                .exportDataArchive(
+                        eq(ImmutableSet.of("user", "layout")),
+                        eq(new File("data.tgz")),
+                        any(BatchExportOptions.class));
+        verify(portalDataHandlerService, never())
+                .exportAllData(any(File.class), any(BatchExportOptions.class));
+    }
+
+    @Test
+    public void testExportToDirectory() {
+        portalShellBuildHelper.dataExport("dataExport", "export", "user", null, "logs");
+
+        verify(portalDataHandlerService)
+                .exportAllDataOfType(
+                        eq(ImmutableSet.of("user")),
+                        eq(new File("export")),
+                        any(BatchExportOptions.class));
+        verify(portalDataHandlerService, never())
+                .exportDataArchive(
+                        anySetOf(String.class), any(File.class), any(BatchExportOptions.class));
+    }
+
+    @Test
+    public void testExportIdsToArchive() {
+        try {
+            portalShellBuildHelper.dataExport("dataExport", "data.zip", "user", "admin", null);
+            fail("Expected IllegalArgumentException for exporting ids to an archive");
+        } catch (IllegalArgumentException e) {
+            // Expected;  fall through...
+        }
+        verify(portalDataHandlerService, never())
+                .exportDataArchive(
+                        anySetOf(String.class), any(File.class), any(BatchExportOptions.class));
+    }
+}
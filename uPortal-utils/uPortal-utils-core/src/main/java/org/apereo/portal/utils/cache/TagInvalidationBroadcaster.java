@@ -0,0 +1,358 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.utils.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jgroups.JChannel;
+import org.jgroups.Message;
+import org.jgroups.ReceiverAdapter;
+import org.jgroups.View;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Sends tags purged by {@link TagTrackingCacheEventListener} to the other portal servers, which
+ * purge their local cache entries for the tags. Tags are queued and sent in batches by {@link
+ * #flush()}, a tag purged several times between flushes is sent once.
+ *
+ * <p>The broadcaster uses its own JGroups channel created from the same stack configuration as the
+ * cache replication, connected to a separate cluster name. It only connects if enabled.
+ *
+ * @since 5.0
+ */
+@ManagedResource("uPortal:section=Cache,name=TagInvalidationBroadcaster")
+@Service("tagInvalidationBroadcaster")
+@DependsOn({"systemPropertySetter", "authDao"})
+public class TagInvalidationBroadcaster extends ReceiverAdapter
+        implements TagInvalidationBroadcasterMXBean, InitializingBean, DisposableBean {
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    // tag -> time the tag was queued
+    private final ConcurrentMap<CacheEntryTag, Long> pendingTags =
+            new ConcurrentHashMap<CacheEntryTag, Long>();
+
+    private final AtomicLong queuedTagCount = new AtomicLong();
+    private final AtomicLong coalescedTagCount = new AtomicLong();
+    private final AtomicLong sentMessageCount = new AtomicLong();
+    private final AtomicLong sentTagCount = new AtomicLong();
+    private final AtomicLong failedMessageCount = new AtomicLong();
+    private final AtomicLong totalQueueDelay = new AtomicLong();
+    private final AtomicLong maxQueueDelay = new AtomicLong();
+    private final AtomicLong receivedMessageCount = new AtomicLong();
+    private final AtomicLong receivedTagCount = new AtomicLong();
+    private final AtomicLong purgedEntryCount = new AtomicLong();
+    private final AtomicLong totalDeliveryLatency = new AtomicLong();
+    private final AtomicLong maxDeliveryLatency = new AtomicLong();
+
+    private volatile TagTrackingCacheEventListener tagTrackingCacheEventListener;
+    private volatile JChannel channel;
+    private volatile int memberCount;
+
+    private boolean enabled = false;
+    private String jgroupsConfig = "properties/jgroups.xml";
+    private String clusterName = "uPortal-TagInvalidation";
+    private int maxBatchSize = 500;
+
+    /** If tags are sent to and received from the other portal servers, defaults to false */
+    @Value("${org.apereo.portal.utils.cache.TagInvalidationBroadcaster.enabled:false}")
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /** JGroups stack configuration, defaults to the configuration used for cache replication */
+    @Value(
+            "${org.apereo.portal.utils.cache.TagInvalidationBroadcaster.jgroupsConfig:properties/jgroups.xml}")
+    public void setJgroupsConfig(String jgroupsConfig) {
+        this.jgroupsConfig = jgroupsConfig;
+    }
+
+    /** Name of the cluster the channel connects to, must be the same on every portal server */
+    @Value(
+            "${org.apereo.portal.utils.cache.TagInvalidationBroadcaster.clusterName:uPortal-TagInvalidation}")
+    public void setClusterName(String clusterName) {
+        this.clusterName = clusterName;
+    }
+
+    /** Most tags sent in one message */
+    @Value("${org.apereo.portal.utils.cache.TagInvalidationBroadcaster.maxBatchSize:500}")
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /** Called by the listener to register itself for purging tags received from the cluster */
+    void setTagTrackingCacheEventListener(
+            TagTrackingCacheEventListener tagTrackingCacheEventListener) {
+        this.tagTrackingCacheEventListener = tagTrackingCacheEventListener;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        if (!this.enabled) {
+            return;
+        }
+
+        final JChannel channel = new JChannel(this.jgroupsConfig);
+        channel.setDiscardOwnMessages(true);
+        channel.setReceiver(this);
+        try {
+            channel.connect(this.clusterName);
+        } catch (Exception e) {
+            channel.close();
+            this.logger.error(
+                    "Failed to connect to cluster {}, purged tags will not be sent",
+                    this.clusterName,
+                    e);
+            return;
+        }
+
+        this.channel = channel;
+        this.logger.info("Connected to cluster {} as {}", this.clusterName, channel.getAddress());
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        final JChannel channel = this.channel;
+        if (channel != null) {
+            this.channel = null;
+            channel.close();
+        }
+    }
+
+    /** Queue the tag to be sent with the next flush, does nothing if not connected */
+    public void invalidate(CacheEntryTag tag) {
+        if (this.channel == null) {
+            return;
+        }
+
+        this.queuedTagCount.incrementAndGet();
+        if (this.pendingTags.putIfAbsent(tag, System.currentTimeMillis()) != null) {
+            this.coalescedTagCount.incrementAndGet();
+        }
+    }
+
+    /** Send the queued tags, called periodically by the scheduler */
+    public void flush() {
+        final JChannel channel = this.channel;
+        if (channel == null || this.pendingTags.isEmpty()) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        final List<CacheEntryTag> batch =
+                new ArrayList<CacheEntryTag>(Math.min(this.pendingTags.size(), this.maxBatchSize));
+        for (final Iterator<Map.Entry<CacheEntryTag, Long>> itr =
+                        this.pendingTags.entrySet().iterator();
+                itr.hasNext(); ) {
+            final Map.Entry<CacheEntryTag, Long> entry = itr.next();
+            itr.remove();
+
+            final long queueDelay = Math.max(0, now - entry.getValue());
+            this.totalQueueDelay.addAndGet(queueDelay);
+            updateMax(this.maxQueueDelay, queueDelay);
+
+            batch.add(entry.getKey());
+            if (batch.size() >= this.maxBatchSize) {
+                this.send(channel, batch);
+                batch.clear();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            this.send(channel, batch);
+        }
+    }
+
+    private void send(JChannel channel, List<CacheEntryTag> tags) {
+        try {
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            final ObjectOutputStream out = new ObjectOutputStream(buffer);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(tags.size());
+            for (final CacheEntryTag tag : tags) {
+                out.writeObject(tag);
+            }
+            out.close();
+
+            channel.send(new Message(null, buffer.toByteArray()));
+        } catch (Exception e) {
+            this.failedMessageCount.incrementAndGet();
+            this.logger.warn(
+                    "Failed to send {} purged tags to cluster {}",
+                    tags.size(),
+                    this.clusterName,
+                    e);
+            return;
+        }
+
+        this.sentMessageCount.incrementAndGet();
+        this.sentTagCount.addAndGet(tags.size());
+        this.logger.debug("Sent {} purged tags to cluster {}", tags.size(), this.clusterName);
+    }
+
+    @Override
+    public void receive(Message msg) {
+        final long receivedTime = System.currentTimeMillis();
+        final List<CacheEntryTag> tags;
+        final long sentTime;
+        try {
+            final ObjectInputStream in =
+                    new ObjectInputStream(
+                            new ByteArrayInputStream(
+                                    msg.getRawBuffer(), msg.getOffset(), msg.getLength()));
+            sentTime = in.readLong();
+            final int tagCount = in.readInt();
+            tags = new ArrayList<CacheEntryTag>(tagCount);
+            for (int i = 0; i < tagCount; i++) {
+                tags.add((CacheEntryTag) in.readObject());
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            this.logger.warn("Failed to read purged tags from {}", msg.getSrc(), e);
+            return;
+        }
+
+        final long latency = Math.max(0, receivedTime - sentTime);
+        this.receivedMessageCount.incrementAndGet();
+        this.receivedTagCount.addAndGet(tags.size());
+        this.totalDeliveryLatency.addAndGet(latency);
+        updateMax(this.maxDeliveryLatency, latency);
+
+        final TagTrackingCacheEventListener listener = this.tagTrackingCacheEventListener;
+        if (listener == null) {
+            return;
+        }
+
+        int purgeCount = 0;
+        for (final CacheEntryTag tag : tags) {
+            purgeCount += listener.purgeLocalCacheEntries(tag);
+        }
+        this.purgedEntryCount.addAndGet(purgeCount);
+        this.logger.debug(
+                "Purged {} cache entries for {} tags from {}",
+                purgeCount,
+                tags.size(),
+                msg.getSrc());
+    }
+
+    @Override
+    public void viewAccepted(View view) {
+        this.memberCount = view.size();
+        this.logger.info("Cluster {} changed to {}", this.clusterName, view);
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    private static long mean(AtomicLong total, AtomicLong count) {
+        final long n = count.get();
+        return n == 0 ? 0 : total.get() / n;
+    }
+
+    @Override
+    public boolean isConnected() {
+        final JChannel channel = this.channel;
+        return channel != null && channel.isConnected();
+    }
+
+    @Override
+    public int getMemberCount() {
+        return this.channel == null ? 0 : this.memberCount;
+    }
+
+    @Override
+    public int getPendingTagCount() {
+        return this.pendingTags.size();
+    }
+
+    @Override
+    public long getQueuedTagCount() {
+        return this.queuedTagCount.get();
+    }
+
+    @Override
+    public long getCoalescedTagCount() {
+        return this.coalescedTagCount.get();
+    }
+
+    @Override
+    public long getSentMessageCount() {
+        return this.sentMessageCount.get();
+    }
+
+    @Override
+    public long getSentTagCount() {
+        return this.sentTagCount.get();
+    }
+
+    @Override
+    public long getFailedMessageCount() {
+        return this.failedMessageCount.get();
+    }
+
+    @Override
+    public long getMeanQueueDelay() {
+        return mean(this.totalQueueDelay, this.sentTagCount);
+    }
+
+    @Override
+    public long getMaxQueueDelay() {
+        return this.maxQueueDelay.get();
+    }
+
+    @Override
+    public long getReceivedMessageCount() {
+        return this.receivedMessageCount.get();
+    }
+
+    @Override
+    public long getReceivedTagCount() {
+        return this.receivedTagCount.get();
+    }
+
+    @Override
+    public long getPurgedEntryCount() {
+        return this.purgedEntryCount.get();
+    }
+
+    @Override
+    public long getMeanDeliveryLatency() {
+        return mean(this.totalDeliveryLatency, this.receivedMessageCount);
+    }
+
+    @Override
+    public long getMaxDeliveryLatency() {
+        return this.maxDeliveryLatency.get();
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.utils.cache;
+
+/**
+ * Statistics of the tag invalidations sent to and received from the other portal servers
+ *
+ * @since 5.0
+ */
+public interface TagInvalidationBroadcasterMXBean {
+
+    /** @return If the broadcaster is connected to the cluster */
+    boolean isConnected();
+
+    /** @return Number of cluster members, including this server */
+    int getMemberCount();
+
+    /** @return Number of tags waiting to be sent */
+    int getPendingTagCount();
+
+    /** @return Number of tags queued to be sent */
+    long getQueuedTagCount();
+
+    /** @return Number of queued tags that were already waiting to be sent */
+    long getCoalescedTagCount();
+
+    /** @return Number of invalidation messages sent */
+    long getSentMessageCount();
+
+    /** @return Number of tags sent */
+    long getSentTagCount();
+
+    /** @return Number of invalidation messages that could not be sent */
+    long getFailedMessageCount();
+
+    /** @return Mean time in milliseconds a tag waited to be sent */
+    long getMeanQueueDelay();
+
+    /** @return Longest time in milliseconds a tag waited to be sent */
+    long getMaxQueueDelay();
+
+    /** @return Number of invalidation messages received */
+    long getReceivedMessageCount();
+
+    /** @return Number of tags received */
+    long getReceivedTagCount();
+
+    /** @return Number of local cache entries removed for received tags */
+    long getPurgedEntryCount();
+
+    /**
+     * @return Mean time in milliseconds between sending and receiving a message, includes any
+     *     clock difference between the servers
+     */
+    long getMeanDeliveryLatency();
+
+    /**
+     * @return Longest time in milliseconds between sending and receiving a message, includes any
+     *     clock difference between the servers
+     */
+    long getMaxDeliveryLatency();
+}
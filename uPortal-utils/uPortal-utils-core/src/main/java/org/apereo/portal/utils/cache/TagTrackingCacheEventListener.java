@@ -17,25 +17,33 @@ package org.apereo.portal.utils.cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
-import com.google.common.collect.MapMaker;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.event.CacheEventListenerAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 
 /**
  * Tracks entries added to {@link Ehcache} instances that have keys or values which implement {@link
- * TaggedCacheEntry}. Allows for external removal of elements that match a specified tag
+ * TaggedCacheEntry}. Allows for external removal of elements that match a specified tag, if a
+ * {@link TagInvalidationBroadcaster} is available purged tags are also sent to the other portal
+ * servers.
  */
+@ManagedResource("uPortal:section=Cache,name=TagTrackingCacheEventListener")
 @Service("tagTrackingCacheEventListener")
 public class TagTrackingCacheEventListener extends CacheEventListenerAdapter
-        implements TaggedCacheEntryPurger {
+        implements TaggedCacheEntryPurger, TagTrackingCacheEventListenerMXBean {
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
     // tag type -> set of caches that contain keys tagged with that type
@@ -51,35 +59,46 @@ public class TagTrackingCacheEventListener extends CacheEventListenerAdapter
                                 }
                             });
 
-    // Cache Name -> Key Tag -> Set of Keys
-    private final LoadingCache<String, LoadingCache<CacheEntryTag, Set<Object>>> taggedCacheKeys =
+    // Cache Name -> index of Key Tag -> Keys
+    private final LoadingCache<String, TaggedKeyIndex> taggedCacheKeys =
             CacheBuilder.newBuilder()
                     .build(
-                            new CacheLoader<String, LoadingCache<CacheEntryTag, Set<Object>>>() {
+                            new CacheLoader<String, TaggedKeyIndex>() {
                                 @Override
-                                public LoadingCache<CacheEntryTag, Set<Object>> load(String key)
-                                        throws Exception {
-                                    // Key Tag -> Set of Tagged Cache Keys
-                                    return CacheBuilder.newBuilder()
-                                            .build(
-                                                    new CacheLoader<CacheEntryTag, Set<Object>>() {
-                                                        @Override
-                                                        public Set<Object> load(CacheEntryTag key)
-                                                                throws Exception {
-                                                            // Set of Tagged Cache Keys
-                                                            return Collections.newSetFromMap(
-                                                                    new MapMaker()
-                                                                            .weakKeys()
-                                                                            .<Object, Boolean>
-                                                                                    makeMap());
-                                                        }
-                                                    });
+                                public TaggedKeyIndex load(String key) throws Exception {
+                                    return new TaggedKeyIndex();
                                 }
                             });
 
-    /** Remove all cache entries with keys that have the specified tag */
+    private final AtomicLong purgedEntryCount = new AtomicLong();
+
+    private TagInvalidationBroadcaster tagInvalidationBroadcaster;
+
+    @Autowired(required = false)
+    public void setTagInvalidationBroadcaster(
+            TagInvalidationBroadcaster tagInvalidationBroadcaster) {
+        this.tagInvalidationBroadcaster = tagInvalidationBroadcaster;
+        tagInvalidationBroadcaster.setTagTrackingCacheEventListener(this);
+    }
+
+    /**
+     * Remove all cache entries with keys that have the specified tag, the tag is also queued to be
+     * purged on the other portal servers
+     */
     @Override
     public int purgeCacheEntries(CacheEntryTag tag) {
+        final int purgeCount = this.purgeLocalCacheEntries(tag);
+
+        final TagInvalidationBroadcaster broadcaster = this.tagInvalidationBroadcaster;
+        if (broadcaster != null) {
+            broadcaster.invalidate(tag);
+        }
+
+        return purgeCount;
+    }
+
+    /** Remove all cache entries with keys that have the specified tag from the local caches */
+    int purgeLocalCacheEntries(CacheEntryTag tag) {
         final String tagType = tag.getTagType();
         final Set<Ehcache> caches = taggedCaches.getIfPresent(tagType);
 
@@ -95,13 +114,12 @@ public class TagTrackingCacheEventListener extends CacheEventListenerAdapter
             final String cacheName = cache.getName();
 
             //See if there are any tagged cache keys for the cache
-            final LoadingCache<CacheEntryTag, Set<Object>> cacheKeys =
-                    taggedCacheKeys.getIfPresent(cacheName);
+            final TaggedKeyIndex cacheKeys = taggedCacheKeys.getIfPresent(cacheName);
             if (cacheKeys != null) {
 
-                //Remove all cache keys from the cache
-                final Set<Object> taggedKeys = cacheKeys.asMap().remove(tag);
-                if (taggedKeys != null) {
+                //Remove the keys from the index, the cache is updated outside of the index lock
+                final List<Object> taggedKeys = cacheKeys.removeTag(tag);
+                if (!taggedKeys.isEmpty()) {
                     final int keyCount = taggedKeys.size();
                     purgeCount += keyCount;
                     logger.debug("Removing {} keys from {} for tag {}", keyCount, cacheName, tag);
@@ -111,9 +129,42 @@ public class TagTrackingCacheEventListener extends CacheEventListenerAdapter
             }
         }
 
+        this.purgedEntryCount.addAndGet(purgeCount);
         return purgeCount;
     }
 
+    @Override
+    public Map<String, Integer> getTaggedKeyCounts() {
+        final Map<String, Integer> counts = new TreeMap<String, Integer>();
+        for (final Map.Entry<String, TaggedKeyIndex> entry : taggedCacheKeys.asMap().entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().getKeyCount());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Integer> getTagCounts() {
+        final Map<String, Integer> counts = new TreeMap<String, Integer>();
+        for (final Map.Entry<String, TaggedKeyIndex> entry : taggedCacheKeys.asMap().entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().getTagCount());
+        }
+        return counts;
+    }
+
+    @Override
+    public long getEstimatedIndexSize() {
+        long size = 0;
+        for (final TaggedKeyIndex cacheKeys : taggedCacheKeys.asMap().values()) {
+            size += cacheKeys.estimateSize();
+        }
+        return size;
+    }
+
+    @Override
+    public long getPurgedEntryCount() {
+        return this.purgedEntryCount.get();
+    }
+
     /** Get the tags associated with the element */
     protected Set<CacheEntryTag> getTags(Element element) {
         final Object key = element.getObjectKey();
@@ -137,51 +188,34 @@ public class TagTrackingCacheEventListener extends CacheEventListenerAdapter
         if (tags != null && !tags.isEmpty()) {
             final String cacheName = cache.getName();
             final Object key = element.getObjectKey();
-            final LoadingCache<CacheEntryTag, Set<Object>> cacheKeys =
-                    taggedCacheKeys.getUnchecked(cacheName);
+            final TaggedKeyIndex cacheKeys = taggedCacheKeys.getUnchecked(cacheName);
 
             logger.debug("Tracking {} tags in cache {} for key {}", tags.size(), cacheName, key);
 
-            //Add all the tags to the tracking map
+            //Record that each tag type is stored in this cache
             for (final CacheEntryTag tag : tags) {
-                //Record that this tag type is stored in this cache
                 final String tagType = tag.getTagType();
                 final Set<Ehcache> caches = taggedCaches.getUnchecked(tagType);
                 caches.add(cache);
-
-                //Record the tag->key association
-                final Set<Object> taggedKeys = cacheKeys.getUnchecked(tag);
-                taggedKeys.add(key);
             }
+
+            //Record the tag->key associations
+            cacheKeys.put(key, tags);
         }
     }
 
-    /** If the element has a TaggedCacheKey remove the tag associations */
+    /** Remove the tag associations recorded for the key of the element */
     protected void removeElement(Ehcache cache, Element element) {
-        final Set<CacheEntryTag> tags = this.getTags(element);
-
-        //Check if the key is tagged
-        if (tags != null && !tags.isEmpty()) {
-            final String cacheName = cache.getName();
-            final LoadingCache<CacheEntryTag, Set<Object>> cacheKeys =
-                    taggedCacheKeys.getIfPresent(cacheName);
-
-            //If there are tracked tagged keys remove matching tags
-            if (cacheKeys != null) {
-                final Object key = element.getObjectKey();
+        final String cacheName = cache.getName();
+        final TaggedKeyIndex cacheKeys = taggedCacheKeys.getIfPresent(cacheName);
 
-                logger.debug(
-                        "Tracking removing key cache {} with tag {} : {}", cacheName, tags, key);
+        //If there are tracked tagged keys remove the key
+        if (cacheKeys != null) {
+            final Object key = element.getObjectKey();
 
-                for (final CacheEntryTag tag : tags) {
-                    final Set<Object> taggedKeys = cacheKeys.getIfPresent(tag);
+            logger.debug("Tracking removing key cache {} : {}", cacheName, key);
 
-                    //Remove the tagged key
-                    if (taggedKeys != null) {
-                        taggedKeys.remove(key);
-                    }
-                }
-            }
+            cacheKeys.remove(key);
         }
     }
 
@@ -190,6 +224,13 @@ public class TagTrackingCacheEventListener extends CacheEventListenerAdapter
         putElement(cache, element);
     }
 
+    @Override
+    public void notifyElementUpdated(Ehcache cache, Element element) throws CacheException {
+        //The new value may have different tags, putElement replaces the recorded tags
+        removeElement(cache, element);
+        putElement(cache, element);
+    }
+
     @Override
     public void notifyElementRemoved(Ehcache cache, Element element) throws CacheException {
         removeElement(cache, element);
@@ -208,11 +249,10 @@ public class TagTrackingCacheEventListener extends CacheEventListenerAdapter
     @Override
     public void notifyRemoveAll(Ehcache cache) {
         final String cacheName = cache.getName();
-        final LoadingCache<CacheEntryTag, Set<Object>> cacheKeys =
-                taggedCacheKeys.getIfPresent(cacheName);
+        final TaggedKeyIndex cacheKeys = taggedCacheKeys.getIfPresent(cacheName);
         if (cacheKeys != null) {
-            logger.debug("Tracking remove all tagged keys for cache {}", new Object[] {cacheName});
-            cacheKeys.invalidateAll();
+            logger.debug("Tracking remove all tagged keys for cache {}", cacheName);
+            cacheKeys.clear();
         }
     }
 }
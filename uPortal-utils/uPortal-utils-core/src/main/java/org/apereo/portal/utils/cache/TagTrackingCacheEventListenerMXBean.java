@@ -0,0 +1,37 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.utils.cache;
+
+import java.util.Map;
+
+/**
+ * Size of the tag index kept by {@link TagTrackingCacheEventListener}
+ *
+ * @since 5.0
+ */
+public interface TagTrackingCacheEventListenerMXBean {
+
+    /** @return Number of tracked keys per cache name */
+    Map<String, Integer> getTaggedKeyCounts();
+
+    /** @return Number of tracked tags per cache name */
+    Map<String, Integer> getTagCounts();
+
+    /** @return Estimated heap size in bytes of the index, not including the keys and tags */
+    long getEstimatedIndexSize();
+
+    /** @return Number of cache entries removed by tag */
+    long getPurgedEntryCount();
+}
@@ -0,0 +1,284 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.utils.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tag to key index of a single cache. Each tracked key is given an int id, tags reference their
+ * keys through sorted int arrays instead of a Set of keys per tag. Ids are reused after their key
+ * is removed. The tags of each key are recorded so removing a key always cleans up the same tags
+ * that were recorded for it.
+ *
+ * <p>The index is split into stripes by key hash, each with its own ids and lock, so puts and
+ * removes of different keys rarely contend. Removing a tag visits every stripe in turn and is not
+ * atomic across stripes.
+ */
+final class TaggedKeyIndex {
+    //Approximate heap sizes with compressed oops, used by estimateSize()
+    private static final int OBJECT_HEADER_BYTES = 16;
+    private static final int MAP_ENTRY_BYTES = 32;
+    private static final int INTEGER_BYTES = 16;
+    private static final int KEY_ID_SET_BYTES = 24;
+
+    private static final int DEFAULT_STRIPES = 16;
+
+    private final Stripe[] stripes;
+
+    TaggedKeyIndex() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /** @param stripes Number of stripes, rounded up to a power of two */
+    TaggedKeyIndex(int stripes) {
+        int count = 1;
+        while (count < stripes) {
+            count <<= 1;
+        }
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    /** Record the tags of the key, replaces the tags previously recorded for the key */
+    void put(Object key, Set<CacheEntryTag> tags) {
+        this.getStripe(key).put(key, tags);
+    }
+
+    /** Remove the key and its tag associations */
+    void remove(Object key) {
+        this.getStripe(key).remove(key);
+    }
+
+    /** Remove the tag and every key associated with it, the removed keys are returned */
+    List<Object> removeTag(CacheEntryTag tag) {
+        List<Object> removedKeys = Collections.emptyList();
+        for (final Stripe stripe : this.stripes) {
+            final List<Object> stripeKeys = stripe.removeTag(tag);
+            if (stripeKeys.isEmpty()) {
+                continue;
+            }
+            if (removedKeys.isEmpty()) {
+                removedKeys = stripeKeys;
+            } else {
+                removedKeys.addAll(stripeKeys);
+            }
+        }
+        return removedKeys;
+    }
+
+    void clear() {
+        for (final Stripe stripe : this.stripes) {
+            stripe.clear();
+        }
+    }
+
+    int getKeyCount() {
+        int count = 0;
+        for (final Stripe stripe : this.stripes) {
+            count += stripe.getKeyCount();
+        }
+        return count;
+    }
+
+    int getTagCount() {
+        //A tag is indexed by every stripe holding one of its keys
+        final Set<CacheEntryTag> tags = new HashSet<CacheEntryTag>();
+        for (final Stripe stripe : this.stripes) {
+            stripe.addTags(tags);
+        }
+        return tags.size();
+    }
+
+    /** @return Estimated heap size of the index in bytes, not including the keys and tags */
+    long estimateSize() {
+        long size = 2L * OBJECT_HEADER_BYTES + 4L * this.stripes.length;
+        for (final Stripe stripe : this.stripes) {
+            size += stripe.estimateSize();
+        }
+        return size;
+    }
+
+    private Stripe getStripe(Object key) {
+        final int hash = key.hashCode();
+        return this.stripes[(hash ^ (hash >>> 16)) & (this.stripes.length - 1)];
+    }
+
+    /** The keys of one stripe and their tags */
+    private static final class Stripe {
+        private final Map<Object, Integer> keyIds = new HashMap<Object, Integer>();
+        private final Map<CacheEntryTag, KeyIdSet> tagKeyIds =
+                new HashMap<CacheEntryTag, KeyIdSet>();
+
+        private Object[] keys = new Object[16];
+        private CacheEntryTag[][] keyTags = new CacheEntryTag[16][];
+        private int[] freeIds = new int[16];
+        private int freeIdCount;
+        private int nextId;
+
+        /** Record the tags of the key, replaces the tags previously recorded for the key */
+        synchronized void put(Object key, Set<CacheEntryTag> tags) {
+            final Integer existingId = this.keyIds.remove(key);
+            if (existingId != null) {
+                this.release(existingId);
+            }
+
+            final int id = this.allocateId();
+            final CacheEntryTag[] tagArray = tags.toArray(new CacheEntryTag[tags.size()]);
+            this.keyIds.put(key, id);
+            this.keys[id] = key;
+            this.keyTags[id] = tagArray;
+
+            for (final CacheEntryTag tag : tagArray) {
+                KeyIdSet ids = this.tagKeyIds.get(tag);
+                if (ids == null) {
+                    ids = new KeyIdSet();
+                    this.tagKeyIds.put(tag, ids);
+                }
+                ids.add(id);
+            }
+        }
+
+        /** Remove the key and its tag associations */
+        synchronized void remove(Object key) {
+            final Integer id = this.keyIds.remove(key);
+            if (id != null) {
+                this.release(id);
+            }
+        }
+
+        /** Remove the tag and every key associated with it, the removed keys are returned */
+        synchronized List<Object> removeTag(CacheEntryTag tag) {
+            final KeyIdSet ids = this.tagKeyIds.remove(tag);
+            if (ids == null) {
+                return Collections.emptyList();
+            }
+
+            final List<Object> removedKeys = new ArrayList<Object>(ids.size);
+            for (int i = 0; i < ids.size; i++) {
+                final int id = ids.ids[i];
+                final Object key = this.keys[id];
+                removedKeys.add(key);
+                this.keyIds.remove(key);
+                this.release(id);
+            }
+            return removedKeys;
+        }
+
+        synchronized void clear() {
+            this.keyIds.clear();
+            this.tagKeyIds.clear();
+            this.keys = new Object[16];
+            this.keyTags = new CacheEntryTag[16][];
+            this.freeIds = new int[16];
+            this.freeIdCount = 0;
+            this.nextId = 0;
+        }
+
+        synchronized int getKeyCount() {
+            return this.keyIds.size();
+        }
+
+        /** Add the tags indexed by the stripe to the set */
+        synchronized void addTags(Set<CacheEntryTag> tags) {
+            tags.addAll(this.tagKeyIds.keySet());
+        }
+
+        /** @return Estimated heap size of the index in bytes, not including the keys and tags */
+        synchronized long estimateSize() {
+            long size = 3L * OBJECT_HEADER_BYTES + 4L * this.keys.length + 4L * this.keyTags.length;
+            size += 4L * this.freeIds.length;
+            size += (long) this.keyIds.size() * (MAP_ENTRY_BYTES + INTEGER_BYTES);
+            for (final Map.Entry<Object, Integer> entry : this.keyIds.entrySet()) {
+                size += OBJECT_HEADER_BYTES + 4L * this.keyTags[entry.getValue()].length;
+            }
+            for (final KeyIdSet ids : this.tagKeyIds.values()) {
+                size += MAP_ENTRY_BYTES + KEY_ID_SET_BYTES + OBJECT_HEADER_BYTES;
+                size += 4L * ids.ids.length;
+            }
+            return size;
+        }
+
+        private int allocateId() {
+            if (this.freeIdCount > 0) {
+                return this.freeIds[--this.freeIdCount];
+            }
+
+            final int id = this.nextId++;
+            if (id == this.keys.length) {
+                this.keys = Arrays.copyOf(this.keys, id * 2);
+                this.keyTags = Arrays.copyOf(this.keyTags, id * 2);
+            }
+            return id;
+        }
+
+        private void release(int id) {
+            for (final CacheEntryTag tag : this.keyTags[id]) {
+                final KeyIdSet ids = this.tagKeyIds.get(tag);
+                if (ids != null && ids.remove(id) && ids.size == 0) {
+                    this.tagKeyIds.remove(tag);
+                }
+            }
+            this.keys[id] = null;
+            this.keyTags[id] = null;
+
+            if (this.freeIdCount == this.freeIds.length) {
+                this.freeIds = Arrays.copyOf(this.freeIds, this.freeIdCount * 2);
+            }
+            this.freeIds[this.freeIdCount++] = id;
+        }
+    }
+
+    /** Sorted set of key ids */
+    private static final class KeyIdSet {
+        private int[] ids = new int[2];
+        private int size;
+
+        void add(int id) {
+            int index = Arrays.binarySearch(this.ids, 0, this.size, id);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            if (this.size == this.ids.length) {
+                this.ids = Arrays.copyOf(this.ids, this.size * 2);
+            }
+            System.arraycopy(this.ids, index, this.ids, index + 1, this.size - index);
+            this.ids[index] = id;
+            this.size++;
+        }
+
+        boolean remove(int id) {
+            final int index = Arrays.binarySearch(this.ids, 0, this.size, id);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(this.ids, index + 1, this.ids, index, this.size - index - 1);
+            this.size--;
+            if (this.size > 2 && this.size < this.ids.length / 4) {
+                this.ids = Arrays.copyOf(this.ids, this.ids.length / 2);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.utils.threading;
+
+import com.google.common.base.Preconditions;
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free, multi-producer single-consumer queue backed by a ring buffer. Each slot
+ * carries a sequence number that tells producers when it is free and the consumer when it has been
+ * published, so neither side needs a lock. {@link #offer(Object)} returns false instead of waiting
+ * when the queue is full.
+ *
+ * <p>Any number of threads may call {@link #offer(Object)} but only one thread at a time may call
+ * {@link #poll()} or {@link #peek()}. The capacity is rounded up to the next power of two.
+ *
+ * <p>{@link #iterator()} is weakly consistent: it may be used from any thread, never throws {@link
+ * java.util.ConcurrentModificationException} and returns the elements that are still queued as it
+ * reaches them, in queue order. An element that was consumed after the iterator reached it may
+ * still be returned, elements offered after the iterator was created are not. The iterator does
+ * not support {@link Iterator#remove()}.
+ */
+public class BoundedMpscQueue<E> extends AbstractQueue<E> {
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong producerIndex = new AtomicLong();
+    private final AtomicLong consumerIndex = new AtomicLong();
+    private final int capacity;
+    private final int mask;
+
+    /** @param capacity Minimum number of elements the queue can hold */
+    public BoundedMpscQueue(int capacity) {
+        Preconditions.checkArgument(
+                capacity > 0 && capacity <= (1 << 30),
+                "capacity must be between 1 and 2^30: %s",
+                capacity);
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.buffer = new AtomicReferenceArray<E>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            this.sequences.set(i, i);
+        }
+    }
+
+    /** @return Maximum number of elements the queue can hold */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        Preconditions.checkNotNull(e, "null elements are not supported");
+
+        long position;
+        int index;
+        while (true) {
+            position = this.producerIndex.get();
+            index = (int) position & this.mask;
+            final long difference = this.sequences.get(index) - position;
+            if (difference < 0) {
+                //The consumer has not freed this slot yet, the queue is full
+                return false;
+            }
+            if (difference == 0 && this.producerIndex.compareAndSet(position, position + 1)) {
+                break;
+            }
+            //Another producer claimed the slot first, try the next one
+        }
+
+        this.buffer.set(index, e);
+        //Publish the element to the consumer
+        this.sequences.set(index, position + 1);
+        return true;
+    }
+
+    @Override
+    public E poll() {
+        final long position = this.consumerIndex.get();
+        final int index = (int) position & this.mask;
+        if (this.sequences.get(index) != position + 1) {
+            //Empty, or the producer that claimed the slot has not published yet
+            return null;
+        }
+
+        final E e = this.buffer.get(index);
+        this.buffer.set(index, null);
+        //Free the slot for the producer one lap ahead
+        this.sequences.set(index, position + this.capacity);
+        this.consumerIndex.set(position + 1);
+        return e;
+    }
+
+    @Override
+    public E peek() {
+        final long position = this.consumerIndex.get();
+        final int index = (int) position & this.mask;
+        if (this.sequences.get(index) != position + 1) {
+            return null;
+        }
+        return this.buffer.get(index);
+    }
+
+    @Override
+    public int size() {
+        //Read the consumer first so the difference can not go negative
+        final long consumed = this.consumerIndex.get();
+        final long produced = this.producerIndex.get();
+        return (int) Math.max(0, Math.min(produced - consumed, this.capacity));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr();
+    }
+
+    @Override
+    public String toString() {
+        return "BoundedMpscQueue[size=" + this.size() + ", capacity=" + this.capacity + "]";
+    }
+
+    /** Walks the slots between the consumer and producer positions seen when it was created */
+    private final class Itr implements Iterator<E> {
+        private final long end = producerIndex.get();
+        private long position = consumerIndex.get();
+        private E next;
+
+        Itr() {
+            this.advance();
+        }
+
+        private void advance() {
+            this.next = null;
+            while (this.position < this.end) {
+                //Skip slots the consumer has already passed
+                this.position = Math.max(this.position, consumerIndex.get());
+                if (this.position >= this.end) {
+                    return;
+                }
+
+                final long current = this.position++;
+                final int index = (int) current & mask;
+                if (sequences.get(index) != current + 1) {
+                    //Not published yet, or already consumed
+                    continue;
+                }
+
+                final E e = buffer.get(index);
+                //Only use the element if the slot was not consumed while reading it
+                if (e != null && sequences.get(index) == current + 1) {
+                    this.next = e;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next != null;
+        }
+
+        @Override
+        public E next() {
+            final E e = this.next;
+            if (e == null) {
+                throw new NoSuchElementException();
+            }
+            this.advance();
+            return e;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("BoundedMpscQueue iterators are read only");
+        }
+    }
+}
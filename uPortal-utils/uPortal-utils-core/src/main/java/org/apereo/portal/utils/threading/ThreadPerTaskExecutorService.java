@@ -0,0 +1,233 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.utils.threading;
+
+import com.google.common.base.Preconditions;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link java.util.concurrent.ExecutorService} that starts a new thread from the configured {@link
+ * ThreadFactory} for every task instead of handing tasks to a fixed set of pooled threads. Meant to
+ * be used with a factory that creates cheap threads, such as virtual threads, so a task blocking on
+ * I/O does not hold on to a scarce pool thread.
+ *
+ * <p>The number of concurrently running tasks is still capped by {@link #getMaximumPoolSize()}.
+ * Once the cap is reached further tasks are rejected, the same as a {@link
+ * java.util.concurrent.ThreadPoolExecutor} with no queue and an aborting rejection policy.
+ */
+public class ThreadPerTaskExecutorService extends AbstractExecutorService {
+    private final Set<Thread> activeThreads =
+            Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong taskCount = new AtomicLong();
+    private final AtomicLong completedTaskCount = new AtomicLong();
+    private final AtomicLong rejectedTaskCount = new AtomicLong();
+    private final Object terminationMonitor = new Object();
+
+    private final ThreadFactory threadFactory;
+    private final int maximumPoolSize;
+    private volatile boolean shutdown = false;
+
+    /**
+     * @param threadFactory Creates the thread each task runs on
+     * @param maximumPoolSize Maximum number of tasks that may be running at the same time
+     */
+    public ThreadPerTaskExecutorService(ThreadFactory threadFactory, int maximumPoolSize) {
+        Preconditions.checkNotNull(threadFactory, "threadFactory can not be null");
+        Preconditions.checkArgument(
+                maximumPoolSize > 0, "maximumPoolSize must be greater than 0: %s", maximumPoolSize);
+        this.threadFactory = threadFactory;
+        this.maximumPoolSize = maximumPoolSize;
+    }
+
+    /** @return Number of tasks currently running */
+    public int getActiveCount() {
+        return this.activeCount.get();
+    }
+
+    /** @return Maximum number of tasks that may be running at the same time */
+    public int getMaximumPoolSize() {
+        return this.maximumPoolSize;
+    }
+
+    /** @return Number of tasks that have been started */
+    public long getTaskCount() {
+        return this.taskCount.get();
+    }
+
+    /** @return Number of tasks that have finished running */
+    public long getCompletedTaskCount() {
+        return this.completedTaskCount.get();
+    }
+
+    /** @return Number of tasks that were rejected */
+    public long getRejectedTaskCount() {
+        return this.rejectedTaskCount.get();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        Preconditions.checkNotNull(command, "command can not be null");
+        if (this.shutdown) {
+            this.reject(command, "Executor has been shut down");
+        }
+
+        //Reserve a slot before creating the thread so the cap can never be exceeded
+        int active;
+        do {
+            active = this.activeCount.get();
+            if (active >= this.maximumPoolSize) {
+                this.reject(command, "All task slots are in use");
+            }
+        } while (!this.activeCount.compareAndSet(active, active + 1));
+
+        final Thread thread;
+        try {
+            thread = this.threadFactory.newThread(new TrackingRunnable(command));
+        } catch (RuntimeException e) {
+            this.taskFinished();
+            throw e;
+        }
+        if (thread == null) {
+            this.taskFinished();
+            this.reject(command, "ThreadFactory did not create a thread");
+        }
+
+        this.taskCount.incrementAndGet();
+        this.activeThreads.add(thread);
+        thread.start();
+    }
+
+    @Override
+    public void shutdown() {
+        this.shutdown = true;
+        this.signalIfTerminated();
+    }
+
+    /** Interrupts all running tasks, there is never a queue of waiting tasks to return */
+    @Override
+    public List<Runnable> shutdownNow() {
+        this.shutdown();
+        for (final Thread thread : this.activeThreads) {
+            thread.interrupt();
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return this.shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return this.shutdown && this.activeCount.get() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this.terminationMonitor) {
+            while (!this.isTerminated()) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this.terminationMonitor, remaining);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName()
+                + "[activeCount="
+                + this.activeCount.get()
+                + ", maxPoolSize="
+                + this.maximumPoolSize
+                + ", taskCount="
+                + this.taskCount.get()
+                + ", completedTaskCount="
+                + this.completedTaskCount.get()
+                + ", shutdown="
+                + this.shutdown
+                + "]";
+    }
+
+    private void reject(Runnable command, String reason) {
+        this.rejectedTaskCount.incrementAndGet();
+        throw new RejectedExecutionException(
+                reason
+                        + ", rejecting execution of "
+                        + command
+                        + ". activeCount="
+                        + this.activeCount.get()
+                        + ". maxPoolSize="
+                        + this.maximumPoolSize
+                        + ". taskCount="
+                        + this.taskCount.get()
+                        + ". completedTaskCount="
+                        + this.completedTaskCount.get());
+    }
+
+    private void taskFinished() {
+        if (this.activeCount.decrementAndGet() == 0) {
+            this.signalIfTerminated();
+        }
+    }
+
+    private void signalIfTerminated() {
+        if (this.isTerminated()) {
+            synchronized (this.terminationMonitor) {
+                this.terminationMonitor.notifyAll();
+            }
+        }
+    }
+
+    /** Releases the task slot and thread tracking once the wrapped task is done */
+    private final class TrackingRunnable implements Runnable {
+        private final Runnable delegate;
+
+        private TrackingRunnable(Runnable delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void run() {
+            try {
+                this.delegate.run();
+            } finally {
+                activeThreads.remove(Thread.currentThread());
+                completedTaskCount.incrementAndGet();
+                taskFinished();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return this.delegate.toString();
+        }
+    }
+}
@@ -16,6 +16,7 @@ package org.apereo.portal.utils.web;
 
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
 import javax.portlet.PortletRequest;
 import javax.servlet.ServletRequest;
 import javax.servlet.http.HttpServletRequest;
@@ -64,7 +65,7 @@ public final class PortalWebUtils {
      * Get a {@link ConcurrentMap} for the specified name from the {@link ServletRequest}
      * attributes. If it doesn't exist create it and store it in the attributes. This is done in a
      * thread-safe matter that ensures only one Map per name & request will be created @See {@link
-     * #getRequestAttributeMutex(ServletRequest)}
+     * #getOrCreateRequestAttribute(ServletRequest, String, Supplier)}
      */
     public static <K, V> ConcurrentMap<K, V> getMapRequestAttribute(
             ServletRequest servletRequest, String name) {
@@ -74,26 +75,18 @@ public final class PortalWebUtils {
     @SuppressWarnings("unchecked")
     public static <K, V> ConcurrentMap<K, V> getMapRequestAttribute(
             ServletRequest servletRequest, String name, boolean create) {
-        final Object mutex = getRequestAttributeMutex(servletRequest);
-        synchronized (mutex) {
-            ConcurrentMap<K, V> map = (ConcurrentMap<K, V>) servletRequest.getAttribute(name);
-            if (map == null) {
-                if (!create) {
-                    return null;
-                }
-
-                map = new ConcurrentHashMap<K, V>();
-                servletRequest.setAttribute(name, map);
-            }
-            return map;
+        if (!create) {
+            return (ConcurrentMap<K, V>) servletRequest.getAttribute(name);
         }
+        return getOrCreateRequestAttribute(
+                servletRequest, name, PortalWebUtils.<K, V>concurrentMapSupplier());
     }
 
     /**
      * Get a {@link ConcurrentMap} for the specified name from the {@link HttpSession} attributes.
      * If it doesn't exist create it and store it in the attributes. This is done in a thread-safe
      * matter that ensures only one Map per name & session will be created @See {@link
-     * WebUtils#getSessionMutex(HttpSession)}
+     * #getOrCreateSessionAttribute(HttpSession, String, Supplier)}
      */
     public static <K, V> ConcurrentMap<K, V> getMapSessionAttribute(
             HttpSession session, String name) {
@@ -103,21 +96,67 @@ public final class PortalWebUtils {
     @SuppressWarnings("unchecked")
     public static <K, V> ConcurrentMap<K, V> getMapSessionAttribute(
             HttpSession session, String name, boolean create) {
-        final Object mutex = WebUtils.getSessionMutex(session);
-        synchronized (mutex) {
-            ConcurrentMap<K, V> map = (ConcurrentMap<K, V>) session.getAttribute(name);
-            if (map == null) {
-                if (!create) {
-                    return null;
-                }
-
-                map = new ConcurrentHashMap<K, V>();
-                session.setAttribute(name, map);
+        if (!create) {
+            return (ConcurrentMap<K, V>) session.getAttribute(name);
+        }
+        return getOrCreateSessionAttribute(
+                session, name, PortalWebUtils.<K, V>concurrentMapSupplier());
+    }
+
+    /**
+     * Get the attribute for the specified name from the {@link ServletRequest}, if it doesn't exist
+     * create it with the supplier and store it in the attributes. An existing attribute is returned
+     * without synchronizing, only creation is done while holding the {@link
+     * #getRequestAttributeMutex(ServletRequest)} so that one attribute per name & request is
+     * created.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T getOrCreateRequestAttribute(
+            ServletRequest servletRequest, String name, Supplier<? extends T> supplier) {
+        T attribute = (T) servletRequest.getAttribute(name);
+        if (attribute != null) {
+            return attribute;
+        }
+
+        synchronized (getRequestAttributeMutex(servletRequest)) {
+            attribute = (T) servletRequest.getAttribute(name);
+            if (attribute == null) {
+                attribute = supplier.get();
+                servletRequest.setAttribute(name, attribute);
+            }
+            return attribute;
+        }
+    }
+
+    /**
+     * Get the attribute for the specified name from the {@link HttpSession}, if it doesn't exist
+     * create it with the supplier and store it in the attributes. An existing attribute is returned
+     * without synchronizing so concurrent requests of a session don't block each other, only
+     * creation is done while holding the {@link WebUtils#getSessionMutex(HttpSession)} so that one
+     * attribute per name & session is created.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T getOrCreateSessionAttribute(
+            HttpSession session, String name, Supplier<? extends T> supplier) {
+        T attribute = (T) session.getAttribute(name);
+        if (attribute != null) {
+            return attribute;
+        }
+
+        synchronized (WebUtils.getSessionMutex(session)) {
+            attribute = (T) session.getAttribute(name);
+            if (attribute == null) {
+                attribute = supplier.get();
+                session.setAttribute(name, attribute);
             }
-            return map;
+            return attribute;
         }
     }
 
+    private static <K, V> Supplier<ConcurrentMap<K, V>> concurrentMapSupplier() {
+        return ConcurrentHashMap::new;
+    }
+
     /**
      * Get the request context path from the current request. Copes with both HttpServletRequest and
      * PortletRequest and so usable when handling Spring-processed Servlet or Portlet requests.
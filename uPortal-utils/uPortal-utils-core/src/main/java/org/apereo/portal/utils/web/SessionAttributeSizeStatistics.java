@@ -0,0 +1,308 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.utils.web;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.servlet.http.HttpSession;
+import org.apereo.portal.utils.ConcurrentMapUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.security.web.session.HttpSessionDestroyedEvent;
+import org.springframework.stereotype.Service;
+
+/**
+ * Measures the serialized size of every attribute of a sample of the portal sessions as they are
+ * destroyed and keeps size histograms for whole sessions and per attribute name. Sessions larger
+ * than the configured byte budget are logged with their largest attributes.
+ *
+ * <p>Each attribute is serialized on its own, objects shared between attributes are counted once
+ * per attribute. Portlet scoped attribute names have the window id replaced by <code>*</code>.
+ *
+ * @since 5.0
+ */
+@ManagedResource("uPortal:section=Session,name=SessionAttributeSizes")
+@Service("sessionAttributeSizeStatistics")
+public class SessionAttributeSizeStatistics
+        implements SessionAttributeSizeStatisticsMXBean,
+                ApplicationListener<HttpSessionDestroyedEvent> {
+
+    /** Upper bounds of the histogram buckets in bytes, the last bucket has no upper bound */
+    private static final long[] BUCKET_LIMITS = {1024, 4096, 16384, 65536, 262144, 1048576};
+
+    private static final String[] BUCKET_NAMES = {
+        "<1KB", "<4KB", "<16KB", "<64KB", "<256KB", "<1MB", ">=1MB"
+    };
+
+    private static final String PORTLET_SCOPE_PREFIX = "javax.portlet.p.";
+    private static final String OTHER_ATTRIBUTES = "(other)";
+    private static final int MAX_ATTRIBUTE_NAMES = 256;
+    private static final int LOGGED_ATTRIBUTES = 5;
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final AtomicLong destroyedSessionCount = new AtomicLong();
+    private final AtomicLong sampledSessionCount = new AtomicLong();
+    private final AtomicLong overBudgetSessionCount = new AtomicLong();
+    private final AtomicLong unserializableAttributeCount = new AtomicLong();
+    private final SizeHistogram sessionSizes = new SizeHistogram();
+    private final ConcurrentMap<String, SizeHistogram> attributeSizes =
+            new ConcurrentHashMap<String, SizeHistogram>();
+
+    private int sampleInterval = 10;
+    private long byteBudget = 65536;
+
+    /** Measure every Nth destroyed session, 0 disables measuring */
+    @Value("${org.apereo.portal.utils.web.SessionAttributeSizeStatistics.sampleInterval:10}")
+    public void setSampleInterval(int sampleInterval) {
+        this.sampleInterval = sampleInterval;
+    }
+
+    /** Sessions larger than this many bytes are logged, 0 disables the budget */
+    @Value("${org.apereo.portal.utils.web.SessionAttributeSizeStatistics.byteBudget:65536}")
+    public void setByteBudget(long byteBudget) {
+        this.byteBudget = byteBudget;
+    }
+
+    @Override
+    public void onApplicationEvent(HttpSessionDestroyedEvent event) {
+        final long destroyedSessions = this.destroyedSessionCount.incrementAndGet();
+        if (this.sampleInterval <= 0 || destroyedSessions % this.sampleInterval != 0) {
+            return;
+        }
+
+        final HttpSession session = event.getSession();
+        final Map<String, Long> sizes = new LinkedHashMap<String, Long>();
+        long sessionSize = 0;
+        try {
+            for (final Enumeration<String> names = session.getAttributeNames();
+                    names.hasMoreElements(); ) {
+                final String name = names.nextElement();
+                final long size = this.measure(name, session.getAttribute(name));
+                if (size >= 0) {
+                    sizes.put(name, size);
+                    sessionSize += size;
+                    this.getAttributeSizes(name).record(size);
+                }
+            }
+        } catch (IllegalStateException e) {
+            //Session was already invalidated, nothing left to measure
+            return;
+        }
+
+        this.sampledSessionCount.incrementAndGet();
+        this.sessionSizes.record(sessionSize);
+
+        if (this.byteBudget > 0 && sessionSize > this.byteBudget) {
+            this.overBudgetSessionCount.incrementAndGet();
+            this.logger.warn(
+                    "Session {} used {} bytes which is over the budget of {} bytes,"
+                            + " largest attributes: {}",
+                    session.getId(),
+                    sessionSize,
+                    this.byteBudget,
+                    largest(sizes));
+        }
+    }
+
+    @Override
+    public int getSampleInterval() {
+        return this.sampleInterval;
+    }
+
+    @Override
+    public long getByteBudget() {
+        return this.byteBudget;
+    }
+
+    @Override
+    public long getDestroyedSessionCount() {
+        return this.destroyedSessionCount.get();
+    }
+
+    @Override
+    public long getSampledSessionCount() {
+        return this.sampledSessionCount.get();
+    }
+
+    @Override
+    public long getOverBudgetSessionCount() {
+        return this.overBudgetSessionCount.get();
+    }
+
+    @Override
+    public long getUnserializableAttributeCount() {
+        return this.unserializableAttributeCount.get();
+    }
+
+    @Override
+    public long getMeanSessionSize() {
+        return this.sessionSizes.getMean();
+    }
+
+    @Override
+    public long getMaxSessionSize() {
+        return this.sessionSizes.max.get();
+    }
+
+    @Override
+    public Map<String, Long> getSessionSizeHistogram() {
+        return this.sessionSizes.getHistogram();
+    }
+
+    @Override
+    public Map<String, Long> getMeanAttributeSizes() {
+        final Map<String, Long> result = new TreeMap<String, Long>();
+        for (final Map.Entry<String, SizeHistogram> entry : this.attributeSizes.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().getMean());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getMaxAttributeSizes() {
+        final Map<String, Long> result = new TreeMap<String, Long>();
+        for (final Map.Entry<String, SizeHistogram> entry : this.attributeSizes.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().max.get());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> getAttributeSizeHistograms() {
+        final Map<String, Map<String, Long>> result = new TreeMap<String, Map<String, Long>>();
+        for (final Map.Entry<String, SizeHistogram> entry : this.attributeSizes.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().getHistogram());
+        }
+        return result;
+    }
+
+    /** @return Serialized size of the attribute in bytes, -1 if it could not be measured */
+    long measure(String name, Object value) {
+        if (value == null) {
+            return -1;
+        }
+
+        final CountingOutputStream counter =
+                new CountingOutputStream(ByteStreams.nullOutputStream());
+        try {
+            final ObjectOutputStream oos = new ObjectOutputStream(counter);
+            oos.writeObject(value);
+            oos.flush();
+        } catch (NotSerializableException e) {
+            this.unserializableAttributeCount.incrementAndGet();
+            this.logger.debug("Session attribute {} is not serializable: {}", name, e.getMessage());
+            return -1;
+        } catch (IOException | RuntimeException e) {
+            this.logger.debug("Failed to measure the size of session attribute {}", name, e);
+            return -1;
+        }
+        return counter.getCount();
+    }
+
+    private SizeHistogram getAttributeSizes(String name) {
+        //Portlet scoped attributes are named javax.portlet.p.<window id>?<name>
+        if (name.startsWith(PORTLET_SCOPE_PREFIX)) {
+            final int nameStart = name.indexOf('?', PORTLET_SCOPE_PREFIX.length());
+            if (nameStart > 0) {
+                name = PORTLET_SCOPE_PREFIX + "*" + name.substring(nameStart);
+            }
+        }
+
+        final SizeHistogram sizes = this.attributeSizes.get(name);
+        if (sizes != null) {
+            return sizes;
+        }
+        if (this.attributeSizes.size() >= MAX_ATTRIBUTE_NAMES) {
+            name = OTHER_ATTRIBUTES;
+        }
+        return ConcurrentMapUtils.putIfAbsent(this.attributeSizes, name, new SizeHistogram());
+    }
+
+    private static List<String> largest(Map<String, Long> sizes) {
+        final List<Map.Entry<String, Long>> entries =
+                new ArrayList<Map.Entry<String, Long>>(sizes.entrySet());
+        Collections.sort(
+                entries,
+                new Comparator<Map.Entry<String, Long>>() {
+                    @Override
+                    public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+                        return Long.compare(o2.getValue(), o1.getValue());
+                    }
+                });
+
+        final List<String> largest = new ArrayList<String>(LOGGED_ATTRIBUTES);
+        for (final Map.Entry<String, Long> entry : entries) {
+            if (largest.size() == LOGGED_ATTRIBUTES) {
+                break;
+            }
+            largest.add(entry.getKey() + "=" + entry.getValue());
+        }
+        return largest;
+    }
+
+    private static final class SizeHistogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_NAMES.length);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long size) {
+            int bucket = 0;
+            while (bucket < BUCKET_LIMITS.length && size >= BUCKET_LIMITS[bucket]) {
+                bucket++;
+            }
+            this.buckets.incrementAndGet(bucket);
+            this.count.incrementAndGet();
+            this.total.addAndGet(size);
+
+            long currentMax;
+            do {
+                currentMax = this.max.get();
+            } while (size > currentMax && !this.max.compareAndSet(currentMax, size));
+        }
+
+        long getMean() {
+            final long count = this.count.get();
+            return count == 0 ? 0 : this.total.get() / count;
+        }
+
+        Map<String, Long> getHistogram() {
+            final Map<String, Long> histogram = new LinkedHashMap<String, Long>();
+            for (int i = 0; i < BUCKET_NAMES.length; i++) {
+                histogram.put(BUCKET_NAMES[i], this.buckets.get(i));
+            }
+            return histogram;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.utils.web;
+
+import java.util.Map;
+
+/**
+ * Serialized sizes of the attributes of sampled portal sessions, measured when the session is
+ * destroyed
+ *
+ * @since 5.0
+ */
+public interface SessionAttributeSizeStatisticsMXBean {
+
+    /** @return Every Nth destroyed session is measured */
+    int getSampleInterval();
+
+    /** @return Size in bytes a session is expected to stay under, 0 if there is no budget */
+    long getByteBudget();
+
+    /** @return Number of sessions destroyed */
+    long getDestroyedSessionCount();
+
+    /** @return Number of sessions measured */
+    long getSampledSessionCount();
+
+    /** @return Number of measured sessions that were larger than the byte budget */
+    long getOverBudgetSessionCount();
+
+    /** @return Number of attributes that could not be measured as they are not serializable */
+    long getUnserializableAttributeCount();
+
+    /** @return Mean size of the measured sessions in bytes */
+    long getMeanSessionSize();
+
+    /** @return Largest size of a measured session in bytes */
+    long getMaxSessionSize();
+
+    /** @return Number of measured sessions per size bucket */
+    Map<String, Long> getSessionSizeHistogram();
+
+    /** @return Mean size in bytes per attribute name */
+    Map<String, Long> getMeanAttributeSizes();
+
+    /** @return Largest size in bytes per attribute name */
+    Map<String, Long> getMaxAttributeSizes();
+
+    /** @return Number of measured attributes per size bucket, per attribute name */
+    Map<String, Map<String, Long>> getAttributeSizeHistograms();
+}
@@ -0,0 +1,114 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.utils.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.Test;
+
+public class TaggedKeyIndexTest {
+    private static final CacheEntryTag ALICE = new SimpleCacheEntryTag<String>("user", "alice");
+    private static final CacheEntryTag BOB = new SimpleCacheEntryTag<String>("user", "bob");
+    private static final CacheEntryTag SESSION = new SimpleCacheEntryTag<String>("session", "1");
+
+    @Test
+    public void testRemoveTag() {
+        final TaggedKeyIndex index = new TaggedKeyIndex();
+        index.put("a1", ImmutableSet.of(ALICE, SESSION));
+        index.put("a2", ImmutableSet.of(ALICE));
+        index.put("b1", ImmutableSet.of(BOB));
+        assertEquals(3, index.getKeyCount());
+        assertEquals(3, index.getTagCount());
+
+        final List<Object> removed = index.removeTag(ALICE);
+        assertEquals(ImmutableSet.of("a1", "a2"), new HashSet<Object>(removed));
+        assertEquals(1, index.getKeyCount());
+
+        //a1 was removed with ALICE, its SESSION association is gone as well
+        assertTrue(index.removeTag(SESSION).isEmpty());
+        assertEquals(ImmutableSet.of("b1"), new HashSet<Object>(index.removeTag(BOB)));
+        assertEquals(0, index.getKeyCount());
+        assertEquals(0, index.getTagCount());
+    }
+
+    @Test
+    public void testPutReplacesTags() {
+        final TaggedKeyIndex index = new TaggedKeyIndex();
+        index.put("key", ImmutableSet.of(ALICE));
+        index.put("key", ImmutableSet.of(BOB));
+
+        assertTrue(index.removeTag(ALICE).isEmpty());
+        assertEquals(ImmutableSet.of("key"), new HashSet<Object>(index.removeTag(BOB)));
+    }
+
+    @Test
+    public void testReusedIds() {
+        final TaggedKeyIndex index = new TaggedKeyIndex();
+        for (int i = 0; i < 1000; i++) {
+            index.put("a" + i, ImmutableSet.of(ALICE));
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            index.remove("a" + i);
+        }
+        for (int i = 0; i < 500; i++) {
+            index.put("b" + i, ImmutableSet.of(BOB));
+        }
+        assertEquals(1000, index.getKeyCount());
+
+        //Ids freed by removed keys are reused without leaking into other tags
+        final List<Object> alice = index.removeTag(ALICE);
+        assertEquals(500, alice.size());
+        for (final Object key : alice) {
+            assertTrue(((String) key).startsWith("a"));
+        }
+        assertEquals(500, index.removeTag(BOB).size());
+        assertEquals(0, index.getKeyCount());
+    }
+
+    @Test
+    public void testTagSpansStripes() {
+        final TaggedKeyIndex index = new TaggedKeyIndex(4);
+        for (int i = 0; i < 100; i++) {
+            index.put("a" + i, ImmutableSet.of(ALICE));
+        }
+        index.put("b1", ImmutableSet.of(BOB));
+        assertEquals(101, index.getKeyCount());
+
+        //ALICE is indexed by every stripe holding one of its keys but counted once
+        assertEquals(2, index.getTagCount());
+
+        final List<Object> alice = index.removeTag(ALICE);
+        assertEquals(100, new HashSet<Object>(alice).size());
+        assertEquals(1, index.getKeyCount());
+        assertEquals(1, index.getTagCount());
+    }
+
+    @Test
+    public void testClear() {
+        final TaggedKeyIndex index = new TaggedKeyIndex();
+        index.put("a1", ImmutableSet.of(ALICE));
+        final long emptySize = new TaggedKeyIndex().estimateSize();
+        assertTrue(index.estimateSize() > emptySize);
+
+        index.clear();
+        assertEquals(0, index.getKeyCount());
+        assertEquals(emptySize, index.estimateSize());
+        assertTrue(index.removeTag(ALICE).isEmpty());
+    }
+}
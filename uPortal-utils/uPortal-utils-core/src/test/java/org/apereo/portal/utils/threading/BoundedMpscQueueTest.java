@@ -0,0 +1,135 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.utils.threading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+public class BoundedMpscQueueTest {
+    @Test
+    public void testCapacityRoundedToPowerOfTwo() {
+        assertEquals(1, new BoundedMpscQueue<String>(1).getCapacity());
+        assertEquals(8, new BoundedMpscQueue<String>(5).getCapacity());
+        assertEquals(8, new BoundedMpscQueue<String>(8).getCapacity());
+    }
+
+    @Test
+    public void testOfferUntilFull() {
+        final BoundedMpscQueue<String> queue = new BoundedMpscQueue<String>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer("e" + i));
+        }
+        assertFalse(queue.offer("e4"));
+        assertEquals(4, queue.size());
+
+        assertEquals("e0", queue.peek());
+        assertEquals("e0", queue.poll());
+        assertTrue(queue.offer("e4"));
+
+        for (int i = 1; i <= 4; i++) {
+            assertEquals("e" + i, queue.poll());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testIterator() {
+        final BoundedMpscQueue<String> queue = new BoundedMpscQueue<String>(4);
+        assertFalse(queue.iterator().hasNext());
+
+        //Wrap around the ring buffer before iterating
+        queue.offer("e0");
+        queue.offer("e1");
+        queue.poll();
+        queue.offer("e2");
+        queue.offer("e3");
+        queue.offer("e4");
+
+        assertEquals(Arrays.asList("e1", "e2", "e3", "e4"), new ArrayList<String>(queue));
+        assertEquals("[e1, e2, e3, e4]", new ArrayList<String>(queue).toString());
+
+        final List<String> copy = new ArrayList<String>();
+        copy.addAll(queue);
+        assertEquals(4, copy.size());
+        assertEquals(4, queue.size());
+
+        //The element an iterator has already reached is returned, later consumed ones are skipped
+        final Iterator<String> itr = queue.iterator();
+        queue.poll();
+        queue.poll();
+        assertEquals("e1", itr.next());
+        assertEquals("e3", itr.next());
+        assertEquals("e4", itr.next());
+        assertFalse(itr.hasNext());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final int producers = 4;
+        final int perProducer = 50000;
+        final BoundedMpscQueue<Integer> queue = new BoundedMpscQueue<Integer>(1024);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(producers);
+
+        for (int p = 0; p < producers; p++) {
+            final Thread producer =
+                    new Thread() {
+                        @Override
+                        public void run() {
+                            try {
+                                start.await();
+                                for (int i = 0; i < perProducer; i++) {
+                                    while (!queue.offer(i)) {
+                                        Thread.yield();
+                                    }
+                                }
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            } finally {
+                                done.countDown();
+                            }
+                        }
+                    };
+            producer.setDaemon(true);
+            producer.start();
+        }
+
+        start.countDown();
+        int consumed = 0;
+        long sum = 0;
+        while (done.getCount() > 0 || !queue.isEmpty()) {
+            final Integer e = queue.poll();
+            if (e == null) {
+                Thread.yield();
+            } else {
+                consumed++;
+                sum += e;
+            }
+        }
+
+        assertEquals(producers * perProducer, consumed);
+        assertEquals((long) producers * perProducer * (perProducer - 1) / 2, sum);
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.utils.threading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ThreadPerTaskExecutorServiceTest {
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ThreadPerTaskExecutorService executorService;
+
+    @Before
+    public void setup() {
+        this.executorService =
+                new ThreadPerTaskExecutorService(Executors.defaultThreadFactory(), 2);
+    }
+
+    @After
+    public void tearDown() {
+        this.release.countDown();
+        this.executorService.shutdownNow();
+    }
+
+    @Test
+    public void testRunsTaskOnNewThread() throws Exception {
+        final Future<String> future =
+                this.executorService.submit(
+                        new Callable<String>() {
+                            @Override
+                            public String call() throws Exception {
+                                return Thread.currentThread().getName();
+                            }
+                        });
+
+        assertFalse(Thread.currentThread().getName().equals(future.get(5, TimeUnit.SECONDS)));
+        this.executorService.shutdown();
+        assertTrue(this.executorService.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(1, this.executorService.getTaskCount());
+        assertEquals(1, this.executorService.getCompletedTaskCount());
+        assertEquals(0, this.executorService.getActiveCount());
+    }
+
+    @Test
+    public void testRejectsOverMaximum() throws Exception {
+        final CountDownLatch started = new CountDownLatch(2);
+        this.executorService.submit(new BlockingTask(started));
+        this.executorService.submit(new BlockingTask(started));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(2, this.executorService.getActiveCount());
+
+        try {
+            this.executorService.submit(new BlockingTask(started));
+            fail("Expected RejectedExecutionException");
+        } catch (RejectedExecutionException e) {
+            //expected
+        }
+        assertEquals(1, this.executorService.getRejectedTaskCount());
+
+        this.release.countDown();
+        this.executorService.shutdown();
+        assertTrue(this.executorService.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(2, this.executorService.getCompletedTaskCount());
+    }
+
+    @Test
+    public void testCancelInterruptsTask() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final Future<?> future = this.executorService.submit(new BlockingTask(started));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        future.cancel(true);
+
+        this.executorService.shutdown();
+        assertTrue(this.executorService.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(this.executorService.isTerminated());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testRejectsAfterShutdown() {
+        this.executorService.shutdown();
+        this.executorService.submit(new BlockingTask(new CountDownLatch(1)));
+    }
+
+    private final class BlockingTask implements Runnable {
+        private final CountDownLatch started;
+
+        private BlockingTask(CountDownLatch started) {
+            this.started = started;
+        }
+
+        @Override
+        public void run() {
+            this.started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
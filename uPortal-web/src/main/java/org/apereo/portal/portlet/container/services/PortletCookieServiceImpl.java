@@ -19,7 +19,6 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import javax.servlet.ServletContext;
 import javax.servlet.http.Cookie;
@@ -36,6 +35,7 @@ import org.apereo.portal.portlet.dao.IPortletCookieDao;
 import org.apereo.portal.portlet.om.IPortalCookie;
 import org.apereo.portal.portlet.om.IPortletCookie;
 import org.apereo.portal.portlet.om.IPortletWindowId;
+import org.apereo.portal.utils.web.PortalWebUtils;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,7 +44,6 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.orm.hibernate3.HibernateOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.web.context.ServletContextAware;
-import org.springframework.web.util.WebUtils;
 
 /** {@link Service} bean to encapsulate business logic regarding portlet cookie persistence. */
 @Service("portletCookieService")
@@ -327,22 +326,11 @@ public class PortletCookieServiceImpl implements IPortletCookieService, ServletC
      * @param request
      * @return
      */
-    @SuppressWarnings("unchecked")
     protected Map<String, SessionOnlyPortletCookieImpl> getSessionOnlyPortletCookieMap(
             final HttpServletRequest request) {
         final HttpSession session = request.getSession();
-        synchronized (WebUtils.getSessionMutex(session)) {
-            Map<String, SessionOnlyPortletCookieImpl> sessionOnlyPortletCookies =
-                    (Map<String, SessionOnlyPortletCookieImpl>)
-                            session.getAttribute(SESSION_ATTRIBUTE__SESSION_ONLY_COOKIE_MAP);
-            if (sessionOnlyPortletCookies == null) {
-                sessionOnlyPortletCookies =
-                        new ConcurrentHashMap<String, SessionOnlyPortletCookieImpl>();
-                session.setAttribute(
-                        SESSION_ATTRIBUTE__SESSION_ONLY_COOKIE_MAP, sessionOnlyPortletCookies);
-            }
-            return sessionOnlyPortletCookies;
-        }
+        return PortalWebUtils.getMapSessionAttribute(
+                session, SESSION_ATTRIBUTE__SESSION_ONLY_COOKIE_MAP);
     }
     /**
      * Convert the {@link IPortalCookie} into a servlet {@link Cookie}.
@@ -375,15 +363,13 @@ public class PortletCookieServiceImpl implements IPortletCookieService, ServletC
      * @return
      */
     protected IPortalCookie locatePortalCookieInSession(HttpSession session) {
-        synchronized (WebUtils.getSessionMutex(session)) {
-            final String portalCookieId =
-                    (String) session.getAttribute(SESSION_ATTRIBUTE__PORTAL_COOKIE_ID);
-            if (portalCookieId == null) {
-                return null;
-            }
-            IPortalCookie portalCookie = this.portletCookieDao.getPortalCookie(portalCookieId);
-            return portalCookie;
+        //Session attributes are thread safe, don't hold the session mutex while querying the dao
+        final String portalCookieId =
+                (String) session.getAttribute(SESSION_ATTRIBUTE__PORTAL_COOKIE_ID);
+        if (portalCookieId == null) {
+            return null;
         }
+        return this.portletCookieDao.getPortalCookie(portalCookieId);
     }
 
     /**
@@ -411,10 +397,8 @@ public class PortletCookieServiceImpl implements IPortletCookieService, ServletC
         if (result == null) {
             result = this.portletCookieDao.createPortalCookie(this.maxAge);
             // store the portal cookie value value in the session
-            HttpSession session = request.getSession();
-            synchronized (WebUtils.getSessionMutex(session)) {
-                session.setAttribute(SESSION_ATTRIBUTE__PORTAL_COOKIE_ID, result.getValue());
-            }
+            final HttpSession session = request.getSession();
+            session.setAttribute(SESSION_ATTRIBUTE__PORTAL_COOKIE_ID, result.getValue());
         }
 
         return result;
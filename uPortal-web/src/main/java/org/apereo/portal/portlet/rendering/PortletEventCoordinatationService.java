@@ -156,15 +156,8 @@ public class PortletEventCoordinatationService implements IPortletEventCoordinat
     public PortletEventQueue getPortletEventQueue(HttpServletRequest request) {
         request = this.portalRequestUtils.getOriginalPortalRequest(request);
 
-        synchronized (PortalWebUtils.getRequestAttributeMutex(request)) {
-            PortletEventQueue portletEventQueue =
-                    (PortletEventQueue) request.getAttribute(PORTLET_EVENT_QUEUE);
-            if (portletEventQueue == null) {
-                portletEventQueue = new PortletEventQueue();
-                request.setAttribute(PORTLET_EVENT_QUEUE, portletEventQueue);
-            }
-            return portletEventQueue;
-        }
+        return PortalWebUtils.getOrCreateRequestAttribute(
+                request, PORTLET_EVENT_QUEUE, PortletEventQueue::new);
     }
 
     @Override
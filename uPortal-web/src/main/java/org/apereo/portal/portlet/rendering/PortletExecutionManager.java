@@ -23,7 +23,6 @@ import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
@@ -61,7 +60,6 @@ import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
-import org.springframework.web.util.WebUtils;
 
 /**
  * Handles the asynchronous execution of portlets, handling execution errors and publishing events
@@ -634,6 +632,37 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
         return tracker != null;
     }
 
+    @Override
+    public boolean isPortletRenderHeaderComplete(
+            IPortletWindowId portletWindowId,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        if (!doesPortletNeedHeaderWorker(portletWindowId, request)) {
+            return true;
+        }
+
+        final Map<IPortletWindowId, IPortletRenderExecutionWorker> portletHeaderRenderingMap =
+                this.getPortletHeaderRenderingMap(request);
+        final IPortletRenderExecutionWorker tracker =
+                portletHeaderRenderingMap.get(portletWindowId);
+
+        //isComplete() is also true for a worker that has not started yet, check the timestamp
+        return tracker != null && tracker.getCompleteTime() > 0;
+    }
+
+    @Override
+    public boolean isPortletRenderComplete(
+            IPortletWindowId portletWindowId,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        final Map<IPortletWindowId, IPortletRenderExecutionWorker> portletRenderingMap =
+                this.getPortletRenderingMap(request);
+        final IPortletRenderExecutionWorker tracker = portletRenderingMap.get(portletWindowId);
+
+        //isComplete() is also true for a worker that has not started yet, check the timestamp
+        return tracker != null && tracker.getCompleteTime() > 0;
+    }
+
     /* (non-Javadoc)
      * @see org.apereo.portal.portlet.rendering.IPortletExecutionManager#getPortletHeadOutput(org.apereo.portal.portlet.om.IPortletWindowId, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
      */
@@ -986,39 +1015,17 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
      * Returns a request attribute scoped Map of portlets that are rendering for the current
      * request.
      */
-    @SuppressWarnings("unchecked")
     protected Map<IPortletWindowId, IPortletRenderExecutionWorker> getPortletHeaderRenderingMap(
             HttpServletRequest request) {
-        synchronized (PortalWebUtils.getRequestAttributeMutex(request)) {
-            Map<IPortletWindowId, IPortletRenderExecutionWorker> portletRenderingMap =
-                    (Map<IPortletWindowId, IPortletRenderExecutionWorker>)
-                            request.getAttribute(PORTLET_HEADER_RENDERING_MAP);
-            if (portletRenderingMap == null) {
-                portletRenderingMap =
-                        new ConcurrentHashMap<IPortletWindowId, IPortletRenderExecutionWorker>();
-                request.setAttribute(PORTLET_HEADER_RENDERING_MAP, portletRenderingMap);
-            }
-            return portletRenderingMap;
-        }
+        return PortalWebUtils.getMapRequestAttribute(request, PORTLET_HEADER_RENDERING_MAP);
     }
     /**
      * Returns a request attribute scoped Map of portlets that are rendering for the current
      * request.
      */
-    @SuppressWarnings("unchecked")
     protected Map<IPortletWindowId, IPortletRenderExecutionWorker> getPortletRenderingMap(
             HttpServletRequest request) {
-        synchronized (PortalWebUtils.getRequestAttributeMutex(request)) {
-            Map<IPortletWindowId, IPortletRenderExecutionWorker> portletRenderingMap =
-                    (Map<IPortletWindowId, IPortletRenderExecutionWorker>)
-                            request.getAttribute(PORTLET_RENDERING_MAP);
-            if (portletRenderingMap == null) {
-                portletRenderingMap =
-                        new ConcurrentHashMap<IPortletWindowId, IPortletRenderExecutionWorker>();
-                request.setAttribute(PORTLET_RENDERING_MAP, portletRenderingMap);
-            }
-            return portletRenderingMap;
-        }
+        return PortalWebUtils.getMapRequestAttribute(request, PORTLET_RENDERING_MAP);
     }
 
     /**
@@ -1028,19 +1035,9 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
      * @param request HttpServletRequest
      * @return a never null {@link Map} in the session for storing portlet failure causes.
      */
-    @SuppressWarnings("unchecked")
     protected Map<IPortletWindowId, Exception> getPortletErrorMap(HttpServletRequest request) {
         final HttpSession session = request.getSession();
-        synchronized (WebUtils.getSessionMutex(session)) {
-            Map<IPortletWindowId, Exception> portletFailureMap =
-                    (Map<IPortletWindowId, Exception>)
-                            session.getAttribute(SESSION_ATTRIBUTE__PORTLET_FAILURE_CAUSE_MAP);
-            if (portletFailureMap == null) {
-                portletFailureMap = new ConcurrentHashMap<IPortletWindowId, Exception>();
-                session.setAttribute(
-                        SESSION_ATTRIBUTE__PORTLET_FAILURE_CAUSE_MAP, portletFailureMap);
-            }
-            return portletFailureMap;
-        }
+        return PortalWebUtils.getMapSessionAttribute(
+                session, SESSION_ATTRIBUTE__PORTLET_FAILURE_CAUSE_MAP);
     }
 }
@@ -28,6 +28,7 @@ import org.apereo.portal.events.PortalEvent;
 import org.apereo.portal.events.PortletHungCompleteEvent;
 import org.apereo.portal.events.PortletHungEvent;
 import org.apereo.portal.utils.ConcurrentMapUtils;
+import org.apereo.portal.utils.threading.ThreadPerTaskExecutorService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
@@ -69,7 +70,7 @@ public class HungWorkerAnalyzer
 
     @Deprecated private Integer numberPermittedErrantByFname;
 
-    private ThreadPoolExecutor portletThreadPool;
+    private ExecutorService portletThreadPool;
 
     private double percentPermittedErrantByFname = .1;
 
@@ -94,8 +95,8 @@ public class HungWorkerAnalyzer
     @Autowired
     public void setPortletThreadPool(
             @Qualifier("portletThreadPool") ExecutorService portletThreadPool) {
-        //Note this is injected as a ExecutorService then cast due to the original object being created by a FactoryBean that declares itself as an ExecutorService
-        this.portletThreadPool = (ThreadPoolExecutor) portletThreadPool;
+        //Injected as an ExecutorService, pool size and active count come from the concrete type
+        this.portletThreadPool = portletThreadPool;
     }
 
     @Override
@@ -116,7 +117,7 @@ public class HungWorkerAnalyzer
             } else if (numberPermittedErrantByFname > 0) {
                 this.percentPermittedErrantByFname =
                         ((double) numberPermittedErrantByFname)
-                                / this.portletThreadPool.getMaximumPoolSize();
+                                / this.getMaximumPoolSize();
             }
         }
     }
@@ -158,9 +159,23 @@ public class HungWorkerAnalyzer
         this.hungPortletCountTotal.decrementAndGet();
     }
 
+    private int getMaximumPoolSize() {
+        if (this.portletThreadPool instanceof ThreadPerTaskExecutorService) {
+            return ((ThreadPerTaskExecutorService) this.portletThreadPool).getMaximumPoolSize();
+        }
+        return ((ThreadPoolExecutor) this.portletThreadPool).getMaximumPoolSize();
+    }
+
+    private int getActiveCount() {
+        if (this.portletThreadPool instanceof ThreadPerTaskExecutorService) {
+            return ((ThreadPerTaskExecutorService) this.portletThreadPool).getActiveCount();
+        }
+        return ((ThreadPoolExecutor) this.portletThreadPool).getActiveCount();
+    }
+
     private void logState(final String portletFname, final int hungWorkerCount) {
-        final int maximumPoolSize = this.portletThreadPool.getMaximumPoolSize();
-        final int availableWorkers = maximumPoolSize - this.portletThreadPool.getActiveCount();
+        final int maximumPoolSize = this.getMaximumPoolSize();
+        final int availableWorkers = maximumPoolSize - this.getActiveCount();
         final double hungWorkerLimit = this.percentPermittedErrantByFname * availableWorkers;
 
         final String msg =
@@ -205,8 +220,8 @@ public class HungWorkerAnalyzer
             return;
         }
 
-        final int maximumPoolSize = this.portletThreadPool.getMaximumPoolSize();
-        final int availableWorkers = maximumPoolSize - this.portletThreadPool.getActiveCount();
+        final int maximumPoolSize = this.getMaximumPoolSize();
+        final int availableWorkers = maximumPoolSize - this.getActiveCount();
         final double hungWorkerLimit = this.percentPermittedErrantByFname * availableWorkers;
         if (hungWorkers < Math.ceil(hungWorkerLimit)) {
             //Number of hung workers is less than the calculated hung worker limit
@@ -0,0 +1,435 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.rendering.worker;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apereo.portal.events.PortalEvent;
+import org.apereo.portal.events.PortletHungEvent;
+import org.apereo.portal.portlet.om.IPortletDefinition;
+import org.apereo.portal.portlet.om.IPortletDefinitionId;
+import org.apereo.portal.portlet.om.IPortletWindow;
+import org.apereo.portal.portlet.registry.IPortletWindowRegistry;
+import org.apereo.portal.portlet.rendering.worker.IPortletExecutionContext.ExecutionType;
+import org.apereo.portal.utils.ConcurrentMapUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Limits the number of concurrent executions of each portlet definition (bulkhead) and stops
+ * executing a portlet that keeps timing out or failing (circuit breaker). Both reject the execution
+ * before it is submitted to the portlet thread pool so a portlet with a broken backend renders its
+ * failure content right away instead of tying up another worker thread until its timeout.
+ *
+ * <p>A circuit opens after {@link #getFailureThreshold()} consecutive timeouts or errors. Once
+ * {@link #getOpenDuration()} has passed a single probe execution is let through, if it succeeds
+ * the circuit closes again and if it fails the circuit stays open for another period. An execution
+ * the portlet thread pool rejects counts as a failure, it never ran so it can't prove the portlet
+ * works again.
+ */
+@ManagedResource("uPortal:section=Framework,name=PortletCircuitBreaker")
+@Service("portletCircuitBreaker")
+public class PortletCircuitBreaker
+        implements ApplicationListener<PortalEvent>,
+                IPortletExecutionInterceptor,
+                PortletCircuitBreakerMXBean {
+    private static final String EXECUTION_STATE_ATTRIBUTE =
+            PortletCircuitBreaker.class.getName() + ".EXECUTION_STATE";
+    private static final String HUNG_ATTRIBUTE = PortletCircuitBreaker.class.getName() + ".HUNG";
+
+    public enum CircuitState {
+        CLOSED,
+        OPEN,
+        HALF_OPEN;
+    }
+
+    protected final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final ConcurrentMap<IPortletDefinitionId, PortletExecutionState> executionStates =
+            new ConcurrentHashMap<IPortletDefinitionId, PortletExecutionState>();
+    private final AtomicLong rejectedExecutionsTotal = new AtomicLong();
+
+    private IPortletWindowRegistry portletWindowRegistry;
+    private volatile int maxConcurrentExecutions = 0;
+    private volatile int failureThreshold = 10;
+    private volatile long openDuration = 30000;
+
+    @Autowired
+    public void setPortletWindowRegistry(IPortletWindowRegistry portletWindowRegistry) {
+        this.portletWindowRegistry = portletWindowRegistry;
+    }
+
+    @Value("${org.apereo.portal.portlet.bulkhead.maxConcurrentExecutions:0}")
+    @Override
+    public void setMaxConcurrentExecutions(int maxConcurrentExecutions) {
+        this.maxConcurrentExecutions = maxConcurrentExecutions;
+    }
+
+    @Override
+    public int getMaxConcurrentExecutions() {
+        return this.maxConcurrentExecutions;
+    }
+
+    @Value("${org.apereo.portal.portlet.circuitBreaker.failureThreshold:10}")
+    @Override
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    @Override
+    public int getFailureThreshold() {
+        return this.failureThreshold;
+    }
+
+    @Value("${org.apereo.portal.portlet.circuitBreaker.openDuration:30000}")
+    @Override
+    public void setOpenDuration(long openDuration) {
+        this.openDuration = openDuration;
+    }
+
+    @Override
+    public long getOpenDuration() {
+        return this.openDuration;
+    }
+
+    @Override
+    public Map<String, String> getCircuitStates() {
+        final Map<String, String> states = new TreeMap<String, String>();
+        for (final PortletExecutionState executionState : this.executionStates.values()) {
+            states.put(executionState.fname, executionState.getCircuitState().name());
+        }
+        return states;
+    }
+
+    @Override
+    public Map<String, Integer> getActiveExecutions() {
+        final Map<String, Integer> counts = new TreeMap<String, Integer>();
+        for (final PortletExecutionState executionState : this.executionStates.values()) {
+            counts.put(executionState.fname, executionState.activeExecutions.get());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Integer> getConsecutiveFailures() {
+        final Map<String, Integer> counts = new TreeMap<String, Integer>();
+        for (final PortletExecutionState executionState : this.executionStates.values()) {
+            counts.put(executionState.fname, executionState.getConsecutiveFailures());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getRejectedExecutions() {
+        final Map<String, Long> counts = new TreeMap<String, Long>();
+        for (final PortletExecutionState executionState : this.executionStates.values()) {
+            counts.put(executionState.fname, executionState.rejectedExecutions.get());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getCircuitOpenCounts() {
+        final Map<String, Long> counts = new TreeMap<String, Long>();
+        for (final PortletExecutionState executionState : this.executionStates.values()) {
+            counts.put(executionState.fname, executionState.circuitOpenCount.get());
+        }
+        return counts;
+    }
+
+    @Override
+    public long getRejectedExecutionsTotal() {
+        return this.rejectedExecutionsTotal.get();
+    }
+
+    @Override
+    public int getOpenCircuitCount() {
+        int count = 0;
+        for (final PortletExecutionState executionState : this.executionStates.values()) {
+            if (executionState.getCircuitState() != CircuitState.CLOSED) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public boolean closeCircuit(String fname) {
+        boolean found = false;
+        for (final PortletExecutionState executionState : this.executionStates.values()) {
+            if (executionState.fname.equals(fname)) {
+                executionState.close();
+                found = true;
+            }
+        }
+        if (found) {
+            logger.info("Circuit for portlet '{}' closed via JMX", fname);
+        }
+        return found;
+    }
+
+    /** @return The circuit state for the portlet definition */
+    public CircuitState getCircuitState(IPortletDefinitionId portletDefinitionId) {
+        final PortletExecutionState executionState =
+                this.executionStates.get(portletDefinitionId);
+        return executionState == null ? CircuitState.CLOSED : executionState.getCircuitState();
+    }
+
+    @Override
+    public void onApplicationEvent(PortalEvent event) {
+        if (event instanceof PortletHungEvent) {
+            final IPortletExecutionWorker<?> worker = ((PortletHungEvent) event).getWorker();
+            if (worker == null) {
+                return;
+            }
+
+            final PortletExecutionState executionState =
+                    (PortletExecutionState) worker.getExecutionAttribute(EXECUTION_STATE_ATTRIBUTE);
+            //Only count a hung worker once, its eventual completion is ignored as well
+            if (executionState != null
+                    && worker.setExecutionAttribute(HUNG_ATTRIBUTE, Boolean.TRUE) == null) {
+                this.recordFailure(executionState, worker, "hung");
+            }
+        }
+    }
+
+    @Override
+    public void preSubmit(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            IPortletExecutionContext context) {
+        if (context.getExecutionType() == ExecutionType.FAILURE) {
+            //Always let the failure content render
+            return;
+        }
+
+        final PortletExecutionState executionState = this.getExecutionState(request, context);
+
+        final int maxConcurrent = this.maxConcurrentExecutions;
+        final int active = executionState.activeExecutions.incrementAndGet();
+        if (maxConcurrent > 0 && active > maxConcurrent) {
+            executionState.activeExecutions.decrementAndGet();
+            this.reject(
+                    executionState,
+                    context,
+                    "it has "
+                            + (active - 1)
+                            + " executions running with a limit of "
+                            + maxConcurrent);
+        }
+
+        if (!executionState.tryAcquire(this.openDuration)) {
+            executionState.activeExecutions.decrementAndGet();
+            this.reject(
+                    executionState,
+                    context,
+                    "its circuit is " + executionState.getCircuitState() + " after failures");
+        }
+
+        context.setExecutionAttribute(EXECUTION_STATE_ATTRIBUTE, executionState);
+    }
+
+    @Override
+    public void preExecution(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            IPortletExecutionContext context) {}
+
+    @Override
+    public void postExecution(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            IPortletExecutionContext context,
+            Exception e) {
+        //Removing the state also keeps a later hung event from counting this execution
+        final PortletExecutionState executionState =
+                (PortletExecutionState)
+                        context.setExecutionAttribute(EXECUTION_STATE_ATTRIBUTE, null);
+        if (executionState == null) {
+            //Not admitted by this interceptor
+            return;
+        }
+
+        executionState.activeExecutions.decrementAndGet();
+
+        if (context.getExecutionAttribute(HUNG_ATTRIBUTE) != null) {
+            //Already counted as a failure when it was reported hung
+            return;
+        }
+
+        final long timeout = context.getApplicableTimeout();
+        if (e instanceof RejectedExecutionException) {
+            //Never ran, it must not close a half open circuit
+            this.recordFailure(executionState, context, "was rejected by the thread pool");
+        } else if (e != null) {
+            this.recordFailure(executionState, context, "failed");
+        } else if (timeout > 0 && context.getDuration() > timeout) {
+            this.recordFailure(executionState, context, "timed out");
+        } else if (executionState.recordSuccess()) {
+            logger.info(
+                    "Circuit for portlet '{}' closed after successful probe", executionState.fname);
+        }
+    }
+
+    protected PortletExecutionState getExecutionState(
+            HttpServletRequest request, IPortletExecutionContext context) {
+        final IPortletWindow portletWindow =
+                this.portletWindowRegistry.getPortletWindow(request, context.getPortletWindowId());
+        final IPortletDefinition portletDefinition =
+                portletWindow.getPortletEntity().getPortletDefinition();
+        final IPortletDefinitionId portletDefinitionId = portletDefinition.getPortletDefinitionId();
+
+        final PortletExecutionState executionState =
+                this.executionStates.get(portletDefinitionId);
+        if (executionState != null) {
+            return executionState;
+        }
+
+        return ConcurrentMapUtils.putIfAbsent(
+                this.executionStates,
+                portletDefinitionId,
+                new PortletExecutionState(portletDefinition.getFName()));
+    }
+
+    private void recordFailure(
+            PortletExecutionState executionState, IPortletExecutionContext context, String cause) {
+        final int threshold = this.failureThreshold;
+        if (executionState.recordFailure(threshold)) {
+            logger.warn(
+                    "Circuit for portlet '{}' opened for {}ms, last execution {}: {}",
+                    executionState.fname,
+                    this.openDuration,
+                    cause,
+                    context);
+        } else {
+            logger.debug(
+                    "Execution {} for portlet '{}', {} consecutive failures with a threshold of {}",
+                    cause,
+                    executionState.fname,
+                    executionState.getConsecutiveFailures(),
+                    threshold);
+        }
+    }
+
+    private void reject(
+            PortletExecutionState executionState,
+            IPortletExecutionContext context,
+            String reason) {
+        executionState.rejectedExecutions.incrementAndGet();
+        this.rejectedExecutionsTotal.incrementAndGet();
+
+        final String msg =
+                "Denying "
+                        + context.getExecutionType()
+                        + " execution for "
+                        + executionState.fname
+                        + " because "
+                        + reason;
+        logger.info(msg);
+        throw new IllegalStateException(msg);
+    }
+
+    /** Bulkhead and circuit state for a single portlet definition */
+    static final class PortletExecutionState {
+        private final String fname;
+        private final AtomicInteger activeExecutions = new AtomicInteger();
+        private final AtomicLong rejectedExecutions = new AtomicLong();
+        private final AtomicLong circuitOpenCount = new AtomicLong();
+
+        //Guarded by this
+        private CircuitState circuitState = CircuitState.CLOSED;
+        private int consecutiveFailures = 0;
+        private long openedTime = 0;
+        private boolean probeRunning = false;
+
+        PortletExecutionState(String fname) {
+            this.fname = fname;
+        }
+
+        synchronized CircuitState getCircuitState() {
+            return this.circuitState;
+        }
+
+        synchronized int getConsecutiveFailures() {
+            return this.consecutiveFailures;
+        }
+
+        /** @return true if an execution may run, moves an expired open circuit to half open */
+        synchronized boolean tryAcquire(long openDuration) {
+            switch (this.circuitState) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (System.currentTimeMillis() - this.openedTime < openDuration) {
+                        return false;
+                    }
+                    this.circuitState = CircuitState.HALF_OPEN;
+                    this.probeRunning = true;
+                    return true;
+                default:
+                    //Only one probe at a time while half open
+                    if (this.probeRunning) {
+                        return false;
+                    }
+                    this.probeRunning = true;
+                    return true;
+            }
+        }
+
+        /** @return true if this success closed the circuit */
+        synchronized boolean recordSuccess() {
+            this.consecutiveFailures = 0;
+            if (this.circuitState == CircuitState.HALF_OPEN) {
+                this.close();
+                return true;
+            }
+            return false;
+        }
+
+        /** @return true if this failure opened the circuit */
+        synchronized boolean recordFailure(int failureThreshold) {
+            this.consecutiveFailures++;
+            if (this.circuitState == CircuitState.HALF_OPEN
+                    || (this.circuitState == CircuitState.CLOSED
+                            && failureThreshold > 0
+                            && this.consecutiveFailures >= failureThreshold)) {
+                this.circuitState = CircuitState.OPEN;
+                this.openedTime = System.currentTimeMillis();
+                this.probeRunning = false;
+                this.circuitOpenCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void close() {
+            this.circuitState = CircuitState.CLOSED;
+            this.consecutiveFailures = 0;
+            this.probeRunning = false;
+        }
+    }
+}
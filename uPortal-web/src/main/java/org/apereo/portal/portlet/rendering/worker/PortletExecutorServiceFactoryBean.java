@@ -0,0 +1,122 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.rendering.worker;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import org.apereo.portal.utils.threading.ThreadPerTaskExecutorService;
+import org.springframework.beans.factory.config.AbstractFactoryBean;
+
+/**
+ * Creates the {@link ExecutorService} that portlet execution workers are submitted to. Depending on
+ * the configured {@link ExecutionStrategy} workers either run on the configured platform thread
+ * pool or each on their own virtual thread.
+ *
+ * <p>Virtual threads require a Java 21 or later runtime. They are looked up via reflection so the
+ * portal still builds and runs on older JVMs, where the platform thread pool is used instead.
+ */
+public class PortletExecutorServiceFactoryBean extends AbstractFactoryBean<ExecutorService> {
+    public enum ExecutionStrategy {
+        /** Run portlet executions on the platform thread pool */
+        THREAD_POOL,
+        /** Run each portlet execution on a new virtual thread */
+        VIRTUAL_THREAD;
+    }
+
+    private ExecutionStrategy executionStrategy = ExecutionStrategy.THREAD_POOL;
+    private ExecutorService threadPool;
+    private String threadNamePrefix = "uP-PortletExecV-";
+    private int maxConcurrentExecutions = 1000;
+
+    public void setExecutionStrategy(ExecutionStrategy executionStrategy) {
+        this.executionStrategy = executionStrategy;
+    }
+
+    /** Platform thread pool used by {@link ExecutionStrategy#THREAD_POOL} and as the fallback */
+    public void setThreadPool(ExecutorService threadPool) {
+        this.threadPool = threadPool;
+    }
+
+    /** Prefix for the names of virtual threads, defaults to uP-PortletExecV- */
+    public void setThreadNamePrefix(String threadNamePrefix) {
+        this.threadNamePrefix = threadNamePrefix;
+    }
+
+    /**
+     * Maximum number of portlet executions that may run on virtual threads at the same time,
+     * further executions are rejected. Defaults to 1000
+     */
+    public void setMaxConcurrentExecutions(int maxConcurrentExecutions) {
+        this.maxConcurrentExecutions = maxConcurrentExecutions;
+    }
+
+    @Override
+    public Class<?> getObjectType() {
+        return ExecutorService.class;
+    }
+
+    @Override
+    protected ExecutorService createInstance() throws Exception {
+        if (this.threadPool == null) {
+            throw new IllegalStateException("threadPool must be set");
+        }
+
+        if (this.executionStrategy == ExecutionStrategy.VIRTUAL_THREAD) {
+            final ThreadFactory threadFactory = createVirtualThreadFactory(this.threadNamePrefix);
+            if (threadFactory != null) {
+                logger.info(
+                        "Portlet executions will run on virtual threads with a limit of "
+                                + this.maxConcurrentExecutions
+                                + " concurrent executions");
+                return new ThreadPerTaskExecutorService(
+                        threadFactory, this.maxConcurrentExecutions);
+            }
+
+            logger.warn(
+                    "Virtual threads are not supported by this JVM ("
+                            + System.getProperty("java.version")
+                            + "), portlet executions will run on the platform thread pool");
+        }
+
+        return this.threadPool;
+    }
+
+    @Override
+    protected void destroyInstance(ExecutorService instance) throws Exception {
+        //The platform thread pool is shut down by the bean that created it
+        if (instance != this.threadPool) {
+            instance.shutdownNow();
+        }
+    }
+
+    /**
+     * Calls {@code Thread.ofVirtual().name(threadNamePrefix, 0).factory()}
+     *
+     * @return A factory for virtual threads, null if the JVM does not support them
+     */
+    static ThreadFactory createVirtualThreadFactory(String threadNamePrefix) {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            final Method nameMethod = builderType.getMethod("name", String.class, long.class);
+            final Object namedBuilder = nameMethod.invoke(builder, threadNamePrefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(namedBuilder);
+        } catch (ReflectiveOperationException e) {
+            //Older JVM or virtual threads are a disabled preview feature
+            return null;
+        }
+    }
+}
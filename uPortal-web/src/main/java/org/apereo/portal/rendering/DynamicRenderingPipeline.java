@@ -15,7 +15,7 @@
 package org.apereo.portal.rendering;
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -30,17 +30,35 @@ import org.apereo.portal.url.IUrlSyntaxProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedResource;
 
-/** Top level class that initiates rendering via a {@link CharacterPipelineComponent} */
-public class DynamicRenderingPipeline implements IPortalRenderingPipeline {
+/**
+ * Top level class that initiates rendering via a {@link CharacterPipelineComponent}. Output is
+ * coalesced in a {@link PipelineOutputBuffer} and flushed when the buffer fills, when the flush
+ * delay passes, after the end of the HEAD element and before the pipeline waits on a portlet that
+ * has not completed rendering.
+ */
+@ManagedResource("uPortal:section=Rendering,name=DynamicRenderingPipeline")
+public class DynamicRenderingPipeline
+        implements IPortalRenderingPipeline, DynamicRenderingPipelineMXBean {
     public static final String CHARACTER_SET = "UTF-8";
     public static final String DEFAULT_MEDIA_TYPE = "text/html";
 
+    private static final String HEAD_END_TAG = "</head>";
+
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
+    private final AtomicLong renderCount = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+
     private CharacterPipelineComponent pipeline;
     private IPortletExecutionEventFactory portalEventFactory;
     private IUrlSyntaxProvider urlSyntaxProvider;
+    private volatile int flushBufferSize = 8192;
+    private volatile long maxFlushDelay = 250;
+    private volatile boolean flushAfterHead = true;
 
     @Autowired
     public void setUrlSyntaxProvider(IUrlSyntaxProvider urlSyntaxProvider) {
@@ -60,6 +78,78 @@ public class DynamicRenderingPipeline implements IPortalRenderingPipeline {
         this.pipeline = pipeline;
     }
 
+    /**
+     * @param flushBufferSize Number of characters buffered before the output is flushed, 0 flushes
+     *     after every event. Defaults to 8192
+     */
+    @Override
+    @Value("${org.apereo.portal.rendering.flushBufferSize:8192}")
+    public void setFlushBufferSize(int flushBufferSize) {
+        this.flushBufferSize = flushBufferSize;
+    }
+
+    @Override
+    public int getFlushBufferSize() {
+        return this.flushBufferSize;
+    }
+
+    /**
+     * @param maxFlushDelay Maximum time in ms that buffered output is held, checked as each event
+     *     is written. Defaults to 250
+     */
+    @Override
+    @Value("${org.apereo.portal.rendering.maxFlushDelay:250}")
+    public void setMaxFlushDelay(long maxFlushDelay) {
+        this.maxFlushDelay = maxFlushDelay;
+    }
+
+    @Override
+    public long getMaxFlushDelay() {
+        return this.maxFlushDelay;
+    }
+
+    /**
+     * @param flushAfterHead If the output is flushed once the end of the HEAD element has been
+     *     rendered, letting the browser start fetching page resources. Defaults to true
+     */
+    @Override
+    @Value("${org.apereo.portal.rendering.flushAfterHead:true}")
+    public void setFlushAfterHead(boolean flushAfterHead) {
+        this.flushAfterHead = flushAfterHead;
+    }
+
+    @Override
+    public boolean isFlushAfterHead() {
+        return this.flushAfterHead;
+    }
+
+    @Override
+    public long getRenderCount() {
+        return this.renderCount.get();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return this.bytesWritten.get();
+    }
+
+    @Override
+    public long getFlushCount() {
+        return this.flushCount.get();
+    }
+
+    @Override
+    public double getAverageBytesPerRender() {
+        final long renders = this.renderCount.get();
+        return renders == 0 ? 0 : (double) this.bytesWritten.get() / renders;
+    }
+
+    @Override
+    public double getAverageFlushesPerRender() {
+        final long renders = this.renderCount.get();
+        return renders == 0 ? 0 : (double) this.flushCount.get() / renders;
+    }
+
     @Override
     public void renderState(HttpServletRequest req, HttpServletResponse res)
             throws ServletException, IOException {
@@ -78,22 +168,43 @@ public class DynamicRenderingPipeline implements IPortalRenderingPipeline {
         final String contentType = mediaType + "; charset=" + CHARACTER_SET;
         res.setContentType(contentType);
 
-        final PrintWriter writer = res.getWriter();
-
-        for (final CharacterEvent event : pipelineEventReader) {
-            if (CharacterEventTypes.CHARACTER != event.getEventType()) {
-                throw new RenderingPipelineConfigurationException(
-                        "Only "
-                                + CharacterEventTypes.CHARACTER
-                                + " events are supported in the top level renderer. "
-                                + event.getEventType()
-                                + " is not supported.");
+        final PipelineOutputBuffer outputBuffer =
+                new PipelineOutputBuffer(res, this.flushBufferSize, this.maxFlushDelay);
+        PipelineOutputBuffer.bind(req, outputBuffer);
+        try {
+            boolean headFlushed = !this.flushAfterHead;
+            for (final CharacterEvent event : pipelineEventReader) {
+                if (CharacterEventTypes.CHARACTER != event.getEventType()) {
+                    throw new RenderingPipelineConfigurationException(
+                            "Only "
+                                    + CharacterEventTypes.CHARACTER
+                                    + " events are supported in the top level renderer. "
+                                    + event.getEventType()
+                                    + " is not supported.");
+                }
+
+                final String data = ((CharacterDataEvent) event).getData();
+                outputBuffer.write(data);
+
+                if (!headFlushed && data.contains(HEAD_END_TAG)) {
+                    //Send the HEAD so the browser can start loading page resources
+                    outputBuffer.flush();
+                    headFlushed = true;
+                }
             }
 
-            final String data = ((CharacterDataEvent) event).getData();
-            writer.print(data);
-            writer.flush();
-            res.flushBuffer();
+            outputBuffer.flush();
+        } finally {
+            PipelineOutputBuffer.unbind(req);
+
+            this.renderCount.incrementAndGet();
+            this.bytesWritten.addAndGet(outputBuffer.getBytesWritten());
+            this.flushCount.addAndGet(outputBuffer.getFlushCount());
+            this.logger.debug(
+                    "Wrote {} bytes in {} flushes for {}",
+                    outputBuffer.getBytesWritten(),
+                    outputBuffer.getFlushCount(),
+                    req.getRequestURI());
         }
 
         final long executionTime = System.nanoTime() - startTime;
@@ -0,0 +1,253 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.rendering.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apereo.portal.portlet.om.IPortletDefinition;
+import org.apereo.portal.portlet.om.IPortletDefinitionId;
+import org.apereo.portal.portlet.om.IPortletEntity;
+import org.apereo.portal.portlet.om.IPortletWindow;
+import org.apereo.portal.portlet.om.IPortletWindowId;
+import org.apereo.portal.portlet.registry.IPortletWindowRegistry;
+import org.apereo.portal.portlet.rendering.worker.IPortletExecutionContext.ExecutionType;
+import org.apereo.portal.portlet.rendering.worker.PortletCircuitBreaker.CircuitState;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class PortletCircuitBreakerTest {
+    private final HttpServletRequest request = new MockHttpServletRequest();
+    private final HttpServletResponse response = new MockHttpServletResponse();
+    private final IPortletWindowId portletWindowId = mock(IPortletWindowId.class);
+    private final IPortletDefinitionId portletDefinitionId = mock(IPortletDefinitionId.class);
+    private final IPortletWindow portletWindow = mock(IPortletWindow.class);
+    private final IPortletWindowRegistry portletWindowRegistry = mock(IPortletWindowRegistry.class);
+    private PortletCircuitBreaker circuitBreaker;
+
+    @Before
+    public void setup() {
+        final IPortletDefinition portletDefinition = mock(IPortletDefinition.class);
+        when(portletDefinition.getPortletDefinitionId()).thenReturn(portletDefinitionId);
+        when(portletDefinition.getFName()).thenReturn("weather");
+        final IPortletEntity portletEntity = mock(IPortletEntity.class);
+        when(portletEntity.getPortletDefinition()).thenReturn(portletDefinition);
+        when(portletWindow.getPortletEntity()).thenReturn(portletEntity);
+        when(portletWindowRegistry.getPortletWindow(request, portletWindowId))
+                .thenReturn(portletWindow);
+
+        this.circuitBreaker = new PortletCircuitBreaker();
+        this.circuitBreaker.setPortletWindowRegistry(portletWindowRegistry);
+        this.circuitBreaker.setFailureThreshold(2);
+        this.circuitBreaker.setOpenDuration(60000);
+    }
+
+    @Test
+    public void testBulkheadLimitsConcurrentExecutions() {
+        this.circuitBreaker.setMaxConcurrentExecutions(1);
+
+        final IPortletExecutionContext first = createContext(ExecutionType.RENDER);
+        this.circuitBreaker.preSubmit(request, response, first);
+        assertRejected(createContext(ExecutionType.RENDER));
+        assertEquals(Integer.valueOf(1), this.circuitBreaker.getActiveExecutions().get("weather"));
+
+        this.circuitBreaker.postExecution(request, response, first, null);
+        this.circuitBreaker.preSubmit(request, response, createContext(ExecutionType.RENDER));
+        assertEquals(1, this.circuitBreaker.getRejectedExecutionsTotal());
+    }
+
+    @Test
+    public void testCircuitOpensAfterFailures() {
+        execute(new Exception("backend down"));
+        assertEquals(CircuitState.CLOSED, this.circuitBreaker.getCircuitState(portletDefinitionId));
+        execute(new Exception("backend down"));
+        assertEquals(CircuitState.OPEN, this.circuitBreaker.getCircuitState(portletDefinitionId));
+
+        assertRejected(createContext(ExecutionType.RENDER));
+        assertEquals(1, this.circuitBreaker.getOpenCircuitCount());
+        assertEquals(Long.valueOf(1), this.circuitBreaker.getCircuitOpenCounts().get("weather"));
+
+        //Failure content still renders while the circuit is open
+        final IPortletExecutionContext failure = createContext(ExecutionType.FAILURE);
+        this.circuitBreaker.preSubmit(request, response, failure);
+        this.circuitBreaker.postExecution(request, response, failure, null);
+    }
+
+    @Test
+    public void testSuccessResetsFailures() {
+        execute(new Exception("backend down"));
+        execute(null);
+        execute(new Exception("backend down"));
+        assertEquals(CircuitState.CLOSED, this.circuitBreaker.getCircuitState(portletDefinitionId));
+    }
+
+    @Test
+    public void testProbeAfterOpenDuration() {
+        execute(new Exception("backend down"));
+        execute(new Exception("backend down"));
+        this.circuitBreaker.setOpenDuration(0);
+
+        //Only one probe while half open
+        final IPortletExecutionContext probe = createContext(ExecutionType.RENDER);
+        this.circuitBreaker.preSubmit(request, response, probe);
+        assertEquals(
+                CircuitState.HALF_OPEN, this.circuitBreaker.getCircuitState(portletDefinitionId));
+        assertRejected(createContext(ExecutionType.RENDER));
+
+        //Failed probe opens the circuit again
+        this.circuitBreaker.postExecution(request, response, probe, new Exception("still down"));
+        assertEquals(CircuitState.OPEN, this.circuitBreaker.getCircuitState(portletDefinitionId));
+
+        //Successful probe closes it
+        execute(null);
+        assertEquals(CircuitState.CLOSED, this.circuitBreaker.getCircuitState(portletDefinitionId));
+    }
+
+    @Test
+    public void testRejectedProbeKeepsCircuitOpen() throws Exception {
+        execute(new Exception("backend down"));
+        execute(new Exception("backend down"));
+        this.circuitBreaker.setOpenDuration(0);
+
+        //The worker wraps the request it passes to the interceptors
+        when(portletWindowRegistry.getPortletWindow(
+                        any(HttpServletRequest.class), eq(portletWindowId)))
+                .thenReturn(portletWindow);
+        when(portletWindow.getPortletWindowId()).thenReturn(portletWindowId);
+        final ExecutorService executorService = mock(ExecutorService.class);
+        when(executorService.submit(any(Callable.class)))
+                .thenThrow(new RejectedExecutionException("Portlet thread pool is full"));
+
+        final PortletExecutionWorker<Object> probe =
+                new PortletExecutionWorker<Object>(
+                        executorService,
+                        Collections.<IPortletExecutionInterceptor>singletonList(
+                                this.circuitBreaker),
+                        null,
+                        request,
+                        response,
+                        portletWindow,
+                        1000) {
+                    @Override
+                    public ExecutionType getExecutionType() {
+                        return ExecutionType.RENDER;
+                    }
+
+                    @Override
+                    protected Object callInternal() throws Exception {
+                        throw new AssertionError("A rejected execution must not run");
+                    }
+                };
+
+        //The probe is admitted while half open but never runs
+        probe.submit();
+        assertEquals(CircuitState.OPEN, this.circuitBreaker.getCircuitState(portletDefinitionId));
+        assertEquals(
+                Integer.valueOf(0), this.circuitBreaker.getActiveExecutions().get("weather"));
+
+        try {
+            probe.get(1000);
+            fail("Expected the rejected execution to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    @Test
+    public void testSlowExecutionCountsAsFailure() {
+        final IPortletExecutionContext slow = createContext(ExecutionType.RENDER);
+        when(slow.getApplicableTimeout()).thenReturn(100L);
+        when(slow.getDuration()).thenReturn(500L);
+
+        this.circuitBreaker.preSubmit(request, response, slow);
+        this.circuitBreaker.postExecution(request, response, slow, null);
+
+        assertEquals(
+                Integer.valueOf(1), this.circuitBreaker.getConsecutiveFailures().get("weather"));
+    }
+
+    @Test
+    public void testCloseCircuit() {
+        execute(new Exception("backend down"));
+        execute(new Exception("backend down"));
+
+        assertEquals(true, this.circuitBreaker.closeCircuit("weather"));
+        assertEquals(false, this.circuitBreaker.closeCircuit("news"));
+        this.circuitBreaker.preSubmit(request, response, createContext(ExecutionType.RENDER));
+    }
+
+    private void execute(Exception e) {
+        final IPortletExecutionContext context = createContext(ExecutionType.RENDER);
+        this.circuitBreaker.preSubmit(request, response, context);
+        this.circuitBreaker.postExecution(request, response, context, e);
+    }
+
+    private void assertRejected(IPortletExecutionContext context) {
+        try {
+            this.circuitBreaker.preSubmit(request, response, context);
+            fail("Expected execution to be rejected");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+    }
+
+    private IPortletExecutionContext createContext(ExecutionType executionType) {
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+        final IPortletExecutionContext context = mock(IPortletExecutionContext.class);
+        when(context.getExecutionType()).thenReturn(executionType);
+        when(context.getPortletWindowId()).thenReturn(portletWindowId);
+        when(context.getApplicableTimeout()).thenReturn(-1L);
+        when(context.setExecutionAttribute(anyString(), any()))
+                .thenAnswer(
+                        new Answer<Object>() {
+                            @Override
+                            public Object answer(InvocationOnMock invocation) {
+                                final String name = (String) invocation.getArguments()[0];
+                                final Object value = invocation.getArguments()[1];
+                                return value == null
+                                        ? attributes.remove(name)
+                                        : attributes.put(name, value);
+                            }
+                        });
+        when(context.getExecutionAttribute(anyString()))
+                .thenAnswer(
+                        new Answer<Object>() {
+                            @Override
+                            public Object answer(InvocationOnMock invocation) {
+                                return attributes.get(invocation.getArguments()[0]);
+                            }
+                        });
+        return context;
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.rendering.worker;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apereo.portal.utils.threading.ThreadPerTaskExecutorService;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Load benchmark comparing the portlet execution strategies. Submits a burst of concurrent renders
+ * that each block for a fixed time, simulating portlets waiting on a slow backend, and reports
+ * rejections, wall clock time and render latency for each strategy.
+ *
+ * <p>Not run as part of the build, run the main method by hand on a Java 21 or later JVM. The
+ * optional arguments are the number of concurrent renders (default 1000), the time each render
+ * blocks in ms (default 200) and the maximum platform pool size (default 150, the shipped value of
+ * org.apereo.portal.portlet.worker.threadPool.maxThreads).
+ */
+public class PortletExecutorServiceBenchmark {
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        final int renders = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        final long blockMillis = args.length > 1 ? Long.parseLong(args[1]) : 200;
+        final int maxPoolSize = args.length > 2 ? Integer.parseInt(args[2]) : 150;
+
+        System.out.println(
+                "Benchmarking "
+                        + renders
+                        + " concurrent renders blocking "
+                        + blockMillis
+                        + "ms on Java "
+                        + System.getProperty("java.version"));
+
+        run("platform pool (" + maxPoolSize + ")", renders, blockMillis, maxPoolSize, false);
+        run("platform pool (" + renders + ")", renders, blockMillis, renders, false);
+
+        if (PortletExecutorServiceFactoryBean.createVirtualThreadFactory("bench-") == null) {
+            System.out.println("Virtual threads are not supported by this JVM, skipping");
+            return;
+        }
+        run("virtual threads", renders, blockMillis, renders, true);
+    }
+
+    private static void run(
+            String name, int renders, long blockMillis, int maxPoolSize, boolean virtual)
+            throws Exception {
+        //First round warms up the JIT and is not reported
+        for (int round = 0; round <= ROUNDS; round++) {
+            final ExecutorService executorService = createExecutorService(maxPoolSize, virtual);
+            try {
+                final Result result = runRound(executorService, renders, blockMillis);
+                if (round > 0) {
+                    System.out.println(name + " round " + round + ": " + result);
+                }
+            } finally {
+                executorService.shutdownNow();
+                executorService.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        }
+    }
+
+    private static ExecutorService createExecutorService(int maxPoolSize, boolean virtual) {
+        if (virtual) {
+            final ThreadFactory threadFactory =
+                    PortletExecutorServiceFactoryBean.createVirtualThreadFactory("bench-");
+            return new ThreadPerTaskExecutorService(threadFactory, maxPoolSize);
+        }
+
+        //Same shape as the portletThreadPool bean, no queue and abort on saturation
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("bench-");
+        threadFactory.setDaemon(true);
+        final ThreadPoolExecutor threadPool =
+                new ThreadPoolExecutor(
+                        Math.min(5, maxPoolSize),
+                        maxPoolSize,
+                        300,
+                        TimeUnit.SECONDS,
+                        new SynchronousQueue<Runnable>(),
+                        threadFactory,
+                        new ThreadPoolExecutor.AbortPolicy());
+        threadPool.allowCoreThreadTimeOut(true);
+        return threadPool;
+    }
+
+    private static Result runRound(
+            ExecutorService executorService, int renders, final long blockMillis)
+            throws InterruptedException {
+        final long[] latencies = new long[renders];
+        final AtomicInteger completed = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(renders);
+        int rejected = 0;
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < renders; i++) {
+            final long submitted = System.nanoTime();
+            try {
+                executorService.execute(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    Thread.sleep(blockMillis);
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                }
+                                latencies[completed.getAndIncrement()] =
+                                        System.nanoTime() - submitted;
+                                done.countDown();
+                            }
+                        });
+            } catch (RejectedExecutionException e) {
+                rejected++;
+                done.countDown();
+            }
+        }
+        done.await();
+        final long elapsed = System.nanoTime() - start;
+
+        final long[] sorted = Arrays.copyOf(latencies, completed.get());
+        Arrays.sort(sorted);
+        return new Result(sorted, rejected, elapsed);
+    }
+
+    private static final class Result {
+        private final long[] latencies;
+        private final int rejected;
+        private final long elapsed;
+
+        private Result(long[] latencies, int rejected, long elapsed) {
+            this.latencies = latencies;
+            this.rejected = rejected;
+            this.elapsed = elapsed;
+        }
+
+        private long percentileMillis(double percentile) {
+            if (this.latencies.length == 0) {
+                return 0;
+            }
+            final int index = (int) Math.ceil(percentile * this.latencies.length) - 1;
+            return TimeUnit.NANOSECONDS.toMillis(this.latencies[Math.max(0, index)]);
+        }
+
+        @Override
+        public String toString() {
+            return "completed="
+                    + this.latencies.length
+                    + " rejected="
+                    + this.rejected
+                    + " elapsed="
+                    + TimeUnit.NANOSECONDS.toMillis(this.elapsed)
+                    + "ms p50="
+                    + this.percentileMillis(.5)
+                    + "ms p99="
+                    + this.percentileMillis(.99)
+                    + "ms";
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apereo.portal.concurrency.CallableWithoutResult;
+import org.apereo.portal.events.handlers.db.IPortalEventDao;
+import org.apereo.portal.test.BaseRawEventsJpaDaoTest;
+import org.joda.time.DateTime;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+/**
+ * Throughput benchmark for {@link IPortalEventDao#storePortalEvents(Iterable)} against the
+ * in-memory HSQL database of the raw events test context. Stores batches the size of the
+ * portalEventDaoQueuingEventHandler batch and reports events stored per second, which should be at
+ * least {@link #TARGET_EVENTS_PER_SECOND}.
+ *
+ * <p>Not run as part of the build, run the main method by hand. The optional arguments are the
+ * batch size (default 500) and the number of batches stored per round (default 40).
+ */
+public class JpaPortalEventStoreBenchmark extends BaseRawEventsJpaDaoTest {
+    private static final int ROUNDS = 5;
+    private static final int TARGET_EVENTS_PER_SECOND = 5000;
+
+    @Autowired private IPortalEventDao portalEventDao;
+
+    public static void main(String[] args) throws Exception {
+        final int batchSize = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        final int batches = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+
+        final ClassPathXmlApplicationContext applicationContext =
+                new ClassPathXmlApplicationContext(
+                        "classpath:jpaRawEventsTestApplicationContext.xml");
+        try {
+            final JpaPortalEventStoreBenchmark benchmark = new JpaPortalEventStoreBenchmark();
+            applicationContext.getAutowireCapableBeanFactory().autowireBean(benchmark);
+            benchmark.run(batchSize, batches);
+        } finally {
+            applicationContext.close();
+        }
+    }
+
+    private void run(int batchSize, int batches) throws Exception {
+        final List<PortalEvent> templateEvents = new JpaPortalEventStoreTest().generateEvents();
+        final List<PortalEvent> batch = new ArrayList<PortalEvent>(batchSize);
+        while (batch.size() < batchSize) {
+            batch.add(templateEvents.get(batch.size() % templateEvents.size()));
+        }
+
+        System.out.println(
+                "Benchmarking "
+                        + batches
+                        + " batches of "
+                        + batchSize
+                        + " events, target "
+                        + TARGET_EVENTS_PER_SECOND
+                        + " events/second");
+
+        //First round warms up the JIT, id generator and connection pool and is not reported
+        for (int round = 0; round <= ROUNDS; round++) {
+            final long start = System.nanoTime();
+            for (int i = 0; i < batches; i++) {
+                storeBatch(batch);
+            }
+            final long elapsed = System.nanoTime() - start;
+            deleteEvents();
+
+            if (round > 0) {
+                final double eventsPerSecond =
+                        (batchSize * batches) / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+                System.out.println(
+                        "round "
+                                + round
+                                + ": "
+                                + (batchSize * batches)
+                                + " events in "
+                                + TimeUnit.NANOSECONDS.toMillis(elapsed)
+                                + "ms, "
+                                + (long) eventsPerSecond
+                                + " events/second"
+                                + (eventsPerSecond < TARGET_EVENTS_PER_SECOND
+                                        ? " (below target)"
+                                        : ""));
+            }
+        }
+    }
+
+    private void storeBatch(final List<PortalEvent> batch) {
+        execute(
+                new CallableWithoutResult() {
+                    @Override
+                    protected void callWithoutResult() {
+                        portalEventDao.storePortalEvents(batch);
+                    }
+                });
+    }
+
+    private void deleteEvents() {
+        execute(
+                new CallableWithoutResult() {
+                    @Override
+                    protected void callWithoutResult() {
+                        portalEventDao.deletePortalEventsBefore(DateTime.now().plusDays(1));
+                    }
+                });
+    }
+}
@@ -0,0 +1,342 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.aggr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.persistence.FlushModeType;
+import org.apereo.portal.concurrency.CallableWithoutResult;
+import org.apereo.portal.events.aggr.PartitionEntityResolver.EventSessionRef;
+import org.apereo.portal.events.aggr.PartitionEntityResolver.IntervalInfoRef;
+import org.apereo.portal.events.aggr.dao.DateDimensionDao;
+import org.apereo.portal.events.aggr.dao.TimeDimensionDao;
+import org.apereo.portal.events.aggr.groups.AggregatedGroupLookupDao;
+import org.apereo.portal.events.aggr.groups.AggregatedGroupMapping;
+import org.apereo.portal.events.aggr.login.LoginAggregationImpl;
+import org.apereo.portal.events.aggr.login.LoginAggregationKey;
+import org.apereo.portal.events.aggr.login.LoginAggregationKeyImpl;
+import org.apereo.portal.events.aggr.session.EventSession;
+import org.apereo.portal.test.BaseAggrEventsJpaDaoTest;
+import org.joda.time.DateMidnight;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/** Runs {@link AggregatorPartition}s against the AggrEventsDb the way a partitioned run does */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = "classpath:jpaAggrEventsTestContext.xml")
+public class AggregatorPartitionTest extends BaseAggrEventsJpaDaoTest {
+    private static final DateTime INSTANT = new DateTime(1326734644000l, DateTimeZone.UTC);
+
+    @Autowired private TimeDimensionDao timeDimensionDao;
+    @Autowired private DateDimensionDao dateDimensionDao;
+    @Autowired private AggregatedGroupLookupDao aggregatedGroupLookupDao;
+    @Autowired private AggregationIntervalHelper aggregationIntervalHelper;
+
+    @Autowired
+    @Qualifier("loginAggregationDao")
+    private BaseAggregationPrivateDao<LoginAggregationImpl, LoginAggregationKey>
+            loginAggregationDao;
+
+    private ExecutorService executorService;
+
+    @Before
+    public void setup() {
+        this.executorService = Executors.newCachedThreadPool();
+
+        this.execute(
+                new CallableWithoutResult() {
+                    @Override
+                    protected void callWithoutResult() {
+                        dateDimensionDao.createDateDimension(INSTANT.toDateMidnight(), 0, null);
+
+                        final DateTime start = INSTANT.minuteOfHour().roundFloorCopy();
+                        for (int minute = -10; minute < 10; minute++) {
+                            timeDimensionDao.createTimeDimension(
+                                    start.plusMinutes(minute).toLocalTime());
+                        }
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() {
+        this.executorService.shutdownNow();
+    }
+
+    @Test(timeout = 30000)
+    public void testNewGroupAggregatedOnPartition() throws Exception {
+        final AggregatorPartition partition = this.createPartition();
+
+        this.executeInTransaction(
+                new CallableWithoutResult() {
+                    @Override
+                    protected void callWithoutResult() {
+                        PartitionedAggregation.begin();
+                        try {
+                            //The run creates the group mapping while resolving the session
+                            final AggregatedGroupMapping groupMapping =
+                                    aggregatedGroupLookupDao.getGroupMapping("local", "New Group");
+
+                            submitLoginAggregation(partition, groupMapping);
+
+                            //The partition writes rows that reference the new group mapping
+                            partition.finish();
+                            partition.completeBeforeCommit();
+                        } finally {
+                            PartitionedAggregation.end();
+                        }
+                    }
+                });
+
+        assertEquals(1, this.getLoginAggregations().size());
+    }
+
+    @Test(timeout = 30000)
+    public void testPartitionRolledBackWhenRunFails() throws Exception {
+        final AggregatorPartition partition = this.createPartition();
+        final AggregatedGroupMapping groupMapping = this.createGroupMapping("Group");
+
+        try {
+            this.executeInTransaction(
+                    new CallableWithoutResult() {
+                        @Override
+                        protected void callWithoutResult() {
+                            submitLoginAggregation(partition, groupMapping);
+                            partition.finish();
+                            partition.completeBeforeCommit();
+
+                            throw new IllegalStateException("Aggregation run failed");
+                        }
+                    });
+            fail("Aggregation run should have failed");
+        } catch (RuntimeException e) {
+            //expected
+        }
+
+        assertEquals(0, this.getLoginAggregations().size());
+    }
+
+    @Test(timeout = 30000)
+    public void testRunRolledBackWhenPartitionCommitFails() throws Exception {
+        final AggregatorPartition partition =
+                this.createPartition(
+                        10000,
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                getEntityManager().flush();
+
+                                //Fail the partition's commit after its changes were flushed
+                                TransactionSynchronizationManager.registerSynchronization(
+                                        new TransactionSynchronizationAdapter() {
+                                            @Override
+                                            public void beforeCommit(boolean readOnly) {
+                                                throw new IllegalStateException(
+                                                        "Partition commit failed");
+                                            }
+                                        });
+                            }
+                        });
+        final AggregatedGroupMapping groupMapping = this.createGroupMapping("Group");
+        final DateMidnight nextDay = INSTANT.plusDays(1).toDateMidnight();
+
+        try {
+            this.executeInTransaction(
+                    new CallableWithoutResult() {
+                        @Override
+                        protected void callWithoutResult() {
+                            submitLoginAggregation(partition, groupMapping);
+                            partition.finish();
+
+                            //Stands in for the run marking the events as aggregated
+                            dateDimensionDao.createDateDimension(nextDay, 0, null);
+                            getEntityManager().flush();
+
+                            partition.completeBeforeCommit();
+                        }
+                    });
+            fail("Aggregation run should have failed");
+        } catch (RuntimeException e) {
+            //expected
+        }
+
+        assertEquals(0, this.getLoginAggregations().size());
+        assertNull(
+                this.execute(
+                        new Callable<DateDimension>() {
+                            @Override
+                            public DateDimension call() {
+                                return dateDimensionDao.getDateDimensionByDate(nextDay);
+                            }
+                        }));
+    }
+
+    @Test(timeout = 30000)
+    public void testFinishTimesOut() throws Exception {
+        final AggregatorPartition partition =
+                this.createPartition(
+                        100,
+                        new Runnable() {
+                            @Override
+                            public void run() {}
+                        });
+        final CountDownLatch release = new CountDownLatch(1);
+
+        partition.submit(
+                this.executorService,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+
+        try {
+            partition.finish();
+            fail("Expected IllegalStateException for a stuck partition");
+        } catch (IllegalStateException e) {
+            // Expected;  fall through...
+        } finally {
+            release.countDown();
+        }
+
+        partition.complete(false);
+    }
+
+    private AggregatedGroupMapping createGroupMapping(final String groupName) {
+        return this.executeInTransaction(
+                new Callable<AggregatedGroupMapping>() {
+                    @Override
+                    public AggregatedGroupMapping call() {
+                        return aggregatedGroupLookupDao.getGroupMapping("local", groupName);
+                    }
+                });
+    }
+
+    private AggregatorPartition createPartition() {
+        return this.createPartition(
+                10000,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        getEntityManager().flush();
+                    }
+                });
+    }
+
+    private AggregatorPartition createPartition(long timeout, Runnable transactionPrepare) {
+        return new AggregatorPartition(
+                "aggr0",
+                10,
+                this.transactionOperations,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        getEntityManager().setFlushMode(FlushModeType.COMMIT);
+                    }
+                },
+                transactionPrepare,
+                new PartitionEntityResolver(
+                        this.aggregatedGroupLookupDao,
+                        this.dateDimensionDao,
+                        this.timeDimensionDao),
+                timeout);
+    }
+
+    /** Pass the partition id only copies of the session and interval like the aggregation run */
+    private void submitLoginAggregation(
+            final AggregatorPartition partition, AggregatedGroupMapping groupMapping) {
+        final EventSession eventSession = mock(EventSession.class);
+        when(eventSession.getEventSessionId()).thenReturn("eventSessionId");
+        when(eventSession.getGroupMappings())
+                .thenReturn(ImmutableSet.<AggregatedGroupMapping>of(groupMapping));
+        final EventSessionRef eventSessionRef = PartitionEntityResolver.createRef(eventSession);
+
+        final AggregationIntervalInfo intervalInfo =
+                this.aggregationIntervalHelper.getIntervalInfo(
+                        AggregationInterval.FIVE_MINUTE, INSTANT);
+        final Map<AggregationInterval, IntervalInfoRef> intervalInfoRef =
+                PartitionEntityResolver.createRef(
+                        Collections.singletonMap(AggregationInterval.FIVE_MINUTE, intervalInfo));
+
+        final Thread aggregationThread = Thread.currentThread();
+        partition.submit(
+                this.executorService,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        assertNotSame(aggregationThread, Thread.currentThread());
+
+                        final PartitionEntityResolver entityResolver =
+                                partition.getEntityResolver();
+                        final AggregationIntervalInfo partitionIntervalInfo =
+                                entityResolver
+                                        .resolve(intervalInfoRef)
+                                        .get(AggregationInterval.FIVE_MINUTE);
+                        for (final AggregatedGroupMapping partitionGroupMapping :
+                                entityResolver.resolve(eventSessionRef).getGroupMappings()) {
+                            loginAggregationDao.createAggregation(
+                                    new LoginAggregationKeyImpl(
+                                            partitionIntervalInfo.getDateDimension(),
+                                            partitionIntervalInfo.getTimeDimension(),
+                                            AggregationInterval.FIVE_MINUTE,
+                                            partitionGroupMapping));
+                        }
+                    }
+                });
+    }
+
+    private Map<LoginAggregationKey, LoginAggregationImpl> getLoginAggregations() {
+        return this.execute(
+                new Callable<Map<LoginAggregationKey, LoginAggregationImpl>>() {
+                    @Override
+                    public Map<LoginAggregationKey, LoginAggregationImpl> call() {
+                        final AggregationIntervalInfo intervalInfo =
+                                aggregationIntervalHelper.getIntervalInfo(
+                                        AggregationInterval.FIVE_MINUTE, INSTANT);
+                        return loginAggregationDao.getAggregationsForInterval(
+                                intervalInfo.getDateDimension(),
+                                intervalInfo.getTimeDimension(),
+                                AggregationInterval.FIVE_MINUTE);
+                    }
+                });
+    }
+}
@@ -15,11 +15,17 @@
 package org.apereo.portal.events.aggr;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.common.base.Function;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -31,11 +37,14 @@ import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import javax.naming.CompositeName;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
 import org.apache.commons.lang.mutable.MutableInt;
 import org.apache.commons.lang.mutable.MutableObject;
 import org.apereo.portal.concurrency.CallableWithoutResult;
 import org.apereo.portal.concurrency.FunctionWithoutResult;
 import org.apereo.portal.events.aggr.dao.DateDimensionDao;
+import org.apereo.portal.events.aggr.dao.IEventAggregationManagementDao;
 import org.apereo.portal.events.aggr.dao.TimeDimensionDao;
 import org.apereo.portal.events.aggr.groups.AggregatedGroupLookupDao;
 import org.apereo.portal.events.aggr.groups.AggregatedGroupMapping;
@@ -48,7 +57,9 @@ import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.LocalTime;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 
 /** */
 public abstract class JpaBaseAggregationDaoTest<
@@ -62,6 +73,11 @@ public abstract class JpaBaseAggregationDaoTest<
     @Autowired protected AggregatedGroupLookupDao aggregatedGroupLookupDao;
     @Autowired protected ICompositeGroupService compositeGroupService;
     @Autowired protected AggregationIntervalHelper aggregationIntervalHelper;
+    @Autowired protected IEventAggregationManagementDao eventAggregationManagementDao;
+
+    @Autowired
+    @Qualifier("org.apereo.portal.events.aggr.JpaBaseAggregationDao.aggregationColumns")
+    protected Ehcache aggregationColumnsCache;
 
     /** @return The private aggregation DAO to use */
     protected abstract BaseAggregationPrivateDao<T, K> getAggregationDao();
@@ -745,6 +761,123 @@ public abstract class JpaBaseAggregationDaoTest<
                 });
     }
 
+    @Test
+    public final void testAggregationColumns() throws Exception {
+        final IEntityGroup entityGroupA = mock(IEntityGroup.class);
+        when(entityGroupA.getServiceName()).thenReturn(new CompositeName("local"));
+        when(entityGroupA.getName()).thenReturn("Group A");
+        when(compositeGroupService.findGroup("local.0")).thenReturn(entityGroupA);
+
+        reset(aggregationColumnsCache);
+
+        //Create 10 minutes of aggregations, dimensions exist for the intervals after them
+        final DateTime start =
+                new DateTime(1326734644000l, DateTimeZone.UTC).minuteOfDay().roundFloorCopy();
+        final DateTime end = start.plusMinutes(10);
+        final AggregationInterval interval = AggregationInterval.FIVE_MINUTE;
+
+        this.executeInTransaction(
+                new CallableWithoutResult() {
+                    @Override
+                    protected void callWithoutResult() {
+                        final AggregatedGroupMapping groupA =
+                                aggregatedGroupLookupDao.getGroupMapping("local.0");
+
+                        populateDateTimeDimensions(
+                                start,
+                                end.plusMinutes(10),
+                                new FunctionWithoutResult<Tuple<DateDimension, TimeDimension>>() {
+                                    @Override
+                                    protected void applyWithoutResult(
+                                            Tuple<DateDimension, TimeDimension> input) {
+                                        final DateTime instant =
+                                                input.second
+                                                        .getTime()
+                                                        .toDateTime(input.first.getDate());
+
+                                        if (instant.isBefore(end)
+                                                && instant.equals(
+                                                        interval.determineStart(instant))) {
+                                            final AggregationIntervalInfo intervalInfo =
+                                                    aggregationIntervalHelper.getIntervalInfo(
+                                                            interval, instant);
+                                            final T aggregation =
+                                                    getAggregationDao()
+                                                            .createAggregation(
+                                                                    createAggregationKey(
+                                                                            intervalInfo, groupA));
+                                            aggregation.intervalComplete(5);
+                                            getAggregationDao().updateAggregation(aggregation);
+                                        }
+                                    }
+                                });
+                    }
+                });
+
+        //The last aggregated event is in the last interval of the range, it is still open
+        this.setLastEventDate(end);
+        final AggregationColumns openColumns = this.getAggregationColumns(start, end, interval);
+        assertEquals(Collections.singletonList("duration"), openColumns.getColumnNames());
+        assertEquals(2, openColumns.size());
+        for (int row = 0; row < openColumns.size(); row++) {
+            assertEquals(5, openColumns.getValue(0, row));
+            assertEquals(
+                    interval.determineStart(new DateTime(openColumns.getDateTime(row))),
+                    new DateTime(openColumns.getDateTime(row)));
+        }
+        assertEquals(
+                openColumns.getDiscriminator(0).getAggregatedGroup(),
+                openColumns.getDiscriminator(1).getAggregatedGroup());
+        verify(aggregationColumnsCache, never()).put(any(Element.class));
+
+        //Once the aggregator has moved past the range the result is cached
+        this.setLastEventDate(end.plusMinutes(5));
+        final AggregationColumns closedColumns = this.getAggregationColumns(start, end, interval);
+        assertEquals(2, closedColumns.size());
+
+        final ArgumentCaptor<Element> element = ArgumentCaptor.forClass(Element.class);
+        verify(aggregationColumnsCache).put(element.capture());
+        assertSame(closedColumns, element.getValue().getObjectValue());
+
+        when(aggregationColumnsCache.get(element.getValue().getObjectKey()))
+                .thenReturn(element.getValue());
+        assertSame(closedColumns, this.getAggregationColumns(start, end, interval));
+    }
+
+    private void setLastEventDate(final DateTime lastEventDate) {
+        this.executeInTransaction(
+                new CallableWithoutResult() {
+                    @Override
+                    protected void callWithoutResult() {
+                        final IEventAggregatorStatus eventAggregatorStatus =
+                                eventAggregationManagementDao.getEventAggregatorStatus(
+                                        IEventAggregatorStatus.ProcessingType.AGGREGATION, true);
+                        eventAggregatorStatus.setLastEventDate(lastEventDate);
+                        eventAggregationManagementDao.updateEventAggregatorStatus(
+                                eventAggregatorStatus);
+                    }
+                });
+    }
+
+    private AggregationColumns getAggregationColumns(
+            final DateTime start, final DateTime end, final AggregationInterval interval) {
+        return this.execute(
+                new Callable<AggregationColumns>() {
+                    @Override
+                    public AggregationColumns call() throws Exception {
+                        final AggregatedGroupMapping groupA =
+                                aggregatedGroupLookupDao.getGroupMapping("local.0");
+                        final K key = createAggregationKey(interval, groupA);
+                        return getAggregationDao()
+                                .getAggregationColumns(
+                                        start,
+                                        end,
+                                        Collections.singleton(key),
+                                        Collections.singletonList("duration"));
+                    }
+                });
+    }
+
     @Test
     public final void testUnclosedBaseAggregationRangeQuery() throws Exception {
         final IEntityGroup entityGroupA = mock(IEntityGroup.class);
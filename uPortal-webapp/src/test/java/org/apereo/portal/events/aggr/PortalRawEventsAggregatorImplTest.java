@@ -16,22 +16,30 @@ package org.apereo.portal.events.aggr;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertSame;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import javax.persistence.EntityManager;
 import org.apereo.portal.IPortalInfoProvider;
 import org.apereo.portal.concurrency.locking.IClusterLockService;
 import org.apereo.portal.events.PortalEvent;
 import org.apereo.portal.events.aggr.IEventAggregatorStatus.ProcessingType;
 import org.apereo.portal.events.aggr.dao.IEventAggregationManagementDao;
+import org.apereo.portal.events.aggr.groups.AggregatedGroupMapping;
 import org.apereo.portal.events.aggr.session.EventSession;
 import org.apereo.portal.events.aggr.session.EventSessionDao;
 import org.apereo.portal.events.handlers.db.IPortalEventDao;
 import org.apereo.portal.security.IPerson;
 import org.joda.time.DateTime;
+import org.joda.time.Period;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
@@ -197,6 +205,121 @@ public class PortalRawEventsAggregatorImplTest {
         this.portalEventAggregator.setEventAggregationBatchSize(1000);
     }
 
+    @Test
+    public void aggregateRawEventsWithStreamedEvents() throws Exception {
+        when(transactionOperations.execute(any(TransactionCallback.class)))
+                .then(
+                        new Answer<Object>() {
+                            @Override
+                            public Object answer(InvocationOnMock invocation) throws Throwable {
+                                final TransactionStatus status = mock(TransactionStatus.class);
+                                return ((TransactionCallback<?>) invocation.getArguments()[0])
+                                        .doInTransaction(status);
+                            }
+                        });
+        when(clusterLockService.isLockOwner(PortalRawEventsAggregator.AGGREGATION_LOCK_NAME))
+                .thenReturn(true);
+        when(portalEventDimensionPopulator.isCheckedDimensions()).thenReturn(true);
+        when(eventAggregationManagementDao.getEventAggregatorStatus(
+                        ProcessingType.AGGREGATION, true))
+                .thenReturn(eventAggregatorStatus);
+        when(eventAggregationManagementDao.getDefaultAggregatedIntervalConfig())
+                .thenReturn(mock(AggregatedIntervalConfig.class));
+        when(eventAggregationManagementDao.getDefaultAggregatedGroupConfig())
+                .thenReturn(mock(AggregatedGroupConfig.class));
+        when(portalInfoProvider.getUniqueServerName()).thenReturn("serverName_abcd");
+        when(eventAggregatorStatus.getLastEventDate()).thenReturn(new DateTime(1325881376117l));
+        when(eventSessionDao.getEventSession(any(PortalEvent.class))).thenReturn(eventSession);
+        when(eventSession.getGroupMappings())
+                .thenReturn(Collections.<AggregatedGroupMapping>emptySet());
+
+        final StreamedPortalEventBuffer streamedPortalEventBuffer = new StreamedPortalEventBuffer();
+        streamedPortalEventBuffer.setStreamedEvents(new Class<?>[] {MockPortalEvent.class});
+        streamedPortalEventBuffer.setClusterLockService(clusterLockService);
+
+        //Buffer only takes events once this node has run aggregation
+        final PortalEvent streamedEvent =
+                new MockPortalEvent(this, "serverName", "eventSessionId", person);
+        assertEquals(false, streamedPortalEventBuffer.offer(streamedEvent));
+        streamedPortalEventBuffer.takeEvents(new DateTime(0));
+        assertEquals(true, streamedPortalEventBuffer.offer(streamedEvent));
+        assertEquals(1, streamedPortalEventBuffer.getBufferedEventCount());
+
+        Thread.sleep(5);
+        final PortalEvent rawEvent =
+                new MockPortalEvent(this, "serverName", "eventSessionId", person);
+
+        when(portalEventDao.aggregatePortalEvents(
+                        any(DateTime.class),
+                        any(DateTime.class),
+                        (int) any(Integer.TYPE),
+                        (Function<PortalEvent, Boolean>) any(Function.class)))
+                .then(
+                        new Answer<Boolean>() {
+                            @Override
+                            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                                return ((Function<PortalEvent, Boolean>)
+                                                invocation.getArguments()[3])
+                                        .apply(rawEvent);
+                            }
+                        });
+
+        final RecordingAggregator aggregator = new RecordingAggregator();
+        this.portalEventAggregator.setPortalEventAggregators(
+                ImmutableMap.<String, IPortalEventAggregator<PortalEvent>>of(
+                        "aggregator", aggregator));
+        this.portalEventAggregator.setStreamedPortalEventBuffer(streamedPortalEventBuffer);
+        //Aggregate up to now so the streamed event is in range
+        this.portalEventAggregator.setAggregationDelay(Period.seconds(-2));
+
+        final EventProcessingResult result = portalEventAggregator.doAggregateRawEvents();
+        assertEquals(2, result.getProcessed());
+        assertEquals(true, result.isComplete());
+
+        //Raw and streamed events are aggregated together in timestamp order
+        assertEquals(2, aggregator.events.size());
+        assertSame(streamedEvent, aggregator.events.get(0));
+        assertSame(rawEvent, aggregator.events.get(1));
+        assertEquals(0, streamedPortalEventBuffer.getBufferedEventCount());
+        assertEquals(1, streamedPortalEventBuffer.getMergedEventCount());
+    }
+
+    private static class RecordingAggregator
+            implements IntervalAwarePortalEventAggregator<PortalEvent> {
+        private final List<PortalEvent> events = new ArrayList<PortalEvent>();
+
+        @Override
+        public boolean supports(Class<? extends PortalEvent> type) {
+            return true;
+        }
+
+        @Override
+        public boolean supports(PortalEvent event) {
+            return true;
+        }
+
+        @Override
+        public void aggregateEvent(
+                PortalEvent e,
+                EventSession eventSession,
+                EventAggregationContext eventAggregationContext,
+                Map<AggregationInterval, AggregationIntervalInfo> currentIntervals) {
+            this.events.add(e);
+        }
+
+        @Override
+        public void handleIntervalBoundary(
+                AggregationInterval interval,
+                EventAggregationContext eventAggregationContext,
+                Map<AggregationInterval, AggregationIntervalInfo> intervals) {}
+
+        @Override
+        public int cleanUnclosedAggregations(
+                DateTime start, DateTime end, AggregationInterval interval) {
+            return 0;
+        }
+    }
+
     private static class MockPortalEvent extends PortalEvent {
         public MockPortalEvent(
                 Object source, String serverName, String eventSessionId, IPerson person) {
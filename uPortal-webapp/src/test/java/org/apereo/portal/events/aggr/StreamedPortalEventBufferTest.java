@@ -0,0 +1,127 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.aggr;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import org.apereo.portal.IPortalInfoProvider;
+import org.apereo.portal.concurrency.locking.ClusterMutex;
+import org.apereo.portal.concurrency.locking.IClusterLockService;
+import org.apereo.portal.events.PortalEvent;
+import org.apereo.portal.events.handlers.db.IPortalEventDao;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StreamedPortalEventBufferTest {
+    @InjectMocks private StreamedPortalEventBuffer buffer = new StreamedPortalEventBuffer();
+
+    @Mock private IPortalEventDao portalEventDao;
+    @Mock private IClusterLockService clusterLockService;
+    @Mock private IPortalInfoProvider portalInfoProvider;
+    @Mock private ClusterMutex clusterMutex;
+
+    private final PortalEvent event = mock(PortalEvent.class);
+
+    @Before
+    public void setup() {
+        buffer.setStreamedEvents(new Class<?>[] {PortalEvent.class});
+    }
+
+    @Test
+    public void testFlushKeepsEventsWhileLockHeld() {
+        //Lock released after the last run on this node
+        this.setLastLockOwner(false, "thisServer");
+
+        this.setLockOwner(true);
+        buffer.takeEvents(new DateTime());
+        assertEquals(true, buffer.offer(event));
+
+        buffer.flush();
+
+        assertEquals(true, buffer.isActive());
+        assertEquals(1, buffer.getBufferedEventCount());
+        verify(portalEventDao, never()).storePortalEvents(any(Iterable.class));
+    }
+
+    @Test
+    public void testFlushStoresEventsWhenLockLost() {
+        this.setLastLockOwner(true, "otherServer");
+
+        this.setLockOwner(true);
+        buffer.takeEvents(new DateTime());
+        assertEquals(true, buffer.offer(event));
+
+        //Stops buffering on the first flush after another server takes the lock
+        buffer.flush();
+
+        assertEquals(false, buffer.isActive());
+        assertEquals(0, buffer.getBufferedEventCount());
+        verify(portalEventDao).storePortalEvents(Collections.singletonList(event));
+        assertEquals(false, buffer.offer(event));
+    }
+
+    @Test
+    public void testFlushDoesNotStartBuffering() {
+        this.setLastLockOwner(false, "thisServer");
+
+        //Only an aggregation run on this node starts buffering
+        buffer.flush();
+
+        assertEquals(false, buffer.isActive());
+        assertEquals(false, buffer.offer(event));
+    }
+
+    @Test
+    public void testTakeEventsStopsBufferingWithoutLock() {
+        this.setLockOwner(true);
+        buffer.takeEvents(new DateTime());
+        assertEquals(true, buffer.isActive());
+
+        this.setLockOwner(false);
+        buffer.takeEvents(new DateTime());
+
+        assertEquals(false, buffer.isActive());
+        assertEquals(false, buffer.offer(event));
+    }
+
+    private void setLockOwner(boolean lockOwner) {
+        when(clusterLockService.isLockOwner(PortalRawEventsAggregator.AGGREGATION_LOCK_NAME))
+                .thenReturn(lockOwner);
+    }
+
+    private void setLastLockOwner(boolean locked, String serverId) {
+        when(portalInfoProvider.getUniqueServerName()).thenReturn("thisServer");
+        when(clusterLockService.getClusterMutex(PortalRawEventsAggregator.AGGREGATION_LOCK_NAME))
+                .thenReturn(clusterMutex);
+        when(clusterMutex.isLocked()).thenReturn(locked);
+        if (locked) {
+            when(clusterMutex.getServerId()).thenReturn(serverId);
+        } else {
+            when(clusterMutex.getPreviousServerId()).thenReturn(serverId);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.handlers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.google.common.collect.ImmutableList;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apereo.portal.events.handlers.QueueingEventHandler.OverflowPolicy;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.ApplicationEvent;
+
+public class QueueingEventHandlerTest {
+    @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private TestQueueingEventHandler handler;
+
+    @Before
+    public void setup() {
+        this.handler = new TestQueueingEventHandler();
+        this.handler.setQueueCapacity(4);
+    }
+
+    @Test
+    public void testDropLowPriorityEvents() {
+        this.handler.setLowPriorityThreshold(.5);
+        this.handler.setLowPriorityEvents(
+                ImmutableList.<Class<? extends ApplicationEvent>>of(LowPriorityEvent.class));
+
+        this.handler.onApplicationEvent(new LowPriorityEvent("render1"));
+        this.handler.onApplicationEvent(new TestEvent("login1"));
+        this.handler.onApplicationEvent(new LowPriorityEvent("render2"));
+        this.handler.onApplicationEvent(new TestEvent("login2"));
+        this.handler.onApplicationEvent(new TestEvent("login3"));
+        this.handler.onApplicationEvent(new TestEvent("login4"));
+
+        assertEquals(4, this.handler.getQueueDepth());
+        assertEquals(2, this.handler.getDroppedEventCount());
+
+        this.handler.flush();
+        assertEquals("[render1, login1, login2, login3]", this.handler.handled.toString());
+    }
+
+    @Test
+    public void testBlockThenDrop() {
+        this.handler.setOverflowPolicy(OverflowPolicy.BLOCK);
+        this.handler.setMaxBlockTime(1);
+
+        for (int i = 0; i < 5; i++) {
+            this.handler.onApplicationEvent(new TestEvent("event" + i));
+        }
+
+        assertEquals(4, this.handler.getQueueDepth());
+        assertEquals(1, this.handler.getDroppedEventCount());
+    }
+
+    @Test
+    public void testSpillAndReplay() throws IOException {
+        final File spillFile = new File(this.temporaryFolder.getRoot(), "events.spill");
+        this.handler.setOverflowPolicy(OverflowPolicy.SPILL);
+        this.handler.setSpillFile(spillFile.getPath());
+        this.handler.setQueueCapacity(2);
+
+        //Queue overflows into the spill file
+        this.handler.onApplicationEvent(new TestEvent("event1"));
+        this.handler.onApplicationEvent(new TestEvent("event2"));
+        this.handler.onApplicationEvent(new TestEvent("event3"));
+        assertEquals(1, this.handler.getSpilledEventCount());
+
+        //Failed batch is spilled as well
+        this.handler.failing = true;
+        this.handler.flush();
+        assertEquals(3, this.handler.getSpilledEventCount());
+        assertEquals(0, this.handler.getReplayedEventCount());
+
+        //Store recovered, spilled events are replayed
+        this.handler.failing = false;
+        this.handler.flush();
+        assertEquals("[event3, event1, event2]", this.handler.handled.toString());
+        assertEquals(3, this.handler.getReplayedEventCount());
+        assertEquals(0, this.handler.getDroppedEventCount());
+        assertFalse(spillFile.exists());
+    }
+
+    private static class TestEvent extends ApplicationEvent {
+        private static final long serialVersionUID = 1L;
+
+        public TestEvent(String name) {
+            super(name);
+        }
+
+        @Override
+        public String toString() {
+            return (String) this.getSource();
+        }
+    }
+
+    private static class LowPriorityEvent extends TestEvent {
+        private static final long serialVersionUID = 1L;
+
+        public LowPriorityEvent(String name) {
+            super(name);
+        }
+    }
+
+    private static class TestQueueingEventHandler extends QueueingEventHandler<TestEvent> {
+        private final List<TestEvent> handled = new ArrayList<TestEvent>();
+        private boolean failing = false;
+
+        @Override
+        protected void onApplicationEvents(Iterable<TestEvent> events) {
+            if (this.failing) {
+                throw new IllegalStateException("store unavailable");
+            }
+            for (final TestEvent event : events) {
+                this.handled.add(event);
+            }
+        }
+
+        @Override
+        protected void writeSpilledEvent(TestEvent event, DataOutput out) throws IOException {
+            out.writeUTF(event.toString());
+        }
+
+        @Override
+        protected TestEvent readSpilledEvent(DataInput in) throws IOException {
+            return new TestEvent(in.readUTF());
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.groups;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import javax.naming.CompositeName;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import org.apereo.portal.EntityTypes;
+import org.apereo.portal.security.IPerson;
+import org.apereo.portal.spring.locator.ApplicationContextLocator;
+import org.apereo.portal.spring.locator.EntityTypesLocator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Tests the cached ancestor groups of {@link GroupMemberImpl}. Memberships are kept in a map that
+ * stands in for the group store, the caches are real.
+ */
+public class GroupMemberImplTest {
+
+    //Parent groups of each member as the store has them
+    private final Map<IGroupMember, Set<IEntityGroup>> memberships = new HashMap<>();
+
+    private CacheManager cacheManager;
+    private ApplicationContextLocator applicationContextLocator;
+    private EntityTypesLocator entityTypesLocator;
+    private IIndividualGroupService groupService;
+
+    @Before
+    public void setup() throws Exception {
+        cacheManager =
+                new CacheManager(this.getClass().getResource("/groupMemberImplTestEhcache.xml"));
+        final ApplicationContext applicationContext = mock(ApplicationContext.class);
+        when(applicationContext.getBean("cacheManager", CacheManager.class))
+                .thenReturn(cacheManager);
+        applicationContextLocator = new ApplicationContextLocator(applicationContext);
+        applicationContextLocator.afterPropertiesSet();
+
+        final EntityTypes entityTypes = mock(EntityTypes.class);
+        when(entityTypes.getEntityIDFromType(IEntityGroup.class)).thenReturn(3);
+        when(entityTypes.getEntityIDFromType(IPerson.class)).thenReturn(2);
+        entityTypesLocator = new EntityTypesLocator(entityTypes);
+        entityTypesLocator.afterPropertiesSet();
+
+        groupService = mock(IIndividualGroupService.class);
+        when(groupService.getServiceName()).thenReturn(new CompositeName("local"));
+        when(groupService.findMembers(any(IEntityGroup.class)))
+                .thenAnswer(
+                        new Answer<Iterator>() {
+                            @Override
+                            public Iterator answer(InvocationOnMock invocation) {
+                                final Object group = invocation.getArguments()[0];
+                                final Set<IGroupMember> members = new HashSet<>();
+                                for (Map.Entry<IGroupMember, Set<IEntityGroup>> entry :
+                                        memberships.entrySet()) {
+                                    if (entry.getValue().contains(group)) {
+                                        members.add(entry.getKey());
+                                    }
+                                }
+                                return members.iterator();
+                            }
+                        });
+        doAnswer(
+                        new Answer<Void>() {
+                            @Override
+                            public Void answer(InvocationOnMock invocation) {
+                                final EntityGroupImpl group =
+                                        (EntityGroupImpl) invocation.getArguments()[0];
+                                for (IGroupMember member : group.getAddedMembers().values()) {
+                                    parentsOf(member).add(group);
+                                }
+                                for (IGroupMember member : group.getRemovedMembers().values()) {
+                                    parentsOf(member).remove(group);
+                                }
+                                return null;
+                            }
+                        })
+                .when(groupService)
+                .updateGroupMembers(any(IEntityGroup.class));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        entityTypesLocator.destroy();
+        applicationContextLocator.destroy();
+        cacheManager.shutdown();
+    }
+
+    @Test
+    public void testAncestorGroups() throws Exception {
+        final TestGroup everyone = new TestGroup("everyone");
+        final TestGroup staff = new TestGroup("staff");
+        final TestGroup faculty = new TestGroup("faculty");
+        final TestEntity alice = new TestEntity("alice");
+        parentsOf(staff).add(everyone);
+        parentsOf(faculty).add(staff);
+        parentsOf(alice).add(faculty);
+
+        final Set<IEntityGroup> ancestors = alice.getAncestorGroups();
+        assertEquals(ImmutableSet.of(faculty, staff, everyone), ancestors);
+        assertSame(ancestors, alice.getAncestorGroups());
+        assertEquals(ImmutableSet.of(staff, everyone), faculty.getAncestorGroups());
+
+        assertTrue(everyone.deepContains(alice));
+        assertTrue(alice.isDeepMemberOf(everyone));
+        assertFalse(alice.isDeepMemberOf(new TestGroup("students")));
+    }
+
+    @Test
+    public void testDeepContainsAfterAddAndRemove() throws Exception {
+        final TestGroup everyone = new TestGroup("everyone");
+        final TestGroup staff = new TestGroup("staff");
+        final TestGroup students = new TestGroup("students");
+        final TestEntity alice = new TestEntity("alice");
+        parentsOf(staff).add(everyone);
+        parentsOf(alice).add(students);
+
+        assertFalse(staff.deepContains(alice));
+        assertFalse(everyone.deepContains(alice));
+
+        staff.addChild(alice);
+        staff.updateMembers();
+        assertTrue(staff.deepContains(alice));
+        assertTrue(everyone.deepContains(alice));
+
+        staff.removeChild(alice);
+        staff.updateMembers();
+        assertFalse(staff.deepContains(alice));
+        assertFalse(everyone.deepContains(alice));
+        assertEquals(Collections.singleton(students), alice.getAncestorGroups());
+    }
+
+    @Test
+    public void testAddingGroupInvalidatesDescendants() throws Exception {
+        final TestGroup everyone = new TestGroup("everyone");
+        final TestGroup staff = new TestGroup("staff");
+        final TestGroup faculty = new TestGroup("faculty");
+        final TestEntity alice = new TestEntity("alice");
+        parentsOf(faculty).add(staff);
+        parentsOf(alice).add(faculty);
+
+        assertEquals(ImmutableSet.of(faculty, staff), alice.getAncestorGroups());
+        assertFalse(everyone.deepContains(alice));
+
+        //Only staff changes parents, the cached ancestors of everything below it are stale
+        everyone.addChild(staff);
+        everyone.updateMembers();
+        assertEquals(ImmutableSet.of(faculty, staff, everyone), alice.getAncestorGroups());
+        assertEquals(ImmutableSet.of(staff, everyone), faculty.getAncestorGroups());
+        assertTrue(everyone.deepContains(alice));
+
+        everyone.removeChild(staff);
+        everyone.updateMembers();
+        assertEquals(ImmutableSet.of(faculty, staff), alice.getAncestorGroups());
+        assertFalse(everyone.deepContains(alice));
+    }
+
+    @Test
+    public void testCircularReference() throws Exception {
+        //addChild refuses cycles, but the store can still hold one
+        final TestGroup first = new TestGroup("first");
+        final TestGroup second = new TestGroup("second");
+        final TestEntity alice = new TestEntity("alice");
+        parentsOf(first).add(second);
+        parentsOf(second).add(first);
+        parentsOf(alice).add(first);
+
+        assertEquals(ImmutableSet.of(first, second), alice.getAncestorGroups());
+        assertEquals(ImmutableSet.of(first, second), first.getAncestorGroups());
+        assertEquals(ImmutableSet.of(first, second), second.getAncestorGroups());
+
+        //The guard is released, so the ancestors are built and cached again after a change
+        final Cache ancestorGroupsCache =
+                cacheManager.getCache("org.apereo.portal.groups.GroupMemberImpl.ancestorGroups");
+        ancestorGroupsCache.removeAll();
+        final Set<IEntityGroup> ancestors = alice.getAncestorGroups();
+        assertEquals(ImmutableSet.of(first, second), ancestors);
+        assertSame(ancestors, alice.getAncestorGroups());
+    }
+
+    private Set<IEntityGroup> parentsOf(IGroupMember member) {
+        Set<IEntityGroup> parents = memberships.get(member);
+        if (parents == null) {
+            parents = new HashSet<>();
+            memberships.put(member, parents);
+        }
+        return parents;
+    }
+
+    /*
+     * The parent groups come from the store on every call, so these tests exercise only the
+     * ancestor groups cache.
+     */
+
+    private final class TestEntity extends EntityImpl {
+        TestEntity(String key) throws GroupsException {
+            super(key, IPerson.class);
+        }
+
+        @Override
+        public Set<IEntityGroup> getParentGroups() {
+            return Collections.unmodifiableSet(new HashSet<>(parentsOf(this)));
+        }
+    }
+
+    private final class TestGroup extends EntityGroupImpl {
+        TestGroup(String key) throws GroupsException {
+            super(key, IPerson.class);
+            setLocalGroupService(groupService);
+        }
+
+        @Override
+        public Set<IEntityGroup> getParentGroups() {
+            return Collections.unmodifiableSet(new HashSet<>(parentsOf(this)));
+        }
+    }
+}
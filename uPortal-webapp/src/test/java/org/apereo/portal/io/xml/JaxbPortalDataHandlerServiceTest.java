@@ -15,9 +15,13 @@
 package org.apereo.portal.io.xml;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -26,7 +30,10 @@ import static org.mockito.Mockito.when;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
 import com.google.common.collect.ImmutableSet;
+import java.io.File;
 import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -35,11 +42,17 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
+import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.Templates;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apereo.portal.io.xml.user.ExternalUser;
 import org.apereo.portal.io.xml.user.UserPortalDataType;
 import org.apereo.portal.xml.XmlUtilities;
@@ -53,10 +66,13 @@ import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.oxm.Marshaller;
 import org.springframework.oxm.Unmarshaller;
 import org.springframework.oxm.jaxb.Jaxb2Marshaller;
 import org.springframework.scheduling.concurrent.ThreadPoolExecutorFactoryBean;
@@ -338,6 +354,159 @@ public class JaxbPortalDataHandlerServiceTest {
         verify(unmarshaller, times(16)).unmarshal(any(Source.class));
     }
 
+    @Test
+    public void testImportArchiveInTypeOrder() throws Exception {
+        final Unmarshaller unmarshaller = mock(Unmarshaller.class);
+
+        final List<String> typeIds = new ArrayList<String>();
+        for (final IPortalDataType portalDataType : getPortalDataTypes()) {
+            typeIds.add(portalDataType.getTypeId());
+        }
+        final List<Integer> importedTypes =
+                Collections.synchronizedList(new ArrayList<Integer>());
+
+        final List<IDataImporter<? extends Object>> importers =
+                setupAllImporters(
+                        new MockDataImporterSetup() {
+                            @Override
+                            public void setup(
+                                    final IPortalDataType dataType,
+                                    IDataImporter<? extends Object> dataImporter) {
+                                when(dataImporter.getUnmarshaller()).thenReturn(unmarshaller);
+                                doAnswer(
+                                                new Answer<Object>() {
+                                                    @Override
+                                                    public Object answer(
+                                                            InvocationOnMock invocation) {
+                                                        importedTypes.add(
+                                                                typeIds.indexOf(
+                                                                        dataType.getTypeId()));
+                                                        return null;
+                                                    }
+                                                })
+                                        .when((IDataImporter) dataImporter)
+                                        .importData(any());
+                            }
+                        });
+
+        this.dataImportExportService.setDataImporters(importers);
+        //Parse a single file ahead of the imports
+        this.dataImportExportService.setMaxPreparedImports(1);
+
+        final Resource archiveResource =
+                new ClassPathResource("/org/apereo/portal/io/xml/import_archive.zip");
+
+        final IPortalDataHandlerService.BatchImportOptions options =
+                new IPortalDataHandlerService.BatchImportOptions();
+        options.setLogDirectoryParent(tempFolder.newFolder("orderedArchiveImport"));
+
+        this.dataImportExportService.importDataArchive(archiveResource, options);
+
+        verify(unmarshaller, times(16)).unmarshal(any(Source.class));
+        final List<Integer> sortedTypes = new ArrayList<Integer>(importedTypes);
+        Collections.sort(sortedTypes);
+        assertEquals(16, importedTypes.size());
+        assertEquals(sortedTypes, importedTypes);
+    }
+
+    @Test
+    public void testExportDataArchive() throws Exception {
+        final String typeId = new UserPortalDataType().getTypeId();
+
+        final Marshaller marshaller = mock(Marshaller.class);
+        doAnswer(
+                        new Answer<Object>() {
+                            @Override
+                            public Object answer(InvocationOnMock invocation) throws Throwable {
+                                final Object data = invocation.getArguments()[0];
+                                final StreamResult result =
+                                        (StreamResult) invocation.getArguments()[1];
+                                FileUtils.writeStringToFile(
+                                        new File(new URI(result.getSystemId())),
+                                        "<user username=\"" + data + "\"/>");
+                                return null;
+                            }
+                        })
+                .when(marshaller)
+                .marshal(any(), any(Result.class));
+
+        final IDataExporter<String> userDataExporter =
+                this.setUserDataExporter(marshaller, "admin", "student");
+        when(userDataExporter.getFileName("admin")).thenReturn("admin");
+        //Exported into a sub-directory of the type's directory
+        when(userDataExporter.getFileName("student")).thenReturn("students/student");
+
+        final File archive = new File(tempFolder.getRoot(), "export.zip");
+        final IPortalDataHandlerService.BatchExportOptions options =
+                new IPortalDataHandlerService.BatchExportOptions();
+        options.setLogDirectoryParent(tempFolder.newFolder("zipArchiveExport"));
+
+        this.dataImportExportService.exportDataArchive(
+                Collections.singleton(typeId), archive, options);
+
+        final List<String> entryNames = new ArrayList<String>();
+        final ZipFile zipFile = new ZipFile(archive);
+        try {
+            for (final ZipArchiveEntry entry : Collections.list(zipFile.getEntries())) {
+                entryNames.add(entry.getName());
+                if (entry.getName().endsWith("student." + typeId + ".xml")) {
+                    assertEquals(
+                            "<user username=\"student\"/>",
+                            IOUtils.toString(zipFile.getInputStream(entry)));
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+        assertEquals(
+                Arrays.asList(
+                        typeId + "/admin." + typeId + ".xml",
+                        typeId + "/students/student." + typeId + ".xml"),
+                entryNames);
+    }
+
+    @Test
+    public void testExportDataArchiveFailure() throws Exception {
+        final String typeId = new UserPortalDataType().getTypeId();
+
+        final Marshaller marshaller = mock(Marshaller.class);
+        doThrow(new IOException("Failed to marshal"))
+                .when(marshaller)
+                .marshal(any(), any(Result.class));
+        this.setUserDataExporter(marshaller, "admin");
+
+        final File archive = new File(tempFolder.getRoot(), "export.tar.gz");
+        final IPortalDataHandlerService.BatchExportOptions options =
+                new IPortalDataHandlerService.BatchExportOptions();
+        options.setLogDirectoryParent(tempFolder.newFolder("failedArchiveExport"));
+
+        try {
+            this.dataImportExportService.exportDataArchive(
+                    Collections.singleton(typeId), archive, options);
+            fail("Expected RuntimeException for a failed export");
+        } catch (RuntimeException e) {
+            // Expected;  fall through...
+        }
+
+        //No partial archive is left behind
+        assertFalse(archive.exists());
+    }
+
+    private IDataExporter<String> setUserDataExporter(Marshaller marshaller, String... usernames) {
+        final List<IPortalData> portalData = new ArrayList<IPortalData>();
+        final IDataExporter<String> userDataExporter = mock(IDataExporter.class);
+        when(userDataExporter.getPortalDataType()).thenReturn(new UserPortalDataType());
+        when(userDataExporter.getMarshaller()).thenReturn(marshaller);
+        for (final String username : usernames) {
+            portalData.add(new SimpleStringPortalData(username, null, null));
+            when(userDataExporter.exportData(username)).thenReturn(username);
+        }
+        when((Iterable) userDataExporter.getPortalData()).thenReturn(portalData);
+        this.dataImportExportService.setDataExporters(
+                Collections.<IDataExporter<? extends Object>>singleton(userDataExporter));
+        return userDataExporter;
+    }
+
     protected IDataUpgrader createXsltDataUpgrader(
             final ClassPathResource xslResource, final PortalDataKey dataKey) throws Exception {
         final XsltDataUpgrader xsltDataUpgrader = new XsltDataUpgrader();
@@ -0,0 +1,126 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.container.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import org.apereo.portal.portlet.rendering.PortletResourceOutputHandler;
+import org.apereo.portal.portlet.rendering.RenderPortletOutputHandler;
+import org.junit.Test;
+
+public class CachedPortletDataTest {
+
+    //Two and three byte UTF-8 chars, and a surrogate pair for U+1F600
+    private static final String NON_ASCII =
+            "Gr\u00fc\u00dfe \u2013 \u65e5\u672c\u8a9e \uD83D\uDE00";
+
+    @Test
+    public void testNonAsciiWriterOutput() throws Exception {
+        final CachedPortletData<Long> cachedPortletData =
+                new CachedPortletData<Long>(1l, NON_ASCII, null, null, false, null, -1);
+
+        assertEquals(NON_ASCII, cachedPortletData.getCachedWriterOutput());
+        assertEquals(
+                NON_ASCII.getBytes(StandardCharsets.UTF_8).length,
+                cachedPortletData.getCachedOutputSize());
+
+        final RenderPortletOutputHandler handler = new RenderPortletOutputHandler("UTF-8");
+        cachedPortletData.replay(handler);
+        assertEquals(NON_ASCII, handler.getOutput());
+    }
+
+    @Test
+    public void testReplayAcrossDecodeChunks() throws Exception {
+        //Offset by one char so surrogate pairs straddle the chunk boundaries of the decoder
+        final StringBuilder output = new StringBuilder("x");
+        while (output.length() < 20000) {
+            output.append(NON_ASCII);
+        }
+        final CachedPortletData<Long> cachedPortletData =
+                new CachedPortletData<Long>(1l, output, null, null, false, null, -1);
+
+        final RenderPortletOutputHandler handler = new RenderPortletOutputHandler("UTF-8");
+        cachedPortletData.replay(handler);
+        assertEquals(output.toString(), handler.getOutput());
+    }
+
+    @Test
+    public void testUtf8ResourceWritesStoredBytes() throws Exception {
+        final CachedPortletData<Long> cachedPortletData =
+                new CachedPortletData<Long>(1l, NON_ASCII, null, null, false, null, -1);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final PortletResourceOutputHandler handler = mock(PortletResourceOutputHandler.class);
+        when(handler.getCharacterEncoding()).thenReturn("utf-8");
+        when(handler.getOutputStream()).thenReturn(out);
+
+        cachedPortletData.replay(handler);
+        assertArrayEquals(NON_ASCII.getBytes(StandardCharsets.UTF_8), out.toByteArray());
+        verify(handler, never()).getPrintWriter();
+    }
+
+    @Test
+    public void testResourceInOtherEncodingUsesWriter() throws Exception {
+        final CachedPortletData<Long> cachedPortletData =
+                new CachedPortletData<Long>(1l, NON_ASCII, null, null, false, null, -1);
+
+        final StringWriter writer = new StringWriter();
+        final PortletResourceOutputHandler handler = mock(PortletResourceOutputHandler.class);
+        when(handler.getCharacterEncoding()).thenReturn("ISO-8859-1");
+        final PrintWriter printWriter = new PrintWriter(writer);
+        when(handler.getPrintWriter()).thenReturn(printWriter);
+
+        cachedPortletData.replay(handler);
+        printWriter.flush();
+        assertEquals(NON_ASCII, writer.toString());
+        verify(handler, never()).getOutputStream();
+    }
+
+    @Test
+    public void testUnpairedSurrogates() throws Exception {
+        //UTF-8 can't encode these, they must not be replaced with '?'
+        final String output = "<p>\uD83D</p><p>\uDE00" + NON_ASCII + "\uD83D";
+        final CachedPortletData<Long> cachedPortletData =
+                new CachedPortletData<Long>(1l, output, null, null, false, null, -1);
+
+        assertEquals(output, cachedPortletData.getCachedWriterOutput());
+
+        final RenderPortletOutputHandler renderHandler = new RenderPortletOutputHandler("UTF-8");
+        cachedPortletData.replay(renderHandler);
+        assertEquals(output, renderHandler.getOutput());
+
+        //Not written as bytes, the response's writer decides how to encode them
+        final StringWriter writer = new StringWriter();
+        final PortletResourceOutputHandler resourceHandler =
+                mock(PortletResourceOutputHandler.class);
+        when(resourceHandler.getCharacterEncoding()).thenReturn("UTF-8");
+        final PrintWriter printWriter = new PrintWriter(writer);
+        when(resourceHandler.getPrintWriter()).thenReturn(printWriter);
+
+        cachedPortletData.replay(resourceHandler);
+        printWriter.flush();
+        assertEquals(output, writer.toString());
+        verify(resourceHandler, never()).getOutputStream();
+    }
+}
@@ -220,6 +220,87 @@ public class PortletCacheControlServiceImplTest {
         Assert.assertEquals("123456", afterCacheState.getCacheControl().getETag());
     }
 
+    @Test
+    public void testCachePrivateRenderAndResourceShareOutput() {
+        MockHttpServletRequest httpRequest = new MockHttpServletRequest();
+        httpRequest.setSession(new MockHttpSession());
+
+        MockPortletWindowId portletWindowId = new MockPortletWindowId("123");
+        MockPortletDefinitionId portletDefinitionId = new MockPortletDefinitionId(789);
+
+        // use private cache
+        when(portletDescriptor.getCacheScope()).thenReturn(MimeResponse.PRIVATE_SCOPE);
+        when(portletDescriptor.getExpirationCache()).thenReturn(300);
+
+        when(portletWindowRegistry.getPortletWindow(httpRequest, portletWindowId))
+                .thenReturn(portletWindow);
+        when(portletWindow.getPortletWindowId()).thenReturn(portletWindowId);
+        when(portletWindow.getPortletEntity()).thenReturn(portletEntity);
+        when(portletWindow.getWindowState()).thenReturn(WindowState.NORMAL);
+        when(portletWindow.getPortletMode()).thenReturn(PortletMode.VIEW);
+        when(portletEntity.getPortletDefinitionId()).thenReturn(portletDefinitionId);
+        when(portletDefinitionRegistry.getParentPortletDescriptor(portletDefinitionId))
+                .thenReturn(portletDescriptor);
+
+        when(urlSyntaxProvider.getPortalRequestInfo(httpRequest)).thenReturn(portalRequestInfo);
+        when(portalRequestInfo.getPortletRequestInfoMap()).thenReturn(Collections.EMPTY_MAP);
+
+        final String output = "<p>Shared content</p>";
+
+        //Private render put
+        final CacheState<CachedPortletData<PortletRenderResult>, PortletRenderResult>
+                renderCacheState =
+                        cacheControlService.getPortletRenderState(httpRequest, portletWindowId);
+        final CacheControl renderCacheControl = renderCacheState.getCacheControl();
+        assertFalse(renderCacheControl.isPublicScope());
+
+        final CachedPortletData<PortletRenderResult> cachedRenderData =
+                new CachedPortletData<PortletRenderResult>(
+                        new PortletRenderResult("title", null, 0, 1),
+                        output,
+                        null,
+                        null,
+                        false,
+                        null,
+                        renderCacheControl.getExpirationTime());
+        cacheControlService.cachePortletRenderOutput(
+                portletWindowId, httpRequest, renderCacheState, cachedRenderData);
+
+        //Private resource put with the same output
+        final CacheState<CachedPortletResourceData<Long>, Long> resourceCacheState =
+                cacheControlService.getPortletResourceState(httpRequest, portletWindowId);
+        final CacheControl resourceCacheControl = resourceCacheState.getCacheControl();
+        assertFalse(resourceCacheControl.isPublicScope());
+
+        final CachedPortletData<Long> cachedResourceOutput =
+                new CachedPortletData<Long>(
+                        1000l,
+                        output,
+                        null,
+                        "text/html",
+                        false,
+                        null,
+                        resourceCacheControl.getExpirationTime());
+        final CachedPortletResourceData<Long> cachedResourceData =
+                new CachedPortletResourceData<Long>(
+                        cachedResourceOutput, Collections.EMPTY_MAP, null, null, null, null);
+        cacheControlService.cachePortletResourceOutput(
+                portletWindowId, httpRequest, resourceCacheState, cachedResourceData);
+
+        Assert.assertEquals(1, privateScopeRenderCache.getSize());
+        Assert.assertEquals(1, privateScopeResourceCache.getSize());
+
+        //Both entries use a single copy of the output, stats are keyed by portlet definition id
+        Assert.assertEquals(1, cacheControlService.getSharedPrivateOutputCount());
+        Assert.assertEquals(
+                0.5,
+                cacheControlService.getPrivateOutputDeduplicationRatios().get("789"),
+                0.0001);
+        Assert.assertEquals(
+                Long.valueOf(output.length()),
+                cacheControlService.getPrivateOutputBytesShared().get("789"));
+    }
+
     @Test
     public void testDetermineCacheScopePortletDefinitionPrivate() {
         MockHttpServletRequest httpRequest = new MockHttpServletRequest();
@@ -0,0 +1,59 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.container.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class SharedPortletOutputStoreTest {
+
+    @Test
+    public void testIdenticalOutputIsShared() {
+        final SharedPortletOutputStore store = new SharedPortletOutputStore();
+        final byte[] first = "<div>Announcements</div>".getBytes(StandardCharsets.UTF_8);
+        final byte[] second = "<div>Announcements</div>".getBytes(StandardCharsets.UTF_8);
+        final byte[] other = "<div>Calendar</div>".getBytes(StandardCharsets.UTF_8);
+
+        assertSame(first, store.share("announcements", first));
+        assertSame(first, store.share("announcements", second));
+        assertSame(other, store.share("announcements", other));
+        assertEquals(2, store.size());
+
+        assertEquals(1d / 3, store.getDeduplicationRatios().get("announcements"), 0.0001);
+        assertEquals(Long.valueOf(first.length), store.getBytesShared().get("announcements"));
+    }
+
+    @Test
+    public void testCachedPortletDataSharesOutput() {
+        final SharedPortletOutputStore store = new SharedPortletOutputStore();
+        final CachedPortletData<Long> first =
+                new CachedPortletData<Long>(1l, "<p>Hi</p>", null, null, false, null, -1);
+        final CachedPortletData<Long> second =
+                new CachedPortletData<Long>(1l, "<p>Hi</p>", null, null, false, null, -1);
+        final CachedPortletData<Long> stream =
+                new CachedPortletData<Long>(1l, null, new byte[] {1, 2, 3}, null, false, null, -1);
+
+        first.shareOutput(store, "welcome");
+        second.shareOutput(store, "welcome");
+        stream.shareOutput(store, "welcome");
+
+        assertEquals("<p>Hi</p>", second.getCachedWriterOutput());
+        assertEquals(Long.valueOf(9), store.getBytesShared().get("welcome"));
+        assertEquals(2, store.size());
+    }
+}
@@ -0,0 +1,264 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.registry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Function;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apereo.portal.portlet.om.AbstractObjectId;
+import org.apereo.portal.portlet.om.IPortletDefinitionId;
+import org.apereo.portal.portlet.om.IPortletEntityId;
+import org.apereo.portal.portlet.om.IPortletWindowId;
+import org.junit.Test;
+
+public class PortletWindowCacheTest {
+    private final IPortletEntityId entityId =
+            new PortletEntityIdImpl(new PortletDefinitionId(88), "n149", 52);
+    private final IPortletEntityId otherEntityId =
+            new PortletEntityIdImpl(new PortletDefinitionId(90), "u110", 52);
+
+    @Test
+    public void testSerializedWindowCache() throws Exception {
+        final PortletWindowCache<PortletWindowData> cache =
+                new PortletWindowCache<PortletWindowData>();
+        final PortletWindowData window = createWindow(this.entityId, null);
+        final PortletWindowData delegateWindow = createWindow(this.entityId, "tw_1");
+        final PortletWindowData otherWindow = createWindow(this.otherEntityId, null);
+        window.setRenderParameters(Collections.singletonMap("page", new String[] {"2"}));
+        cache.storeWindow(window);
+        cache.storeWindow(delegateWindow);
+        cache.storeWindow(otherWindow);
+
+        final PortletWindowCache<PortletWindowData> copy = roundTrip(cache);
+
+        final List<IPortletWindowId> windowIds = new ArrayList<IPortletWindowId>();
+        for (final PortletWindowData windowData : copy.getWindows(this.entityId)) {
+            windowIds.add(windowData.getPortletWindowId());
+        }
+        assertEquals(
+                Arrays.asList(window.getPortletWindowId(), delegateWindow.getPortletWindowId()),
+                windowIds);
+        assertEquals(1, copy.getWindows(this.otherEntityId).size());
+
+        final PortletWindowData windowCopy = copy.getWindow(window.getPortletWindowId());
+        assertNotSame(window, windowCopy);
+        assertEquals("2", windowCopy.getRenderParameters().get("page")[0]);
+        assertEquals("88_n149_52", windowCopy.getPortletEntityId().getStringId());
+
+        //Maps are rebuilt so the copy can still be written to
+        copy.storeWindow(createWindow(this.otherEntityId, "tw_2"));
+        assertEquals(2, copy.getWindows(this.otherEntityId).size());
+    }
+
+    @Test
+    public void testNoWindows() {
+        final PortletWindowCache<PortletWindowData> cache =
+                new PortletWindowCache<PortletWindowData>();
+        assertTrue(cache.getWindows(this.entityId).isEmpty());
+    }
+
+    @Test
+    public void testSerializedEntityCache() throws Exception {
+        final PortletEntityCache<PortletEntityData> cache =
+                new PortletEntityCache<PortletEntityData>();
+        final PortletEntityIdImpl portletEntityId = (PortletEntityIdImpl) this.entityId;
+        cache.storeEntity(
+                new PortletEntityData(
+                        portletEntityId,
+                        portletEntityId.getPortletDefinitionId(),
+                        portletEntityId.getLayoutNodeId(),
+                        portletEntityId.getUserId()));
+
+        final PortletEntityCache<PortletEntityData> copy = roundTrip(cache);
+
+        final PortletEntityData entityData = copy.getEntity("n149", 52);
+        assertEquals(this.entityId, entityData.getPortletEntityId());
+        assertSame(entityData, copy.getEntity(this.entityId));
+        //Layout node ids of deserialized entity ids are interned
+        assertSame(
+                portletEntityId.getLayoutNodeId(),
+                ((PortletEntityIdImpl) entityData.getPortletEntityId()).getLayoutNodeId());
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentStoreIfAbsentWindow() throws Exception {
+        final PortletWindowCache<PortletWindowData> cache =
+                new PortletWindowCache<PortletWindowData>();
+        final List<Callable<PortletWindowData>> stores =
+                new ArrayList<Callable<PortletWindowData>>();
+        for (int i = 0; i < 16; i++) {
+            final String windowInstanceId = "tw_" + (i % 4);
+            stores.add(
+                    new Callable<PortletWindowData>() {
+                        @Override
+                        public PortletWindowData call() {
+                            return cache.storeIfAbsentWindow(
+                                    createWindow(entityId, windowInstanceId));
+                        }
+                    });
+        }
+
+        final List<Future<PortletWindowData>> results = invokeAll(stores);
+        for (final Future<PortletWindowData> result : results) {
+            //Every thread gets the instance stored first for its window
+            final PortletWindowData window = result.get();
+            assertSame(cache.getWindow(window.getPortletWindowId()), window);
+        }
+        assertEquals(4, cache.getWindows(this.entityId).size());
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentStoreIfAbsentEntity() throws Exception {
+        final PortletEntityCache<PortletEntityData> cache =
+                new PortletEntityCache<PortletEntityData>();
+        final AtomicInteger created = new AtomicInteger();
+        final Function<IPortletEntityId, PortletEntityData> entityCreator =
+                new Function<IPortletEntityId, PortletEntityData>() {
+                    @Override
+                    public PortletEntityData apply(IPortletEntityId portletEntityId) {
+                        created.incrementAndGet();
+                        return createEntity(portletEntityId);
+                    }
+                };
+        final List<Callable<PortletEntityData>> stores =
+                new ArrayList<Callable<PortletEntityData>>();
+        for (int i = 0; i < 16; i++) {
+            stores.add(
+                    new Callable<PortletEntityData>() {
+                        @Override
+                        public PortletEntityData call() {
+                            return cache.storeIfAbsentEntity(entityId, entityCreator);
+                        }
+                    });
+        }
+
+        final List<Future<PortletEntityData>> results = invokeAll(stores);
+        assertEquals(1, created.get());
+        for (final Future<PortletEntityData> result : results) {
+            assertSame(cache.getEntity("n149", 52), result.get());
+        }
+    }
+
+    @Test
+    public void testRemoveEntity() {
+        final PortletEntityCache<PortletEntityData> cache =
+                new PortletEntityCache<PortletEntityData>();
+        final PortletEntityData entity = createEntity(this.entityId);
+        cache.storeEntity(entity);
+
+        //A different entity for the same layout node and user replaces it
+        final IPortletEntityId replacementId =
+                new PortletEntityIdImpl(new PortletDefinitionId(89), "n149", 52);
+        final PortletEntityData replacement =
+                new PortletEntityData(replacementId, new PortletDefinitionId(89), "n149", 52);
+        cache.storeEntity(replacement);
+
+        cache.removeEntity(this.entityId);
+        assertNull(cache.getEntity(this.entityId));
+        assertSame(replacement, cache.getEntity("n149", 52));
+
+        cache.removeEntity(replacementId);
+        assertNull(cache.getEntity("n149", 52));
+    }
+
+    private static PortletEntityData createEntity(IPortletEntityId portletEntityId) {
+        final PortletEntityIdImpl portletEntityIdImpl = (PortletEntityIdImpl) portletEntityId;
+        return new PortletEntityData(
+                portletEntityIdImpl,
+                portletEntityIdImpl.getPortletDefinitionId(),
+                portletEntityIdImpl.getLayoutNodeId(),
+                portletEntityIdImpl.getUserId());
+    }
+
+    /** Runs the tasks on their own threads, released together to race each other */
+    private static <T> List<Future<T>> invokeAll(List<Callable<T>> tasks) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Future<T>> futures = new ArrayList<Future<T>>();
+            for (final Callable<T> task : tasks) {
+                futures.add(
+                        executor.submit(
+                                new Callable<T>() {
+                                    @Override
+                                    public T call() throws Exception {
+                                        start.await();
+                                        return task.call();
+                                    }
+                                }));
+            }
+            start.countDown();
+            for (final Future<T> future : futures) {
+                future.get();
+            }
+            return futures;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static PortletWindowData createWindow(
+            IPortletEntityId portletEntityId, String windowInstanceId) {
+        return new PortletWindowData(
+                new PortletWindowIdImpl(portletEntityId, windowInstanceId), portletEntityId);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T roundTrip(T object) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream oos = new ObjectOutputStream(bytes);
+        oos.writeObject(object);
+        oos.close();
+
+        final ObjectInputStream ois =
+                new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        return (T) ois.readObject();
+    }
+
+    private static final class PortletDefinitionId extends AbstractObjectId
+            implements IPortletDefinitionId {
+        private static final long serialVersionUID = 1L;
+
+        private final long longId;
+
+        PortletDefinitionId(long longId) {
+            super(Long.toString(longId));
+            this.longId = longId;
+        }
+
+        @Override
+        public long getLongId() {
+            return this.longId;
+        }
+    }
+}
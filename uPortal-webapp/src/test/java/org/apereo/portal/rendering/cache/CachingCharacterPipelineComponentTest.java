@@ -89,7 +89,7 @@ public class CachingCharacterPipelineComponentTest {
         final CacheKey cacheKey = CacheKey.build("testCacheKey");
         final CachedEventReader<CharacterEvent> eventReader =
                 new CachedEventReader<CharacterEvent>(
-                        Collections.EMPTY_LIST, Collections.EMPTY_MAP);
+                        Collections.EMPTY_LIST, Collections.EMPTY_MAP, 0, 0);
         final Element cacheElement = new Element(cacheKey, eventReader);
 
         final Ehcache cache = createMock(Ehcache.class);
@@ -14,6 +14,7 @@
  */
 package org.apereo.portal.rendering.cache;
 
+import static org.easymock.EasyMock.capture;
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.expectLastCall;
@@ -21,8 +22,11 @@ import static org.easymock.EasyMock.notNull;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.events.XMLEvent;
 import net.sf.ehcache.Ehcache;
@@ -32,6 +36,7 @@ import org.apereo.portal.rendering.PipelineEventReaderImpl;
 import org.apereo.portal.rendering.StAXPipelineComponent;
 import org.apereo.portal.utils.cache.CacheKey;
 import org.apereo.portal.xml.stream.XMLEventBufferReader;
+import org.easymock.Capture;
 import org.jasig.resourceserver.aggr.om.Included;
 import org.jasig.resourceserver.utils.aggr.ResourcesElementsProvider;
 import org.junit.Assert;
@@ -86,7 +91,8 @@ public class CachingStAXPipelineComponentTest {
         final MockHttpServletResponse mockRes = new MockHttpServletResponse();
         final CacheKey cacheKey = CacheKey.build("testCacheKey");
         final CachedEventReader<XMLEvent> eventReader =
-                new CachedEventReader<XMLEvent>(Collections.EMPTY_LIST, Collections.EMPTY_MAP);
+                new CachedEventReader<XMLEvent>(
+                        Collections.EMPTY_LIST, Collections.EMPTY_MAP, 0, 0);
         final Element cacheElement = new Element(cacheKey, eventReader);
 
         final Ehcache cache = createMock(Ehcache.class);
@@ -114,4 +120,65 @@ public class CachingStAXPipelineComponentTest {
 
         verify(cache, targetComponent, elementsProvider);
     }
+
+    @Test
+    public void testCacheMissDeDuplicatesWhitespace() throws Exception {
+        final MockHttpServletRequest mockReq = new MockHttpServletRequest();
+        final MockHttpServletResponse mockRes = new MockHttpServletResponse();
+        final CacheKey cacheKey = CacheKey.build("testCacheKey");
+        final XMLEventFactory eventFactory = XMLEventFactory.newInstance();
+        final QName name = new QName("layout");
+        final List<XMLEvent> eventBuffer =
+                Arrays.<XMLEvent>asList(
+                        eventFactory.createStartElement(name, null, null),
+                        eventFactory.createSpace("\n  "),
+                        eventFactory.createCharacters("text"),
+                        eventFactory.createSpace("\n  "),
+                        eventFactory.createEndElement(name, null));
+        final PipelineEventReader<XMLEventReader, XMLEvent> eventReader =
+                new PipelineEventReaderImpl<XMLEventReader, XMLEvent>(
+                        new XMLEventBufferReader(eventBuffer.listIterator()));
+
+        final Ehcache cache = createMock(Ehcache.class);
+        final StAXPipelineComponent targetComponent = createMock(StAXPipelineComponent.class);
+        final ResourcesElementsProvider elementsProvider =
+                createMock(ResourcesElementsProvider.class);
+        final Capture<Element> cachedElement = new Capture<Element>();
+
+        expect(elementsProvider.getDefaultIncludedType()).andReturn(Included.AGGREGATED);
+        expect(targetComponent.getCacheKey(mockReq, mockRes)).andReturn(cacheKey);
+        expect(cache.get(cacheKey)).andReturn(null);
+        expect(targetComponent.getEventReader(mockReq, mockRes)).andReturn(eventReader);
+        cache.put(capture(cachedElement));
+        expectLastCall();
+
+        replay(cache, targetComponent, elementsProvider);
+
+        final CachingStAXPipelineComponent cachingComponent = new CachingStAXPipelineComponent();
+        cachingComponent.setCache(cache);
+        cachingComponent.setWrappedComponent(targetComponent);
+        cachingComponent.setResourcesElementsProvider(elementsProvider);
+
+        final XMLEventReader actualEventReader =
+                cachingComponent.getEventReader(mockReq, mockRes).getEventReader();
+
+        final XMLEvent startElement = actualEventReader.nextEvent();
+        final XMLEvent firstSpace = actualEventReader.nextEvent();
+        actualEventReader.nextEvent();
+        final XMLEvent secondSpace = actualEventReader.nextEvent();
+        final XMLEvent endElement = actualEventReader.nextEvent();
+        Assert.assertFalse(actualEventReader.hasNext());
+
+        Assert.assertTrue(startElement.isStartElement());
+        Assert.assertSame(firstSpace, secondSpace);
+        Assert.assertTrue(endElement.isEndElement());
+
+        final CachedEventReader<?> cachedEventReader =
+                (CachedEventReader<?>) cachedElement.getValue().getObjectValue();
+        Assert.assertEquals(5, cachedEventReader.getEventCount());
+        Assert.assertEquals(4, cachedEventReader.getUniqueEventCount());
+        Assert.assertTrue(cachedEventReader.getEstimatedSize() > 0);
+
+        verify(cache, targetComponent, elementsProvider);
+    }
 }